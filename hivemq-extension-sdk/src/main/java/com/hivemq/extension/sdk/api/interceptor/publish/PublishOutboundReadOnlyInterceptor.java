@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extension.sdk.api.interceptor.publish;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.interceptor.Interceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundReadOnlyInput;
+import com.hivemq.extension.sdk.api.services.interceptor.GlobalInterceptorRegistry;
+
+/**
+ * Interface for the read-only publish outbound interception.
+ * <p>
+ * In contrast to the {@link PublishOutboundInterceptor}, which is called for every copy of a PUBLISH that is sent to a
+ * subscriber, a read-only interceptor is called once per PUBLISH message, right before the message is distributed to
+ * all of its subscribers. It can not modify the PUBLISH or prevent its delivery.
+ * <p>
+ * Read-only interceptors are called directly by the thread that distributes the PUBLISH, which is usually a network
+ * thread of HiveMQ. They must therefore return quickly, must never block and must be thread-safe.
+ * <p>
+ * A read-only interceptor is registered via {@link GlobalInterceptorRegistry#setPublishOutboundReadOnlyInterceptor}.
+ *
+ * @since 4.2.0
+ */
+@FunctionalInterface
+public interface PublishOutboundReadOnlyInterceptor extends Interceptor {
+
+    /**
+     * When a {@link PublishOutboundReadOnlyInterceptor} is set through any extension,
+     * this method gets called once for every PUBLISH message that has at least one subscriber.
+     *
+     * @param publishOutboundReadOnlyInput The {@link PublishOutboundReadOnlyInput} parameter.
+     * @since 4.2.0
+     */
+    void onOutboundPublish(@NotNull PublishOutboundReadOnlyInput publishOutboundReadOnlyInput);
+}
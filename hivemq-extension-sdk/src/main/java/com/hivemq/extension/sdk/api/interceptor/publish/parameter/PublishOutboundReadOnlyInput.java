@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extension.sdk.api.interceptor.publish.parameter;
+
+import com.hivemq.extension.sdk.api.annotations.DoNotImplement;
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+
+import java.util.Optional;
+
+/**
+ * This is the input parameter of any {@link PublishOutboundReadOnlyInterceptor}
+ * providing PUBLISH and distribution based information.
+ *
+ * @since 4.2.0
+ */
+@DoNotImplement
+public interface PublishOutboundReadOnlyInput {
+
+    /**
+     * The unmodifiable PUBLISH packet that is distributed to the subscribers.
+     * <p>
+     * The packet is a view on the PUBLISH and is only created on the first call of this method.
+     *
+     * @return An unmodifiable {@link PublishPacket}.
+     * @since 4.2.0
+     */
+    @Immutable
+    @NotNull PublishPacket getPublishPacket();
+
+    /**
+     * The client identifier of the client that sent the PUBLISH.
+     *
+     * @return An {@link Optional} containing the client identifier of the sender or an empty {@link Optional} if the
+     * PUBLISH was not sent by a client, e.g. if it was published by an extension.
+     * @since 4.2.0
+     */
+    @NotNull Optional<String> getSenderClientId();
+
+    /**
+     * The amount of subscriptions that match the topic of the PUBLISH. A shared subscription group counts as one
+     * subscription.
+     *
+     * @return The amount of matching subscriptions.
+     * @since 4.2.0
+     */
+    int getSubscriptionCount();
+}
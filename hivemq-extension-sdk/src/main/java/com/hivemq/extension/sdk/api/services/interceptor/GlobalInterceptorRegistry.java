@@ -21,6 +21,7 @@ import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundIntercept
 import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundInterceptorProvider;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptor;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
 
 /**
  * @author Lukas Brandl
@@ -54,4 +55,17 @@ public interface GlobalInterceptorRegistry {
      * @since 4.2.0
      */
     void setConnackOutboundInterceptorProvider(@NotNull ConnackOutboundInterceptorProvider connackOutboundInterceptorProvider);
+
+    /**
+     * The interceptor is called once for each PUBLISH message that is distributed to at least one subscriber.
+     * <p>
+     * The {@link PublishOutboundReadOnlyInterceptor} must be implemented by the extension developer.
+     * It can be used to inspect PUBLISH messages once per message instead of once per subscriber.
+     * If there is already a read-only interceptor of the extension present, it will be overwritten.
+     *
+     * @param publishOutboundReadOnlyInterceptor The interceptor to be registered.
+     * @throws NullPointerException If the interceptor is null.
+     * @since 4.2.0
+     */
+    void setPublishOutboundReadOnlyInterceptor(@NotNull PublishOutboundReadOnlyInterceptor publishOutboundReadOnlyInterceptor);
 }
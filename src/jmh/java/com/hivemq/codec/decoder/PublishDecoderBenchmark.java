@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.codec.decoder;
+
+import com.hivemq.codec.decoder.mqtt5.Mqtt5PublishDecoder;
+import com.hivemq.configuration.HivemqId;
+import com.hivemq.limitation.TopicAliasLimiterImpl;
+import com.hivemq.logging.EventLog;
+import com.hivemq.mqtt.handler.disconnect.Mqtt5ServerDisconnector;
+import com.hivemq.mqtt.handler.disconnect.MqttDisconnectUtil;
+import com.hivemq.mqtt.message.ProtocolVersion;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5PUBLISH;
+import com.hivemq.util.ChannelAttributes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import util.TestConfigurationBootstrap;
+import util.TestMqttDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding throughput of QoS 1 PUBLISH messages, once through the whole {@link MQTTMessageDecoder} for MQTT 3.1.1 and
+ * MQTT 5 and once for the {@link Mqtt5PublishDecoder} alone.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PublishDecoderBenchmark {
+
+    private static final String TOPIC = "region/eu/site/1/line/2/machine/3/sensor/4";
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private EmbeddedChannel mqtt3Channel;
+    private EmbeddedChannel mqtt5Channel;
+    private Mqtt5PublishDecoder mqtt5PublishDecoder;
+
+    private ByteBuf mqtt3Publish;
+    private ByteBuf mqtt5Publish;
+    private ByteBuf mqtt5PublishWithoutFixedHeader;
+    private byte mqtt5Header;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mqtt3Channel = new EmbeddedChannel(TestMqttDecoder.create());
+        mqtt3Channel.attr(ChannelAttributes.MQTT_VERSION).set(ProtocolVersion.MQTTv3_1_1);
+        mqtt3Channel.attr(ChannelAttributes.CLIENT_ID).set("mqtt3-client");
+
+        mqtt5Channel = new EmbeddedChannel(TestMqttDecoder.create());
+        mqtt5Channel.attr(ChannelAttributes.MQTT_VERSION).set(ProtocolVersion.MQTTv5);
+        mqtt5Channel.attr(ChannelAttributes.CLIENT_ID).set("mqtt5-client");
+
+        mqtt5PublishDecoder = new Mqtt5PublishDecoder(
+                new Mqtt5ServerDisconnector(new MqttDisconnectUtil(new EventLog())),
+                new HivemqId(),
+                new TestConfigurationBootstrap().getFullConfigurationService(),
+                new TopicAliasLimiterImpl());
+
+        final byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+
+        mqtt3Publish = Unpooled.unreleasableBuffer(encodePublish(payload, false));
+        mqtt5Publish = Unpooled.unreleasableBuffer(encodePublish(payload, true));
+
+        mqtt5Header = mqtt5Publish.getByte(0);
+        int fixedHeaderLength = 2;
+        while ((mqtt5Publish.getByte(fixedHeaderLength - 1) & 0x80) != 0) {
+            fixedHeaderLength++;
+        }
+        mqtt5PublishWithoutFixedHeader = mqtt5Publish.slice(fixedHeaderLength, mqtt5Publish.readableBytes() - fixedHeaderLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mqtt3Channel.finishAndReleaseAll();
+        mqtt5Channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object decodeMqtt3() {
+        mqtt3Channel.writeInbound(mqtt3Publish.duplicate());
+        return mqtt3Channel.readInbound();
+    }
+
+    @Benchmark
+    public Object decodeMqtt5() {
+        mqtt5Channel.writeInbound(mqtt5Publish.duplicate());
+        return mqtt5Channel.readInbound();
+    }
+
+    @Benchmark
+    public Mqtt5PUBLISH mqtt5PublishDecoder() {
+        return mqtt5PublishDecoder.decode(mqtt5Channel, mqtt5PublishWithoutFixedHeader.duplicate(), mqtt5Header);
+    }
+
+    private static ByteBuf encodePublish(final byte[] payload, final boolean mqtt5) {
+        final byte[] topic = TOPIC.getBytes(StandardCharsets.UTF_8);
+        // topic + packet identifier (+ empty properties for MQTT 5) + payload
+        final int remainingLength = 2 + topic.length + 2 + (mqtt5 ? 1 : 0) + payload.length;
+
+        final ByteBuf buf = Unpooled.buffer(5 + remainingLength);
+        buf.writeByte(0b0011_0010);
+        int length = remainingLength;
+        do {
+            int encodedByte = length & 0x7F;
+            length >>>= 7;
+            if (length > 0) {
+                encodedByte |= 0x80;
+            }
+            buf.writeByte(encodedByte);
+        } while (length > 0);
+
+        buf.writeShort(topic.length);
+        buf.writeBytes(topic);
+        buf.writeShort(1);
+        if (mqtt5) {
+            buf.writeByte(0);
+        }
+        buf.writeBytes(payload);
+        return buf;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.codec.encoder.mqtt5;
+
+import com.hivemq.configuration.service.impl.SecurityConfigurationServiceImpl;
+import com.hivemq.mqtt.message.ProtocolVersion;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.util.ChannelAttributes;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Encoding throughput of the {@link Mqtt5PublishEncoder} for a plain PUBLISH and a PUBLISH with properties.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Mqtt5PublishEncoderBenchmark {
+
+    private static final String TOPIC = "region/eu/site/1/line/2/machine/3/sensor/4";
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private EmbeddedChannel channel;
+    private PUBLISH publish;
+    private PUBLISH publishWithProperties;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        channel = new EmbeddedChannel(new Mqtt5PublishEncoder(mock(MessageDroppedService.class), new SecurityConfigurationServiceImpl()));
+        channel.attr(ChannelAttributes.MAX_PACKET_SIZE_SEND).set((long) MqttVariableByteInteger.MAXIMUM_PACKET_SIZE_LIMIT);
+        channel.attr(ChannelAttributes.REQUEST_PROBLEM_INFORMATION).set(true);
+        channel.attr(ChannelAttributes.CLIENT_ID).set("clientId");
+        channel.attr(ChannelAttributes.MQTT_VERSION).set(ProtocolVersion.MQTTv5);
+
+        final byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+
+        publish = new PUBLISHFactory.Mqtt5Builder()
+                .withHivemqId("hivemqId")
+                .withTopic(TOPIC)
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withPayload(payload)
+                .withPacketIdentifier(1)
+                .build();
+
+        final MqttUserProperty userProperty = new MqttUserProperty("key", "value");
+        publishWithProperties = new PUBLISHFactory.Mqtt5Builder()
+                .fromPublish(publish)
+                .withContentType("application/octet-stream")
+                .withResponseTopic("response/" + TOPIC)
+                .withCorrelationData(new byte[]{1, 2, 3, 4})
+                .withMessageExpiryInterval(60)
+                .withUserProperties(Mqtt5UserProperties.of(userProperty, userProperty))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode() {
+        return write(publish);
+    }
+
+    @Benchmark
+    public int encodeWithProperties() {
+        return write(publishWithProperties);
+    }
+
+    private int write(final PUBLISH message) {
+        channel.writeOutbound(message);
+        final ByteBuf buf = channel.readOutbound();
+        final int length = buf.readableBytes();
+        buf.release();
+        return length;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.message.pool;
+
+import com.hivemq.mqtt.message.pool.exception.NoMessageIdAvailableException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of taking and returning message ids of a {@link SequentialMessageIDPoolImpl} with a given number of ids
+ * in use, as for a client with that many messages in flight.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SequentialMessageIDPoolBenchmark {
+
+    @Param({"0", "10", "1000", "60000"})
+    public int inflight;
+
+    private SequentialMessageIDPoolImpl pool;
+    private int[] inflightIds;
+    private int oldest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoMessageIdAvailableException {
+        pool = new SequentialMessageIDPoolImpl();
+        inflightIds = new int[Math.max(inflight, 1)];
+        for (int i = 0; i < inflight; i++) {
+            inflightIds[i] = pool.takeNextId();
+        }
+    }
+
+    /**
+     * Takes a new id and returns the oldest one in flight, so the number of ids in use stays the same.
+     */
+    @Benchmark
+    public int takeAndReturn() throws NoMessageIdAvailableException {
+        final int id = pool.takeNextId();
+        if (inflight == 0) {
+            pool.returnId(id);
+            return id;
+        }
+        pool.returnId(inflightIds[oldest]);
+        inflightIds[oldest] = id;
+        oldest = (oldest + 1) % inflight;
+        return id;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscribe and match throughput of the {@link TopicTreeImpl} for the tree shapes of {@link TopicTreeDataset}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopicTreeBenchmark {
+
+    private static final int PUBLISH_TOPICS = 4096;
+
+    @Param({"FLAT", "DEEP", "WILDCARD"})
+    public TopicTreeDataset dataset;
+
+    @Param({"10000", "100000"})
+    public int subscriptions;
+
+    private TopicTreeImpl topicTree;
+    private String[] publishTopics;
+    private String[] additionalSubscriptions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        topicTree = new TopicTreeImpl(new MetricsHolder(new MetricRegistry()));
+
+        final String[] topics = dataset.subscriptions(subscriptions);
+        for (int i = 0; i < topics.length; i++) {
+            topicTree.addTopic("client" + i, new Topic(topics[i], QoS.AT_LEAST_ONCE), (byte) 0, null);
+        }
+
+        publishTopics = dataset.publishTopics(PUBLISH_TOPICS, subscriptions);
+        additionalSubscriptions = dataset.publishTopics(PUBLISH_TOPICS, subscriptions);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        int next() {
+            return index++ & (PUBLISH_TOPICS - 1);
+        }
+    }
+
+    @Benchmark
+    public TopicSubscribers findSubscribers(final Cursor cursor) {
+        return topicTree.findSubscribers(publishTopics[cursor.next()]);
+    }
+
+    @Benchmark
+    public ImmutableSet<SubscriberWithIdentifiers> getSubscribers(final Cursor cursor) {
+        return topicTree.getSubscribers(publishTopics[cursor.next()]);
+    }
+
+    /**
+     * Adds and removes a subscription, so the shape of the tree stays the same for the whole run.
+     */
+    @Benchmark
+    public boolean subscribeAndUnsubscribe(final Cursor cursor) {
+        final String topic = additionalSubscriptions[cursor.next()];
+        final boolean replaced = topicTree.addTopic("benchmark-client", new Topic(topic, QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.removeSubscriber("benchmark-client", topic, null);
+        return replaced;
+    }
+}
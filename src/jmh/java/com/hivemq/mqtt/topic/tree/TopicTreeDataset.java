@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.topic.tree;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reproducible topic tree shapes for the benchmarks. Every shape is generated from a fixed seed, so two runs of the
+ * same benchmark always work on the same subscriptions and publish topics.
+ */
+enum TopicTreeDataset {
+
+    /**
+     * Many exact subscriptions on the second topic level, one subscription per topic.
+     */
+    FLAT {
+        @Override
+        @NotNull String subscription(@NotNull final Random random, final int index) {
+            return "sensors/" + index;
+        }
+
+        @Override
+        @NotNull String publishTopic(@NotNull final Random random, final int subscriptions) {
+            return "sensors/" + random.nextInt(subscriptions);
+        }
+    },
+
+    /**
+     * Exact subscriptions on ten topic levels with a few multi level wildcards on the intermediate levels.
+     */
+    DEEP {
+        @Override
+        @NotNull String subscription(@NotNull final Random random, final int index) {
+            final String topic = deepTopic(index);
+            if (index % 50 == 0) {
+                return topic.substring(0, topic.indexOf("/line/")) + "/#";
+            }
+            return topic;
+        }
+
+        @Override
+        @NotNull String publishTopic(@NotNull final Random random, final int subscriptions) {
+            return deepTopic(random.nextInt(subscriptions));
+        }
+    },
+
+    /**
+     * Half of the subscriptions use single level wildcards at random levels, a tenth end with a multi level wildcard.
+     */
+    WILDCARD {
+        @Override
+        @NotNull String subscription(@NotNull final Random random, final int index) {
+            final String[] levels = deepTopic(index).split("/");
+            if (index % 2 == 0) {
+                levels[1 + 2 * random.nextInt(4)] = "+";
+            }
+            if (index % 10 == 0) {
+                return String.join("/", Arrays.copyOf(levels, 3 + random.nextInt(5))) + "/#";
+            }
+            return String.join("/", levels);
+        }
+
+        @Override
+        @NotNull String publishTopic(@NotNull final Random random, final int subscriptions) {
+            return deepTopic(random.nextInt(subscriptions));
+        }
+    };
+
+    static final long SEED = 0x5eed_7091cL;
+
+    abstract @NotNull String subscription(@NotNull Random random, int index);
+
+    abstract @NotNull String publishTopic(@NotNull Random random, int subscriptions);
+
+    @NotNull String[] subscriptions(final int count) {
+        final Random random = new Random(SEED);
+        final String[] subscriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            subscriptions[i] = subscription(random, i);
+        }
+        return subscriptions;
+    }
+
+    @NotNull String[] publishTopics(final int count, final int subscriptions) {
+        final Random random = new Random(SEED + 1);
+        final String[] topics = new String[count];
+        for (int i = 0; i < count; i++) {
+            topics[i] = publishTopic(random, subscriptions);
+        }
+        return topics;
+    }
+
+    private static @NotNull String deepTopic(final int index) {
+        return "region/" + (index % 4) +
+                "/site/" + (index % 16) +
+                "/line/" + (index % 64) +
+                "/machine/" + (index % 256) +
+                "/sensor/" + index;
+    }
+}
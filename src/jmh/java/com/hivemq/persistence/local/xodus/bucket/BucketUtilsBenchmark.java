@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.xodus.bucket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the bucket lookup that every persistence access does for the client id.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BucketUtilsBenchmark {
+
+    private static final int CLIENT_IDS = 1024;
+
+    @Param({"64"})
+    public int bucketCount;
+
+    private String[] clientIds;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        clientIds = new String[CLIENT_IDS];
+        for (int i = 0; i < CLIENT_IDS; i++) {
+            clientIds[i] = "device-" + Integer.toHexString(i * 0x9E3779B1);
+        }
+    }
+
+    @Benchmark
+    public int getBucket() {
+        return BucketUtils.getBucket(clientIds[index++ & (CLIENT_IDS - 1)], bucketCount);
+    }
+}
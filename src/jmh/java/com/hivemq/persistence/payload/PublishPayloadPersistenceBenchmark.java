@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.payload;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the reference counting and cache lookups of the {@link PublishPayloadPersistenceImpl}. The local
+ * persistence is kept in memory, so the numbers show the overhead of the payload persistence itself, not of the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PublishPayloadPersistenceBenchmark {
+
+    private static final int PAYLOADS = 1024;
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    private ListeningScheduledExecutorService executorService;
+    private InMemoryPayloadLocalPersistence localPersistence;
+    private PublishPayloadPersistenceImpl persistence;
+
+    private byte[][] payloads;
+    private long[] payloadIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executorService = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor());
+        // init() is not called on purpose, the cleanup tasks would remove payloads while they are measured
+        localPersistence = new InMemoryPayloadLocalPersistence();
+        persistence = new PublishPayloadPersistenceImpl(localPersistence, executorService);
+
+        final Random random = new Random(payloadSize);
+        payloads = new byte[PAYLOADS][payloadSize];
+        payloadIds = new long[PAYLOADS];
+        for (int i = 0; i < PAYLOADS; i++) {
+            random.nextBytes(payloads[i]);
+            payloadIds[i] = persistence.add(payloads[i], 1);
+        }
+    }
+
+    /**
+     * Does the work of the cleanup task between the iterations, so new payloads don't pile up in memory.
+     */
+    @TearDown(Level.Iteration)
+    public void removePayloads() {
+        RemovablePayload removablePayload;
+        while ((removablePayload = persistence.removablePayloads.poll()) != null) {
+            final long id = removablePayload.getId();
+            final AtomicLong referenceCount = persistence.referenceCounter.get(id);
+            if (referenceCount != null && referenceCount.get() == 0) {
+                persistence.payloadCache.invalidate(id);
+                persistence.referenceCounter.remove(id);
+                localPersistence.remove(id);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        int next() {
+            return index++ & (PAYLOADS - 1);
+        }
+    }
+
+    /**
+     * The common case of a fan-out: the payload is already stored and only the reference count changes.
+     */
+    @Benchmark
+    public long addExistingAndDecrement(final Cursor cursor) {
+        final int index = cursor.next();
+        final long id = persistence.add(payloads[index], 1);
+        persistence.decrementReferenceCounter(id);
+        return id;
+    }
+
+    @Benchmark
+    public byte[] get(final Cursor cursor) {
+        return persistence.get(payloadIds[cursor.next()]);
+    }
+
+    @State(Scope.Thread)
+    public static class NewPayload {
+
+        private final Random random = new Random(0);
+        byte[] payload;
+
+        @Setup(Level.Invocation)
+        public void setUp(final PublishPayloadPersistenceBenchmark benchmark) {
+            payload = new byte[benchmark.payloadSize];
+            random.nextBytes(payload);
+        }
+    }
+
+    @Benchmark
+    public long addNewAndDecrement(final NewPayload newPayload) {
+        final long id = persistence.add(newPayload.payload, 1);
+        persistence.decrementReferenceCounter(id);
+        return id;
+    }
+
+    private static class InMemoryPayloadLocalPersistence implements PublishPayloadLocalPersistence {
+
+        private final Map<Long, byte[]> payloads = new ConcurrentHashMap<>();
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void put(final long id, @NotNull final byte[] payload) {
+            payloads.put(id, payload);
+        }
+
+        @Override
+        public @Nullable byte[] get(final long id) {
+            return payloads.get(id);
+        }
+
+        @Override
+        public void remove(final long id) {
+            payloads.remove(id);
+        }
+
+        @Override
+        public long getMaxId() {
+            return payloads.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+        }
+
+        @Override
+        public @NotNull ImmutableList<Long> getAllIds() {
+            return ImmutableList.copyOf(payloads.keySet());
+        }
+
+        @Override
+        public void closeDB() {
+        }
+
+        @Override
+        public void iterate(final @NotNull Callback callback) {
+            payloads.forEach(callback::call);
+        }
+    }
+}
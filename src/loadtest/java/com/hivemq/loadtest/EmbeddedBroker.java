@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.HiveMQServer;
+import com.hivemq.configuration.SystemProperties;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Starts HiveMQ in the JVM of the load test with its own home folder and a TCP listener on a free loopback port.
+ * <p>
+ * The broker can only be started once per JVM, it is stopped by the shutdown hooks of HiveMQ when the JVM exits.
+ */
+class EmbeddedBroker {
+
+    private static final String CONFIG = "<?xml version=\"1.0\"?>\n" +
+            "<hivemq>\n" +
+            "    <listeners>\n" +
+            "        <tcp-listener>\n" +
+            "            <port>%d</port>\n" +
+            "            <bind-address>" + LoadTest.HOST + "</bind-address>\n" +
+            "        </tcp-listener>\n" +
+            "    </listeners>\n" +
+            "    <anonymous-usage-statistics>\n" +
+            "        <enabled>false</enabled>\n" +
+            "    </anonymous-usage-statistics>\n" +
+            "</hivemq>\n";
+
+    private final int port;
+
+    private EmbeddedBroker(final int port) {
+        this.port = port;
+    }
+
+    static @NotNull EmbeddedBroker start(final @NotNull File homeFolder) throws Exception {
+        // a leftover persistence of a previous run would distort the results
+        FileUtils.deleteDirectory(homeFolder);
+
+        final File configFolder = new File(homeFolder, "conf");
+        final File dataFolder = new File(homeFolder, "data");
+        final File logFolder = new File(homeFolder, "log");
+        final File extensionsFolder = new File(homeFolder, "extensions");
+        FileUtils.forceMkdir(configFolder);
+        FileUtils.forceMkdir(dataFolder);
+        FileUtils.forceMkdir(logFolder);
+        FileUtils.forceMkdir(extensionsFolder);
+
+        final int port = freePort();
+        FileUtils.writeStringToFile(new File(configFolder, "config.xml"), String.format(CONFIG, port), StandardCharsets.UTF_8);
+
+        System.setProperty(SystemProperties.HIVEMQ_HOME, homeFolder.getAbsolutePath());
+        System.setProperty(SystemProperties.CONFIG_FOLDER, configFolder.getAbsolutePath());
+        System.setProperty(SystemProperties.DATA_FOLDER, dataFolder.getAbsolutePath());
+        System.setProperty(SystemProperties.LOG_FOLDER, logFolder.getAbsolutePath());
+        System.setProperty(SystemProperties.EXTENSIONS_FOLDER, extensionsFolder.getAbsolutePath());
+
+        //blocks until all listeners are started
+        HiveMQServer.main(new String[0]);
+
+        return new EmbeddedBroker(port);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * End-to-end load test of HiveMQ. Starts the broker in this JVM and runs the selected {@link Scenario}s one after
+ * the other with in-JVM MQTT clients over the loopback interface.
+ * <p>
+ * For every scenario the throughput and the p50/p99/p999 latencies are printed, the full latency distributions are
+ * written as HdrHistogram <code>.hgrm</code> files to the report directory.
+ * <p>
+ * Options (all optional):
+ * <pre>
+ * --scenario     all or a comma separated list of fan-in, fan-out, shared-subscription, retained-flood,
+ *                reconnect-storm, qos-mix (default all)
+ * --mqtt         3 or 5 (default 5)
+ * --clients      number of clients per scenario (default 100)
+ * --messages     messages per publisher (default 1000)
+ * --qos          0, 1 or 2 (default 1)
+ * --payload      payload size in bytes, at least 8 (default 64)
+ * --rate         messages per second per publisher, 0 publishes as fast as possible (default 0)
+ * --max-inflight unacknowledged messages per publisher (default 1000)
+ * --timeout      seconds to wait for a scenario step (default 300)
+ * --dir          working directory of the broker, deleted at start (default build/loadtest)
+ * --report       directory of the histogram files (default build/reports/loadtest)
+ * </pre>
+ */
+public class LoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    static final @NotNull String HOST = "127.0.0.1";
+
+    public static void main(final @NotNull String[] args) throws Exception {
+        final LoadTestOptions options = LoadTestOptions.parse(args);
+        FileUtils.forceMkdir(options.reportDirectory);
+
+        final EmbeddedBroker broker = EmbeddedBroker.start(new File(options.workingDirectory, "broker"));
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        int status = 1;
+        try {
+            for (final Scenario scenario : options.scenarios) {
+                final LoadTestResult result = new LoadTestResult(scenario.name());
+                try (final ScenarioContext context = new ScenarioContext(options, result, broker.getPort(), executor)) {
+                    scenario.run(context);
+                }
+                result.report(System.out, options.reportDirectory);
+            }
+            status = 0;
+        } catch (final Exception e) {
+            log.error("Load test failed", e);
+        } finally {
+            executor.shutdownNow();
+            //the broker threads keep the JVM alive, the shutdown hooks of HiveMQ stop the broker
+            System.exit(status);
+        }
+    }
+}
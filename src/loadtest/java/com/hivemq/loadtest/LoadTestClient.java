@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A minimal MQTT client for the load test, implemented for MQTT 3 and MQTT 5 with the HiveMQ MQTT Client.
+ * <p>
+ * All messages that the client receives are passed to the message callback of the client, also messages that are
+ * delivered for a persistent session before the client subscribed again.
+ */
+interface LoadTestClient {
+
+    static @NotNull LoadTestClient create(final @NotNull LoadTestOptions.MqttVersion mqttVersion,
+                                          final int port,
+                                          final @NotNull String clientId,
+                                          final @NotNull Consumer<byte[]> onMessage) {
+        if (mqttVersion == LoadTestOptions.MqttVersion.MQTT_3) {
+            return new Mqtt3LoadTestClient(port, clientId, onMessage);
+        }
+        return new Mqtt5LoadTestClient(port, clientId, onMessage);
+    }
+
+    /**
+     * @param cleanStart <code>false</code> to connect with a persistent session
+     */
+    @NotNull CompletableFuture<?> connect(boolean cleanStart);
+
+    @NotNull CompletableFuture<?> subscribe(@NotNull String topicFilter, int qos);
+
+    @NotNull CompletableFuture<?> publish(@NotNull String topic, int qos, boolean retain, @NotNull byte[] payload);
+
+    @NotNull CompletableFuture<?> disconnect();
+}
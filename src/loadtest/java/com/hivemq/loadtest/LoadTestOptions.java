@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Command line options of the {@link LoadTest}.
+ */
+class LoadTestOptions {
+
+    @NotNull Set<Scenario> scenarios = EnumSet.allOf(Scenario.class);
+    @NotNull MqttVersion mqttVersion = MqttVersion.MQTT_5;
+    int clients = 100;
+    int messages = 1_000;
+    int qos = 1;
+    int payloadSize = 64;
+    int rate = 0;
+    int maxInflight = 1_000;
+    long timeoutSeconds = 300;
+    @NotNull File workingDirectory = new File("build/loadtest");
+    @NotNull File reportDirectory = new File("build/reports/loadtest");
+
+    enum MqttVersion {
+        MQTT_3, MQTT_5
+    }
+
+    static @NotNull LoadTestOptions parse(final @NotNull String[] args) {
+        final LoadTestOptions options = new LoadTestOptions();
+        for (int i = 0; i < args.length; i++) {
+            final String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for option " + name);
+            }
+            final String value = args[++i];
+            switch (name) {
+                case "--scenario":
+                    options.scenarios = parseScenarios(value);
+                    break;
+                case "--mqtt":
+                    options.mqttVersion = "3".equals(value) ? MqttVersion.MQTT_3 : MqttVersion.MQTT_5;
+                    break;
+                case "--clients":
+                    options.clients = positive(name, value);
+                    break;
+                case "--messages":
+                    options.messages = positive(name, value);
+                    break;
+                case "--qos":
+                    options.qos = Integer.parseInt(value);
+                    if (options.qos < 0 || options.qos > 2) {
+                        throw new IllegalArgumentException("QoS must be 0, 1 or 2");
+                    }
+                    break;
+                case "--payload":
+                    options.payloadSize = Math.max(Payloads.MIN_SIZE, positive(name, value));
+                    break;
+                case "--rate":
+                    options.rate = Integer.parseInt(value);
+                    break;
+                case "--max-inflight":
+                    options.maxInflight = positive(name, value);
+                    break;
+                case "--timeout":
+                    options.timeoutSeconds = positive(name, value);
+                    break;
+                case "--dir":
+                    options.workingDirectory = new File(value);
+                    break;
+                case "--report":
+                    options.reportDirectory = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        return options;
+    }
+
+    private static @NotNull Set<Scenario> parseScenarios(final @NotNull String value) {
+        if ("all".equalsIgnoreCase(value)) {
+            return EnumSet.allOf(Scenario.class);
+        }
+        final List<Scenario> scenarios = new ArrayList<>();
+        for (final String scenario : value.split(",")) {
+            scenarios.add(Scenario.valueOf(scenario.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+        }
+        return EnumSet.copyOf(scenarios);
+    }
+
+    private static int positive(final @NotNull String name, final @NotNull String value) {
+        final int parsed = Integer.parseInt(value);
+        if (parsed <= 0) {
+            throw new IllegalArgumentException("Value of option " + name + " must be positive");
+        }
+        return parsed;
+    }
+}
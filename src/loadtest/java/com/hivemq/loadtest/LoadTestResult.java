@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one scenario run. All methods may be called concurrently by the client threads.
+ */
+class LoadTestResult {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final double NANOS_PER_MICROSECOND = 1_000.0;
+
+    private final @NotNull String scenario;
+    private final @NotNull LongAdder published = new LongAdder();
+    private final @NotNull LongAdder received = new LongAdder();
+    private final @NotNull Map<String, Recorder> recorders = new LinkedHashMap<>();
+
+    private long expected;
+    private long startNanos;
+    private long endNanos;
+
+    LoadTestResult(final @NotNull String scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Creates a latency histogram, must be called before the scenario starts.
+     */
+    @NotNull Recorder histogram(final @NotNull String name) {
+        return recorders.computeIfAbsent(name, key -> new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+    }
+
+    void start(final long expected) {
+        this.expected = expected;
+        startNanos = System.nanoTime();
+    }
+
+    void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    void published() {
+        published.increment();
+    }
+
+    void received() {
+        received.increment();
+    }
+
+    /**
+     * Counts a received message and records its latency from the send time in the payload.
+     */
+    void received(final @NotNull Recorder histogram, final @NotNull byte[] payload) {
+        received.increment();
+        record(histogram, Payloads.sendTimeNanos(payload));
+    }
+
+    void record(final @NotNull Recorder histogram, final long startNanos) {
+        histogram.recordValue(Math.min(Math.max(System.nanoTime() - startNanos, 0), HIGHEST_TRACKABLE_NANOS));
+    }
+
+    long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Prints a summary to the given stream and writes every histogram to a <code>.hgrm</code> file in the report
+     * directory, which can be plotted with the HdrHistogram plotter.
+     */
+    void report(final @NotNull PrintStream out, final @NotNull File reportDirectory) throws IOException {
+        final double seconds = (endNanos - startNanos) / 1_000_000_000.0;
+        out.println();
+        out.println("=== " + scenario + " ===");
+        out.println(String.format(Locale.ROOT, "duration: %.3f s, published: %d, received: %d of %d",
+                seconds, published.sum(), received.sum(), expected));
+        out.println(String.format(Locale.ROOT, "throughput: %.1f msg/s published, %.1f msg/s received",
+                published.sum() / seconds, received.sum() / seconds));
+
+        for (final Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            final Histogram histogram = entry.getValue().getIntervalHistogram();
+            out.println(String.format(Locale.ROOT,
+                    "%s latency (us): count=%d p50=%.1f p99=%.1f p999=%.1f max=%.1f",
+                    entry.getKey(),
+                    histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50) / NANOS_PER_MICROSECOND,
+                    histogram.getValueAtPercentile(99) / NANOS_PER_MICROSECOND,
+                    histogram.getValueAtPercentile(99.9) / NANOS_PER_MICROSECOND,
+                    histogram.getMaxValue() / NANOS_PER_MICROSECOND));
+
+            final File file = new File(reportDirectory, scenario.toLowerCase(Locale.ROOT) + "-" + entry.getKey() + ".hgrm");
+            try (final PrintStream histogramOut = new PrintStream(file, StandardCharsets.UTF_8)) {
+                histogram.outputPercentileDistribution(histogramOut, NANOS_PER_MICROSECOND);
+            }
+        }
+    }
+}
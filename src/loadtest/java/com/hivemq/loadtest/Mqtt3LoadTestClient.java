@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.client.mqtt.MqttClient;
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+class Mqtt3LoadTestClient implements LoadTestClient {
+
+    private final @NotNull Mqtt3AsyncClient client;
+
+    Mqtt3LoadTestClient(final int port, final @NotNull String clientId, final @NotNull Consumer<byte[]> onMessage) {
+        client = MqttClient.builder()
+                .useMqttVersion3()
+                .identifier(clientId)
+                .serverHost(LoadTest.HOST)
+                .serverPort(port)
+                .buildAsync();
+        client.publishes(MqttGlobalPublishFilter.ALL, publish -> onMessage.accept(publish.getPayloadAsBytes()));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<?> connect(final boolean cleanStart) {
+        return client.connectWith().cleanSession(cleanStart).send();
+    }
+
+    @Override
+    public @NotNull CompletableFuture<?> subscribe(final @NotNull String topicFilter, final int qos) {
+        return client.subscribeWith().topicFilter(topicFilter).qos(MqttQos.fromCode(qos)).send();
+    }
+
+    @Override
+    public @NotNull CompletableFuture<?> publish(final @NotNull String topic, final int qos, final boolean retain,
+                                                 final @NotNull byte[] payload) {
+        return client.publishWith().topic(topic).qos(MqttQos.fromCode(qos)).retain(retain).payload(payload).send();
+    }
+
+    @Override
+    public @NotNull CompletableFuture<?> disconnect() {
+        return client.disconnect();
+    }
+}
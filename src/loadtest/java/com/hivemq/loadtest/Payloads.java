@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * The payloads of the load test carry the {@link System#nanoTime()} at which they were meant to be sent in their first
+ * eight bytes. Publishers and subscribers run in the same JVM, so the end-to-end latency is the difference to the
+ * receive time.
+ */
+final class Payloads {
+
+    static final int MIN_SIZE = 8;
+
+    private Payloads() {
+    }
+
+    static @NotNull byte[] create(final int size, final long sendTimeNanos) {
+        final byte[] payload = new byte[Math.max(size, MIN_SIZE)];
+        for (int i = 0; i < MIN_SIZE; i++) {
+            payload[i] = (byte) (sendTimeNanos >>> (56 - 8 * i));
+        }
+        return payload;
+    }
+
+    static long sendTimeNanos(final @NotNull byte[] payload) {
+        long sendTime = 0;
+        for (int i = 0; i < MIN_SIZE; i++) {
+            sendTime = (sendTime << 8) | (payload[i] & 0xFF);
+        }
+        return sendTime;
+    }
+}
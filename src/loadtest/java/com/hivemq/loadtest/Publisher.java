@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Publishes a number of messages with one client, either as fast as the broker acknowledges them or at a fixed rate.
+ * Every publisher blocks a thread of the given executor while it publishes.
+ * <p>
+ * At most <code>maxInflight</code> messages are unacknowledged at a time. With a fixed rate every payload carries
+ * its scheduled send time instead of the actual one, so a stalled broker shows up in the latencies instead of
+ * silently lowering the rate (coordinated omission).
+ */
+class Publisher {
+
+    private final @NotNull LoadTestClient client;
+    private final @NotNull LoadTestResult result;
+    private final @NotNull LoadTestOptions options;
+    private final @NotNull Executor executor;
+    private final @NotNull Semaphore inflight;
+
+    Publisher(final @NotNull LoadTestClient client, final @NotNull LoadTestResult result,
+              final @NotNull LoadTestOptions options, final @NotNull Executor executor) {
+        this.client = client;
+        this.result = result;
+        this.options = options;
+        this.executor = executor;
+        this.inflight = new Semaphore(options.maxInflight);
+    }
+
+    /**
+     * @param topics the topic of the n-th message
+     * @return a future that completes when all messages are acknowledged
+     */
+    @NotNull CompletableFuture<Void> publish(final int count, final int qos, final boolean retain,
+                                             final @NotNull IntFunction<String> topics) {
+        return CompletableFuture.runAsync(() -> {
+            final long intervalNanos = options.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / options.rate : 0;
+            final long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                long sendTime = System.nanoTime();
+                if (intervalNanos > 0) {
+                    final long scheduled = start + i * intervalNanos;
+                    if (scheduled > sendTime) {
+                        LockSupport.parkNanos(scheduled - sendTime);
+                    }
+                    sendTime = scheduled;
+                }
+                inflight.acquireUninterruptibly();
+                client.publish(topics.apply(i), qos, retain, Payloads.create(options.payloadSize, sendTime))
+                        .whenComplete((publishResult, throwable) -> {
+                            inflight.release();
+                            if (throwable == null) {
+                                result.published();
+                            }
+                        });
+            }
+            inflight.acquireUninterruptibly(options.maxInflight);
+            inflight.release(options.maxInflight);
+        }, executor);
+    }
+}
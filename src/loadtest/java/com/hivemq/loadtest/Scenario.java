@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The load test scenarios. Every scenario uses its own client identifiers and topics, so the scenarios can run one
+ * after the other against the same broker.
+ */
+enum Scenario {
+
+    /**
+     * Many publishers, one subscriber for all their topics.
+     */
+    FAN_IN {
+        @Override
+        void run(final @NotNull ScenarioContext context) throws Exception {
+            final LoadTestOptions options = context.options;
+            final LoadTestResult result = context.result;
+            final Recorder latency = result.histogram("end-to-end");
+
+            final LoadTestClient subscriber = context.client("fan-in-subscriber", payload -> result.received(latency, payload));
+            context.await(subscriber.connect(true));
+            context.await(subscriber.subscribe("loadtest/fan-in/#", options.qos));
+
+            final List<LoadTestClient> publishers = connectPublishers(context, "fan-in-publisher-", options.clients);
+
+            result.start((long) options.clients * options.messages);
+            final List<CompletableFuture<Void>> publishes = new ArrayList<>();
+            for (int i = 0; i < publishers.size(); i++) {
+                final String topic = "loadtest/fan-in/" + i;
+                publishes.add(context.publish(publishers.get(i), options.messages, options.qos, false, n -> topic));
+            }
+            context.await(publishes);
+            context.awaitReceived((long) options.clients * options.messages);
+            result.stop();
+        }
+    },
+
+    /**
+     * One publisher, many subscribers of the same topic.
+     */
+    FAN_OUT {
+        @Override
+        void run(final @NotNull ScenarioContext context) throws Exception {
+            final LoadTestOptions options = context.options;
+            final LoadTestResult result = context.result;
+            final Recorder latency = result.histogram("end-to-end");
+
+            final List<CompletableFuture<?>> subscriptions = new ArrayList<>();
+            for (int i = 0; i < options.clients; i++) {
+                final LoadTestClient subscriber = context.client("fan-out-subscriber-" + i, payload -> result.received(latency, payload));
+                subscriptions.add(subscriber.connect(true).thenCompose(connAck -> subscriber.subscribe("loadtest/fan-out", options.qos)));
+            }
+            context.await(subscriptions);
+
+            final LoadTestClient publisher = context.publisherClient("fan-out-publisher");
+            context.await(publisher.connect(true));
+
+            result.start((long) options.clients * options.messages);
+            context.await(context.publish(publisher, options.messages, options.qos, false, n -> "loadtest/fan-out"));
+            context.awaitReceived((long) options.clients * options.messages);
+            result.stop();
+        }
+    },
+
+    /**
+     * Many subscribers in one shared subscription group, one publisher for every ten subscribers.
+     */
+    SHARED_SUBSCRIPTION {
+        @Override
+        void run(final @NotNull ScenarioContext context) throws Exception {
+            final LoadTestOptions options = context.options;
+            final LoadTestResult result = context.result;
+            final Recorder latency = result.histogram("end-to-end");
+
+            final List<CompletableFuture<?>> subscriptions = new ArrayList<>();
+            for (int i = 0; i < options.clients; i++) {
+                final LoadTestClient subscriber = context.client("shared-subscriber-" + i, payload -> result.received(latency, payload));
+                subscriptions.add(subscriber.connect(true).thenCompose(connAck -> subscriber.subscribe("$share/loadtest/loadtest/shared/#", options.qos)));
+            }
+            context.await(subscriptions);
+
+            final int publisherCount = Math.max(1, options.clients / 10);
+            final List<LoadTestClient> publishers = connectPublishers(context, "shared-publisher-", publisherCount);
+
+            result.start((long) publisherCount * options.messages);
+            final List<CompletableFuture<Void>> publishes = new ArrayList<>();
+            for (int i = 0; i < publishers.size(); i++) {
+                final String topic = "loadtest/shared/" + i;
+                publishes.add(context.publish(publishers.get(i), options.messages, options.qos, false, n -> topic));
+            }
+            context.await(publishes);
+            context.awaitReceived((long) publisherCount * options.messages);
+            result.stop();
+        }
+    },
+
+    /**
+     * Every publisher stores retained messages on its own topics, then a single subscriber receives all of them.
+     * The latency is measured from the subscribe, not from the publish.
+     */
+    RETAINED_FLOOD {
+        @Override
+        void run(final @NotNull ScenarioContext context) throws Exception {
+            final LoadTestOptions options = context.options;
+            final LoadTestResult result = context.result;
+            final Recorder latency = result.histogram("delivery-after-subscribe");
+
+            final List<LoadTestClient> publishers = connectPublishers(context, "retained-publisher-", options.clients);
+
+            result.start((long) options.clients * options.messages);
+            final List<CompletableFuture<Void>> publishes = new ArrayList<>();
+            for (int i = 0; i < publishers.size(); i++) {
+                final String topic = "loadtest/retained/" + i + "/";
+                publishes.add(context.publish(publishers.get(i), options.messages, options.qos, true, n -> topic + n));
+            }
+            context.await(publishes);
+
+            final AtomicLong subscribeStart = new AtomicLong();
+            final LoadTestClient subscriber = context.client("retained-subscriber", payload -> {
+                result.received();
+                result.record(latency, subscribeStart.get());
+            });
+            context.await(subscriber.connect(true));
+            subscribeStart.set(System.nanoTime());
+            context.await(subscriber.subscribe("loadtest/retained/#", options.qos));
+            context.awaitReceived((long) options.clients * options.messages);
+            result.stop();
+        }
+    },
+
+    /**
+     * Many clients with persistent sessions miss messages while they are offline and then reconnect at the same
+     * time. Uses at least QoS 1, as QoS 0 messages are not queued for offline clients.
+     */
+    RECONNECT_STORM {
+        @Override
+        void run(final @NotNull ScenarioContext context) throws Exception {
+            final LoadTestOptions options = context.options;
+            final LoadTestResult result = context.result;
+            final int qos = Math.max(1, options.qos);
+            final Recorder connectLatency = result.histogram("connack");
+            final Recorder deliveryLatency = result.histogram("delivery-after-reconnect");
+
+            final AtomicLong reconnectStart = new AtomicLong();
+            final List<LoadTestClient> subscribers = new ArrayList<>();
+            final List<CompletableFuture<?>> subscriptions = new ArrayList<>();
+            for (int i = 0; i < options.clients; i++) {
+                final LoadTestClient subscriber = context.client("reconnect-subscriber-" + i, payload -> {
+                    result.received();
+                    result.record(deliveryLatency, reconnectStart.get());
+                });
+                final String topic = "loadtest/reconnect/" + i;
+                subscribers.add(subscriber);
+                subscriptions.add(subscriber.connect(false)
+                        .thenCompose(connAck -> subscriber.subscribe(topic, qos))
+                        .thenCompose(subAck -> subscriber.disconnect()));
+            }
+            context.await(subscriptions);
+
+            final LoadTestClient publisher = context.publisherClient("reconnect-publisher");
+            context.await(publisher.connect(true));
+            context.await(context.publish(publisher, options.clients * options.messages, qos, false,
+                    n -> "loadtest/reconnect/" + (n % options.clients)));
+
+            result.start((long) options.clients * options.messages);
+            reconnectStart.set(System.nanoTime());
+            final List<CompletableFuture<?>> connects = new ArrayList<>();
+            for (final LoadTestClient subscriber : subscribers) {
+                final long connectStart = System.nanoTime();
+                connects.add(subscriber.connect(false).thenRun(() -> result.record(connectLatency, connectStart)));
+            }
+            context.await(connects);
+            context.awaitReceived((long) options.clients * options.messages);
+            result.stop();
+        }
+    },
+
+    /**
+     * Publishers and subscribers spread evenly over QoS 0, 1 and 2, with one latency histogram per QoS level.
+     */
+    QOS_MIX {
+        @Override
+        void run(final @NotNull ScenarioContext context) throws Exception {
+            final LoadTestOptions options = context.options;
+            final LoadTestResult result = context.result;
+
+            for (int qos = 0; qos <= 2; qos++) {
+                final Recorder latency = result.histogram("qos-" + qos);
+                final LoadTestClient subscriber = context.client("qos-mix-subscriber-" + qos, payload -> result.received(latency, payload));
+                context.await(subscriber.connect(true));
+                context.await(subscriber.subscribe("loadtest/qos/" + qos + "/#", qos));
+            }
+
+            final List<LoadTestClient> publishers = connectPublishers(context, "qos-mix-publisher-", options.clients);
+
+            result.start((long) options.clients * options.messages);
+            final List<CompletableFuture<Void>> publishes = new ArrayList<>();
+            for (int i = 0; i < publishers.size(); i++) {
+                final int qos = i % 3;
+                final String topic = "loadtest/qos/" + qos + "/" + i;
+                publishes.add(context.publish(publishers.get(i), options.messages, qos, false, n -> topic));
+            }
+            context.await(publishes);
+            context.awaitReceived((long) options.clients * options.messages);
+            result.stop();
+        }
+    };
+
+    abstract void run(@NotNull ScenarioContext context) throws Exception;
+
+    private static @NotNull List<LoadTestClient> connectPublishers(final @NotNull ScenarioContext context,
+                                                                   final @NotNull String prefix, final int count) throws Exception {
+        final List<LoadTestClient> publishers = new ArrayList<>();
+        final List<CompletableFuture<?>> connects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final LoadTestClient publisher = context.publisherClient(prefix + i);
+            publishers.add(publisher);
+            connects.add(publisher.connect(true));
+        }
+        context.await(connects);
+        return publishers;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.loadtest;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Everything a {@link Scenario} needs to run: the options, the result to record into and the clients it created,
+ * which are disconnected when the scenario is closed.
+ */
+class ScenarioContext implements AutoCloseable {
+
+    final @NotNull LoadTestOptions options;
+    final @NotNull LoadTestResult result;
+
+    private final int port;
+    private final @NotNull Executor executor;
+    private final @NotNull List<LoadTestClient> clients = new ArrayList<>();
+
+    ScenarioContext(final @NotNull LoadTestOptions options, final @NotNull LoadTestResult result, final int port,
+                    final @NotNull Executor executor) {
+        this.options = options;
+        this.result = result;
+        this.port = port;
+        this.executor = executor;
+    }
+
+    @NotNull LoadTestClient client(final @NotNull String clientId, final @NotNull Consumer<byte[]> onMessage) {
+        final LoadTestClient client = LoadTestClient.create(options.mqttVersion, port, clientId, onMessage);
+        clients.add(client);
+        return client;
+    }
+
+    @NotNull LoadTestClient publisherClient(final @NotNull String clientId) {
+        return client(clientId, payload -> {
+        });
+    }
+
+    @NotNull CompletableFuture<Void> publish(final @NotNull LoadTestClient client, final int count, final int qos,
+                                             final boolean retain, final @NotNull IntFunction<String> topics) {
+        return new Publisher(client, result, options, executor).publish(count, qos, retain, topics);
+    }
+
+    void await(final @NotNull List<? extends CompletableFuture<?>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(options.timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    void await(final @NotNull CompletableFuture<?> future) throws Exception {
+        future.get(options.timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits until the expected number of messages is received. QoS 0 messages may be dropped by the broker, so the
+     * result is reported also if the timeout elapses.
+     */
+    void awaitReceived(final long expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.timeoutSeconds);
+        while (result.getReceived() < expected && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        final List<CompletableFuture<?>> disconnects = new ArrayList<>();
+        for (final LoadTestClient client : clients) {
+            disconnects.add(client.disconnect().exceptionally(throwable -> null));
+        }
+        await(disconnects);
+    }
+}
@@ -27,6 +27,7 @@ import com.hivemq.extension.sdk.api.annotations.Immutable;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.bootstrap.netty.ChannelInitializerFactory;
 import com.hivemq.bootstrap.netty.NettyConfiguration;
+import com.hivemq.bootstrap.netty.NettyTransport;
 import com.hivemq.common.shutdown.ShutdownHooks;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.entity.*;
@@ -36,6 +37,10 @@ import com.hivemq.util.Validators;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.PromiseCombiner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -110,7 +115,7 @@ public class HiveMQNettyBootstrap {
 
 
             log.info("Starting TCP listener on address {} and port {}", bindAddress, port);
-            final ChannelFuture bind = b.bind(createInetSocketAddress(bindAddress, port));
+            final ChannelFuture bind = bind(b, createInetSocketAddress(bindAddress, port));
             futures.add(new BindInformation(tcpListener, bind));
         }
         return futures.build();
@@ -127,7 +132,7 @@ public class HiveMQNettyBootstrap {
             final String bindAddress = tlsTcpListener.getBindAddress();
             final Integer port = tlsTcpListener.getPort();
             log.info("Starting TLS TCP listener on address {} and port {}", bindAddress, port);
-            final ChannelFuture bind = b.bind(bindAddress, port);
+            final ChannelFuture bind = bind(b, new InetSocketAddress(bindAddress, port));
             futures.add(new BindInformation(tlsTcpListener, bind));
         }
         return futures.build();
@@ -143,7 +148,7 @@ public class HiveMQNettyBootstrap {
             final String bindAddress = websocketListener.getBindAddress();
             final Integer port = websocketListener.getPort();
             log.info("Starting Websocket listener on address {} and port {}", bindAddress, port);
-            final ChannelFuture bind = b.bind(websocketListener.getBindAddress(), websocketListener.getPort());
+            final ChannelFuture bind = bind(b, new InetSocketAddress(bindAddress, port));
             futures.add(new BindInformation(websocketListener, bind));
         }
         return futures.build();
@@ -159,12 +164,45 @@ public class HiveMQNettyBootstrap {
             final String bindAddress = tlsWebsocketListener.getBindAddress();
             final Integer port = tlsWebsocketListener.getPort();
             log.info("Starting Websocket TLS listener on address {} and port {}", bindAddress, port);
-            final ChannelFuture bind = b.bind(tlsWebsocketListener.getBindAddress(), tlsWebsocketListener.getPort());
+            final ChannelFuture bind = bind(b, new InetSocketAddress(bindAddress, port));
             futures.add(new BindInformation(tlsWebsocketListener, bind));
         }
         return futures.build();
     }
 
+    /**
+     * Binds the listener address. With the epoll transport and more than one acceptor thread the address is bound once
+     * per acceptor thread with SO_REUSEPORT, so the kernel distributes the incoming connections over the acceptors.
+     *
+     * @param b       the server bootstrap of the listener
+     * @param address the address to bind
+     * @return a future that completes when all binds are finished, it fails if any of the binds fails
+     */
+    @NotNull
+    private ChannelFuture bind(final @NotNull ServerBootstrap b, final @NotNull InetSocketAddress address) {
+        final ChannelFuture bind = b.bind(address);
+        final int acceptorThreads = acceptorThreads();
+        if (acceptorThreads <= 1) {
+            return bind;
+        }
+
+        final ChannelPromise aggregatedBind = bind.channel().newPromise();
+        final PromiseCombiner promiseCombiner = new PromiseCombiner(ImmediateEventExecutor.INSTANCE);
+        promiseCombiner.add(bind);
+        for (int i = 1; i < acceptorThreads; i++) {
+            promiseCombiner.add(b.bind(address));
+        }
+        promiseCombiner.finish(aggregatedBind);
+        return aggregatedBind;
+    }
+
+    private int acceptorThreads() {
+        if (nettyConfiguration.getTransport() != NettyTransport.EPOLL) {
+            return 1;
+        }
+        return Math.max(1, InternalConfigurations.EPOLL_ACCEPTOR_THREADS.get());
+    }
+
     @NotNull
     private InetSocketAddress createInetSocketAddress(final @NotNull String ip, final int port) {
         InetAddress inetAddress;
@@ -230,6 +268,9 @@ public class HiveMQNettyBootstrap {
                 .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
 
         setAdvancedOptions(b);
+        if (nettyConfiguration.getTransport() == NettyTransport.EPOLL) {
+            setEpollOptions(b);
+        }
         return b;
     }
 
@@ -260,6 +301,25 @@ public class HiveMQNettyBootstrap {
 
     }
 
+    /**
+     * Sets the options that are only available for the native epoll transport
+     *
+     * @param b the server bootstrap
+     */
+    private void setEpollOptions(final @NotNull ServerBootstrap b) {
+
+        final EpollMode epollMode = InternalConfigurations.EPOLL_EDGE_TRIGGERED.get() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+        b.option(EpollChannelOption.EPOLL_MODE, epollMode);
+        b.childOption(EpollChannelOption.EPOLL_MODE, epollMode);
+
+        if (acceptorThreads() > 1) {
+            b.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (InternalConfigurations.EPOLL_TCP_QUICKACK.get()) {
+            b.childOption(EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
+
     @Immutable
     private static class UpdateGivenFutureListener implements ChannelFutureListener {
         private final @NotNull BindInformation bindInformation;
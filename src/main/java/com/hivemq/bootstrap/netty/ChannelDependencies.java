@@ -32,6 +32,7 @@ import com.hivemq.mqtt.handler.auth.AuthHandler;
 import com.hivemq.mqtt.handler.auth.AuthInProgressMessageHandler;
 import com.hivemq.mqtt.handler.connect.ConnectHandler;
 import com.hivemq.mqtt.handler.connect.ConnectPersistenceUpdateHandler;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutWheels;
 import com.hivemq.mqtt.handler.connect.StopReadingAfterConnectHandler;
 import com.hivemq.mqtt.handler.disconnect.DisconnectHandler;
 import com.hivemq.mqtt.handler.ping.PingRequestHandler;
@@ -188,6 +189,9 @@ public class ChannelDependencies {
     @NotNull
     private final PingInterceptorHandler pingInterceptorHandler;
 
+    @NotNull
+    private final IdleTimeoutWheels idleTimeoutWheels;
+
     @Inject
     public ChannelDependencies(
             @NotNull final Provider<MetricsInitializer> statisticsInitializer,
@@ -233,7 +237,8 @@ public class ChannelDependencies {
             @NotNull final SubackOutboundInterceptorHandler subAckOutboundInterceptorHandler,
             @NotNull final UnsubackOutboundInterceptorHandler unsubackOutboundInterceptorHandler,
             @NotNull final UnsubscribeInboundInterceptorHandler unsubscribeInboundInterceptorHandler,
-            @NotNull final PingInterceptorHandler pingInterceptorHandler) {
+            @NotNull final PingInterceptorHandler pingInterceptorHandler,
+            @NotNull final IdleTimeoutWheels idleTimeoutWheels) {
 
         this.statisticsInitializer = statisticsInitializer;
         this.connectHandlerProvider = connectHandlerProvider;
@@ -279,6 +284,7 @@ public class ChannelDependencies {
         this.unsubackOutboundInterceptorHandler = unsubackOutboundInterceptorHandler;
         this.unsubscribeInboundInterceptorHandler = unsubscribeInboundInterceptorHandler;
         this.pingInterceptorHandler = pingInterceptorHandler;
+        this.idleTimeoutWheels = idleTimeoutWheels;
     }
 
     @NotNull
@@ -500,4 +506,9 @@ public class ChannelDependencies {
     public PingInterceptorHandler getPingInterceptorHandler() {
         return pingInterceptorHandler;
     }
+
+    @NotNull
+    public IdleTimeoutWheels getIdleTimeoutWheels() {
+        return idleTimeoutWheels;
+    }
 }
@@ -93,6 +93,7 @@ public class ChannelHandlerNames {
     public static final String DROP_OUTGOING_PUBLISHES_HANDLER = "drop_outgoing_publishes_handler";
     public static final String CHANNEL_INACTIVE_HANDLER = "channel_inactive_handler";
     public static final String MESSAGE_EXPIRY_HANDLER = "message_expiry_handler";
+    public static final String FLUSH_CONSOLIDATION_HANDLER = "flush_consolidation_handler";
 
     /* *************
      *     Both    *
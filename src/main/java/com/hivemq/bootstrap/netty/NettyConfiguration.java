@@ -39,21 +39,34 @@ public class NettyConfiguration {
 
     private final EventLoopGroup childEventLoopGroup;
 
+    private final NettyTransport transport;
+
 
     public NettyConfiguration(final Class<? extends ServerSocketChannel> serverSocketChannelClass,
                               final Class<? extends SocketChannel> clientSocketChannelClass,
                               final EventLoopGroup parentEventLoopGroup,
                               final EventLoopGroup childEventLoopGroup) {
 
+        this(serverSocketChannelClass, clientSocketChannelClass, parentEventLoopGroup, childEventLoopGroup, NettyTransport.NIO);
+    }
+
+    public NettyConfiguration(final Class<? extends ServerSocketChannel> serverSocketChannelClass,
+                              final Class<? extends SocketChannel> clientSocketChannelClass,
+                              final EventLoopGroup parentEventLoopGroup,
+                              final EventLoopGroup childEventLoopGroup,
+                              final NettyTransport transport) {
+
         checkNotNull(serverSocketChannelClass, "Server Socket Channel Class must not be null");
         checkNotNull(clientSocketChannelClass, "Client Socket Channel Class must not be null");
         checkNotNull(parentEventLoopGroup, "Parent Event Loop Group must not be null");
         checkNotNull(childEventLoopGroup, "Child Event Loop Group must not be null");
+        checkNotNull(transport, "Transport must not be null");
 
         this.serverSocketChannelClass = serverSocketChannelClass;
         this.clientSocketChannelClass = clientSocketChannelClass;
         this.parentEventLoopGroup = parentEventLoopGroup;
         this.childEventLoopGroup = childEventLoopGroup;
+        this.transport = transport;
     }
 
     public Class<? extends ServerSocketChannel> getServerSocketChannelClass() {
@@ -71,4 +84,8 @@ public class NettyConfiguration {
     public Class<? extends SocketChannel> getClientSocketChannelClass() {
         return clientSocketChannelClass;
     }
+
+    public NettyTransport getTransport() {
+        return transport;
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.bootstrap.netty;
+
+/**
+ * The transport that Netty uses for the listeners and client connections.
+ */
+public enum NettyTransport {
+
+    /**
+     * The Java NIO transport, available on every platform.
+     */
+    NIO,
+
+    /**
+     * The native epoll transport, only available on Linux.
+     */
+    EPOLL
+}
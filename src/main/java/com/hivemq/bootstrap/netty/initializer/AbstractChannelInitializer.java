@@ -23,6 +23,7 @@ import com.hivemq.codec.decoder.MQTTMessageDecoder;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.logging.EventLog;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutHandler;
 import com.hivemq.mqtt.handler.connect.MessageBarrier;
 import com.hivemq.mqtt.handler.connect.NoConnectIdleHandler;
 import com.hivemq.mqtt.handler.connect.RemoveConnectIdleHandler;
@@ -33,7 +34,7 @@ import com.hivemq.util.ChannelUtils;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +42,8 @@ import java.util.concurrent.TimeUnit;
 
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.*;
 import static com.hivemq.configuration.service.InternalConfigurations.DROP_MESSAGES_QOS_0;
+import static com.hivemq.configuration.service.InternalConfigurations.FLUSH_CONSOLIDATION_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES;
 
 /**
  * @author Dominik Obermaier
@@ -79,6 +82,12 @@ public abstract class AbstractChannelInitializer extends ChannelInitializer<Chan
 
         ch.pipeline().addLast(GLOBAL_THROTTLING_HANDLER, channelDependencies.getGlobalTrafficShapingHandler());
 
+        //Must be before all handlers that write to the channel
+        if (FLUSH_CONSOLIDATION_ENABLED.get()) {
+            ch.pipeline().addLast(FLUSH_CONSOLIDATION_HANDLER,
+                    new FlushConsolidationHandler(FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES.get(), true));
+        }
+
         ch.pipeline().addLast(MQTT_MESSAGE_DECODER, new MQTTMessageDecoder(channelDependencies));
 
         ch.pipeline().addLast(MQTT_MESSAGE_ENCODER, channelDependencies.getMqttMessageEncoder());
@@ -157,9 +166,10 @@ public abstract class AbstractChannelInitializer extends ChannelInitializer<Chan
         final long timeoutMillis = restrictionsConfig.noConnectIdleTimeout();
 
         if (timeoutMillis > 0) {
-            final IdleStateHandler idleStateHandler = new IdleStateHandler(timeoutMillis, 0, 0, TimeUnit.MILLISECONDS);
+            final IdleTimeoutHandler idleTimeoutHandler =
+                    new IdleTimeoutHandler(channelDependencies.getIdleTimeoutWheels(), timeoutMillis, TimeUnit.MILLISECONDS);
 
-            ch.pipeline().addLast(NEW_CONNECTION_IDLE_HANDLER, idleStateHandler);
+            ch.pipeline().addLast(NEW_CONNECTION_IDLE_HANDLER, idleTimeoutHandler);
             ch.pipeline().addLast(NO_CONNECT_IDLE_EVENT_HANDLER, new NoConnectIdleHandler(eventLog));
         }
     }
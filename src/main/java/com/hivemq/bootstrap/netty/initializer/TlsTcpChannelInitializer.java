@@ -21,6 +21,8 @@ import com.hivemq.bootstrap.netty.ChannelDependencies;
 import com.hivemq.configuration.service.entity.Tls;
 import com.hivemq.configuration.service.entity.TlsTcpListener;
 import com.hivemq.logging.EventLog;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutHandler;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutWheels;
 import com.hivemq.mqtt.handler.connect.NoTlsHandshakeIdleHandler;
 import com.hivemq.security.exception.SslException;
 import com.hivemq.security.ssl.SslFactory;
@@ -28,7 +30,6 @@ import com.hivemq.security.ssl.SslInitializer;
 import com.hivemq.security.ssl.SslParameterHandler;
 import io.netty.channel.Channel;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 
 import java.util.concurrent.TimeUnit;
 
@@ -52,6 +53,9 @@ public class TlsTcpChannelInitializer extends AbstractChannelInitializer {
     @NotNull
     private final SslParameterHandler sslParameterHandler;
 
+    @NotNull
+    private final IdleTimeoutWheels idleTimeoutWheels;
+
     public TlsTcpChannelInitializer(@NotNull final ChannelDependencies channelDependencies, @NotNull final TlsTcpListener tlsTcpListener,
                                     @NotNull final SslFactory sslFactory, @NotNull final EventLog eventLog) {
         super(channelDependencies, tlsTcpListener, eventLog);
@@ -59,6 +63,7 @@ public class TlsTcpChannelInitializer extends AbstractChannelInitializer {
         this.sslFactory = sslFactory;
         this.eventLog = eventLog;
         this.sslParameterHandler = channelDependencies.getSslParameterHandler();
+        this.idleTimeoutWheels = channelDependencies.getIdleTimeoutWheels();
     }
 
     @Override
@@ -74,10 +79,10 @@ public class TlsTcpChannelInitializer extends AbstractChannelInitializer {
     protected void addSpecialHandlers(@NotNull final Channel ch) throws SslException {
 
         final int handshakeTimeout = tlsTcpListener.getTls().getHandshakeTimeout();
-        final IdleStateHandler idleStateHandler = new IdleStateHandler(handshakeTimeout, 0, 0, TimeUnit.MILLISECONDS);
+        final IdleTimeoutHandler idleTimeoutHandler = new IdleTimeoutHandler(idleTimeoutWheels, handshakeTimeout, TimeUnit.MILLISECONDS);
         final NoTlsHandshakeIdleHandler noTlsHandshakeIdleHandler = new NoTlsHandshakeIdleHandler(eventLog);
         if (handshakeTimeout > 0) {
-            ch.pipeline().addLast(NEW_CONNECTION_IDLE_HANDLER, idleStateHandler);
+            ch.pipeline().addLast(NEW_CONNECTION_IDLE_HANDLER, idleTimeoutHandler);
             ch.pipeline().addLast(NO_TLS_HANDSHAKE_IDLE_EVENT_HANDLER, noTlsHandshakeIdleHandler);
         }
 
@@ -85,7 +90,7 @@ public class TlsTcpChannelInitializer extends AbstractChannelInitializer {
         final SslHandler sslHandler = sslFactory.getSslHandler(ch, tls);
         sslHandler.handshakeFuture().addListener(future -> {
             if (handshakeTimeout > 0) {
-                ch.pipeline().remove(idleStateHandler);
+                ch.pipeline().remove(idleTimeoutHandler);
                 ch.pipeline().remove(noTlsHandshakeIdleHandler);
             }
             addNoConnectIdleHandlerAfterTlsHandshake(ch);
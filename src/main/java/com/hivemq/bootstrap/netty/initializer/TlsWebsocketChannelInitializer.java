@@ -21,6 +21,8 @@ import com.hivemq.bootstrap.netty.ChannelDependencies;
 import com.hivemq.configuration.service.entity.Tls;
 import com.hivemq.configuration.service.entity.TlsWebsocketListener;
 import com.hivemq.logging.EventLog;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutHandler;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutWheels;
 import com.hivemq.mqtt.handler.connect.NoTlsHandshakeIdleHandler;
 import com.hivemq.security.exception.SslException;
 import com.hivemq.security.ssl.SslFactory;
@@ -29,7 +31,6 @@ import com.hivemq.security.ssl.SslParameterHandler;
 import com.hivemq.websocket.WebSocketInitializer;
 import io.netty.channel.Channel;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 
 import java.util.concurrent.TimeUnit;
 
@@ -53,6 +54,9 @@ public class TlsWebsocketChannelInitializer extends AbstractChannelInitializer {
     @NotNull
     private final SslParameterHandler sslParameterHandler;
 
+    @NotNull
+    private final IdleTimeoutWheels idleTimeoutWheels;
+
     public TlsWebsocketChannelInitializer(@NotNull final ChannelDependencies channelDependencies,
                                           @NotNull final TlsWebsocketListener tlsWebsocketListener,
                                           @NotNull final SslFactory sslFactory,
@@ -63,6 +67,7 @@ public class TlsWebsocketChannelInitializer extends AbstractChannelInitializer {
         this.sslFactory = sslFactory;
         this.eventLog = eventLog;
         this.sslParameterHandler = channelDependencies.getSslParameterHandler();
+        this.idleTimeoutWheels = channelDependencies.getIdleTimeoutWheels();
     }
 
     @Override
@@ -78,10 +83,10 @@ public class TlsWebsocketChannelInitializer extends AbstractChannelInitializer {
     protected void addSpecialHandlers(@NotNull final Channel ch) throws SslException {
         final int handshakeTimeout = tlsWebsocketListener.getTls().getHandshakeTimeout();
 
-        final IdleStateHandler idleStateHandler = new IdleStateHandler(handshakeTimeout, 0, 0, TimeUnit.MILLISECONDS);
+        final IdleTimeoutHandler idleTimeoutHandler = new IdleTimeoutHandler(idleTimeoutWheels, handshakeTimeout, TimeUnit.MILLISECONDS);
         final NoTlsHandshakeIdleHandler noTlsHandshakeIdleHandler = new NoTlsHandshakeIdleHandler(eventLog);
         if (handshakeTimeout > 0) {
-            ch.pipeline().addLast(NEW_CONNECTION_IDLE_HANDLER, idleStateHandler);
+            ch.pipeline().addLast(NEW_CONNECTION_IDLE_HANDLER, idleTimeoutHandler);
             ch.pipeline().addLast(NO_TLS_HANDSHAKE_IDLE_EVENT_HANDLER, noTlsHandshakeIdleHandler);
         }
 
@@ -89,7 +94,7 @@ public class TlsWebsocketChannelInitializer extends AbstractChannelInitializer {
         final SslHandler sslHandler = sslFactory.getSslHandler(ch, tls);
         sslHandler.handshakeFuture().addListener(future -> {
             if (handshakeTimeout > 0) {
-                ch.pipeline().remove(idleStateHandler);
+                ch.pipeline().remove(idleTimeoutHandler);
                 ch.pipeline().remove(noTlsHandshakeIdleHandler);
             }
             addNoConnectIdleHandlerAfterTlsHandshake(ch);
@@ -19,13 +19,22 @@ package com.hivemq.bootstrap.netty.ioc;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.bootstrap.netty.NettyConfiguration;
+import com.hivemq.bootstrap.netty.NettyTransport;
+import com.hivemq.configuration.service.InternalConfigurations;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import java.util.Locale;
 import java.util.concurrent.ThreadFactory;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -38,37 +47,81 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @Singleton
 public class NettyConfigurationProvider implements Provider<NettyConfiguration> {
 
+    private static final Logger log = LoggerFactory.getLogger(NettyConfigurationProvider.class);
+
     @NotNull
     @Override
     public NettyConfiguration get() {
 
-        final EventLoopGroup parentGroup = createParentEventLoop();
-        final EventLoopGroup childGroup = createChildEventLoop();
+        final NettyTransport transport = selectTransport();
+
+        final EventLoopGroup parentGroup = createParentEventLoop(transport);
+        final EventLoopGroup childGroup = createChildEventLoop(transport);
 
-        return new NettyConfiguration(NioServerSocketChannel.class, NioSocketChannel.class, parentGroup, childGroup);
+        if (transport == NettyTransport.EPOLL) {
+            return new NettyConfiguration(EpollServerSocketChannel.class, EpollSocketChannel.class, parentGroup, childGroup, transport);
+        }
+        return new NettyConfiguration(NioServerSocketChannel.class, NioSocketChannel.class, parentGroup, childGroup, transport);
     }
 
     /**
-     * Creates the Parent Eventloop. Creates either a NIO Eventloop or a native Epoll Eventloop with a preference
-     * for native Epoll.
+     * Selects the configured transport. Native epoll falls back to NIO if it is not available on this system.
      *
-     * @return the Boss EventLoopGroup
+     * @return the transport to use
      */
     @NotNull
-    private EventLoopGroup createParentEventLoop() {
-        return new NioEventLoopGroup(1, createThreadFactory("hivemq-eventloop-parent-%d"));
+    NettyTransport selectTransport() {
+        final String configuredTransport = InternalConfigurations.NETTY_TRANSPORT.get();
+        switch (configuredTransport.toLowerCase(Locale.ROOT)) {
+            case "nio":
+                return NettyTransport.NIO;
+            case "epoll":
+                if (Epoll.isAvailable()) {
+                    return NettyTransport.EPOLL;
+                }
+                log.warn("The native epoll transport is not available on this system, falling back to NIO. Reason: {}",
+                        Epoll.unavailabilityCause().getMessage());
+                return NettyTransport.NIO;
+            case "auto":
+                if (Epoll.isAvailable()) {
+                    return NettyTransport.EPOLL;
+                }
+                log.debug("The native epoll transport is not available on this system, using NIO.", Epoll.unavailabilityCause());
+                return NettyTransport.NIO;
+            default:
+                log.warn("Unknown netty transport '{}', using NIO.", configuredTransport);
+                return NettyTransport.NIO;
+        }
     }
 
     /**
-     * Creates the Child Eventloop. Creates either a NIO Eventloop or a native Epoll Eventloop with a preference
-     * for native Epoll.
+     * Creates the Parent Eventloop. Creates either a NIO Eventloop or a native Epoll Eventloop. The Epoll Eventloop
+     * has one thread per acceptor that binds the listener ports with SO_REUSEPORT.
      *
      * @return the Boss EventLoopGroup
      */
     @NotNull
-    private EventLoopGroup createChildEventLoop() {
+    private EventLoopGroup createParentEventLoop(final @NotNull NettyTransport transport) {
+        final ThreadFactory threadFactory = createThreadFactory("hivemq-eventloop-parent-%d");
+        if (transport == NettyTransport.EPOLL) {
+            return new EpollEventLoopGroup(Math.max(1, InternalConfigurations.EPOLL_ACCEPTOR_THREADS.get()), threadFactory);
+        }
+        return new NioEventLoopGroup(1, threadFactory);
+    }
+
+    /**
+     * Creates the Child Eventloop. Creates either a NIO Eventloop or a native Epoll Eventloop.
+     *
+     * @return the Worker EventLoopGroup
+     */
+    @NotNull
+    private EventLoopGroup createChildEventLoop(final @NotNull NettyTransport transport) {
+        final ThreadFactory threadFactory = createThreadFactory("hivemq-eventloop-child-%d");
         //Default Netty Threads.
-        return new NioEventLoopGroup(0, createThreadFactory("hivemq-eventloop-child-%d"));
+        if (transport == NettyTransport.EPOLL) {
+            return new EpollEventLoopGroup(0, threadFactory);
+        }
+        return new NioEventLoopGroup(0, threadFactory);
     }
 
     /**
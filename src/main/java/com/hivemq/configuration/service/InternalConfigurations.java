@@ -61,6 +61,10 @@ public class InternalConfigurations {
     public static final AtomicInteger PERSISTENCE_CLOSE_RETRIES = new AtomicInteger(500);
     public static final AtomicInteger PERSISTENCE_CLOSE_RETRY_INTERVAL = new AtomicInteger(100);
 
+    //use one rocksdb instance per persistence with one column family per bucket instead of one instance per bucket.
+    //The instance shares its block cache and write buffer manager between all buckets.
+    public static final AtomicBoolean PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED = new AtomicBoolean(false);
+
     //max amount of subscriptions to pull from the peristence for extension iterate chunk
     public static final int PERSISTENCE_SUBSCRIPTIONS_MAX_CHUNK_SIZE = 2000;
 
@@ -69,6 +73,10 @@ public class InternalConfigurations {
 
     //The threshold at which the topic tree starts to map entries instead of storing them in an array
     public static final AtomicInteger TOPIC_TREE_MAP_CREATION_THRESHOLD = new AtomicInteger(16);
+    //The configuration if the subscribers of frequently published topics are cached by the topic tree
+    public static final AtomicBoolean TOPIC_TREE_SUBSCRIBER_CACHE_ENABLED = new AtomicBoolean(false);
+    //The maximum amount of topics for which the subscribers are cached by the topic tree
+    public static final AtomicInteger TOPIC_TREE_SUBSCRIBER_CACHE_SIZE = new AtomicInteger(10_000);
     // The configuration for qos 0 memory hard limit divisor, must be greater than 0.
     public static final AtomicInteger QOS_0_MEMORY_HARD_LIMIT_DIVISOR = new AtomicInteger(4);
 
@@ -128,6 +136,42 @@ public class InternalConfigurations {
     //The block size used by rocksdb for the retained message persistence in bytes
     public static final int RETAINED_MESSAGE_BLOCK_SIZE = 32 * 1024;
 
+    //The configuration if rocks db is used instead of xodus for client sessions.
+    public static final AtomicReference<PersistenceType> CLIENT_SESSION_PERSISTENCE_TYPE = new AtomicReference<>(PersistenceType.FILE);
+
+    //The memory that is used for rocksdb memtable as a portion of the RAM for the client session persistence. (size = RAM/configValue)
+    public static final int CLIENT_SESSION_MEMTABLE_SIZE_PORTION = 64;
+
+    //The memory that is used for rocksdb block-cache as a portion of the RAM for the client session persistence. (size = RAM/configValue)
+    public static final int CLIENT_SESSION_BLOCK_CACHE_SIZE_PORTION = 128;
+
+    //The block size used by rocksdb for the client session persistence in bytes
+    public static final int CLIENT_SESSION_BLOCK_SIZE = 16 * 1024;
+
+    //The configuration if rocks db is used instead of xodus for client session subscriptions.
+    public static final AtomicReference<PersistenceType> SUBSCRIPTION_PERSISTENCE_TYPE = new AtomicReference<>(PersistenceType.FILE);
+
+    //The memory that is used for rocksdb memtable as a portion of the RAM for the subscription persistence. (size = RAM/configValue)
+    public static final int SUBSCRIPTION_MEMTABLE_SIZE_PORTION = 64;
+
+    //The memory that is used for rocksdb block-cache as a portion of the RAM for the subscription persistence. (size = RAM/configValue)
+    public static final int SUBSCRIPTION_BLOCK_CACHE_SIZE_PORTION = 128;
+
+    //The block size used by rocksdb for the subscription persistence in bytes
+    public static final int SUBSCRIPTION_BLOCK_SIZE = 16 * 1024;
+
+    //The configuration if rocks db is used instead of xodus for queued messages.
+    public static final AtomicReference<PersistenceType> QUEUED_MESSAGES_PERSISTENCE_TYPE = new AtomicReference<>(PersistenceType.FILE);
+
+    //The memory that is used for rocksdb memtable as a portion of the RAM for the queued messages persistence. (size = RAM/configValue)
+    public static final int QUEUED_MESSAGES_MEMTABLE_SIZE_PORTION = 32;
+
+    //The memory that is used for rocksdb block-cache as a portion of the RAM for the queued messages persistence. (size = RAM/configValue)
+    public static final int QUEUED_MESSAGES_BLOCK_CACHE_SIZE_PORTION = 64;
+
+    //The block size used by rocksdb for the queued messages persistence in bytes
+    public static final int QUEUED_MESSAGES_BLOCK_SIZE = 32 * 1024;
+
     /* ************************
      *   Payload Persistence  *
      **************************/
@@ -166,6 +210,12 @@ public class InternalConfigurations {
      * The concurrency level of the shared subscriber service cache
      */
     public static final AtomicInteger SHARED_SUBSCRIBER_CACHE_CONCURRENCY_LEVEL = new AtomicInteger(AVAILABLE_PROCESSORS);
+    /**
+     * The order in which the members of a shared subscription group are offered queued messages:
+     * "round-robin", "least-inflight" (members with the fewest in-flight messages first) or "writability-weighted"
+     * (members with the most free space in their write buffer first)
+     */
+    public static final AtomicReference<String> SHARED_SUBSCRIPTION_DISPATCH_STRATEGY = new AtomicReference<>("round-robin");
 
     public static final AtomicInteger CLEANUP_JOB_SCHEDULE = new AtomicInteger(4);
 
@@ -173,8 +223,6 @@ public class InternalConfigurations {
 
     public static final AtomicInteger MQTT_EVENT_EXECUTOR_THREAD_COUNT = new AtomicInteger(AVAILABLE_PROCESSORS_TIMES_TWO);
 
-    public static final AtomicInteger MESSAGE_ID_PRODUCER_LOCK_SIZE = new AtomicInteger(8);
-
     /**
      * The amount of clean up job tasks that are processed at the same time, in each schedule interval
      */
@@ -234,6 +282,23 @@ public class InternalConfigurations {
     public static final int LISTENER_CLIENT_WRITE_BUFFER_HIGH_THRESHOLD = 65536; // 64Kb
     public static final int LISTENER_CLIENT_WRITE_BUFFER_LOW_THRESHOLD = 32768;  // 32Kb
 
+    //The netty transport of the listeners: "nio", "epoll" or "auto" (epoll if it is available, nio otherwise)
+    public static final AtomicReference<String> NETTY_TRANSPORT = new AtomicReference<>("nio");
+    //The amount of acceptor threads that bind the same listener port with SO_REUSEPORT (epoll only)
+    public static final AtomicInteger EPOLL_ACCEPTOR_THREADS = new AtomicInteger(1);
+    //Enables TCP_QUICKACK for client connections (epoll only)
+    public static final AtomicBoolean EPOLL_TCP_QUICKACK = new AtomicBoolean(false);
+    //Uses the edge-triggered mode of epoll if true, the level-triggered mode otherwise (epoll only)
+    public static final AtomicBoolean EPOLL_EDGE_TRIGGERED = new AtomicBoolean(true);
+    //Consolidates the flushes of a channel during a read and until the event loop picks up the next task
+    public static final AtomicBoolean FLUSH_CONSOLIDATION_ENABLED = new AtomicBoolean(true);
+    //The maximum amount of consolidated flushes after which a channel is flushed anyway, bounds the added latency
+    public static final AtomicInteger FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES = new AtomicInteger(64);
+    //The tick duration of the per event loop timing wheels for keepalive, connect and TLS handshake timeouts in milliseconds
+    public static final AtomicInteger IDLE_TIMEOUT_WHEEL_TICK_MILLIS = new AtomicInteger(100);
+    //The amount of buckets of the per event loop timing wheels for idle timeouts, must be a power of two
+    public static final AtomicInteger IDLE_TIMEOUT_WHEEL_SIZE = new AtomicInteger(512);
+
     /**
      * the outgoing bandwidth throttling config in bytes per second.
      */
@@ -257,6 +322,16 @@ public class InternalConfigurations {
     public static final boolean SSL_RELOAD_ENABLED = true;
     public static final int SSL_RELOAD_INTERVAL = 10;
 
+    //The TLS engine of the listeners: "jdk", "openssl" or "auto" (openssl if it is available, jdk otherwise)
+    public static final AtomicReference<String> SSL_PROVIDER = new AtomicReference<>("jdk");
+    //The maximum amount of cached TLS sessions per listener, -1 uses the default of the TLS engine
+    public static final AtomicLong SSL_SESSION_CACHE_SIZE = new AtomicLong(-1);
+    //The timeout in seconds of cached TLS sessions, -1 uses the default of the TLS engine
+    public static final AtomicLong SSL_SESSION_TIMEOUT = new AtomicLong(-1);
+    //A file with session ticket keys (48 bytes each, the first one encrypts new tickets) that are shared by all
+    //nodes behind a load balancer, so clients can resume their sessions on any node (openssl only)
+    public static final AtomicReference<String> SSL_SESSION_TICKET_KEY_FILE = new AtomicReference<>("");
+
     /**
      * Executes a Garbage collection after the initialization of HiveMQ
      */
@@ -335,6 +410,19 @@ public class InternalConfigurations {
      */
     public static final AtomicInteger PLUGIN_TASK_QUEUE_EXECUTOR_COUNT = new AtomicInteger(AVAILABLE_PROCESSORS);
 
+    /**
+     * If enabled, the extension tasks are executed by a shared work stealing pool instead of one thread per bucket of
+     * clients. Tasks of the same client are still executed in order.
+     */
+    public static final AtomicBoolean PLUGIN_TASK_QUEUE_WORK_STEALING_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * If enabled, an interceptor task is executed directly by the thread that submits it, usually a network thread, as
+     * long as no other task of the same client is pending. The task is only handed to the extension task executor if
+     * the extension goes async. Requires the work stealing executor, which is enabled automatically.
+     */
+    public static final AtomicBoolean PLUGIN_TASK_INLINE_EXECUTION_ENABLED = new AtomicBoolean(false);
+
     /**
      * The keep alive of the managed extension executor service thread pool
      */
@@ -364,4 +452,10 @@ public class InternalConfigurations {
      */
     public static final boolean AUTH_DENY_UNAUTHENTICATED_CONNECTIONS = false;
 
+    /**
+     * The amount of topics per connection for which the publish decisions of the default permissions are cached,
+     * 0 disables the cache
+     */
+    public static final AtomicInteger DEFAULT_PERMISSIONS_DECISION_CACHE_SIZE = new AtomicInteger(64);
+
 }
@@ -17,6 +17,7 @@
 package com.hivemq.extensions.executor;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.executor.task.*;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 
@@ -26,7 +27,9 @@ import javax.inject.Singleton;
 import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.configuration.service.InternalConfigurations.PLUGIN_TASK_INLINE_EXECUTION_ENABLED;
 import static com.hivemq.configuration.service.InternalConfigurations.PLUGIN_TASK_QUEUE_EXECUTOR_COUNT;
+import static com.hivemq.configuration.service.InternalConfigurations.PLUGIN_TASK_QUEUE_WORK_STEALING_ENABLED;
 
 /**
  * @author Christoph Schäbel
@@ -34,16 +37,28 @@ import static com.hivemq.configuration.service.InternalConfigurations.PLUGIN_TAS
 @Singleton
 public class PluginTaskExecutorServiceImpl implements PluginTaskExecutorService {
 
-    @NotNull
+    @Nullable
     private final PluginTaskExecutor[] taskExecutors;
 
+    @Nullable
+    private final WorkStealingPluginTaskExecutor workStealingTaskExecutor;
+
     private final int taskExecutorCount;
 
     @Inject
-    public PluginTaskExecutorServiceImpl(@NotNull final Provider<PluginTaskExecutor> taskExecutorProvider) {
+    public PluginTaskExecutorServiceImpl(@NotNull final Provider<PluginTaskExecutor> taskExecutorProvider,
+                                         @NotNull final Provider<WorkStealingPluginTaskExecutor> workStealingTaskExecutorProvider) {
 
         taskExecutorCount = PLUGIN_TASK_QUEUE_EXECUTOR_COUNT.get();
 
+        //inline execution is only supported by the work stealing executor
+        if (PLUGIN_TASK_QUEUE_WORK_STEALING_ENABLED.get() || PLUGIN_TASK_INLINE_EXECUTION_ENABLED.get()) {
+            taskExecutors = null;
+            workStealingTaskExecutor = workStealingTaskExecutorProvider.get();
+            return;
+        }
+
+        workStealingTaskExecutor = null;
         taskExecutors = new PluginTaskExecutor[taskExecutorCount];
 
         for (int i = 0; i < taskExecutorCount; i++) {
@@ -56,13 +71,11 @@ public class PluginTaskExecutorServiceImpl implements PluginTaskExecutorService
     public <I extends PluginTaskInput> void handlePluginInTaskExecution(@NotNull final PluginInTaskContext pluginInTaskContext,
                                                                            @NotNull final Supplier<I> pluginInputSupplier,
                                                                            @NotNull final PluginInTask<I> pluginTask) {
-        final PluginTaskExecutor taskExecutor = getPluginTaskExecutor(pluginInTaskContext);
-
         checkNotNull(pluginInTaskContext, "Extension context cannot be null");
         checkNotNull(pluginInputSupplier, "Input supplier cannot be null");
         checkNotNull(pluginTask, "Extension task cannot be null");
 
-        taskExecutor.handlePluginTaskExecution(new PluginTaskExecution<I, DefaultPluginTaskOutput>(
+        handlePluginTaskExecution(new PluginTaskExecution<I, DefaultPluginTaskOutput>(
                 pluginInTaskContext, pluginInputSupplier, null, pluginTask));
 
     }
@@ -76,8 +89,7 @@ public class PluginTaskExecutorServiceImpl implements PluginTaskExecutorService
         checkNotNull(pluginOutputSupplier, "Output supplier cannot be null");
         checkNotNull(pluginTask, "Extension task cannot be null");
 
-        final PluginTaskExecutor taskExecutor = getPluginTaskExecutor(pluginOutTaskContext);
-        taskExecutor.handlePluginTaskExecution(new PluginTaskExecution<DefaultPluginTaskInput, O>(
+        handlePluginTaskExecution(new PluginTaskExecution<DefaultPluginTaskInput, O>(
                 pluginOutTaskContext, null, pluginOutputSupplier, pluginTask));
     }
 
@@ -91,14 +103,22 @@ public class PluginTaskExecutorServiceImpl implements PluginTaskExecutorService
         checkNotNull(pluginOutputSupplier, "Output supplier cannot be null");
         checkNotNull(pluginTask, "Extension task cannot be null");
 
-        final PluginTaskExecutor taskExecutor = getPluginTaskExecutor(pluginInOutContext);
-        taskExecutor.handlePluginTaskExecution(new PluginTaskExecution<>(
+        handlePluginTaskExecution(new PluginTaskExecution<>(
                 pluginInOutContext, pluginInputSupplier, pluginOutputSupplier, pluginTask));
     }
 
+    private void handlePluginTaskExecution(@NotNull final PluginTaskExecution pluginTaskExecution) {
+        if (workStealingTaskExecutor != null) {
+            workStealingTaskExecutor.handlePluginTaskExecution(pluginTaskExecution);
+            return;
+        }
+        getPluginTaskExecutor(pluginTaskExecution.getPluginContext()).handlePluginTaskExecution(pluginTaskExecution);
+    }
+
     @NotNull
     private PluginTaskExecutor getPluginTaskExecutor(@NotNull final PluginTaskContext pluginTaskContext) {
         final int bucket = BucketUtils.getBucket(pluginTaskContext.getIdentifier(), taskExecutorCount);
+        //noinspection ConstantConditions: the executors are present if work stealing is disabled
         return taskExecutors[bucket];
     }
 
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.executor.task;
+
+/**
+ * A wrapper for an extension task that calls an interceptor.
+ * <p>
+ * Interceptors are called for every packet and are expected to be fast, so these tasks may be executed inline by the
+ * thread that submits them. All other extension tasks are always executed by the extension task executor.
+ */
+public interface PluginInterceptorTask<I extends PluginTaskInput, O extends PluginTaskOutput> extends PluginInOutTask<I, O> {
+}
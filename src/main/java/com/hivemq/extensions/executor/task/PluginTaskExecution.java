@@ -38,6 +38,8 @@ public class PluginTaskExecution<I extends PluginTaskInput, O extends PluginTask
     @NotNull
     private final PluginTask pluginTask;
 
+    private final boolean inlineEligible;
+
     @Nullable
     private O output;
 
@@ -50,6 +52,8 @@ public class PluginTaskExecution<I extends PluginTaskInput, O extends PluginTask
     @NotNull
     private final AtomicBoolean done = new AtomicBoolean(false);
 
+    private long queuedNanos;
+
     public PluginTaskExecution(
             @NotNull final PluginTaskContext pluginInOutContext,
             @Nullable final Supplier<I> pluginInputSupplier,
@@ -59,6 +63,7 @@ public class PluginTaskExecution<I extends PluginTaskInput, O extends PluginTask
         this.pluginInputSupplier = pluginInputSupplier;
         this.pluginOutputSupplier = pluginOutputSupplier;
         this.pluginTask = pluginTask;
+        this.inlineEligible = pluginTask instanceof PluginInterceptorTask;
     }
 
     @NotNull
@@ -71,6 +76,14 @@ public class PluginTaskExecution<I extends PluginTaskInput, O extends PluginTask
         return pluginTask;
     }
 
+    /**
+     * @return true if the task may be executed inline by the thread that submits it, which is only the case for
+     * {@link PluginInterceptorTask}s
+     */
+    public boolean isInlineEligible() {
+        return inlineEligible;
+    }
+
     public boolean isAsync() {
         return async.get();
     }
@@ -103,6 +116,17 @@ public class PluginTaskExecution<I extends PluginTaskInput, O extends PluginTask
         return input;
     }
 
+    /**
+     * @return the {@link System#nanoTime()} at which the task was added to its queue
+     */
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    public void setQueuedNanos(final long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+    }
+
     public void setOutputObject(@NotNull final O output) {
         this.output = output;
     }
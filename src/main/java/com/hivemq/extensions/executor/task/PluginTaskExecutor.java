@@ -17,10 +17,8 @@
 package com.hivemq.extensions.executor.task;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Preconditions;
-import com.google.common.util.concurrent.*;
+import com.google.common.util.concurrent.Striped;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
-import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.common.annotations.GuardedBy;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.extensions.ioc.annotation.PluginTaskQueue;
@@ -149,7 +147,7 @@ public class PluginTaskExecutor {
                             if (task.isDone()) {
                                 //if the task is async and already done, then excute the post functions
                                 // and clean the task
-                                executeDoneTask(task);
+                                PluginTaskRunner.executeDoneTask(task);
                                 queue.remove();
                                 counterAllQueues.decrementAndGet();
                                 taskExecuted = true;
@@ -162,7 +160,7 @@ public class PluginTaskExecutor {
 
                         try {
                             taskExecuted = true;
-                            executeTask(task);
+                            PluginTaskRunner.executeTask(task, semaphore::release);
 
                             if (!task.isAsync()) {
                                 queue.remove();
@@ -224,113 +222,5 @@ public class PluginTaskExecutor {
             }
             return false;
         }
-
-        private void executeDoneTask(@NotNull final PluginTaskExecution task) {
-
-            try {
-                final PluginTaskOutput outputObject = task.getOutputObject();
-                if (outputObject == null) {
-                    return;
-                }
-
-                final PluginTaskContext pluginContext = task.getPluginContext();
-                if (pluginContext instanceof PluginTaskPost) {
-                    final PluginTaskPost pluginPost = (PluginTaskPost) pluginContext;
-                    //noinspection unchecked: generics extends a PluginTaskOutput
-                    pluginPost.pluginPost(outputObject);
-                }
-                if (outputObject.isAsync()) {
-                    outputObject.resetAsyncStatus();
-                }
-            } catch (final Throwable t) {
-                Exceptions.rethrowError("Exception at extension post", t);
-            }
-        }
-
-        private void executeTask(@NotNull final PluginTaskExecution task) {
-
-            final PluginTaskOutput output = runTask(task);
-
-            //noinspection unchecked: generics extends a PluginTaskOutput
-            task.setOutputObject(output);
-
-            if (output.isAsync()) {
-                //handle async result
-
-                task.markAsAsync();
-
-                final ListenableFuture<Boolean> asyncFuture = output.getAsyncFuture();
-
-                Preconditions.checkNotNull(asyncFuture, "Async future cannot be null for an async task");
-
-                Futures.addCallback(asyncFuture, new FutureCallback<Boolean>() {
-                    @Override
-                    public void onSuccess(@Nullable final Boolean result) {
-                        //mark the task as done and increment the semaphore to make sure the thread runs
-                        task.markAsDone();
-                        semaphore.release();
-                    }
-
-                    @Override
-                    public void onFailure(@NotNull final Throwable t) {
-                        Exceptions.rethrowError("Exception at PluginTaskExecutor", t);
-                        task.markAsDone();
-                        semaphore.release();
-                    }
-                    //the queue executor cannot be passed here, because it is spinning or blocked all the time
-                    // therefore a new task might never be executed.
-                    //A direct executor is the choice here, because it can run the callback even if resume is called
-                    // in the same thread as async without (does not add a new task to the executor service)
-                }, MoreExecutors.directExecutor());
-            } else {
-                //directly execute result function
-                task.markAsDone();
-
-                executeDoneTask(task);
-            }
-        }
-
-        @NotNull
-        private PluginTaskOutput runTask(@NotNull final PluginTaskExecution task) {
-            final Thread thread = Thread.currentThread();
-            final ClassLoader contextClassLoader = thread.getContextClassLoader();
-            try {
-
-                final PluginTask pluginTask = task.getPluginTask();
-                thread.setContextClassLoader(pluginTask.getPluginClassLoader());
-                final PluginTaskOutput output;
-                if (pluginTask instanceof PluginInOutTask) {
-                    output = runInOutTask(task, (PluginInOutTask) pluginTask);
-                } else if (pluginTask instanceof PluginInTask) {
-                    output = runInTask(task, (PluginInTask) pluginTask);
-                } else if (pluginTask instanceof PluginOutTask) {
-                    output = runOutTask(task, (PluginOutTask) pluginTask);
-                } else {
-                    throw new IllegalArgumentException("Unknown task type for extension task queue");
-                }
-                return output;
-            } finally {
-                thread.setContextClassLoader(contextClassLoader);
-            }
-        }
-
-        @NotNull
-        private PluginTaskOutput runOutTask(@NotNull final PluginTaskExecution task, final PluginOutTask pluginTask) {
-            //noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
-            return (PluginTaskOutput) pluginTask.apply(task.getOutputObject());
-        }
-
-        @NotNull
-        private PluginTaskOutput runInTask(@NotNull final PluginTaskExecution task, @NotNull final PluginInTask pluginTask) {
-            //noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
-            pluginTask.accept(task.getInputObject());
-            return DefaultPluginTaskOutput.getInstance();
-        }
-
-        @NotNull
-        private PluginTaskOutput runInOutTask(@NotNull final PluginTaskExecution task, final PluginInOutTask pluginTask) {
-            //noinspection unchecked: cast is safe because apply has generics that extend PluginTaskOutput
-            return (PluginTaskOutput) pluginTask.apply(task.getInputObject(), task.getOutputObject());
-        }
     }
 }
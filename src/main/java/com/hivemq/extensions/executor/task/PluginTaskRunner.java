@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.executor.task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.util.Exceptions;
+
+/**
+ * Runs a single {@link PluginTaskExecution} on the current thread. Shared by the extension task executors, which only
+ * differ in how they schedule the per-client task queues.
+ */
+final class PluginTaskRunner {
+
+    private PluginTaskRunner() {
+        //no instances
+    }
+
+    /**
+     * Executes the post functions of a task whose result is available.
+     */
+    static void executeDoneTask(@NotNull final PluginTaskExecution task) {
+
+        try {
+            final PluginTaskOutput outputObject = task.getOutputObject();
+            if (outputObject == null) {
+                return;
+            }
+
+            final PluginTaskContext pluginContext = task.getPluginContext();
+            if (pluginContext instanceof PluginTaskPost) {
+                final PluginTaskPost pluginPost = (PluginTaskPost) pluginContext;
+                //noinspection unchecked: generics extends a PluginTaskOutput
+                pluginPost.pluginPost(outputObject);
+            }
+            if (outputObject.isAsync()) {
+                outputObject.resetAsyncStatus();
+            }
+        } catch (final Throwable t) {
+            Exceptions.rethrowError("Exception at extension post", t);
+        }
+    }
+
+    /**
+     * Executes a task. If the extension made the output async, the task is marked as async and the given callback is
+     * run once the async result is available and the task was marked as done.
+     *
+     * @param task        the task to execute
+     * @param asyncResume the callback that is run after an async task was marked as done
+     */
+    static void executeTask(@NotNull final PluginTaskExecution task, @NotNull final Runnable asyncResume) {
+
+        final PluginTaskOutput output = runTask(task);
+
+        //noinspection unchecked: generics extends a PluginTaskOutput
+        task.setOutputObject(output);
+
+        if (output.isAsync()) {
+            //handle async result
+
+            task.markAsAsync();
+
+            final ListenableFuture<Boolean> asyncFuture = output.getAsyncFuture();
+
+            Preconditions.checkNotNull(asyncFuture, "Async future cannot be null for an async task");
+
+            Futures.addCallback(asyncFuture, new FutureCallback<Boolean>() {
+                @Override
+                public void onSuccess(@Nullable final Boolean result) {
+                    //mark the task as done and make sure the executor picks the queue up again
+                    task.markAsDone();
+                    asyncResume.run();
+                }
+
+                @Override
+                public void onFailure(@NotNull final Throwable t) {
+                    Exceptions.rethrowError("Exception at PluginTaskExecutor", t);
+                    task.markAsDone();
+                    asyncResume.run();
+                }
+                //the queue executor cannot be passed here, because it is spinning or blocked all the time
+                // therefore a new task might never be executed.
+                //A direct executor is the choice here, because it can run the callback even if resume is called
+                // in the same thread as async without (does not add a new task to the executor service)
+            }, MoreExecutors.directExecutor());
+        } else {
+            //directly execute result function
+            task.markAsDone();
+
+            executeDoneTask(task);
+        }
+    }
+
+    @NotNull
+    private static PluginTaskOutput runTask(@NotNull final PluginTaskExecution task) {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try {
+
+            final PluginTask pluginTask = task.getPluginTask();
+            thread.setContextClassLoader(pluginTask.getPluginClassLoader());
+            final PluginTaskOutput output;
+            if (pluginTask instanceof PluginInOutTask) {
+                output = runInOutTask(task, (PluginInOutTask) pluginTask);
+            } else if (pluginTask instanceof PluginInTask) {
+                output = runInTask(task, (PluginInTask) pluginTask);
+            } else if (pluginTask instanceof PluginOutTask) {
+                output = runOutTask(task, (PluginOutTask) pluginTask);
+            } else {
+                throw new IllegalArgumentException("Unknown task type for extension task queue");
+            }
+            return output;
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @NotNull
+    private static PluginTaskOutput runOutTask(@NotNull final PluginTaskExecution task, final PluginOutTask pluginTask) {
+        //noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
+        return (PluginTaskOutput) pluginTask.apply(task.getOutputObject());
+    }
+
+    @NotNull
+    private static PluginTaskOutput runInTask(@NotNull final PluginTaskExecution task, @NotNull final PluginInTask pluginTask) {
+        //noinspection unchecked: cast is safe because accept has generics that extend PluginTaskOutput
+        pluginTask.accept(task.getInputObject());
+        return DefaultPluginTaskOutput.getInstance();
+    }
+
+    @NotNull
+    private static PluginTaskOutput runInOutTask(@NotNull final PluginTaskExecution task, final PluginInOutTask pluginTask) {
+        //noinspection unchecked: cast is safe because apply has generics that extend PluginTaskOutput
+        return (PluginTaskOutput) pluginTask.apply(task.getInputObject(), task.getOutputObject());
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.executor.task;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.common.annotations.GuardedBy;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.ioc.annotation.PluginTaskQueue;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.util.Exceptions;
+
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hivemq.configuration.service.InternalConfigurations.PLUGIN_TASK_INLINE_EXECUTION_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.PLUGIN_TASK_QUEUE_EXECUTOR_COUNT;
+
+/**
+ * Executes the extension tasks of all clients with a shared pool of worker threads.
+ * <p>
+ * Every client with pending tasks has its own task queue. A client queue is submitted to the pool only when it
+ * becomes non-empty, so the pool only ever sees client queues that are ready to run and no thread scans empty queues.
+ * At most one worker runs the tasks of a client at a time, which keeps the tasks of a client in order. After a batch
+ * of tasks the client queue is resubmitted to give other clients a chance, and idle workers steal ready client
+ * queues from busy ones, so a slow extension only delays the client it is called for.
+ * <p>
+ * When the first task of a client queue is async and not done yet, the queue is parked and no worker is blocked. The
+ * queue is submitted again as soon as the async result is available.
+ * <p>
+ * With inline execution enabled, an interceptor task for a client without pending tasks is executed directly by the
+ * thread that submits it, which is usually the event loop of the client. The client queue is only handed to the pool
+ * if the task goes async or if more tasks were added to the queue in the meantime. All other tasks, like
+ * authenticators, authorizers and initializers, may block and are always executed by the pool.
+ */
+@ThreadSafe
+public class WorkStealingPluginTaskExecutor {
+
+    private static final int MAX_TASKS_PER_RUN = 16;
+
+    private final @NotNull ForkJoinPool pool;
+    private final @NotNull AtomicBoolean running = new AtomicBoolean(true);
+
+    private final @NotNull ConcurrentMap<String, ClientTaskQueue> taskQueues = new ConcurrentHashMap<>();
+
+    private final @NotNull AtomicLong counterAllQueues;
+    private final @NotNull Timer queueLatency;
+    private final boolean inlineExecution;
+
+    @Inject
+    public WorkStealingPluginTaskExecutor(@NotNull @PluginTaskQueue final AtomicLong counterAllQueues,
+                                          @NotNull final MetricsHolder metricsHolder) {
+        this(counterAllQueues, metricsHolder.getMetricRegistry(), PLUGIN_TASK_QUEUE_EXECUTOR_COUNT.get(),
+                PLUGIN_TASK_INLINE_EXECUTION_ENABLED.get());
+    }
+
+    @VisibleForTesting
+    public WorkStealingPluginTaskExecutor(@NotNull final AtomicLong counterAllQueues,
+                                          @NotNull final MetricRegistry metricRegistry,
+                                          final int threadCount,
+                                          final boolean inlineExecution) {
+        this.counterAllQueues = counterAllQueues;
+        this.inlineExecution = inlineExecution;
+        this.pool = new ForkJoinPool(threadCount, new WorkerThreadFactory(), null, true);
+        this.queueLatency = metricRegistry.timer(HiveMQMetrics.EXTENSION_TASK_QUEUE_LATENCY.name());
+        metricRegistry.register(HiveMQMetrics.EXTENSION_TASK_QUEUE_CURRENT.name(),
+                (Gauge<Long>) counterAllQueues::get);
+    }
+
+    public void stop() {
+        running.set(false);
+        pool.shutdown();
+    }
+
+    public void handlePluginTaskExecution(@NotNull final PluginTaskExecution pluginTaskExecution) {
+
+        if (!running.get()) {
+            throw new RejectedExecutionException("Extension Task executor is already stopped");
+        }
+
+        counterAllQueues.getAndIncrement();
+        pluginTaskExecution.setQueuedNanos(System.nanoTime());
+
+        final String identifier = pluginTaskExecution.getPluginContext().getIdentifier();
+
+        while (true) {
+            final ClientTaskQueue queue = taskQueues.computeIfAbsent(identifier, ClientTaskQueue::new);
+            final boolean schedule;
+            synchronized (queue) {
+                if (queue.removed) {
+                    //the queue was emptied and removed concurrently, a new one must be used
+                    continue;
+                }
+                queue.tasks.add(pluginTaskExecution);
+                schedule = queue.state == State.IDLE;
+                if (schedule) {
+                    queue.state = State.SCHEDULED;
+                }
+            }
+            if (schedule) {
+                if (inlineExecution && pluginTaskExecution.isInlineEligible()) {
+                    //the queue was idle, so the task is the first one of the client and can run right away
+                    queue.execute(1);
+                } else {
+                    pool.execute(queue);
+                }
+            }
+            return;
+        }
+    }
+
+    @VisibleForTesting
+    int getQueueCount() {
+        return taskQueues.size();
+    }
+
+    private enum State {
+        /**
+         * The queue has no tasks and is not submitted to the pool.
+         */
+        IDLE,
+        /**
+         * The queue is submitted to the pool or a worker is running its tasks.
+         */
+        SCHEDULED,
+        /**
+         * The first task of the queue is async and not done yet.
+         */
+        PARKED
+    }
+
+    private class ClientTaskQueue implements Runnable {
+
+        private final @NotNull String identifier;
+
+        @GuardedBy("this")
+        private final @NotNull ArrayDeque<PluginTaskExecution> tasks = new ArrayDeque<>();
+
+        @GuardedBy("this")
+        private @NotNull State state = State.IDLE;
+
+        @GuardedBy("this")
+        private boolean removed;
+
+        private ClientTaskQueue(@NotNull final String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public void run() {
+            execute(MAX_TASKS_PER_RUN);
+        }
+
+        private void execute(final int maxTasks) {
+            boolean resubmit = true;
+            try {
+                resubmit = runTasks(maxTasks);
+            } catch (final Throwable t) {
+                Exceptions.rethrowError("Exception at WorkStealingPluginTaskExecutor", t);
+            } finally {
+                if (resubmit && running.get()) {
+                    pool.execute(this);
+                }
+            }
+        }
+
+        /**
+         * @return true if the queue still has tasks and must be resubmitted, false if it is parked or removed
+         */
+        private boolean runTasks(final int maxTasks) {
+            for (int i = 0; i < maxTasks; i++) {
+
+                final PluginTaskExecution task = nextTask();
+                if (task == null) {
+                    return false;
+                }
+
+                if (task.isAsync()) {
+                    //the async task is done, execute the post functions and clean the task
+                    PluginTaskRunner.executeDoneTask(task);
+                    removeFirst();
+                    continue;
+                }
+
+                queueLatency.update(System.nanoTime() - task.getQueuedNanos(), TimeUnit.NANOSECONDS);
+                try {
+                    PluginTaskRunner.executeTask(task, this::resume);
+
+                    if (!task.isAsync()) {
+                        removeFirst();
+                    }
+                } catch (final Throwable t) {
+                    removeFirst();
+                    Exceptions.rethrowError("Exception at extension task", t);
+                }
+            }
+            //park or remove the queue right away if no task can be executed
+            return nextTask() != null;
+        }
+
+        /**
+         * @return the first task of the queue if it can be executed, or null if the queue was parked or removed.
+         */
+        @Nullable
+        private synchronized PluginTaskExecution nextTask() {
+            final PluginTaskExecution task = tasks.peek();
+            if (task == null) {
+                state = State.IDLE;
+                removed = true;
+                taskQueues.remove(identifier, this);
+                return null;
+            }
+            if (task.isAsync() && !task.isDone()) {
+                //the async callback resubmits the queue
+                state = State.PARKED;
+                return null;
+            }
+            return task;
+        }
+
+        private synchronized void removeFirst() {
+            tasks.poll();
+            counterAllQueues.decrementAndGet();
+        }
+
+        private void resume() {
+            synchronized (this) {
+                if (state != State.PARKED) {
+                    //the worker has not parked the queue yet and will see the task as done
+                    return;
+                }
+                state = State.SCHEDULED;
+            }
+            if (running.get()) {
+                pool.execute(this);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final @NotNull AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(@NotNull final ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("extension-task-executor-" + threadCount.getAndIncrement());
+            return thread;
+        }
+    }
+}
@@ -31,8 +31,8 @@ import com.hivemq.extensions.HiveMQExtension;
 import com.hivemq.extensions.HiveMQExtensions;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.connack.ConnackOutboundInputImpl;
 import com.hivemq.extensions.interceptor.connack.ConnackOutboundOutputImpl;
 import com.hivemq.extensions.interceptor.connack.ConnackOutboundProviderInputImpl;
@@ -245,7 +245,7 @@ public class ConnackOutboundInterceptorHandler extends ChannelOutboundHandlerAda
         }
     }
 
-    private class ConnackInterceptorTask implements PluginInOutTask<ConnackOutboundInputImpl, ConnackOutboundOutputImpl> {
+    private class ConnackInterceptorTask implements PluginInterceptorTask<ConnackOutboundInputImpl, ConnackOutboundOutputImpl> {
 
         private final @NotNull ConnackOutboundInterceptorProvider interceptorProvider;
         private final @NotNull ConnackOutboundProviderInputImpl connackOutboundProviderInput;
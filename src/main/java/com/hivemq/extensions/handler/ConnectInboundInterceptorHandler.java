@@ -32,8 +32,8 @@ import com.hivemq.extensions.HiveMQExtensions;
 import com.hivemq.extensions.client.parameter.ClientInformationImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.connect.ConnectInboundInputImpl;
 import com.hivemq.extensions.interceptor.connect.ConnectInboundOutputImpl;
 import com.hivemq.extensions.interceptor.connect.ConnectInboundProviderInputImpl;
@@ -220,7 +220,7 @@ public class ConnectInboundInterceptorHandler extends SimpleChannelInboundHandle
     }
 
     private class ConnectInterceptorTask
-            implements PluginInOutTask<ConnectInboundInputImpl, ConnectInboundOutputImpl> {
+            implements PluginInterceptorTask<ConnectInboundInputImpl, ConnectInboundOutputImpl> {
 
         private final @NotNull ConnectInboundInterceptorProvider provider;
         private final @NotNull ConnectInboundProviderInputImpl providerInput;
@@ -27,8 +27,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.disconnect.DisconnectInboundInputImpl;
 import com.hivemq.extensions.interceptor.disconnect.DisconnectInboundOutputImpl;
 import com.hivemq.extensions.interceptor.disconnect.DisconnectOutboundInputImpl;
@@ -236,7 +236,7 @@ public class DisconnectInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class DisconnectOutboundInterceptorTask
-            implements PluginInOutTask<DisconnectOutboundInputImpl, DisconnectOutboundOutputImpl> {
+            implements PluginInterceptorTask<DisconnectOutboundInputImpl, DisconnectOutboundOutputImpl> {
 
         private final @NotNull DisconnectOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -314,7 +314,7 @@ public class DisconnectInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class DisconnectInboundInterceptorTask
-            implements PluginInOutTask<DisconnectInboundInputImpl, DisconnectInboundOutputImpl> {
+            implements PluginInterceptorTask<DisconnectInboundInputImpl, DisconnectInboundOutputImpl> {
 
         private final @NotNull DisconnectInboundInterceptor interceptor;
         private final @NotNull String extensionId;
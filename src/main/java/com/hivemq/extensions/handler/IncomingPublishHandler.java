@@ -31,8 +31,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.publish.parameter.PublishInboundInputImpl;
 import com.hivemq.extensions.interceptor.publish.parameter.PublishInboundOutputImpl;
 import com.hivemq.extensions.packets.publish.PublishPacketImpl;
@@ -227,7 +227,7 @@ public class IncomingPublishHandler extends SimpleChannelInboundHandler<PUBLISH>
         }
     }
 
-    private class PublishInboundInterceptorTask implements PluginInOutTask<PublishInboundInputImpl, PublishInboundOutputImpl> {
+    private class PublishInboundInterceptorTask implements PluginInterceptorTask<PublishInboundInputImpl, PublishInboundOutputImpl> {
 
         private final @NotNull PublishInboundInterceptor interceptor;
         private final @NotNull String pluginId;
@@ -30,8 +30,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.subscribe.parameter.SubscribeInboundInputImpl;
 import com.hivemq.extensions.interceptor.subscribe.parameter.SubscribeInboundOutputImpl;
 import com.hivemq.extensions.packets.subscribe.SubscribePacketImpl;
@@ -241,7 +241,7 @@ public class IncomingSubscribeHandler extends SimpleChannelInboundHandler<SUBSCR
         }
     }
 
-    private class SubscribeInboundInterceptorTask implements PluginInOutTask<SubscribeInboundInputImpl, SubscribeInboundOutputImpl> {
+    private class SubscribeInboundInterceptorTask implements PluginInterceptorTask<SubscribeInboundInputImpl, SubscribeInboundOutputImpl> {
 
         private final @NotNull SubscribeInboundInterceptor interceptor;
         private final @NotNull String extensionId;
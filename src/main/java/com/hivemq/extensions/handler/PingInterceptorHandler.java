@@ -24,8 +24,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.pingreq.parameter.PingReqInboundInputImpl;
 import com.hivemq.extensions.interceptor.pingreq.parameter.PingReqInboundOutputImpl;
 import com.hivemq.extensions.interceptor.pingresp.parameter.PingRespOutboundInputImpl;
@@ -181,7 +181,7 @@ public class PingInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PingRequestInboundInterceptorTask
-            implements PluginInOutTask<PingReqInboundInputImpl, PingReqInboundOutputImpl> {
+            implements PluginInterceptorTask<PingReqInboundInputImpl, PingReqInboundOutputImpl> {
 
         private final @NotNull PingReqInboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -217,7 +217,7 @@ public class PingInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PingResponseOutboundInterceptorTask
-            implements PluginInOutTask<PingRespOutboundInputImpl, PingRespOutboundOutputImpl> {
+            implements PluginInterceptorTask<PingRespOutboundInputImpl, PingRespOutboundOutputImpl> {
 
         private final @NotNull PingRespOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
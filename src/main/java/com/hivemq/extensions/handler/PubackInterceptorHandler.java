@@ -25,8 +25,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.puback.PubackInboundInputImpl;
 import com.hivemq.extensions.interceptor.puback.PubackInboundOutputImpl;
 import com.hivemq.extensions.interceptor.puback.PubackOutboundInputImpl;
@@ -222,7 +222,7 @@ public class PubackInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubackInboundInterceptorTask
-            implements PluginInOutTask<PubackInboundInputImpl, PubackInboundOutputImpl> {
+            implements PluginInterceptorTask<PubackInboundInputImpl, PubackInboundOutputImpl> {
 
         private final @NotNull PubackInboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -302,7 +302,7 @@ public class PubackInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubackOutboundInterceptorTask
-            implements PluginInOutTask<PubackOutboundInputImpl, PubackOutboundOutputImpl> {
+            implements PluginInterceptorTask<PubackOutboundInputImpl, PubackOutboundOutputImpl> {
 
         private final @NotNull PubackOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -25,8 +25,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.pubcomp.PubcompInboundInputImpl;
 import com.hivemq.extensions.interceptor.pubcomp.PubcompInboundOutputImpl;
 import com.hivemq.extensions.interceptor.pubcomp.PubcompOutboundInputImpl;
@@ -226,7 +226,7 @@ public class PubcompInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubcompInboundInterceptorTask
-            implements PluginInOutTask<PubcompInboundInputImpl, PubcompInboundOutputImpl> {
+            implements PluginInterceptorTask<PubcompInboundInputImpl, PubcompInboundOutputImpl> {
 
         private final @NotNull PubcompInboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -306,7 +306,7 @@ public class PubcompInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubcompOutboundInterceptorTask
-            implements PluginInOutTask<PubcompOutboundInputImpl, PubcompOutboundOutputImpl> {
+            implements PluginInterceptorTask<PubcompOutboundInputImpl, PubcompOutboundOutputImpl> {
 
         private final @NotNull PubcompOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
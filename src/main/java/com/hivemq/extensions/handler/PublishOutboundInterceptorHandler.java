@@ -31,8 +31,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.publish.parameter.PublishOutboundInputImpl;
 import com.hivemq.extensions.interceptor.publish.parameter.PublishOutboundOutputImpl;
 import com.hivemq.extensions.packets.publish.PublishPacketImpl;
@@ -201,7 +201,7 @@ public class PublishOutboundInterceptorHandler extends ChannelOutboundHandlerAda
         }
     }
 
-    private class PublishOutboundInterceptorTask implements PluginInOutTask<PublishOutboundInputImpl, PublishOutboundOutputImpl> {
+    private class PublishOutboundInterceptorTask implements PluginInterceptorTask<PublishOutboundInputImpl, PublishOutboundOutputImpl> {
 
         private final @NotNull PublishOutboundInterceptor interceptor;
         private final @NotNull String pluginId;
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.handler;
+
+import com.google.common.collect.ImmutableMap;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
+import com.hivemq.extensions.interceptor.publish.parameter.PublishOutboundReadOnlyInputImpl;
+import com.hivemq.extensions.services.interceptor.Interceptors;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.util.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+
+/**
+ * Calls the read-only publish outbound interceptors once per PUBLISH before it is distributed to its subscribers.
+ * <p>
+ * The interceptors can neither modify nor prevent the PUBLISH, so they are called inline by the distributing thread
+ * instead of going through the extension task executors, and no output or async handling is needed.
+ */
+@Singleton
+public class PublishOutboundReadOnlyInterceptorHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(PublishOutboundReadOnlyInterceptorHandler.class);
+
+    private final @NotNull Interceptors interceptors;
+
+    @Inject
+    public PublishOutboundReadOnlyInterceptorHandler(@NotNull final Interceptors interceptors) {
+        this.interceptors = interceptors;
+    }
+
+    /**
+     * @param publish           the PUBLISH that is distributed
+     * @param sender            the client id of the sender or null if the PUBLISH was not sent by a client
+     * @param subscriptionCount the amount of subscriptions that match the topic of the PUBLISH
+     */
+    public void interceptOutboundPublish(@NotNull final PUBLISH publish, @Nullable final String sender, final int subscriptionCount) {
+
+        final ImmutableMap<String, PublishOutboundReadOnlyInterceptor> readOnlyInterceptors =
+                interceptors.publishOutboundReadOnlyInterceptors();
+        if (readOnlyInterceptors.isEmpty()) {
+            return;
+        }
+
+        final PublishOutboundReadOnlyInputImpl input = new PublishOutboundReadOnlyInputImpl(publish, sender, subscriptionCount);
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try {
+            for (final Map.Entry<String, PublishOutboundReadOnlyInterceptor> entry : readOnlyInterceptors.entrySet()) {
+                final PublishOutboundReadOnlyInterceptor interceptor = entry.getValue();
+                thread.setContextClassLoader(interceptor.getClass().getClassLoader());
+                try {
+                    interceptor.onOutboundPublish(input);
+                } catch (final Throwable e) {
+                    log.warn("Uncaught exception was thrown from extension with id \"{}\" on read-only outbound publish interception. " +
+                            "Extensions are responsible on their own to handle exceptions.", entry.getKey());
+                    Exceptions.rethrowError(e);
+                }
+            }
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+}
@@ -25,8 +25,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.pubrec.PubrecInboundInputImpl;
 import com.hivemq.extensions.interceptor.pubrec.PubrecInboundOutputImpl;
 import com.hivemq.extensions.interceptor.pubrec.PubrecOutboundInputImpl;
@@ -226,7 +226,7 @@ public class PubrecInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubrecInboundInterceptorTask
-            implements PluginInOutTask<PubrecInboundInputImpl, PubrecInboundOutputImpl> {
+            implements PluginInterceptorTask<PubrecInboundInputImpl, PubrecInboundOutputImpl> {
 
         private final @NotNull PubrecInboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -306,7 +306,7 @@ public class PubrecInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubrecOutboundInterceptorTask
-            implements PluginInOutTask<PubrecOutboundInputImpl, PubrecOutboundOutputImpl> {
+            implements PluginInterceptorTask<PubrecOutboundInputImpl, PubrecOutboundOutputImpl> {
 
         private final @NotNull PubrecOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
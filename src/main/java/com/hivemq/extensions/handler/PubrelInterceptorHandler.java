@@ -25,8 +25,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.pubrel.PubrelInboundInputImpl;
 import com.hivemq.extensions.interceptor.pubrel.PubrelInboundOutputImpl;
 import com.hivemq.extensions.interceptor.pubrel.PubrelOutboundInputImpl;
@@ -225,7 +225,7 @@ public class PubrelInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubrelInboundInterceptorTask
-            implements PluginInOutTask<PubrelInboundInputImpl, PubrelInboundOutputImpl> {
+            implements PluginInterceptorTask<PubrelInboundInputImpl, PubrelInboundOutputImpl> {
 
         private final @NotNull PubrelInboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -305,7 +305,7 @@ public class PubrelInterceptorHandler extends ChannelDuplexHandler {
     }
 
     private static class PubrelOutboundInterceptorTask
-            implements PluginInOutTask<PubrelOutboundInputImpl, PubrelOutboundOutputImpl> {
+            implements PluginInterceptorTask<PubrelOutboundInputImpl, PubrelOutboundOutputImpl> {
 
         private final @NotNull PubrelOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
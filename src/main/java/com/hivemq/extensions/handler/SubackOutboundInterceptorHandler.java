@@ -24,8 +24,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.suback.parameter.SubackOutboundInputImpl;
 import com.hivemq.extensions.interceptor.suback.parameter.SubackOutboundOutputImpl;
 import com.hivemq.mqtt.message.suback.SUBACK;
@@ -170,7 +170,7 @@ public class SubackOutboundInterceptorHandler extends ChannelOutboundHandlerAdap
     }
 
     private static class SubackOutboundInterceptorTask
-            implements PluginInOutTask<SubackOutboundInputImpl, SubackOutboundOutputImpl> {
+            implements PluginInterceptorTask<SubackOutboundInputImpl, SubackOutboundOutputImpl> {
 
         private final @NotNull SubackOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
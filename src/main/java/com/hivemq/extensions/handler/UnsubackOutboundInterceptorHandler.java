@@ -24,8 +24,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.unsuback.parameter.UnsubackOutboundInputImpl;
 import com.hivemq.extensions.interceptor.unsuback.parameter.UnsubackOutboundOutputImpl;
 import com.hivemq.mqtt.message.unsuback.UNSUBACK;
@@ -171,7 +171,7 @@ public class UnsubackOutboundInterceptorHandler extends ChannelOutboundHandlerAd
     }
 
     private static class UnsubackOutboundInterceptorTask
-            implements PluginInOutTask<UnsubackOutboundInputImpl, UnsubackOutboundOutputImpl> {
+            implements PluginInterceptorTask<UnsubackOutboundInputImpl, UnsubackOutboundOutputImpl> {
 
         private final @NotNull UnsubackOutboundInterceptor interceptor;
         private final @NotNull String extensionId;
@@ -27,8 +27,8 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.client.ClientContextImpl;
 import com.hivemq.extensions.executor.PluginOutPutAsyncer;
 import com.hivemq.extensions.executor.PluginTaskExecutorService;
-import com.hivemq.extensions.executor.task.PluginInOutTask;
 import com.hivemq.extensions.executor.task.PluginInOutTaskContext;
+import com.hivemq.extensions.executor.task.PluginInterceptorTask;
 import com.hivemq.extensions.interceptor.unsubscribe.parameter.UnsubscribeInboundInputImpl;
 import com.hivemq.extensions.interceptor.unsubscribe.parameter.UnsubscribeInboundOutputImpl;
 import com.hivemq.extensions.packets.unsubscribe.ModifiableUnsubscribePacketImpl;
@@ -191,7 +191,7 @@ public class UnsubscribeInboundInterceptorHandler extends ChannelInboundHandlerA
     }
 
     private static class UnsubscribeInboundInterceptorTask
-            implements PluginInOutTask<UnsubscribeInboundInputImpl, UnsubscribeInboundOutputImpl> {
+            implements PluginInterceptorTask<UnsubscribeInboundInputImpl, UnsubscribeInboundOutputImpl> {
 
         private final @NotNull UnsubscribeInboundInterceptor interceptor;
         private final @NotNull String extensionId;
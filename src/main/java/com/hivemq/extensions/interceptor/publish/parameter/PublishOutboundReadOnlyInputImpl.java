@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.interceptor.publish.parameter;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundReadOnlyInput;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import com.hivemq.extensions.packets.publish.PublishPacketImpl;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+
+import java.util.Optional;
+
+/**
+ * The input is only used by the thread that distributes the PUBLISH, so the packet view is created lazily without
+ * synchronization.
+ *
+ * @since 4.2.0
+ */
+public class PublishOutboundReadOnlyInputImpl implements PublishOutboundReadOnlyInput {
+
+    private final @NotNull PUBLISH publish;
+    private final @Nullable String sender;
+    private final int subscriptionCount;
+
+    private @Nullable PublishPacket publishPacket;
+
+    public PublishOutboundReadOnlyInputImpl(final @NotNull PUBLISH publish,
+                                            final @Nullable String sender,
+                                            final int subscriptionCount) {
+        this.publish = publish;
+        this.sender = sender;
+        this.subscriptionCount = subscriptionCount;
+    }
+
+    @NotNull
+    @Override
+    public PublishPacket getPublishPacket() {
+        if (publishPacket == null) {
+            publishPacket = new PublishPacketImpl(publish);
+        }
+        return publishPacket;
+    }
+
+    @NotNull
+    @Override
+    public Optional<String> getSenderClientId() {
+        return Optional.ofNullable(sender);
+    }
+
+    @Override
+    public int getSubscriptionCount() {
+        return subscriptionCount;
+    }
+}
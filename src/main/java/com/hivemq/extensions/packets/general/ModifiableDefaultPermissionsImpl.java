@@ -23,12 +23,15 @@ import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
 import com.hivemq.extension.sdk.api.packets.auth.DefaultAuthorizationBehaviour;
 import com.hivemq.extension.sdk.api.packets.auth.ModifiableDefaultPermissions;
 import com.hivemq.extension.sdk.api.services.exception.DoNotImplementException;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extensions.auth.parameter.TopicPermissionImpl;
+import com.hivemq.mqtt.handler.publish.DefaultPermissionsIndex;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -43,6 +46,10 @@ public class ModifiableDefaultPermissionsImpl implements ModifiableDefaultPermis
 
     private final AtomicBoolean defaultAuthorizationBehaviourOverridden = new AtomicBoolean(false);
 
+    //incremented on every change, so a stale index is never used
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile DefaultPermissionsIndex index;
+
     @Override
     public @NotNull List<TopicPermission> asList() {
         return ImmutableList.copyOf(topicPermissions);
@@ -59,6 +66,7 @@ public class ModifiableDefaultPermissionsImpl implements ModifiableDefaultPermis
         }
 
         topicPermissions.add(permission);
+        version.incrementAndGet();
     }
 
     @Override
@@ -77,6 +85,7 @@ public class ModifiableDefaultPermissionsImpl implements ModifiableDefaultPermis
         }
 
         topicPermissions.addAll(permissions);
+        version.incrementAndGet();
     }
 
     @Override
@@ -86,11 +95,13 @@ public class ModifiableDefaultPermissionsImpl implements ModifiableDefaultPermis
             throw new DoNotImplementException("Topic permission must be created with Builders.topicPermission()");
         }
         topicPermissions.remove(permission);
+        version.incrementAndGet();
     }
 
     @Override
     public void clear() {
         topicPermissions.clear();
+        version.incrementAndGet();
     }
 
     @Override
@@ -103,9 +114,26 @@ public class ModifiableDefaultPermissionsImpl implements ModifiableDefaultPermis
         Preconditions.checkNotNull(defaultBehaviour, "Default behaviour cannot be null");
         defaultAuthorizationBehaviourOverridden.set(true);
         defaultAuthorizationBehaviour.set(defaultBehaviour);
+        version.incrementAndGet();
     }
 
     public boolean isDefaultAuthorizationBehaviourOverridden() {
         return defaultAuthorizationBehaviourOverridden.get();
     }
+
+    /**
+     * @return the permissions compiled for the {@link com.hivemq.mqtt.handler.publish.DefaultPermissionsEvaluator},
+     * the index is built again after the permissions were changed.
+     */
+    public @NotNull DefaultPermissionsIndex getIndex() {
+        final DefaultPermissionsIndex current = index;
+        final int currentVersion = version.get();
+        if (current != null && current.getVersion() == currentVersion) {
+            return current;
+        }
+        final DefaultPermissionsIndex newIndex = new DefaultPermissionsIndex(currentVersion, ImmutableList.copyOf(topicPermissions),
+                defaultAuthorizationBehaviour.get(), InternalConfigurations.DEFAULT_PERMISSIONS_DECISION_CACHE_SIZE.get());
+        index = newIndex;
+        return newIndex;
+    }
 }
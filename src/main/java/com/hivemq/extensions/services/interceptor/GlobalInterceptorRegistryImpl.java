@@ -19,6 +19,7 @@ import com.google.common.base.Preconditions;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundInterceptorProvider;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
 import com.hivemq.extension.sdk.api.services.interceptor.GlobalInterceptorRegistry;
 
 import javax.inject.Inject;
@@ -48,4 +49,10 @@ public class GlobalInterceptorRegistryImpl implements GlobalInterceptorRegistry
         Preconditions.checkNotNull(provider, "Connack outbound interceptor provider must never be null");
         interceptors.addConnackOutboundInterceptorProvider(provider);
     }
+
+    @Override
+    public void setPublishOutboundReadOnlyInterceptor(@NotNull final PublishOutboundReadOnlyInterceptor interceptor) {
+        Preconditions.checkNotNull(interceptor, "Publish outbound read-only interceptor must never be null");
+        interceptors.addPublishOutboundReadOnlyInterceptor(interceptor);
+    }
 }
@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableMap;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundInterceptorProvider;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
 
 /**
  * @author Lukas Brandl
@@ -58,4 +59,23 @@ public interface Interceptors {
      */
     @NotNull
     ImmutableMap<String, ConnackOutboundInterceptorProvider> connackOutboundInterceptorProviders();
+
+    /**
+     * Add a read-only publish outbound interceptor to the read-only publish outbound interceptor map
+     * If there is already an interceptor of the same extension present, it will be overwritten
+     *
+     * @param interceptor to be added
+     */
+    void addPublishOutboundReadOnlyInterceptor(@NotNull PublishOutboundReadOnlyInterceptor interceptor);
+
+    /**
+     * Get a map of read-only publish outbound interceptors (value) mapped by the id of the plugin which added the
+     * interceptor (key)
+     * <p>
+     * This method is called for every PUBLISH and therefore does not lock or copy.
+     *
+     * @return An immutable snapshot of the read-only publish outbound interceptors
+     */
+    @NotNull
+    ImmutableMap<String, PublishOutboundReadOnlyInterceptor> publishOutboundReadOnlyInterceptors();
 }
@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableMap;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundInterceptorProvider;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
 import com.hivemq.extensions.HiveMQExtension;
 import com.hivemq.extensions.HiveMQExtensions;
 import com.hivemq.extensions.PluginPriorityComparator;
@@ -43,6 +44,15 @@ public class InterceptorsImpl implements Interceptors {
     @NotNull
     private final Map<@NotNull String, @NotNull ConnackOutboundInterceptorProvider> connackOutboundInterceptorProviderMap;
 
+    @NotNull
+    private final Map<@NotNull String, @NotNull PublishOutboundReadOnlyInterceptor> publishOutboundReadOnlyInterceptorMap;
+
+    /**
+     * Snapshot of the read-only publish outbound interceptor map, which is read for every PUBLISH without locking.
+     */
+    @NotNull
+    private volatile ImmutableMap<String, PublishOutboundReadOnlyInterceptor> publishOutboundReadOnlyInterceptors = ImmutableMap.of();
+
     @NotNull
     private final HiveMQExtensions hiveMQExtensions;
 
@@ -55,6 +65,7 @@ public class InterceptorsImpl implements Interceptors {
         final PluginPriorityComparator pluginPriorityComparator = new PluginPriorityComparator(hiveMQExtensions);
         this.connectInboundInterceptorProviderMap = new TreeMap<>(pluginPriorityComparator);
         this.connackOutboundInterceptorProviderMap = new TreeMap<>(pluginPriorityComparator);
+        this.publishOutboundReadOnlyInterceptorMap = new TreeMap<>(pluginPriorityComparator);
         this.readWriteLock = new ReentrantReadWriteLock();
         hiveMQExtensions.addAfterExtensionStopCallback(hiveMQExtension -> {
             final IsolatedPluginClassloader pluginClassloader = hiveMQExtension.getPluginClassloader();
@@ -134,6 +145,34 @@ public class InterceptorsImpl implements Interceptors {
         }
     }
 
+    @Override
+    public void addPublishOutboundReadOnlyInterceptor(final @NotNull PublishOutboundReadOnlyInterceptor interceptor) {
+        final Lock writeLock = readWriteLock.writeLock();
+
+        writeLock.lock();
+
+        try {
+
+            final IsolatedPluginClassloader pluginClassloader =
+                    (IsolatedPluginClassloader) interceptor.getClass().getClassLoader();
+
+            final HiveMQExtension plugin = hiveMQExtensions.getExtensionForClassloader(pluginClassloader);
+
+            if (plugin != null) {
+                publishOutboundReadOnlyInterceptorMap.put(plugin.getId(), interceptor);
+                publishOutboundReadOnlyInterceptors = ImmutableMap.copyOf(publishOutboundReadOnlyInterceptorMap);
+            }
+
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public @NotNull ImmutableMap<String, PublishOutboundReadOnlyInterceptor> publishOutboundReadOnlyInterceptors() {
+        return publishOutboundReadOnlyInterceptors;
+    }
+
     private void removeInterceptors(@NotNull final String pluginId) {
 
         final Lock writeLock = readWriteLock.writeLock();
@@ -142,6 +181,9 @@ public class InterceptorsImpl implements Interceptors {
         try {
             connectInboundInterceptorProviderMap.remove(pluginId);
             connackOutboundInterceptorProviderMap.remove(pluginId);
+            if (publishOutboundReadOnlyInterceptorMap.remove(pluginId) != null) {
+                publishOutboundReadOnlyInterceptors = ImmutableMap.copyOf(publishOutboundReadOnlyInterceptorMap);
+            }
         } finally {
             writeLock.unlock();
         }
@@ -18,6 +18,8 @@ package com.hivemq.metrics;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
 
 /**
  * This class holds a constant {@link HiveMQMetric} for every metric which is provided by HiveMQ
@@ -133,5 +135,56 @@ public class HiveMQMetrics {
      */
     public static final HiveMQMetric<Gauge<Number>> CLIENT_SESSIONS_CURRENT =
             HiveMQMetric.gaugeValue("com.hivemq.sessions.overall.current");
-}
 
+    /**
+     * represents a {@link Counter}, which is increased every time the subscribers of a topic are served from the
+     * subscriber cache of the topic tree
+     *
+     * @since 2019.2
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_SUBSCRIBER_CACHE_HIT_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.subscriber-cache.hit.count", Counter.class);
+
+    /**
+     * represents a {@link Counter}, which is increased every time the subscribers of a topic are not found in the
+     * subscriber cache of the topic tree
+     *
+     * @since 2019.2
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_SUBSCRIBER_CACHE_MISS_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.subscriber-cache.miss.count", Counter.class);
+
+    /**
+     * represents a {@link Gauge}, which holds the current amount of extension tasks that are queued or running
+     *
+     * @since 2019.2
+     */
+    public static final HiveMQMetric<Gauge<Number>> EXTENSION_TASK_QUEUE_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.extension.task-executors.queued-tasks.current");
+
+    /**
+     * represents a {@link Timer}, which measures the time an extension task waits in its queue until it is executed
+     *
+     * @since 2019.2
+     */
+    public static final HiveMQMetric<Timer> EXTENSION_TASK_QUEUE_LATENCY =
+            HiveMQMetric.valueOf("com.hivemq.extension.task-executors.queue-latency", Timer.class);
+
+    /**
+     * represents a {@link Histogram}, which measures how many keepalive, connect and TLS handshake timeouts are due
+     * per tick of the idle timeout wheels
+     *
+     * @since 2019.2
+     */
+    public static final HiveMQMetric<Histogram> IDLE_TIMEOUTS_DUE_PER_TICK =
+            HiveMQMetric.valueOf("com.hivemq.networking.idle-timeouts.due-per-tick", Histogram.class);
+
+    /**
+     * represents a {@link Counter}, which counts every keepalive, connect and TLS handshake timeout that expired
+     * without a read on the channel
+     *
+     * @since 2019.2
+     */
+    public static final HiveMQMetric<Counter> IDLE_TIMEOUTS_EXPIRED_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.networking.idle-timeouts.expired.count", Counter.class);
+}
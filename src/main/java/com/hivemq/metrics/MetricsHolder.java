@@ -46,6 +46,9 @@ public class MetricsHolder {
 
     private final @NotNull Counter closedConnectionsCounter;
 
+    private final @NotNull Counter topicTreeSubscriberCacheHitCounter;
+    private final @NotNull Counter topicTreeSubscriberCacheMissCounter;
+
     public MetricsHolder(final MetricRegistry metricRegistry) {
 
         this.metricRegistry = metricRegistry;
@@ -63,6 +66,9 @@ public class MetricsHolder {
         closedConnectionsCounter = metricRegistry.counter(CONNECTIONS_CLOSED_COUNT.name());
 
         subscriptionCounter = metricRegistry.counter(SUBSCRIPTIONS_CURRENT.name());
+
+        topicTreeSubscriberCacheHitCounter = metricRegistry.counter(TOPIC_TREE_SUBSCRIBER_CACHE_HIT_COUNT.name());
+        topicTreeSubscriberCacheMissCounter = metricRegistry.counter(TOPIC_TREE_SUBSCRIBER_CACHE_MISS_COUNT.name());
     }
 
     public @NotNull MetricRegistry getMetricRegistry() {
@@ -100,4 +106,12 @@ public class MetricsHolder {
     public @NotNull Counter getClosedConnectionsCounter() {
         return closedConnectionsCounter;
     }
+
+    public @NotNull Counter getTopicTreeSubscriberCacheHitCounter() {
+        return topicTreeSubscriberCacheHitCounter;
+    }
+
+    public @NotNull Counter getTopicTreeSubscriberCacheMissCounter() {
+        return topicTreeSubscriberCacheMissCounter;
+    }
 }
@@ -26,7 +26,10 @@ public enum MigrationUnit {
 
     // As the MigrationUnit enum is used in a TreeSet the order of declaration is the order of persistence migration
     FILE_PERSISTENCE_PUBLISH_PAYLOAD("publish payload file persistence"),
-    FILE_PERSISTENCE_RETAINED_MESSAGES("retained message file persistence");
+    FILE_PERSISTENCE_RETAINED_MESSAGES("retained message file persistence"),
+    FILE_PERSISTENCE_CLIENT_SESSIONS("client session file persistence"),
+    FILE_PERSISTENCE_SUBSCRIPTIONS("subscription file persistence"),
+    FILE_PERSISTENCE_CLIENT_QUEUES("client queue file persistence");
 
     private final @NotNull String description;
 
@@ -19,12 +19,16 @@ package com.hivemq.migration;
 import com.google.common.base.Preconditions;
 import com.google.inject.Injector;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.configuration.info.SystemInformation;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.migration.meta.MetaFileService;
 import com.hivemq.migration.meta.MetaInformation;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.migration.persistence.PersistenceMigrator;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadLocalPersistence;
 import com.hivemq.persistence.retained.RetainedMessageLocalPersistence;
 import com.hivemq.util.LocalPersistenceFileUtil;
@@ -75,24 +79,40 @@ public class Migrations {
 
         final PersistenceType previousRetainedType;
         final PersistenceType previousPayloadType;
+        final PersistenceType previousClientSessionType;
+        final PersistenceType previousSubscriptionType;
+        final PersistenceType previousQueuedMessagesType;
         if (!metaInformation.isMetaFilePresent()) {
             log.trace("No meta file present, assuming HiveMQ version 2019.1 => Migration needed.");
             MIGRATION_LOGGER.info("No meta file present, assuming HiveMQ version 2019.1 => Migration needed.");
             previousPayloadType = PersistenceType.FILE;
             previousRetainedType = PersistenceType.FILE;
+            previousClientSessionType = PersistenceType.FILE;
+            previousSubscriptionType = PersistenceType.FILE;
+            previousQueuedMessagesType = PersistenceType.FILE;
             final MetaInformation newMetaInformation = new MetaInformation();
             newMetaInformation.setPublishPayloadPersistenceType(previousPayloadType);
             newMetaInformation.setRetainedMessagesPersistenceType(previousRetainedType);
+            newMetaInformation.setClientSessionPersistenceType(previousClientSessionType);
+            newMetaInformation.setSubscriptionPersistenceType(previousSubscriptionType);
+            newMetaInformation.setQueuedMessagesPersistenceType(previousQueuedMessagesType);
             MetaFileService.writeMetaFile(systemInformation, newMetaInformation);
         } else {
             Preconditions.checkNotNull(metaInformation.getRetainedMessagesPersistenceType());
             Preconditions.checkNotNull(metaInformation.getPublishPayloadPersistenceType());
             previousRetainedType = metaInformation.getRetainedMessagesPersistenceType();
             previousPayloadType = metaInformation.getPublishPayloadPersistenceType();
+            // meta files of previous versions contain no type for these persistences, they were always Xodus based
+            previousClientSessionType = fileIfAbsent(metaInformation.getClientSessionPersistenceType());
+            previousSubscriptionType = fileIfAbsent(metaInformation.getSubscriptionPersistenceType());
+            previousQueuedMessagesType = fileIfAbsent(metaInformation.getQueuedMessagesPersistenceType());
         }
 
         final PersistenceType currentRetainedType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
         final PersistenceType currentPayloadType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
+        final PersistenceType currentClientSessionType = InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get();
+        final PersistenceType currentSubscriptionType = InternalConfigurations.SUBSCRIPTION_PERSISTENCE_TYPE.get();
+        final PersistenceType currentQueuedMessagesType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
 
         final Map<MigrationUnit, PersistenceType> neededMigrations = new EnumMap<>(MigrationUnit.class);
 
@@ -102,6 +122,15 @@ public class Migrations {
         if (!previousRetainedType.equals(currentRetainedType) && isPreviousPersistenceExistent(systemInformation, RetainedMessageLocalPersistence.PERSISTENCE_NAME)) {
             neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_RETAINED_MESSAGES, currentRetainedType);
         }
+        if (!previousClientSessionType.equals(currentClientSessionType) && isPreviousPersistenceExistent(systemInformation, ClientSessionLocalPersistence.PERSISTENCE_NAME)) {
+            neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_CLIENT_SESSIONS, currentClientSessionType);
+        }
+        if (!previousSubscriptionType.equals(currentSubscriptionType) && isPreviousPersistenceExistent(systemInformation, ClientSessionSubscriptionLocalPersistence.PERSISTENCE_NAME)) {
+            neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_SUBSCRIPTIONS, currentSubscriptionType);
+        }
+        if (!previousQueuedMessagesType.equals(currentQueuedMessagesType) && isPreviousPersistenceExistent(systemInformation, ClientQueueLocalPersistence.PERSISTENCE_NAME)) {
+            neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_CLIENT_QUEUES, currentQueuedMessagesType);
+        }
 
         if (neededMigrations.isEmpty()) {
             MIGRATION_LOGGER.info("Nothing to migrate found.");
@@ -112,6 +141,11 @@ public class Migrations {
         return neededMigrations;
     }
 
+    @NotNull
+    private static PersistenceType fileIfAbsent(final @Nullable PersistenceType persistenceType) {
+        return persistenceType != null ? persistenceType : PersistenceType.FILE;
+    }
+
     private static boolean isPreviousPersistenceExistent(final @NotNull SystemInformation systemInformation, final @NotNull String persistence) {
         return new File(systemInformation.getDataFolder() + File.separator + LocalPersistenceFileUtil.PERSISTENCE_SUBFOLDER_NAME, persistence).exists();
     }
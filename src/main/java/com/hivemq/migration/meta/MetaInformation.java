@@ -34,6 +34,9 @@ public class MetaInformation {
 
     private @Nullable PersistenceType retainedMessagesPersistenceType = null;
     private @Nullable PersistenceType publishPayloadPersistenceType = null;
+    private @Nullable PersistenceType clientSessionPersistenceType = null;
+    private @Nullable PersistenceType subscriptionPersistenceType = null;
+    private @Nullable PersistenceType queuedMessagesPersistenceType = null;
 
     private boolean dataFolderPresent = false;
     private boolean persistenceFolderPresent = false;
@@ -136,6 +139,33 @@ public class MetaInformation {
         this.publishPayloadPersistenceType = publishPayloadPersistenceType;
     }
 
+    @Nullable
+    public PersistenceType getClientSessionPersistenceType() {
+        return clientSessionPersistenceType;
+    }
+
+    public void setClientSessionPersistenceType(final @Nullable PersistenceType clientSessionPersistenceType) {
+        this.clientSessionPersistenceType = clientSessionPersistenceType;
+    }
+
+    @Nullable
+    public PersistenceType getSubscriptionPersistenceType() {
+        return subscriptionPersistenceType;
+    }
+
+    public void setSubscriptionPersistenceType(final @Nullable PersistenceType subscriptionPersistenceType) {
+        this.subscriptionPersistenceType = subscriptionPersistenceType;
+    }
+
+    @Nullable
+    public PersistenceType getQueuedMessagesPersistenceType() {
+        return queuedMessagesPersistenceType;
+    }
+
+    public void setQueuedMessagesPersistenceType(final @Nullable PersistenceType queuedMessagesPersistenceType) {
+        this.queuedMessagesPersistenceType = queuedMessagesPersistenceType;
+    }
+
     @Override
     public String toString() {
         return "MetaInformation{" +
@@ -147,6 +177,9 @@ public class MetaInformation {
                 ", publishPayloadPersistenceVersion='" + publishPayloadPersistenceVersion + '\'' +
                 ", retainedMessagesPersistenceType='" + retainedMessagesPersistenceType + '\'' +
                 ", publishPayloadPersistenceType='" + publishPayloadPersistenceType + '\'' +
+                ", clientSessionPersistenceType='" + clientSessionPersistenceType + '\'' +
+                ", subscriptionPersistenceType='" + subscriptionPersistenceType + '\'' +
+                ", queuedMessagesPersistenceType='" + queuedMessagesPersistenceType + '\'' +
                 '}';
     }
 }
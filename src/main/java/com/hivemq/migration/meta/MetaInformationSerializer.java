@@ -51,6 +51,9 @@ public class MetaInformationSerializer {
                 (byte) metaInformation.getRetainedMessagesPersistenceType().ordinal() : -1;
         final byte publishPayloadPersistenceType = metaInformation.getPublishPayloadPersistenceType() != null ?
                 (byte) metaInformation.getPublishPayloadPersistenceType().ordinal() : -1;
+        final byte clientSessionPersistenceType = typeToByte(metaInformation.getClientSessionPersistenceType());
+        final byte subscriptionPersistenceType = typeToByte(metaInformation.getSubscriptionPersistenceType());
+        final byte queuedMessagesPersistenceType = typeToByte(metaInformation.getQueuedMessagesPersistenceType());
 
         final int bufferSize = 6 * 4 + //6 * int(4 byte) for byte[] length.
                 hivemqVersion.length +
@@ -59,7 +62,7 @@ public class MetaInformationSerializer {
                 subscriptionPersistenceVersion.length +
                 clientSessionPersistenceVersion.length +
                 queuedMessagesPersistenceVersion.length +
-                2; //types
+                5; //types
 
         final ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
 
@@ -72,10 +75,17 @@ public class MetaInformationSerializer {
 
         byteBuffer.put(retainedMessagesPersistenceType);
         byteBuffer.put(publishPayloadPersistenceType);
+        byteBuffer.put(clientSessionPersistenceType);
+        byteBuffer.put(subscriptionPersistenceType);
+        byteBuffer.put(queuedMessagesPersistenceType);
 
         return byteBuffer.array();
     }
 
+    private byte typeToByte(final @Nullable PersistenceType type) {
+        return type != null ? (byte) type.ordinal() : -1;
+    }
+
     private void putByteArray(final byte[] source, final @NotNull ByteBuffer destination) {
         if (source.length > 0) {
             destination.putInt(source.length);
@@ -99,6 +109,10 @@ public class MetaInformationSerializer {
 
         final PersistenceType retainedMessagePersistenceType = getTypeFromBuffer(metaFileAsByteBuffer);
         final PersistenceType publishPayloadPersistenceType = getTypeFromBuffer(metaFileAsByteBuffer);
+        //meta files written by previous versions end after the payload type
+        final PersistenceType clientSessionPersistenceType = getOptionalTypeFromBuffer(metaFileAsByteBuffer);
+        final PersistenceType subscriptionPersistenceType = getOptionalTypeFromBuffer(metaFileAsByteBuffer);
+        final PersistenceType queuedMessagesPersistenceType = getOptionalTypeFromBuffer(metaFileAsByteBuffer);
 
         final MetaInformation metaInformation = new MetaInformation();
 
@@ -111,6 +125,9 @@ public class MetaInformationSerializer {
 
         metaInformation.setRetainedMessagesPersistenceType(retainedMessagePersistenceType);
         metaInformation.setPublishPayloadPersistenceType(publishPayloadPersistenceType);
+        metaInformation.setClientSessionPersistenceType(clientSessionPersistenceType);
+        metaInformation.setSubscriptionPersistenceType(subscriptionPersistenceType);
+        metaInformation.setQueuedMessagesPersistenceType(queuedMessagesPersistenceType);
 
         //always true at this point
         metaInformation.setMetaFilePresent(true);
@@ -125,6 +142,14 @@ public class MetaInformationSerializer {
         return typeAsByte > -1 ? PersistenceType.forCode(typeAsByte) : null;
     }
 
+    @Nullable
+    private PersistenceType getOptionalTypeFromBuffer(final ByteBuffer metaFileAsByteBuffer) {
+        if (!metaFileAsByteBuffer.hasRemaining()) {
+            return null;
+        }
+        return getTypeFromBuffer(metaFileAsByteBuffer);
+    }
+
     @Nullable
     private String getStringFromBuffer(final ByteBuffer metaFileAsByteBuffer) {
         final int stringLength = metaFileAsByteBuffer.getInt();
@@ -22,6 +22,9 @@ import com.hivemq.migration.MigrationUnit;
 import com.hivemq.migration.Migrations;
 import com.hivemq.migration.TypeMigration;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.migration.persistence.local.ClientQueueTypeMigration;
+import com.hivemq.migration.persistence.local.ClientSessionTypeMigration;
+import com.hivemq.migration.persistence.local.SubscriptionTypeMigration;
 import com.hivemq.migration.persistence.payload.PublishPayloadTypeMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessageTypeMigration;
 import org.slf4j.Logger;
@@ -42,12 +45,21 @@ public class PersistenceMigrator {
 
     private final @NotNull Provider<PublishPayloadTypeMigration> publishPayloadMigrationProvider;
     private final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider;
+    private final @NotNull Provider<ClientSessionTypeMigration> clientSessionMigrationProvider;
+    private final @NotNull Provider<SubscriptionTypeMigration> subscriptionMigrationProvider;
+    private final @NotNull Provider<ClientQueueTypeMigration> clientQueueMigrationProvider;
 
     @Inject
     public PersistenceMigrator(final @NotNull Provider<PublishPayloadTypeMigration> publishPayloadMigrationProvider,
-                               final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider) {
+                               final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider,
+                               final @NotNull Provider<ClientSessionTypeMigration> clientSessionMigrationProvider,
+                               final @NotNull Provider<SubscriptionTypeMigration> subscriptionMigrationProvider,
+                               final @NotNull Provider<ClientQueueTypeMigration> clientQueueMigrationProvider) {
         this.publishPayloadMigrationProvider = publishPayloadMigrationProvider;
         this.retainedMessageMigrationProvider = retainedMessageMigrationProvider;
+        this.clientSessionMigrationProvider = clientSessionMigrationProvider;
+        this.subscriptionMigrationProvider = subscriptionMigrationProvider;
+        this.clientQueueMigrationProvider = clientQueueMigrationProvider;
     }
 
     public void migratePersistenceTypes(final Map<MigrationUnit, PersistenceType> migrations) {
@@ -70,6 +82,15 @@ public class PersistenceMigrator {
                 case FILE_PERSISTENCE_RETAINED_MESSAGES:
                     migrator = retainedMessageMigrationProvider.get();
                     break;
+                case FILE_PERSISTENCE_CLIENT_SESSIONS:
+                    migrator = clientSessionMigrationProvider.get();
+                    break;
+                case FILE_PERSISTENCE_SUBSCRIPTIONS:
+                    migrator = subscriptionMigrationProvider.get();
+                    break;
+                case FILE_PERSISTENCE_CLIENT_QUEUES:
+                    migrator = clientQueueMigrationProvider.get();
+                    break;
                 default:
                     continue;
             }
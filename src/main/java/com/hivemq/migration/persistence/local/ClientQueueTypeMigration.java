@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.migration.persistence.local;
+
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Migrates the client queue persistence between its Xodus and RocksDB implementation.
+ */
+public class ClientQueueTypeMigration extends SerializedEntryTypeMigration {
+
+    private final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider;
+    private final @NotNull Provider<ClientQueueRocksDBLocalPersistence> rocksDBLocalPersistenceProvider;
+
+    @Inject
+    public ClientQueueTypeMigration(final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider,
+            final @NotNull Provider<ClientQueueRocksDBLocalPersistence> rocksDBLocalPersistenceProvider,
+            final @NotNull SystemInformation systemInformation) {
+        super(localPersistenceFileUtil, systemInformation);
+        this.xodusLocalPersistenceProvider = xodusLocalPersistenceProvider;
+        this.rocksDBLocalPersistenceProvider = rocksDBLocalPersistenceProvider;
+    }
+
+    @NotNull
+    @Override
+    String getName() {
+        return ClientQueueLocalPersistence.PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    String getXodusVersion() {
+        return ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    String getRocksDBVersion() {
+        return ClientQueueRocksDBLocalPersistence.PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    SerializedEntryPersistence getXodusPersistence() {
+        return xodusLocalPersistenceProvider.get();
+    }
+
+    @NotNull
+    @Override
+    SerializedEntryPersistence getRocksDBPersistence() {
+        return rocksDBLocalPersistenceProvider.get();
+    }
+
+    @Override
+    void setPersistenceType(final @NotNull MetaInformation metaFile, final @NotNull PersistenceType type, final @NotNull String version) {
+        metaFile.setQueuedMessagesPersistenceType(type);
+        metaFile.setQueuedMessagesPersistenceVersion(version);
+    }
+}
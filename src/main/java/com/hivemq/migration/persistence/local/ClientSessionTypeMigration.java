@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.migration.persistence.local;
+
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Migrates the client session persistence between its Xodus and RocksDB implementation.
+ */
+public class ClientSessionTypeMigration extends SerializedEntryTypeMigration {
+
+    private final @NotNull Provider<ClientSessionXodusLocalPersistence> xodusLocalPersistenceProvider;
+    private final @NotNull Provider<ClientSessionRocksDBLocalPersistence> rocksDBLocalPersistenceProvider;
+
+    @Inject
+    public ClientSessionTypeMigration(final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull Provider<ClientSessionXodusLocalPersistence> xodusLocalPersistenceProvider,
+            final @NotNull Provider<ClientSessionRocksDBLocalPersistence> rocksDBLocalPersistenceProvider,
+            final @NotNull SystemInformation systemInformation) {
+        super(localPersistenceFileUtil, systemInformation);
+        this.xodusLocalPersistenceProvider = xodusLocalPersistenceProvider;
+        this.rocksDBLocalPersistenceProvider = rocksDBLocalPersistenceProvider;
+    }
+
+    @NotNull
+    @Override
+    String getName() {
+        return ClientSessionLocalPersistence.PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    String getXodusVersion() {
+        return ClientSessionXodusLocalPersistence.PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    String getRocksDBVersion() {
+        return ClientSessionRocksDBLocalPersistence.PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    SerializedEntryPersistence getXodusPersistence() {
+        return xodusLocalPersistenceProvider.get();
+    }
+
+    @NotNull
+    @Override
+    SerializedEntryPersistence getRocksDBPersistence() {
+        return rocksDBLocalPersistenceProvider.get();
+    }
+
+    @Override
+    void setPersistenceType(final @NotNull MetaInformation metaFile, final @NotNull PersistenceType type, final @NotNull String version) {
+        metaFile.setClientSessionPersistenceType(type);
+        metaFile.setClientSessionPersistenceVersion(version);
+    }
+}
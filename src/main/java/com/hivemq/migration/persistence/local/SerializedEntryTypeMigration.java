@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.migration.persistence.local;
+
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.Migrations;
+import com.hivemq.migration.TypeMigration;
+import com.hivemq.migration.meta.MetaFileService;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * Migrates a persistence between its Xodus ({@link PersistenceType#FILE}) and RocksDB
+ * ({@link PersistenceType#FILE_NATIVE}) implementation by copying the serialized entries.
+ */
+abstract class SerializedEntryTypeMigration implements TypeMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(SerializedEntryTypeMigration.class);
+    private static final Logger migrationLog = LoggerFactory.getLogger(Migrations.MIGRATION_LOGGER_NAME);
+
+    private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
+    private final @NotNull SystemInformation systemInformation;
+
+    SerializedEntryTypeMigration(final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+                                 final @NotNull SystemInformation systemInformation) {
+        this.localPersistenceFileUtil = localPersistenceFileUtil;
+        this.systemInformation = systemInformation;
+    }
+
+    @Override
+    public void migrateToType(final @NotNull PersistenceType type) {
+        if (type.equals(PersistenceType.FILE_NATIVE)) {
+            migrate(getXodusVersion(), PersistenceType.FILE_NATIVE);
+        } else if (type.equals(PersistenceType.FILE)) {
+            migrate(getRocksDBVersion(), PersistenceType.FILE);
+        } else {
+            throw new IllegalArgumentException("Unknown persistence type " + type + " for " + getName() + " migration");
+        }
+    }
+
+    private void migrate(final @NotNull String oldVersion, final @NotNull PersistenceType newType) {
+
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(getName(), oldVersion);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+
+        final SerializedEntryPersistence source;
+        final SerializedEntryPersistence target;
+        if (newType == PersistenceType.FILE_NATIVE) {
+            source = getXodusPersistence();
+            target = getRocksDBPersistence();
+        } else {
+            source = getRocksDBPersistence();
+            target = getXodusPersistence();
+        }
+
+        source.iterateSerialized(target::putSerialized);
+
+        savePersistenceType(newType);
+
+        source.stop();
+    }
+
+    private boolean oldFolderMissing(final @NotNull File persistenceFolder) {
+        // RocksDB persistences store all buckets in one instance without bucket suffix
+        if (!new File(persistenceFolder, getName() + "_0").exists() && !new File(persistenceFolder, getName()).exists()) {
+            migrationLog.info("No (old) persistence folder ({}) present, skipping migration.", getName());
+            log.debug("No (old) persistence folder ({}) present, skipping migration.", getName());
+            return true;
+        }
+        return false;
+    }
+
+    private void savePersistenceType(final @NotNull PersistenceType persistenceType) {
+        final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
+        setPersistenceType(metaFile, persistenceType, persistenceType == PersistenceType.FILE_NATIVE ? getRocksDBVersion() : getXodusVersion());
+        MetaFileService.writeMetaFile(systemInformation, metaFile);
+    }
+
+    @NotNull
+    abstract String getName();
+
+    @NotNull
+    abstract String getXodusVersion();
+
+    @NotNull
+    abstract String getRocksDBVersion();
+
+    @NotNull
+    abstract SerializedEntryPersistence getXodusPersistence();
+
+    @NotNull
+    abstract SerializedEntryPersistence getRocksDBPersistence();
+
+    abstract void setPersistenceType(@NotNull MetaInformation metaFile, @NotNull PersistenceType type, @NotNull String version);
+}
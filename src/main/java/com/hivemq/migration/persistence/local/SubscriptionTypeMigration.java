@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.migration.persistence.local;
+
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Migrates the subscription persistence between its Xodus and RocksDB implementation.
+ */
+public class SubscriptionTypeMigration extends SerializedEntryTypeMigration {
+
+    private final @NotNull Provider<ClientSessionSubscriptionXodusLocalPersistence> xodusLocalPersistenceProvider;
+    private final @NotNull Provider<ClientSessionSubscriptionRocksDBLocalPersistence> rocksDBLocalPersistenceProvider;
+
+    @Inject
+    public SubscriptionTypeMigration(final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull Provider<ClientSessionSubscriptionXodusLocalPersistence> xodusLocalPersistenceProvider,
+            final @NotNull Provider<ClientSessionSubscriptionRocksDBLocalPersistence> rocksDBLocalPersistenceProvider,
+            final @NotNull SystemInformation systemInformation) {
+        super(localPersistenceFileUtil, systemInformation);
+        this.xodusLocalPersistenceProvider = xodusLocalPersistenceProvider;
+        this.rocksDBLocalPersistenceProvider = rocksDBLocalPersistenceProvider;
+    }
+
+    @NotNull
+    @Override
+    String getName() {
+        return ClientSessionSubscriptionLocalPersistence.PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    String getXodusVersion() {
+        return ClientSessionSubscriptionXodusLocalPersistence.PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    String getRocksDBVersion() {
+        return ClientSessionSubscriptionRocksDBLocalPersistence.PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    SerializedEntryPersistence getXodusPersistence() {
+        return xodusLocalPersistenceProvider.get();
+    }
+
+    @NotNull
+    @Override
+    SerializedEntryPersistence getRocksDBPersistence() {
+        return rocksDBLocalPersistenceProvider.get();
+    }
+
+    @Override
+    void setPersistenceType(final @NotNull MetaInformation metaFile, final @NotNull PersistenceType type, final @NotNull String version) {
+        metaFile.setSubscriptionPersistenceType(type);
+        metaFile.setSubscriptionPersistenceVersion(version);
+    }
+}
@@ -61,7 +61,6 @@ import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.security.auth.ClientToken;
 import com.hivemq.util.*;
 import io.netty.channel.*;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -779,7 +778,8 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> impleme
             // The MQTT spec defines a 1.5 grace period
             final Double keepAliveValue = msg.getKeepAlive() * getGracePeriod();
             log.trace("Client specified a keepAlive value of {}s. The maximum timeout before disconnecting is {}s", msg.getKeepAlive(), keepAliveValue);
-            ctx.pipeline().addFirst(MQTT_KEEPALIVE_IDLE_NOTIFIER_HANDLER, new IdleStateHandler(keepAliveValue.intValue(), 0, 0, TimeUnit.SECONDS));
+            ctx.pipeline().addFirst(MQTT_KEEPALIVE_IDLE_NOTIFIER_HANDLER,
+                    new IdleTimeoutHandler(channelDependencies.getIdleTimeoutWheels(), keepAliveValue.intValue(), TimeUnit.SECONDS));
             ctx.pipeline().addAfter(MQTT_KEEPALIVE_IDLE_NOTIFIER_HANDLER, MQTT_KEEPALIVE_IDLE_HANDLER, new KeepAliveIdleHandler(eventLog));
         }
     }
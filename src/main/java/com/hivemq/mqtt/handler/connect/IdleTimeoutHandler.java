@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.connect;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Triggers an {@link IdleStateEvent} with the state {@link io.netty.handler.timeout.IdleState#READER_IDLE} when no
+ * data was read from the channel for the given timeout, like a Netty IdleStateHandler which only checks reads.
+ * <p>
+ * Instead of scheduling a task on the event loop for every channel, the timeout is kept in the shared
+ * {@link IdleTimeoutWheel} of the event loop. Reads only update the time of the last read, the timeout is moved when
+ * it comes due.
+ */
+public class IdleTimeoutHandler extends ChannelInboundHandlerAdapter implements IdleTimeoutWheel.Callback {
+
+    private final @NotNull IdleTimeoutWheels wheels;
+    private final long timeoutNanos;
+
+    private @Nullable ChannelHandlerContext ctx;
+    private @Nullable IdleTimeoutWheel wheel;
+    private @Nullable IdleTimeoutWheel.Timeout timeout;
+    private long lastReadTime;
+    private boolean reading;
+    private boolean firstEvent = true;
+    private boolean destroyed;
+
+    public IdleTimeoutHandler(@NotNull final IdleTimeoutWheels wheels, final long timeout, @NotNull final TimeUnit unit) {
+        this.wheels = wheels;
+        this.timeoutNanos = Math.max(unit.toNanos(timeout), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public long getTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+    }
+
+    @Override
+    public void handlerAdded(@NotNull final ChannelHandlerContext ctx) throws Exception {
+        final Channel channel = ctx.channel();
+        if (channel.isActive() && channel.isRegistered()) {
+            initialize(ctx);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(@NotNull final ChannelHandlerContext ctx) throws Exception {
+        destroy();
+    }
+
+    @Override
+    public void channelRegistered(@NotNull final ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isActive()) {
+            initialize(ctx);
+        }
+        super.channelRegistered(ctx);
+    }
+
+    @Override
+    public void channelActive(@NotNull final ChannelHandlerContext ctx) throws Exception {
+        initialize(ctx);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(@NotNull final ChannelHandlerContext ctx) throws Exception {
+        destroy();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(@NotNull final ChannelHandlerContext ctx, @NotNull final Object msg) throws Exception {
+        reading = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(@NotNull final ChannelHandlerContext ctx) throws Exception {
+        if (reading && wheel != null) {
+            lastReadTime = wheel.now();
+            reading = false;
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void expired(final long now) {
+        if (ctx == null || wheel == null || timeout == null) {
+            return;
+        }
+        long nextDelay = timeoutNanos;
+        if (!reading) {
+            nextDelay -= now - lastReadTime;
+        }
+        if (nextDelay > 0) {
+            //read in the meantime, wait for the rest of the timeout
+            wheel.schedule(timeout, now + nextDelay);
+            return;
+        }
+
+        wheel.schedule(timeout, now + timeoutNanos);
+        wheels.expired();
+        final IdleStateEvent event = firstEvent ? IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT : IdleStateEvent.READER_IDLE_STATE_EVENT;
+        firstEvent = false;
+        ctx.fireUserEventTriggered(event);
+    }
+
+    private void initialize(@NotNull final ChannelHandlerContext ctx) {
+        //initialize may be called more than once, e.g. for channelRegistered and channelActive
+        if (timeout != null || destroyed) {
+            return;
+        }
+        this.ctx = ctx;
+        wheel = wheels.get(ctx.channel().eventLoop());
+        timeout = new IdleTimeoutWheel.Timeout(this);
+        lastReadTime = wheel.now();
+        wheel.schedule(timeout, lastReadTime + timeoutNanos);
+    }
+
+    private void destroy() {
+        destroyed = true;
+        if (wheel != null && timeout != null) {
+            wheel.cancel(timeout);
+        }
+        timeout = null;
+    }
+}
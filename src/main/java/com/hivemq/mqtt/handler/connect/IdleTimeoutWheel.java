@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.connect;
+
+import com.codahale.metrics.Histogram;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel for the idle timeouts of the channels of one event loop.
+ * <p>
+ * Timeouts are kept in buckets by the tick of their deadline. While the wheel holds timeouts, the event loop runs one
+ * task per tick which expires all due timeouts of the elapsed buckets in one batch, instead of one scheduled task per
+ * channel. Timeouts which are not due yet stay in their bucket until the wheel comes around again.
+ * <p>
+ * All methods must be called from the event loop of the wheel.
+ */
+@NotThreadSafe
+public class IdleTimeoutWheel implements Runnable {
+
+    private final @NotNull EventLoop eventLoop;
+    private final @NotNull Ticker ticker;
+    private final @NotNull Histogram duePerTick;
+    private final long tickNanos;
+    private final long startNanos;
+
+    private final @NotNull Timeout[] buckets;
+    private final int mask;
+
+    private final @NotNull List<Timeout> due = new ArrayList<>();
+
+    private long currentTick;
+    private int size;
+    private @Nullable ScheduledFuture<?> tickFuture;
+
+    public IdleTimeoutWheel(@NotNull final EventLoop eventLoop, @NotNull final Ticker ticker, @NotNull final Histogram duePerTick,
+                            final long tickMillis, final int wheelSize) {
+        Preconditions.checkArgument(tickMillis > 0, "Tick duration must be positive");
+        Preconditions.checkArgument(wheelSize > 0 && Integer.bitCount(wheelSize) == 1, "Wheel size must be a power of two");
+        this.eventLoop = eventLoop;
+        this.ticker = ticker;
+        this.duePerTick = duePerTick;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = ticker.read();
+        this.buckets = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+    }
+
+    /**
+     * @return the current time of the wheel in nanoseconds
+     */
+    public long now() {
+        return ticker.read();
+    }
+
+    /**
+     * Schedule a timeout, a timeout that is already scheduled is moved to the new deadline.
+     *
+     * @param timeout  the timeout to schedule
+     * @param deadline the time at which the timeout expires in nanoseconds, see {@link #now()}
+     */
+    public void schedule(@NotNull final Timeout timeout, final long deadline) {
+        if (timeout.wheel != null) {
+            cancel(timeout);
+        }
+        if (tickFuture == null) {
+            currentTick = tick(now());
+            tickFuture = eventLoop.schedule(this, tickNanos, TimeUnit.NANOSECONDS);
+        }
+        //a deadline within the current tick is expired with the next tick
+        final long deadlineTick = Math.max(tick(deadline - 1) + 1, currentTick + 1);
+        final int bucket = (int) (deadlineTick & mask);
+
+        timeout.deadline = deadline;
+        timeout.bucket = bucket;
+        timeout.wheel = this;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (buckets[bucket] != null) {
+            buckets[bucket].prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    /**
+     * Remove a timeout from the wheel, nothing happens if it is not scheduled.
+     *
+     * @param timeout the timeout to remove
+     */
+    public void cancel(@NotNull final Timeout timeout) {
+        if (timeout.wheel != this) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.wheel = null;
+        size--;
+    }
+
+    /**
+     * Process all buckets since the last tick.
+     */
+    @Override
+    public void run() {
+        final long now = now();
+        final long targetTick = tick(now);
+        //a full revolution visits every bucket
+        final long firstTick = Math.max(currentTick + 1, targetTick - mask);
+
+        for (long tick = firstTick; tick <= targetTick; tick++) {
+            Timeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.deadline <= now) {
+                    cancel(timeout);
+                    due.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+
+        duePerTick.update(due.size());
+        try {
+            for (int i = 0; i < due.size(); i++) {
+                due.get(i).callback.expired(now);
+            }
+        } finally {
+            due.clear();
+            if (size > 0) {
+                tickFuture = eventLoop.schedule(this, tickNanos, TimeUnit.NANOSECONDS);
+            } else {
+                tickFuture = null;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private long tick(final long time) {
+        return (time - startNanos) / tickNanos;
+    }
+
+    /**
+     * The callback of a timeout that is called by the wheel when the timeout is due.
+     */
+    public interface Callback {
+
+        /**
+         * @param now the time of the tick in nanoseconds
+         */
+        void expired(long now);
+    }
+
+    /**
+     * A timeout that is linked into a bucket of a wheel, it can be scheduled again after it expired.
+     */
+    public static class Timeout {
+
+        private final @NotNull Callback callback;
+
+        private @Nullable IdleTimeoutWheel wheel;
+        private @Nullable Timeout prev;
+        private @Nullable Timeout next;
+        private long deadline;
+        private int bucket;
+
+        public Timeout(@NotNull final Callback callback) {
+            this.callback = callback;
+        }
+
+        public boolean isScheduled() {
+            return wheel != null;
+        }
+    }
+}
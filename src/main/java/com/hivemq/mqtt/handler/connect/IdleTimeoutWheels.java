@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.connect;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.google.common.base.Ticker;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.metrics.MetricsHolder;
+import io.netty.channel.EventLoop;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hivemq.configuration.service.InternalConfigurations.IDLE_TIMEOUT_WHEEL_SIZE;
+import static com.hivemq.configuration.service.InternalConfigurations.IDLE_TIMEOUT_WHEEL_TICK_MILLIS;
+
+/**
+ * Holds one {@link IdleTimeoutWheel} per event loop for the keepalive, connect and TLS handshake timeouts of all
+ * channels of the broker.
+ */
+@Singleton
+@ThreadSafe
+public class IdleTimeoutWheels {
+
+    private final @NotNull Map<EventLoop, IdleTimeoutWheel> wheels = new ConcurrentHashMap<>();
+
+    private final @NotNull Ticker ticker;
+    private final @NotNull Histogram duePerTick;
+    private final @NotNull Counter expiredCounter;
+
+    @Inject
+    public IdleTimeoutWheels(@NotNull final MetricsHolder metricsHolder) {
+        this(metricsHolder, Ticker.systemTicker());
+    }
+
+    IdleTimeoutWheels(@NotNull final MetricsHolder metricsHolder, @NotNull final Ticker ticker) {
+        this.ticker = ticker;
+        this.duePerTick = metricsHolder.getMetricRegistry().histogram(HiveMQMetrics.IDLE_TIMEOUTS_DUE_PER_TICK.name());
+        this.expiredCounter = metricsHolder.getMetricRegistry().counter(HiveMQMetrics.IDLE_TIMEOUTS_EXPIRED_COUNT.name());
+    }
+
+    /**
+     * @param eventLoop the event loop of a channel
+     * @return the wheel for the timeouts of all channels of the event loop
+     */
+    @NotNull
+    public IdleTimeoutWheel get(@NotNull final EventLoop eventLoop) {
+        final IdleTimeoutWheel wheel = wheels.get(eventLoop);
+        if (wheel != null) {
+            return wheel;
+        }
+        return wheels.computeIfAbsent(eventLoop, key -> new IdleTimeoutWheel(key, ticker, duePerTick,
+                IDLE_TIMEOUT_WHEEL_TICK_MILLIS.get(), IDLE_TIMEOUT_WHEEL_SIZE.get()));
+    }
+
+    /**
+     * Called when a channel was idle for longer than its timeout.
+     */
+    void expired() {
+        expiredCounter.inc();
+    }
+}
@@ -22,6 +22,7 @@ import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
 import com.hivemq.extension.sdk.api.packets.auth.DefaultAuthorizationBehaviour;
 import com.hivemq.extension.sdk.api.packets.auth.ModifiableDefaultPermissions;
 import com.hivemq.extensions.auth.parameter.InternalTopicPermission;
+import com.hivemq.extensions.packets.general.ModifiableDefaultPermissionsImpl;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.connect.MqttWillPublish;
 import com.hivemq.mqtt.message.publish.PUBLISH;
@@ -31,6 +32,7 @@ import com.hivemq.mqtt.topic.PermissionTopicMatcher;
 import com.hivemq.util.Topics;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.BitSet;
 import java.util.List;
 
 import static com.hivemq.persistence.clientsession.SharedSubscriptionServiceImpl.SharedSubscription;
@@ -58,6 +60,10 @@ public class DefaultPermissionsEvaluator {
             return false;
         }
 
+        if (permissions instanceof ModifiableDefaultPermissionsImpl) {
+            return checkPublish(((ModifiableDefaultPermissionsImpl) permissions).getIndex(), topic, qos, retain);
+        }
+
         final List<TopicPermission> topicPermissions = permissions.asList();
 
         if (topicPermissions.size() < 1) {
@@ -80,16 +86,55 @@ public class DefaultPermissionsEvaluator {
         return permissions.getDefaultBehaviour() == DefaultAuthorizationBehaviour.ALLOW;
     }
 
+    private static boolean checkPublish(@NotNull final DefaultPermissionsIndex index, @NotNull final String topic,
+                                        @NotNull final QoS qos, final boolean retain) {
+
+        final List<TopicPermission> topicPermissions = index.getPermissions();
+
+        if (topicPermissions.size() < 1) {
+            return index.getDefaultBehaviour() == DefaultAuthorizationBehaviour.ALLOW;
+        }
+
+        final Boolean cachedDecision = index.getPublishDecision(topic, qos, retain);
+        if (cachedDecision != null) {
+            return cachedDecision;
+        }
+
+        final String[] splitTopic = StringUtils.splitPreserveAllTokens(topic, "/");
+        final String stripedTopic;
+        if (topic.length() > 1) {
+            stripedTopic = StringUtils.stripEnd(topic, "/");
+        } else {
+            stripedTopic = topic;
+        }
+
+        boolean allowed = index.getDefaultBehaviour() == DefaultAuthorizationBehaviour.ALLOW;
+        final BitSet candidates = index.candidates(stripedTopic, splitTopic);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final TopicPermission topicPermission = topicPermissions.get(i);
+            if (implied(topicPermission, stripedTopic, splitTopic, qos, TopicPermission.MqttActivity.PUBLISH, retain)) {
+                allowed = topicPermission.getType() == TopicPermission.PermissionType.ALLOW;
+                break;
+            }
+        }
+
+        index.putPublishDecision(topic, qos, retain, allowed);
+        return allowed;
+    }
+
     public static boolean checkSubscription(@Nullable final ModifiableDefaultPermissions permissions, @NotNull final Topic subscription) {
         if (permissions == null) {
             //no permissions set -> default to ALLOW
             return true;
         }
 
-        final List<TopicPermission> topicPermissions = permissions.asList();
+        final DefaultPermissionsIndex index = permissions instanceof ModifiableDefaultPermissionsImpl ?
+                ((ModifiableDefaultPermissionsImpl) permissions).getIndex() : null;
+        final List<TopicPermission> topicPermissions = index != null ? index.getPermissions() : permissions.asList();
+        final DefaultAuthorizationBehaviour defaultBehaviour = index != null ? index.getDefaultBehaviour() : permissions.getDefaultBehaviour();
 
         if (topicPermissions.size() < 1) {
-            return permissions.getDefaultBehaviour() == DefaultAuthorizationBehaviour.ALLOW;
+            return defaultBehaviour == DefaultAuthorizationBehaviour.ALLOW;
         }
 
 
@@ -117,14 +162,25 @@ public class DefaultPermissionsEvaluator {
         } else {
             stripedTopic = topic;
         }
-        for (final TopicPermission topicPermission : permissions.asList()) {
+        if (index != null) {
+            final BitSet candidates = index.candidates(stripedTopic, splitTopic);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                final TopicPermission topicPermission = topicPermissions.get(i);
+                if (implied(topicPermission, stripedTopic, splitTopic, subscription.getQoS(), TopicPermission.MqttActivity.SUBSCRIBE, isShared, sharedGroup)) {
+                    return topicPermission.getType() == TopicPermission.PermissionType.ALLOW;
+                }
+            }
+            return defaultBehaviour == DefaultAuthorizationBehaviour.ALLOW;
+        }
+
+        for (final TopicPermission topicPermission : topicPermissions) {
 
             if (implied(topicPermission, stripedTopic, splitTopic, subscription.getQoS(), TopicPermission.MqttActivity.SUBSCRIBE, isShared, sharedGroup)) {
                 return topicPermission.getType() == TopicPermission.PermissionType.ALLOW;
             }
         }
 
-        return permissions.getDefaultBehaviour() == DefaultAuthorizationBehaviour.ALLOW;
+        return defaultBehaviour == DefaultAuthorizationBehaviour.ALLOW;
     }
 
     private static boolean implied(@NotNull final TopicPermission topicPermission, @NotNull final String stripedTopic,
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.publish;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.packets.auth.DefaultAuthorizationBehaviour;
+import com.hivemq.extensions.auth.parameter.InternalTopicPermission;
+import com.hivemq.mqtt.message.QoS;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of default permissions compiled for fast lookups by the {@link DefaultPermissionsEvaluator}.
+ * <p>
+ * Permissions without wildcards are indexed by their topic, permissions with wildcards in a trie of their topic
+ * levels. A lookup returns the candidates which may match a topic in their original order, the evaluator checks them
+ * in this order, so the first matching permission still decides.
+ * <p>
+ * The index also caches the latest publish decisions of the connection the permissions belong to.
+ */
+@ThreadSafe
+public class DefaultPermissionsIndex {
+
+    private final int version;
+    private final @NotNull ImmutableList<TopicPermission> permissions;
+    private final @NotNull DefaultAuthorizationBehaviour defaultBehaviour;
+
+    private final @NotNull Map<String, BitSet> exactPermissions = new HashMap<>();
+    private final @NotNull Node wildcardPermissions = new Node();
+    private final @NotNull BitSet unindexedPermissions = new BitSet();
+
+    private final @Nullable PublishDecisionCache publishDecisions;
+
+    public DefaultPermissionsIndex(final int version, @NotNull final ImmutableList<TopicPermission> permissions,
+                                   @NotNull final DefaultAuthorizationBehaviour defaultBehaviour, final int decisionCacheSize) {
+        this.version = version;
+        this.permissions = permissions;
+        this.defaultBehaviour = defaultBehaviour;
+        this.publishDecisions = decisionCacheSize > 0 ? new PublishDecisionCache(decisionCacheSize) : null;
+
+        for (int i = 0; i < permissions.size(); i++) {
+            final TopicPermission permission = permissions.get(i);
+            if (!(permission instanceof InternalTopicPermission)) {
+                unindexedPermissions.set(i);
+                continue;
+            }
+            final InternalTopicPermission internalPermission = (InternalTopicPermission) permission;
+            if (!internalPermission.containsWildcardCharacter()) {
+                exactPermissions.computeIfAbsent(StringUtils.stripEnd(permission.getTopicFilter(), "/"), key -> new BitSet())
+                        .set(i);
+            } else {
+                wildcardPermissions.add(internalPermission.getSplitTopic(), 0, i);
+            }
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    @NotNull
+    public ImmutableList<TopicPermission> getPermissions() {
+        return permissions;
+    }
+
+    @NotNull
+    public DefaultAuthorizationBehaviour getDefaultBehaviour() {
+        return defaultBehaviour;
+    }
+
+    /**
+     * @param stripedTopic the topic without trailing '/'
+     * @param splitTopic   the levels of the topic
+     * @return the indices of all permissions that may match the topic, permissions that are not in the set don't match
+     */
+    @NotNull
+    public BitSet candidates(@NotNull final String stripedTopic, @NotNull final String[] splitTopic) {
+        final BitSet candidates = (BitSet) unindexedPermissions.clone();
+        final BitSet exact = exactPermissions.get(stripedTopic);
+        if (exact != null) {
+            candidates.or(exact);
+        }
+        wildcardPermissions.collect(splitTopic, 0, candidates);
+        return candidates;
+    }
+
+    /**
+     * @return the cached decision for a publish or <code>null</code> if no decision is cached
+     */
+    @Nullable
+    public Boolean getPublishDecision(@NotNull final String topic, @NotNull final QoS qos, final boolean retain) {
+        return publishDecisions != null ? publishDecisions.get(topic, qos, retain) : null;
+    }
+
+    public void putPublishDecision(@NotNull final String topic, @NotNull final QoS qos, final boolean retain, final boolean allowed) {
+        if (publishDecisions != null) {
+            publishDecisions.put(topic, qos, retain, allowed);
+        }
+    }
+
+    private static class Node {
+
+        private @Nullable Map<String, Node> children;
+        private @Nullable Node singleLevelWildcard;
+        //permissions whose topic ends at this node or continues with a multi level wildcard
+        private @Nullable BitSet permissions;
+
+        private void add(@NotNull final String[] levels, final int depth, final int index) {
+            if (depth == levels.length || "#".equals(levels[depth])) {
+                if (permissions == null) {
+                    permissions = new BitSet();
+                }
+                permissions.set(index);
+                return;
+            }
+            final Node child;
+            if ("+".equals(levels[depth])) {
+                if (singleLevelWildcard == null) {
+                    singleLevelWildcard = new Node();
+                }
+                child = singleLevelWildcard;
+            } else {
+                if (children == null) {
+                    children = new HashMap<>();
+                }
+                child = children.computeIfAbsent(levels[depth], key -> new Node());
+            }
+            child.add(levels, depth + 1, index);
+        }
+
+        private void collect(@NotNull final String[] levels, final int depth, @NotNull final BitSet candidates) {
+            //a superset of the matching permissions is enough, they are checked by the evaluator
+            if (permissions != null) {
+                candidates.or(permissions);
+            }
+            if (depth == levels.length) {
+                return;
+            }
+            if (children != null) {
+                final Node child = children.get(levels[depth]);
+                if (child != null) {
+                    child.collect(levels, depth + 1, candidates);
+                }
+            }
+            if (singleLevelWildcard != null) {
+                singleLevelWildcard.collect(levels, depth + 1, candidates);
+            }
+        }
+    }
+
+    /**
+     * A small LRU map from topic to the decisions for all combinations of QoS and retain flag of a publish.
+     */
+    private static class PublishDecisionCache {
+
+        private static final int COMBINATIONS = 6;
+
+        private final @NotNull LinkedHashMap<String, Integer> decisions;
+
+        PublishDecisionCache(final int maxSize) {
+            decisions = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        @Nullable
+        synchronized Boolean get(@NotNull final String topic, @NotNull final QoS qos, final boolean retain) {
+            final Integer flags = decisions.get(topic);
+            if (flags == null) {
+                return null;
+            }
+            final int combination = combination(qos, retain);
+            if ((flags & (1 << combination)) == 0) {
+                return null;
+            }
+            return (flags & (1 << (combination + COMBINATIONS))) != 0;
+        }
+
+        synchronized void put(@NotNull final String topic, @NotNull final QoS qos, final boolean retain, final boolean allowed) {
+            final int combination = combination(qos, retain);
+            final Integer existing = decisions.get(topic);
+            int flags = existing != null ? existing : 0;
+            flags |= 1 << combination;
+            if (allowed) {
+                flags |= 1 << (combination + COMBINATIONS);
+            } else {
+                flags &= ~(1 << (combination + COMBINATIONS));
+            }
+            decisions.put(topic, flags);
+        }
+
+        private static int combination(@NotNull final QoS qos, final boolean retain) {
+            return qos.getQosNumber() * 2 + (retain ? 1 : 0);
+        }
+    }
+}
@@ -17,12 +17,15 @@
 package com.hivemq.mqtt.handler.publish.qos;
 
 import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.puback.PUBACK;
 import com.hivemq.mqtt.message.pubcomp.PUBCOMP;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
 import com.hivemq.persistence.qos.IncomingMessageFlowPersistence;
+import com.hivemq.persistence.qos.IncomingMessageFlowTable;
 import com.hivemq.util.ChannelAttributes;
 import io.netty.channel.*;
 import org.slf4j.Logger;
@@ -37,6 +40,10 @@ import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DIS
 
 /**
  * The Quality of service handler for incoming QoS message flows.
+ * <p>
+ * The flows of clients whose session expires on disconnect can never be resumed by another connection, so they are
+ * kept in a table of this channel and are dropped together with it. Only the flows of persistent sessions are stored
+ * in the {@link IncomingMessageFlowPersistence}.
  *
  * @author Dominik Obermaier
  */
@@ -50,6 +57,10 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
     private final IncomingMessageFlowPersistence persistence;
     private final Map<Integer, Boolean> qos1And2AlreadySentMap;
 
+    //the flows of a session that expires on disconnect, null for persistent sessions
+    private @Nullable IncomingMessageFlowTable channelFlows;
+    private boolean flowsResolved;
+
     @Inject
     QoSReceiverHandler(final IncomingMessageFlowPersistence persistence) {
         this.persistence = persistence;
@@ -78,8 +89,9 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
             final PUBACK puback = (PUBACK) msg;
             final String client = ctx.channel().attr(ChannelAttributes.CLIENT_ID).get();
             final int messageId = puback.getPacketIdentifier();
-            persistence.addOrReplace(client, messageId, puback);
-            promise.addListener(new PUBLISHFlowCompleteListener(messageId, client, qos1And2AlreadySentMap, persistence));
+            final IncomingMessageFlowTable flows = channelFlows(ctx);
+            addOrReplace(flows, client, messageId, puback);
+            promise.addListener(new PUBLISHFlowCompleteListener(messageId, client, qos1And2AlreadySentMap, persistence, flows));
         }
 
         super.write(ctx, msg, promise);
@@ -98,24 +110,26 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
                 UNACKNOWLEDGED_PUBLISHES_COUNTER.incrementAndGet();
                 final String client = ctx.channel().attr(ChannelAttributes.CLIENT_ID).get();
                 final int messageId = publish.getPacketIdentifier();
-                final MessageWithID savedMessage = persistence.get(client, messageId);
+                final IncomingMessageFlowTable flows = channelFlows(ctx);
+                final MessageWithID savedMessage = flows != null ? flows.get(messageId) : persistence.get(client, messageId);
 
                 //No PUBLISH message was found in persistence. This is the standard case since we don't know this message yet
                 if (!(savedMessage instanceof PUBLISH)) {
-                    firstPublishForMessageIdReceived(ctx, publish, client, messageId);
+                    firstPublishForMessageIdReceived(ctx, publish, client, messageId, flows);
                     //The publish was resent with the DUP flag
                 } else if (publish.isDuplicateDelivery()) {
                     resentWithDUPFlag(ctx, publish, client);
                     //The publish was resent without DUP flag!
                 } else {
-                    resentWithoutDUPFlag(ctx, publish, client);
+                    resentWithoutDUPFlag(ctx, publish, client, flows);
                 }
                 break;
         }
     }
 
-    private void firstPublishForMessageIdReceived(final ChannelHandlerContext ctx, final PUBLISH publish, final String client, final int messageId) throws Exception {
-        persistence.addOrReplace(client, messageId, publish);
+    private void firstPublishForMessageIdReceived(final ChannelHandlerContext ctx, final PUBLISH publish, final String client, final int messageId,
+                                                  final @Nullable IncomingMessageFlowTable flows) throws Exception {
+        addOrReplace(flows, client, messageId, publish);
         super.channelRead(ctx, publish);
         qos1And2AlreadySentMap.put(messageId, true);
         log.trace("Client {} sent a publish message with id {} which was not forwarded before. This message is processed normally", client, messageId);
@@ -133,10 +147,11 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
         qos1And2AlreadySentMap.put(publish.getPacketIdentifier(), true);
     }
 
-    private void resentWithoutDUPFlag(final ChannelHandlerContext ctx, final PUBLISH publish, final String client) throws Exception {
+    private void resentWithoutDUPFlag(final ChannelHandlerContext ctx, final PUBLISH publish, final String client,
+                                      final @Nullable IncomingMessageFlowTable flows) throws Exception {
         log.debug("Client {} sent a new PUBLISH with QoS {} and a message identifier which is already in process ({}) by another flow! Starting new flow",
                 client, publish.getQoS().getQosNumber(), publish.getPacketIdentifier());
-        persistence.addOrReplace(client, publish.getPacketIdentifier(), publish);
+        addOrReplace(flows, client, publish.getPacketIdentifier(), publish);
         super.channelRead(ctx, publish);
         qos1And2AlreadySentMap.put(publish.getPacketIdentifier(), true);
     }
@@ -146,9 +161,36 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
 
         final int messageId = pubrel.getPacketIdentifier();
 
-        persistence.addOrReplace(client, messageId, pubrel);
+        final IncomingMessageFlowTable flows = channelFlows(ctx);
+        addOrReplace(flows, client, messageId, pubrel);
         ctx.writeAndFlush(new PUBCOMP(messageId)).addListener(
-                new PUBLISHFlowCompleteListener(messageId, client, qos1And2AlreadySentMap, persistence));
+                new PUBLISHFlowCompleteListener(messageId, client, qos1And2AlreadySentMap, persistence, flows));
+    }
+
+    /**
+     * @return the table of this channel if the session of the client expires on disconnect, <code>null</code> if the
+     * flows must be stored in the persistence.
+     */
+    @Nullable
+    private IncomingMessageFlowTable channelFlows(final @NotNull ChannelHandlerContext ctx) {
+        if (!flowsResolved) {
+            //the session expiry is known since CONNECT and a session can't become persistent afterwards
+            final Long sessionExpiryInterval = ctx.channel().attr(ChannelAttributes.CLIENT_SESSION_EXPIRY_INTERVAL).get();
+            if (sessionExpiryInterval != null && sessionExpiryInterval == SESSION_EXPIRE_ON_DISCONNECT) {
+                channelFlows = new IncomingMessageFlowTable();
+            }
+            flowsResolved = true;
+        }
+        return channelFlows;
+    }
+
+    private void addOrReplace(final @Nullable IncomingMessageFlowTable flows, final @NotNull String client,
+                              final int messageId, final @NotNull MessageWithID message) {
+        if (flows != null) {
+            flows.put(messageId, message);
+        } else {
+            persistence.addOrReplace(client, messageId, message);
+        }
     }
 
 
@@ -161,8 +203,10 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
         if (sessionExpiryInterval != null && sessionExpiryInterval == SESSION_EXPIRE_ON_DISCONNECT) {
             final String clientId = ctx.channel().attr(ChannelAttributes.CLIENT_ID).get();
             if (clientId != null) {   //Just to be save. The client id should never be null, if the persistent session is not null.
+                //removes flows of a previous persistent session with the same client id
                 persistence.delete(clientId);
             }
+            channelFlows = null;
         }
         super.channelInactive(ctx);
     }
@@ -174,14 +218,17 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
         private final String client;
         private final Map<Integer, Boolean> qos1And2AlreadySentMap;
         private final IncomingMessageFlowPersistence persistence;
+        private final @Nullable IncomingMessageFlowTable flows;
 
         PUBLISHFlowCompleteListener(final int messageId, final String client,
                                     final Map<Integer, Boolean> qos1And2AlreadySentMap,
-                                    final IncomingMessageFlowPersistence persistence) {
+                                    final IncomingMessageFlowPersistence persistence,
+                                    final @Nullable IncomingMessageFlowTable flows) {
             this.messageId = messageId;
             this.client = client;
             this.qos1And2AlreadySentMap = qos1And2AlreadySentMap;
             this.persistence = persistence;
+            this.flows = flows;
         }
 
         @Override
@@ -189,7 +236,11 @@ public class QoSReceiverHandler extends ChannelDuplexHandler {
             if (future.isSuccess()) {
                 UNACKNOWLEDGED_PUBLISHES_COUNTER.decrementAndGet();
                 qos1And2AlreadySentMap.remove(messageId);
-                persistence.remove(client, messageId);
+                if (flows != null) {
+                    flows.remove(messageId);
+                } else {
+                    persistence.remove(client, messageId);
+                }
                 log.trace("Client '{}' completed a PUBLISH flow with QoS 1 or 2 for packet identifier '{}'", client, messageId);
             }
         }
@@ -17,30 +17,28 @@
 package com.hivemq.mqtt.message;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.util.concurrent.Striped;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
-import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.mqtt.message.pool.MessageIDPool;
 import com.hivemq.mqtt.message.pool.SequentialMessageIDPoolImpl;
 
 import javax.inject.Singleton;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 
 /**
+ * The message id pools of all connected clients.
+ * <p>
+ * Lookups of existing pools don't lock, they are on the hot path of every outgoing QoS 1 and 2 message.
+ *
  * @author Dominik Obermaier
  */
 @Singleton
 public class MessageIDPools {
 
-    private final @NotNull Striped<ReadWriteLock> lock;
     private final @NotNull ConcurrentHashMap<String, MessageIDPool> producers = new ConcurrentHashMap<>();
 
     MessageIDPools() {
         //Do not instantiate manually
-        lock = Striped.readWriteLock(InternalConfigurations.MESSAGE_ID_PRODUCER_LOCK_SIZE.get());
     }
 
     /**
@@ -53,25 +51,13 @@ public class MessageIDPools {
     @NotNull
     public MessageIDPool forClient(final @NotNull String client) {
 
-        // A read lock is sufficient here, since we never override an entry with ConcurrentHashMap:putIfAbsent().
-        final Lock readLock = this.lock.get(client).readLock();
-        readLock.lock();
-        try {
-
-            MessageIDPool idProducer = producers.get(client);
-
-            //The following code is an optimization so we don't have to create
-            //a new object everytime. In worst case we create unnecessary
-            //objects only if we have a race condition
-            if (idProducer == null) {
-                producers.putIfAbsent(client, new SequentialMessageIDPoolImpl());
-                idProducer = producers.get(client);
-            }
-
+        final MessageIDPool idProducer = producers.get(client);
+        if (idProducer != null) {
             return idProducer;
-        } finally {
-            readLock.unlock();
         }
+
+        //only locks the bin of the client if the pool has to be created
+        return producers.computeIfAbsent(client, key -> new SequentialMessageIDPoolImpl());
     }
 
     /**
@@ -82,25 +68,11 @@ public class MessageIDPools {
      */
     @Nullable
     public MessageIDPool forClientOrNull(final @NotNull String client) {
-
-        // A read lock is sufficient here, since we never override an entry with ConcurrentHashMap:putIfAbsent().
-        final Lock readLock = this.lock.get(client).readLock();
-        readLock.lock();
-        try {
-            return producers.get(client);
-        } finally {
-            readLock.unlock();
-        }
+        return producers.get(client);
     }
 
     public void remove(final @NotNull String client) {
-        final Lock writeLock = this.lock.get(client).writeLock();
-        writeLock.lock();
-        try {
-            producers.remove(client);
-        } finally {
-            writeLock.unlock();
-        }
+        producers.remove(client);
     }
 
     @VisibleForTesting
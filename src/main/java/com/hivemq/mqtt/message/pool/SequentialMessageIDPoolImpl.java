@@ -16,23 +16,24 @@
 
 package com.hivemq.mqtt.message.pool;
 
-import com.google.common.primitives.Ints;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.mqtt.message.pool.exception.NoMessageIdAvailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
- * Implementation note: Benchmarks revealed that the implementation with synchronized
- * methods is fast enough for our use case
+ * Implementation note: The used message ids are stored in a bitset, one bit per message id, which is updated with
+ * compare-and-set operations. No method of this pool locks.
+ * <p>
+ * The bitset is split into pages of 4096 message ids which are only allocated once a message id of the page is
+ * taken, so a pool that never has more than a few message ids in use stays small. All pages together take 8 KB.
  *
  * @author Dominik Obermaier
  */
@@ -49,14 +50,19 @@ public class SequentialMessageIDPoolImpl implements MessageIDPool {
         NO_MESSAGE_ID_AVAILABLE_EXCEPTION.setStackTrace(new StackTraceElement[0]);
     }
 
+    private static final int MAX_MESSAGE_ID = 65535;
+    private static final int WORDS_PER_PAGE = 64;
+    private static final int PAGE_SHIFT = 12; // 64 words * 64 bits = 4096 message ids per page
+    private static final int PAGE_COUNT = (MAX_MESSAGE_ID >>> PAGE_SHIFT) + 1;
 
     private final AtomicInteger circularTicker = new AtomicInteger();
+    private final AtomicInteger usedCount = new AtomicInteger();
 
     /**
-     * The set with all already used ids. These ids must not be
+     * The bitset with all already used ids. These ids must not be
      * reused until they are returned
      */
-    private final Set<Integer> usedMessageIds = new HashSet<>(50);
+    private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(PAGE_COUNT);
 
 
     /**
@@ -64,59 +70,45 @@ public class SequentialMessageIDPoolImpl implements MessageIDPool {
      */
     @ThreadSafe
     @Override
-    public synchronized int takeNextId() throws NoMessageIdAvailableException {
-        return takeNextIdNonSynchronized();
-    }
-
-    @ThreadSafe
-    @Override
-    public synchronized int takeIfAvailable(final int id) throws NoMessageIdAvailableException {
-
-        checkArgument(id > 0);
-        checkArgument(id <= 65535);
+    public int takeNextId() throws NoMessageIdAvailableException {
 
-        if (usedMessageIds.contains(id)) {
-            return takeNextIdNonSynchronized();
+        if (usedCount.get() >= MAX_MESSAGE_ID) {
+            throw NO_MESSAGE_ID_AVAILABLE_EXCEPTION;
         }
 
-        usedMessageIds.add(id);
-
-        if (id > circularTicker.get()) {
-            circularTicker.set(id);
+        //We're searching (sequentially) from the last taken id until we hit a message id which is not used already
+        final int last = circularTicker.get();
+        int id = takeFirstAvailable(last + 1, MAX_MESSAGE_ID);
+        if (id == -1) {
+            //In case we're overflowing, start again
+            id = takeFirstAvailable(1, last);
+        }
+        if (id == -1) {
+            throw NO_MESSAGE_ID_AVAILABLE_EXCEPTION;
         }
 
+        circularTicker.set(id);
         return id;
     }
 
-    // To prevent deadlock
-    private int takeNextIdNonSynchronized() throws NoMessageIdAvailableException {
-
-        if (usedMessageIds.size() >= 65535) {
-            throw NO_MESSAGE_ID_AVAILABLE_EXCEPTION;
-        }
+    @ThreadSafe
+    @Override
+    public int takeIfAvailable(final int id) throws NoMessageIdAvailableException {
 
-        //In case we're overflowing, start again
-        circularTicker.compareAndSet(65535, 0);
+        checkArgument(id > 0);
+        checkArgument(id <= MAX_MESSAGE_ID);
 
-        //We're searching (sequentially) until we hit a message id which is not used already
-        int newValue;
-        do {
-            newValue = circularTicker.incrementAndGet();
+        if (!take(id)) {
+            return takeNextId();
         }
-        while (usedMessageIds.contains(newValue) && newValue <= 65536);
 
-        //needs to be 65536 to recognize an overflow and throw an exception because then no more id's are available for this round
-        if (newValue > 65535) {
-            circularTicker.compareAndSet(65536, 0);
-            throw NO_MESSAGE_ID_AVAILABLE_EXCEPTION;
+        if (id > circularTicker.get()) {
+            circularTicker.set(id);
         }
 
-        usedMessageIds.add(newValue);
-
-        return newValue;
+        return id;
     }
 
-
     /**
      * {@inheritDoc}
      *
@@ -124,11 +116,25 @@ public class SequentialMessageIDPoolImpl implements MessageIDPool {
      */
     @ThreadSafe
     @Override
-    public synchronized void returnId(final int id) {
+    public void returnId(final int id) {
         checkArgument(id > 0, "MessageID must be larger than 0");
-        checkArgument(id <= 65535, "MessageID must be smaller than 65536");
-
-        final boolean removed = usedMessageIds.remove(id);
+        checkArgument(id <= MAX_MESSAGE_ID, "MessageID must be smaller than 65536");
+
+        final AtomicLongArray page = pages.get(id >>> PAGE_SHIFT);
+        final int word = wordIndex(id);
+        final long bit = 1L << id;
+
+        boolean removed = false;
+        if (page != null) {
+            long bits;
+            while (((bits = page.get(word)) & bit) != 0) {
+                if (page.compareAndSet(word, bits, bits & ~bit)) {
+                    usedCount.decrementAndGet();
+                    removed = true;
+                    break;
+                }
+            }
+        }
 
         if (!removed) {
             log.trace("Tried to return message id {} although it was already returned. This is could mean a DUP was acked", id);
@@ -142,19 +148,92 @@ public class SequentialMessageIDPoolImpl implements MessageIDPool {
      */
     @ThreadSafe
     @Override
-    public synchronized void prepopulateWithUnavailableIds(final int... ids) {
+    public void prepopulateWithUnavailableIds(final int... ids) {
 
+        int highest = 0;
         for (final int id : ids) {
             checkArgument(id > 0);
-            checkArgument(id <= 65535);
+            checkArgument(id <= MAX_MESSAGE_ID);
+            highest = Math.max(highest, id);
+        }
+        circularTicker.set(highest);
+        for (final int id : ids) {
+            take(id);
+        }
+    }
+
+    /**
+     * Takes the first message id between from and to (both inclusive) that is not used.
+     *
+     * @return the taken message id or -1 if all message ids in the range are used
+     */
+    private int takeFirstAvailable(final int from, final int to) {
+        int id = from;
+        while (id <= to) {
+            final AtomicLongArray page = pages.get(id >>> PAGE_SHIFT);
+            if (page == null) {
+                //no id of the page is used yet
+                if (take(id)) {
+                    return id;
+                }
+                continue;
+            }
+
+            final int word = wordIndex(id);
+            final long bits = page.get(word);
+            long free = ~bits & (-1L << id);
+            if ((id | 63) > to) {
+                free &= -1L >>> (63 - (to & 63));
+            }
+            if (free == 0) {
+                //skip to the first id of the next word
+                id = (id | 63) + 1;
+                continue;
+            }
+
+            final int candidate = (id & ~63) | Long.numberOfTrailingZeros(free);
+            if (page.compareAndSet(word, bits, bits | (1L << candidate))) {
+                usedCount.incrementAndGet();
+                return candidate;
+            }
+            //the word was changed concurrently, read it again
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the message id was taken, false if it is already used
+     */
+    private boolean take(final int id) {
+        final AtomicLongArray page = getOrCreatePage(id >>> PAGE_SHIFT);
+        final int word = wordIndex(id);
+        final long bit = 1L << id;
+
+        long bits;
+        while (((bits = page.get(word)) & bit) == 0) {
+            if (page.compareAndSet(word, bits, bits | bit)) {
+                usedCount.incrementAndGet();
+                return true;
+            }
         }
-        final List<Integer> idList = Ints.asList(ids);
-        Collections.sort(idList);
-        circularTicker.set(idList.get(idList.size() - 1));
-        usedMessageIds.addAll(idList);
+        return false;
+    }
+
+    @NotNull
+    private AtomicLongArray getOrCreatePage(final int pageIndex) {
+        final AtomicLongArray page = pages.get(pageIndex);
+        if (page != null) {
+            return page;
+        }
+        pages.compareAndSet(pageIndex, null, new AtomicLongArray(WORDS_PER_PAGE));
+        return pages.get(pageIndex);
+    }
+
+    private static int wordIndex(final int id) {
+        return (id >>> 6) & (WORDS_PER_PAGE - 1);
     }
 
-    public Set<Integer> getUsedMessageIds() {
-        return usedMessageIds;
+    public int getUsedMessageIdCount() {
+        return usedCount.get();
     }
 }
@@ -210,6 +210,43 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
                 publish.getSubscriptionIdentifiers(), persistence, payloadId, publish.getTimestamp(), publish.getLocalPublishId());
     }
 
+    /**
+     * Creates the PUBLISH for a single subscriber from a template that is shared by all subscribers of a message.
+     * <p>
+     * All fields except the QoS, the retain flag, the packet identifier and the subscription identifiers are taken over
+     * from the template as references. The template was already validated, so no checks are done here.
+     */
+    PUBLISH(@NotNull final PUBLISH template,
+            @NotNull final QoS qos,
+            final boolean isRetain,
+            final int packetIdentifier,
+            @Nullable final ImmutableList<Integer> subscriptionIdentifiers) {
+
+        super(template.getUserProperties());
+
+        this.hivemqId = template.hivemqId;
+        this.topic = template.topic;
+        this.payload = template.payload;
+        this.qoS = qos;
+        this.retain = isRetain;
+        this.duplicateDelivery = template.duplicateDelivery;
+        this.isNewTopicAlias = template.isNewTopicAlias;
+        this.subscriptionIdentifiers = subscriptionIdentifiers;
+        this.messageExpiryInterval = template.messageExpiryInterval;
+        this.payloadFormatIndicator = template.payloadFormatIndicator;
+        this.contentType = template.contentType;
+        this.responseTopic = template.responseTopic;
+        this.correlationData = template.correlationData;
+        this.publishId = template.publishId;
+        this.uniqueId = template.uniqueId;
+        this.timestamp = template.timestamp;
+        this.persistence = template.persistence;
+        this.payloadId = template.payloadId;
+        this.sizeInMemory = template.sizeInMemory;
+
+        setPacketIdentifier(packetIdentifier);
+    }
+
     @NotNull
     @Override
     public String getHivemqId() {
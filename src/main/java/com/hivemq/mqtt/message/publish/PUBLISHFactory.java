@@ -340,6 +340,26 @@ public class PUBLISHFactory {
         }
     }
 
+    /**
+     * Creates the PUBLISH for a single subscriber of a message that is distributed to many subscribers.
+     * <p>
+     * The returned PUBLISH shares all immutable state with the template, only QoS, retain flag and subscription
+     * identifiers are subscriber specific. The packet identifier is reset for QoS 0.
+     *
+     * @param template                the PUBLISH that is shared by all subscribers, its payload is already referenced
+     *                                in the payload persistence
+     * @param qos                     the QoS for the subscriber
+     * @param retain                  the retain flag for the subscriber
+     * @param subscriptionIdentifiers the subscription identifiers of the subscriber
+     * @return the PUBLISH for the subscriber
+     */
+    public static @NotNull PUBLISH forSubscriber(final @NotNull PUBLISH template, final @NotNull QoS qos, final boolean retain,
+                                                 final @NotNull ImmutableList<Integer> subscriptionIdentifiers) {
+
+        final int packetIdentifier = qos == QoS.AT_MOST_ONCE ? 0 : template.getPacketIdentifier();
+        return new PUBLISH(template, qos, retain, packetIdentifier, subscriptionIdentifiers);
+    }
+
     public static @NotNull PUBLISH mergePublishPacket(final @NotNull ModifiablePublishPacketImpl publishPacket, final @NotNull PUBLISH origin) {
 
         if (!publishPacket.isModified()) {
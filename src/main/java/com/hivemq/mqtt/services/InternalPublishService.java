@@ -22,6 +22,7 @@ import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.handler.publish.PublishReturnCode;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -38,4 +39,14 @@ public interface InternalPublishService {
     @NotNull
     ListenableFuture<PublishReturnCode> publish(@NotNull final PUBLISH publish, @NotNull final ExecutorService executorService, @Nullable final String sender);
 
+    /**
+     * Send multiple messages to all clients and shared subscription groups which have an active subscription.
+     * Messages with the same topic share the lookup of their subscribers.
+     * @param publishes       the messages to send by the client identifier of the client which sent them
+     * @param executorService the executor service in which all callbacks are executed
+     * @return a future that completes when all messages were handled
+     */
+    @NotNull
+    ListenableFuture<Void> publishAll(@NotNull final Map<String, PUBLISH> publishes, @NotNull final ExecutorService executorService);
+
 }
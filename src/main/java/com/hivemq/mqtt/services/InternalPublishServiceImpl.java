@@ -17,7 +17,7 @@
 package com.hivemq.mqtt.services;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -25,10 +25,12 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.extensions.handler.PublishOutboundReadOnlyInterceptorHandler;
 import com.hivemq.mqtt.handler.publish.PublishReturnCode;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
+import com.hivemq.mqtt.topic.tree.TopicSubscribers;
 import com.hivemq.persistence.RetainedMessage;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
 import com.hivemq.persistence.util.FutureUtils;
@@ -57,17 +59,20 @@ public class InternalPublishServiceImpl implements InternalPublishService {
     private final RetainedMessagePersistence retainedMessagePersistence;
     private final LocalTopicTree topicTree;
     private final PublishDistributor publishDistributor;
+    private final PublishOutboundReadOnlyInterceptorHandler readOnlyInterceptorHandler;
 
     private final boolean acknowledgeAfterPersist;
 
     @Inject
     public InternalPublishServiceImpl(final RetainedMessagePersistence retainedMessagePersistence,
                                       final LocalTopicTree topicTree,
-                                      final PublishDistributor publishDistributor) {
+                                      final PublishDistributor publishDistributor,
+                                      final PublishOutboundReadOnlyInterceptorHandler readOnlyInterceptorHandler) {
 
         this.retainedMessagePersistence = retainedMessagePersistence;
         this.topicTree = topicTree;
         this.publishDistributor = publishDistributor;
+        this.readOnlyInterceptorHandler = readOnlyInterceptorHandler;
         this.acknowledgeAfterPersist = ACKNOWLEDGE_AFTER_PERSIST.get();
     }
 
@@ -86,6 +91,27 @@ public class InternalPublishServiceImpl implements InternalPublishService {
         return Futures.whenAllComplete(publishReturnCodeFuture, persistFuture).call(() -> publishReturnCodeFuture.get(), executorService);
     }
 
+    @NotNull
+    public ListenableFuture<Void> publishAll(@NotNull final Map<String, PUBLISH> publishes, @NotNull final ExecutorService executorService) {
+
+        Preconditions.checkNotNull(publishes, "PUBLISHes can not be null");
+        Preconditions.checkNotNull(executorService, "executorService can not be null");
+
+        final Map<String, TopicSubscribers> subscribersByTopic = new HashMap<>();
+        final ImmutableList.Builder<ListenableFuture> futures = ImmutableList.builder();
+        for (final Map.Entry<String, PUBLISH> entry : publishes.entrySet()) {
+            final PUBLISH publish = entry.getValue();
+
+            //reset dup-flag
+            publish.setDuplicateDelivery(false);
+
+            final TopicSubscribers subscribers = subscribersByTopic.computeIfAbsent(publish.getTopic(), topicTree::findSubscribers);
+            futures.add(persistRetainedMessage(publish, executorService));
+            futures.add(handlePublish(publish, subscribers, executorService, entry.getKey()));
+        }
+        return FutureUtils.voidFutureFromAnyFutureList(futures.build());
+    }
+
     private ListenableFuture<Void> persistRetainedMessage(final PUBLISH publish, final ExecutorService executorService) {
 
         //Retained messages need to be persisted and thus we need to make that non-blocking
@@ -132,13 +158,21 @@ public class InternalPublishServiceImpl implements InternalPublishService {
 
     @NotNull
     private ListenableFuture<PublishReturnCode> handlePublish(@NotNull final PUBLISH publish, @NotNull final ExecutorService executorService, @Nullable final String sender) {
+        return handlePublish(publish, topicTree.findSubscribers(publish.getTopic()), executorService, sender);
+    }
 
-        final ImmutableSet<SubscriberWithIdentifiers> subscribers = topicTree.getSubscribers(publish.getTopic());
+    @NotNull
+    private ListenableFuture<PublishReturnCode> handlePublish(@NotNull final PUBLISH publish,
+                                                              @NotNull final TopicSubscribers subscribers,
+                                                              @NotNull final ExecutorService executorService,
+                                                              @Nullable final String sender) {
 
         if (subscribers.size() < 1) {
             return Futures.immediateFuture(PublishReturnCode.NO_MATCHING_SUBSCRIBERS);
         }
 
+        //read-only interceptors are called once per message instead of once per subscriber
+        readOnlyInterceptorHandler.interceptOutboundPublish(publish, sender, subscribers.size());
 
         if (!acknowledgeAfterPersist) {
             deliverPublish(subscribers, sender, publish, executorService, null);
@@ -149,7 +183,7 @@ public class InternalPublishServiceImpl implements InternalPublishService {
         return returnCodeFuture;
     }
 
-    private void deliverPublish(final ImmutableSet<SubscriberWithIdentifiers> subscribers,
+    private void deliverPublish(final TopicSubscribers subscribers,
                                 @Nullable final String sender,
                                 @NotNull final PUBLISH publish,
                                 @NotNull final ExecutorService executorService,
@@ -30,13 +30,15 @@ import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
-import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
-import com.hivemq.persistence.util.FutureUtils;
+import com.hivemq.util.Exceptions;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -76,20 +78,29 @@ public class PublishDistributorImpl implements PublishDistributor {
     public ListenableFuture<Void> distributeToNonSharedSubscribers(@NotNull final Map<String, SubscriberWithIdentifiers> subscribers,
                                                                    @NotNull final PUBLISH publish, @NotNull final ExecutorService executorService) {
 
-        final ImmutableList.Builder<ListenableFuture<Void>> publishResultFutureBuilder = ImmutableList.builder();
-
+        // Subscribers without a session or offline subscribers that would receive QoS 0 are skipped,
+        // so the payload is only referenced for the publishes that are actually queued.
+        final List<Map.Entry<String, SubscriberWithIdentifiers>> queuedSubscribers = new ArrayList<>(subscribers.size());
         for (final Map.Entry<String, SubscriberWithIdentifiers> entry : subscribers.entrySet()) {
-            final SubscriberWithIdentifiers subscriber = entry.getValue();
+            if (sessionAvailable(publish, entry.getKey(), entry.getValue().getQos())) {
+                queuedSubscribers.add(entry);
+            }
+        }
+
+        if (queuedSubscribers.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
 
-            final ListenableFuture<PublishStatus> publishFuture = sendMessageToSubscriber(publish, entry.getKey(), subscriber.getQos(),
-                    false, subscriber.isRetainAsPublished(), subscriber.getSubscriptionIdentifier());
+        final PUBLISH template = createTemplate(publish, queuedSubscribers.size());
+        final Map<String, PUBLISH> publishes = new HashMap<>(queuedSubscribers.size());
 
-            final SettableFuture<Void> publishFinishedFuture = SettableFuture.create();
-            publishResultFutureBuilder.add(publishFinishedFuture);
-            Futures.addCallback(publishFuture, new StandardPublishCallback(entry.getKey(), publish, publishFinishedFuture), executorService);
+        for (final Map.Entry<String, SubscriberWithIdentifiers> entry : queuedSubscribers) {
+            final SubscriberWithIdentifiers subscriber = entry.getValue();
+            publishes.put(entry.getKey(),
+                    createPublish(template, subscriber.getQos(), subscriber.isRetainAsPublished(), subscriber.getSubscriptionIdentifier()));
         }
 
-        return FutureUtils.voidFutureFromList(publishResultFutureBuilder.build());
+        return queuePublishes(publishes, false, publish, executorService);
     }
 
     @NotNull
@@ -97,16 +108,18 @@ public class PublishDistributorImpl implements PublishDistributor {
     public ListenableFuture<Void> distributeToSharedSubscribers(@NotNull final Set<String> sharedSubscribers, @NotNull final PUBLISH publish,
                                                                 @NotNull final ExecutorService executorService) {
 
-        final ImmutableList.Builder<ListenableFuture<Void>> publishResultFutureBuilder = ImmutableList.builder();
+        if (sharedSubscribers.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+
+        final PUBLISH template = createTemplate(publish, sharedSubscribers.size());
+        final Map<String, PUBLISH> publishes = new HashMap<>(sharedSubscribers.size());
 
         for (final String sharedSubscriber : sharedSubscribers) {
-            final SettableFuture<Void> publishFinishedFuture = SettableFuture.create();
-            final ListenableFuture<PublishStatus> future = sendMessageToSubscriber(publish, sharedSubscriber, publish.getQoS().getQosNumber(), true, false, null);
-            publishResultFutureBuilder.add(publishFinishedFuture);
-            Futures.addCallback(future, new StandardPublishCallback(sharedSubscriber, publish, publishFinishedFuture), executorService);
+            publishes.put(sharedSubscriber, createPublish(template, publish.getQoS().getQosNumber(), false, ImmutableList.of()));
         }
 
-        return FutureUtils.voidFutureFromList(publishResultFutureBuilder.build());
+        return queuePublishes(publishes, true, publish, executorService);
     }
 
     @NotNull
@@ -123,32 +136,43 @@ public class PublishDistributorImpl implements PublishDistributor {
                                                           final boolean sharedSubscription, final boolean retainAsPublished,
                                                           @Nullable final List<Integer> subscriptionIdentifier) {
 
-        if (sharedSubscription) {
-            return queuePublish(client, publish, subscriptionQos, true, retainAsPublished, subscriptionIdentifier);
+        if (!sharedSubscription && !sessionAvailable(publish, client, subscriptionQos)) {
+            return Futures.immediateFuture(NOT_CONNECTED);
+        }
+
+        final ImmutableList<Integer> identifiers;
+        if (subscriptionIdentifier == null) {
+            identifiers = ImmutableList.of();
+        } else {
+            identifiers = ImmutableList.copyOf(subscriptionIdentifier);
         }
 
+        final PUBLISH subscriberPublish = createPublish(createTemplate(publish, 1), subscriptionQos, retainAsPublished, identifiers);
+        return queuePublish(client, subscriberPublish, sharedSubscription);
+    }
+
+    /**
+     * @return true if the message must be queued for the client, false if the client has no session or is offline and
+     * would receive the message with QoS 0.
+     */
+    private boolean sessionAvailable(@NotNull final PUBLISH publish, @NotNull final String client, final int subscriptionQos) {
+
         final boolean qos0Message = Math.min(subscriptionQos, publish.getQoS().getQosNumber()) == 0;
-        final ClientSession clientSession = clientSessionPersistence.getSession(client, false);
-        final boolean clientConnected = clientSession != null && clientSession.isConnected();
+        final ClientSessionStateIndex.SessionState sessionState = clientSessionPersistence.getSessionState(client);
+        final boolean clientConnected = sessionState != null && sessionState.isConnected();
 
         if ((qos0Message && !clientConnected)) {
-            return Futures.immediateFuture(NOT_CONNECTED);
+            return false;
         }
 
         //no session present or session already expired
-        if (clientSession == null) {
-            return Futures.immediateFuture(NOT_CONNECTED);
-        }
-
-        return queuePublish(client, publish, subscriptionQos, false, retainAsPublished, subscriptionIdentifier);
+        return sessionState != null;
     }
 
     @NotNull
-    private SettableFuture<PublishStatus> queuePublish(@NotNull final String client, @NotNull final PUBLISH publish,
-                                                       final int subscriptionQos, final boolean shared, final boolean retainAsPublished,
-                                                       @Nullable final List<Integer> subscriptionIdentifier) {
+    private SettableFuture<PublishStatus> queuePublish(@NotNull final String client, @NotNull final PUBLISH publish, final boolean shared) {
 
-        final ListenableFuture<Void> future = clientQueuePersistence.add(client, shared, createPublish(publish, subscriptionQos, retainAsPublished, subscriptionIdentifier));
+        final ListenableFuture<Void> future = clientQueuePersistence.add(client, shared, publish);
         final SettableFuture<PublishStatus> statusFuture = SettableFuture.create();
 
         Futures.addCallback(future, new FutureCallback<Void>() {
@@ -165,30 +189,51 @@ public class PublishDistributorImpl implements PublishDistributor {
         return statusFuture;
     }
 
+    /**
+     * Adds the publishes to the queues of all subscribers at once. The returned future never fails, failures are logged.
+     */
     @NotNull
-    private PUBLISH createPublish(@NotNull final PUBLISH publish, final int subscriptionQos, final boolean retainAsPublished, @Nullable final List<Integer> subscriptionIdentifier) {
-        final long payloadId = payloadPersistence.add(publish.getPayload(), 1);
-        final ImmutableList<Integer> identifiers;
-        if (subscriptionIdentifier == null) {
-            identifiers = ImmutableList.of();
-        } else {
-            identifiers = ImmutableList.copyOf(subscriptionIdentifier);
-        }
+    private ListenableFuture<Void> queuePublishes(@NotNull final Map<String, PUBLISH> publishes, final boolean shared,
+                                                  @NotNull final PUBLISH publish, @NotNull final ExecutorService executorService) {
+
+        final ListenableFuture<Void> future = clientQueuePersistence.addAll(publishes, shared);
+        final SettableFuture<Void> publishFinishedFuture = SettableFuture.create();
+
+        Futures.addCallback(future, new FutureCallback<>() {
+            @Override
+            public void onSuccess(@Nullable final Void result) {
+                publishFinishedFuture.set(null);
+            }
+
+            @Override
+            public void onFailure(@NotNull final Throwable throwable) {
+                publishFinishedFuture.set(null);
+                Exceptions.rethrowError("Unable to send message with id " + publish.getUniqueId() + " on topic " + publish.getTopic() + " to " + publishes.size() + " subscribers", throwable);
+            }
+        }, executorService);
+        return publishFinishedFuture;
+    }
 
-        final PUBLISHFactory.Mqtt5Builder builder = new PUBLISHFactory.Mqtt5Builder()
+    /**
+     * Creates the PUBLISH that is shared by all subscribers of a message. The payload is hashed and added to the
+     * payload persistence only once, with a reference for each subscriber.
+     */
+    @NotNull
+    private PUBLISH createTemplate(@NotNull final PUBLISH publish, final int subscriberCount) {
+        final long payloadId = payloadPersistence.add(publish.getPayload(), subscriberCount);
+
+        return new PUBLISHFactory.Mqtt5Builder()
                 .fromPublish(publish)
                 .withPayloadId(payloadId)
                 .withPersistence(payloadPersistence)
-                .withRetain(publish.isRetain() && retainAsPublished)
-                .withSubscriptionIdentifiers(ImmutableList.copyOf(identifiers));
-
-        final int qos = Math.min(publish.getQoS().getQosNumber(), subscriptionQos);
-        builder.withQoS(QoS.valueOf(qos));
+                .build();
+    }
 
-        if (qos == 0) {
-            builder.withPacketIdentifier(0);
-        }
+    @NotNull
+    private PUBLISH createPublish(@NotNull final PUBLISH template, final int subscriptionQos, final boolean retainAsPublished,
+                                  @NotNull final ImmutableList<Integer> subscriptionIdentifiers) {
 
-        return builder.build();
+        final int qos = Math.min(template.getQoS().getQosNumber(), subscriptionQos);
+        return PUBLISHFactory.forSubscriber(template, QoS.valueOf(qos), template.isRetain() && retainAsPublished, subscriptionIdentifiers);
     }
 }
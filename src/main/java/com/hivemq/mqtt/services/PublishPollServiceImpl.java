@@ -45,6 +45,8 @@ import com.hivemq.mqtt.topic.SubscriberWithQoS;
 import com.hivemq.persistence.ChannelPersistence;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
+import com.hivemq.persistence.clientsession.SharedSubscriptionDispatchStrategy;
+import com.hivemq.persistence.clientsession.SharedSubscriptionDispatcher;
 import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.payload.PayloadPersistenceException;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
@@ -57,9 +59,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -89,6 +88,8 @@ public class PublishPollServiceImpl implements PublishPollService {
     private final SharedSubscriptionService sharedSubscriptionService;
     @NotNull
     private final SingleWriterService singleWriterService;
+    @NotNull
+    private final SharedSubscriptionDispatcher sharedSubscriptionDispatcher;
 
     @Inject
     public PublishPollServiceImpl(@NotNull final MessageIDPools messageIDPools,
@@ -97,7 +98,8 @@ public class PublishPollServiceImpl implements PublishPollService {
                                   @NotNull final PublishPayloadPersistence payloadPersistence,
                                   @NotNull final MessageDroppedService messageDroppedService,
                                   @NotNull final SharedSubscriptionService sharedSubscriptionService,
-                                  @NotNull final SingleWriterService singleWriterService) {
+                                  @NotNull final SingleWriterService singleWriterService,
+                                  @NotNull final SharedSubscriptionDispatcher sharedSubscriptionDispatcher) {
         this.messageIDPools = messageIDPools;
         this.clientQueuePersistence = clientQueuePersistence;
         this.channelPersistence = channelPersistence;
@@ -105,6 +107,7 @@ public class PublishPollServiceImpl implements PublishPollService {
         this.messageDroppedService = messageDroppedService;
         this.sharedSubscriptionService = sharedSubscriptionService;
         this.singleWriterService = singleWriterService;
+        this.sharedSubscriptionDispatcher = sharedSubscriptionDispatcher;
     }
 
     /**
@@ -286,17 +289,19 @@ public class PublishPollServiceImpl implements PublishPollService {
      */
     @Override
     public void pollSharedPublishes(@NotNull final String sharedSubscription) {
-        final List<SubscriberWithQoS> subscribers = new ArrayList<>(sharedSubscriptionService.getSharedSubscriber(sharedSubscription));
-
-        // We should shuffle here because otherwise one client could consume all messages if it is fast enough
-        Collections.shuffle(subscribers);
-        for (final SubscriberWithQoS subscriber : subscribers) {
-            final Channel channel = channelPersistence.get(subscriber.getSubscriber());
-            if (channel == null) {
-                continue; // client is disconnected
+        // The dispatch strategy decides the order of the members, otherwise one client could consume all messages if it is fast enough
+        sharedSubscriptionDispatcher.dispatch(sharedSubscription, new SharedSubscriptionDispatchStrategy.Poller() {
+            @Override
+            public void poll(@NotNull final SubscriberWithQoS subscriber, @NotNull final Channel channel) {
+                readSharedPublishes(subscriber.getSubscriber(), sharedSubscription, subscriber.getQos(),
+                        subscriber.getSubscriptionIdentifier(), channel, sharedPollMessageLimit(channel));
             }
-            pollSharedPublishesForClient(subscriber.getSubscriber(), sharedSubscription, subscriber.getQos(), subscriber.getSubscriptionIdentifier(), channel);
-        }
+
+            @Override
+            public void skipped(@NotNull final SubscriberWithQoS subscriber) {
+                // the member polls again when its in-flight messages are acknowledged
+            }
+        });
     }
 
     /**
@@ -311,12 +316,22 @@ public class PublishPollServiceImpl implements PublishPollService {
         if (ChannelUtils.messagesInFlight(channel)) {
             return;
         }
+        readSharedPublishes(client, sharedSubscription, qos, subscriptionIdentifier, channel, pollMessageLimit(channel));
+    }
 
-        final ListenableFuture<ImmutableList<PUBLISH>> future = clientQueuePersistence.readShared(sharedSubscription, pollMessageLimit(channel), PUBLISH_POLL_BATCH_MEMORY);
+    private void readSharedPublishes(@NotNull final String client,
+                                     @NotNull final String sharedSubscription,
+                                     final int qos,
+                                     @Nullable final Integer subscriptionIdentifier,
+                                     @NotNull final Channel channel,
+                                     final int messageLimit) {
+
+        final ListenableFuture<ImmutableList<PUBLISH>> future = clientQueuePersistence.readShared(sharedSubscription, messageLimit, PUBLISH_POLL_BATCH_MEMORY);
 
         Futures.addCallback(future, new FutureCallback<>() {
             @Override
             public void onSuccess(@NotNull final ImmutableList<PUBLISH> publishes) {
+                sharedSubscriptionDispatcher.messagesSent(sharedSubscription, client, publishes.size());
                 final MessageIDPool messageIDPool = messageIDPools.forClient(client);
                 final AtomicInteger inFlightMessages = inFlightMessageCount(channel);
                 for (PUBLISH publish : publishes) {
@@ -459,6 +474,18 @@ public class PublishPollServiceImpl implements PublishPollService {
         return Math.max(min, inflightWindow);
     }
 
+    /**
+     * A member of a shared subscription that still has messages in flight, may only take as many messages as fit into
+     * the rest of its in-flight window.
+     */
+    private int sharedPollMessageLimit(@NotNull final Channel channel) {
+        final int inFlightMessages = ChannelUtils.inFlightMessageCount(channel);
+        if (inFlightMessages <= 0) {
+            return pollMessageLimit(channel);
+        }
+        return Math.max(1, ChannelUtils.maxInflightWindow(channel) - inFlightMessages);
+    }
+
     private class PubrelResendCallback implements FutureCallback<PublishStatus> {
         @NotNull
         private final String client;
@@ -40,6 +40,16 @@ public interface LocalTopicTree {
     @NotNull
     ImmutableSet<SubscriberWithIdentifiers> getSubscribers(@NotNull String topic);
 
+    /**
+     * All subscribers for a topic (PUBLISH), same as {@link #getSubscribers(String)} but without building a set.
+     * This should be preferred in the critical path, e.g. for every PUBLISH.
+     *
+     * @param topic the topic to publish to (no wildcards)
+     * @return the subscribers interested in this topic with all their identifiers
+     */
+    @NotNull
+    TopicSubscribers findSubscribers(@NotNull String topic);
+
     /**
      * All subscribers that have subscribed to this exact topic filter
      *
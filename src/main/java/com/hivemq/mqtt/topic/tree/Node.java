@@ -22,12 +22,19 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.topic.SubscriberWithQoS;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A node of the topic tree.
+ * <p>
+ * Nodes are modified by one writer at a time (guarded by the segment lock of the topic tree), but are read without
+ * any locks. Therefore all arrays of a node are copy-on-write: a modification always creates a new array which is
+ * published through a volatile field, so readers either see the old or the new array but never a partially modified
+ * one. The optional index maps are concurrent maps which can be iterated while they are modified.
+ *
  * @author Dominik Obermaier
  * @author Christoph Schäbel
  */
@@ -54,65 +61,72 @@ class Node {
      * <code>null</code> values. These null values are reassigned if possible before the array gets expanded.
      */
     @Nullable
-    private SubscriberWithQoS[] wildcardSubscribers;
+    private volatile SubscriberWithQoS[] wildcardSubscribers;
 
     /**
      * The exact subscribers. This array gets lazy initialized for memory saving purposes. May contain <code>null</code>
      * values. These null values are reassigned if possible before the array gets expanded.
      */
     @Nullable
-    private SubscriberWithQoS[] exactSubscribers;
+    private volatile SubscriberWithQoS[] exactSubscribers;
 
     /**
      * The child nodes of this node. The children get initialized lazily for memory saving purposes. If a threshold is exceeded this is null and
      * the childrenMap contains all the children.
      */
     @Nullable
-    Node[] children;
+    volatile Node[] children;
 
     /**
      * An optional map for quick access to children (only exists if a threshold is exceeded)
      */
     @Nullable
-    Map<String, Node> childrenMap;
+    volatile Map<String, Node> childrenMap;
 
     /**
      * An optional index map for quick access to exact subscribers.
      */
     @Nullable
-    Map<Key, SubscriberWithQoS> exactSubscriberMap;
+    volatile Map<Key, SubscriberWithQoS> exactSubscriberMap;
 
     /**
      * An optional index map for quick access to wildcard subscribers.
      */
     @Nullable
-    Map<Key, SubscriberWithQoS> wildcardSubscriberMap;
+    volatile Map<Key, SubscriberWithQoS> wildcardSubscriberMap;
 
 
     @NotNull
     public Node addIfAbsent(@NotNull final Node node) {
 
+        final Node[] children = this.children;
+        final Map<String, Node> childrenMap = this.childrenMap;
+
         if (children != null) {
 
             //Check if we need to create an index for large nodes
             if (children.length > indexMapCreationThreshold && childrenMap == null) {
-                childrenMap = new HashMap<>(children.length);
+                final Map<String, Node> newChildrenMap = new ConcurrentHashMap<>(children.length + 1);
 
                 Node existingNode = null;
                 //Add all entries to the map
                 for (final Node child : children) {
                     if (child != null) {
-                        childrenMap.put(child.getTopicPart(), child);
+                        newChildrenMap.put(child.getTopicPart(), child);
                         if (child.getTopicPart().equals(node.getTopicPart())) {
                             existingNode = child;
                         }
                     }
                 }
-                children = null;
+                if (existingNode == null) {
+                    newChildrenMap.put(node.getTopicPart(), node);
+                }
+                //The map must be published before the array is removed, so readers always see all children
+                this.childrenMap = newChildrenMap;
+                this.children = null;
                 if (existingNode != null) {
                     return existingNode;
                 }
-                childrenMap.put(node.getTopicPart(), node);
             } else {
 
                 //check if the node already exists
@@ -125,14 +139,16 @@ class Node {
                 }
 
                 final Integer emptySlotIndex = findEmptyArrayIndex(children);
+                final Node[] newChildren;
                 if (emptySlotIndex != null) {
-                    children[emptySlotIndex] = node;
+                    newChildren = children.clone();
+                    newChildren[emptySlotIndex] = node;
                 } else {
-                    final Node[] newChildren = new Node[children.length + 1];
+                    newChildren = new Node[children.length + 1];
                     System.arraycopy(children, 0, newChildren, 0, children.length);
                     newChildren[newChildren.length - 1] = node;
-                    children = newChildren;
                 }
+                this.children = newChildren;
             }
         } else if (childrenMap != null) {
 
@@ -141,12 +157,39 @@ class Node {
                 return previousValue;
             }
         } else {
-            children = new Node[]{node};
+            this.children = new Node[]{node};
         }
 
         return node;
     }
 
+    /**
+     * Removes the given child from this node. The slot of the child in the children array is kept (as
+     * <code>null</code>) so it can be reused.
+     *
+     * @param node the child node to remove
+     */
+    public void removeChild(@NotNull final Node node) {
+
+        final Node[] children = this.children;
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == node) {
+                    final Node[] newChildren = children.clone();
+                    newChildren[i] = null;
+                    this.children = newChildren;
+                    return;
+                }
+            }
+            return;
+        }
+
+        final Map<String, Node> childrenMap = this.childrenMap;
+        if (childrenMap != null) {
+            childrenMap.remove(node.getTopicPart(), node);
+        }
+    }
+
     @Nullable
     private Integer findEmptyArrayIndex(final Node[] children) {
         for (int i = 0; i < children.length; i++) {
@@ -167,14 +210,9 @@ class Node {
     public boolean addExactSubscriber(@NotNull final SubscriberWithQoS exactSubscriber) {
 
         if (exactSubscriberMap == null && NodeUtils.getExactSubscriberCount(this) > subscriberMapCreationThreshold) {
-            exactSubscriberMap = new HashMap<>(subscriberMapCreationThreshold + 1);
-            if (exactSubscribers != null) {
-                for (final SubscriberWithQoS subscriber : exactSubscribers) {
-                    exactSubscriberMap.put(new Key(subscriber), subscriber);
-                }
-                //The array can be removed, because the map is used from now on.
-                exactSubscribers = null;
-            }
+            exactSubscriberMap = createSubscriberMap(exactSubscribers);
+            //The array can be removed, because the map is used from now on.
+            exactSubscribers = null;
         }
 
         if (exactSubscriberMap != null) {
@@ -204,17 +242,22 @@ class Node {
 
 
     public void removeExactSubscriber(@NotNull final String exactSubscriber, @Nullable final String sharedName) {
-        removeSubscriber(exactSubscriberMap, exactSubscribers, exactSubscriber, sharedName);
+        exactSubscribers = removeSubscriber(exactSubscriberMap, exactSubscribers, exactSubscriber, sharedName);
     }
 
     public void removeWildcardSubscriber(@NotNull final String wildcardSubscriber, @Nullable final String sharedName) {
-        removeSubscriber(wildcardSubscriberMap, wildcardSubscribers, wildcardSubscriber, sharedName);
+        wildcardSubscribers = removeSubscriber(wildcardSubscriberMap, wildcardSubscribers, wildcardSubscriber, sharedName);
     }
 
-    private void removeSubscriber(@Nullable final Map<Key, SubscriberWithQoS> subscriberMap,
-                                  @Nullable final SubscriberWithQoS[] subscriberArray,
-                                  @NotNull final String subscriber,
-                                  @Nullable final String sharedName) {
+    /**
+     * @return the subscriber array which must be published for the node. This is a copy of the given array if the
+     * subscriber was removed from it.
+     */
+    @Nullable
+    private SubscriberWithQoS[] removeSubscriber(@Nullable final Map<Key, SubscriberWithQoS> subscriberMap,
+                                                 @Nullable final SubscriberWithQoS[] subscriberArray,
+                                                 @NotNull final String subscriber,
+                                                 @Nullable final String sharedName) {
         if (subscriberMap != null) {
 
             final SubscriberWithQoS remove;
@@ -223,17 +266,35 @@ class Node {
                 subscriptionCounter.dec();
                 segmentSubscriptionCounter.decrementAndGet();
             }
+            return subscriberArray;
 
         } else {
 
             if (subscriberArray != null) {
-                final SubscriberWithQoS remove = nullOutEntry(subscriberArray, subscriber, sharedName);
-                if (remove != null) {
+                final int index = indexOfEntry(subscriberArray, subscriber, sharedName);
+                if (index >= 0) {
+                    final SubscriberWithQoS[] newArray = subscriberArray.clone();
+                    newArray[index] = null;
                     subscriptionCounter.dec();
                     segmentSubscriptionCounter.decrementAndGet();
+                    return newArray;
+                }
+            }
+            return subscriberArray;
+        }
+    }
+
+    @NotNull
+    private static Map<Key, SubscriberWithQoS> createSubscriberMap(@Nullable final SubscriberWithQoS[] subscribers) {
+        final Map<Key, SubscriberWithQoS> subscriberMap = new ConcurrentHashMap<>();
+        if (subscribers != null) {
+            for (final SubscriberWithQoS subscriber : subscribers) {
+                if (subscriber != null) {
+                    subscriberMap.put(new Key(subscriber), subscriber);
                 }
             }
         }
+        return subscriberMap;
     }
 
     /**
@@ -244,16 +305,9 @@ class Node {
      */
     public boolean addWildcardSubscriber(final SubscriberWithQoS wildcardSubscriber) {
         if (wildcardSubscriberMap == null && NodeUtils.getWildcardSubscriberCount(this) > subscriberMapCreationThreshold) {
-            wildcardSubscriberMap = new HashMap<>(subscriberMapCreationThreshold + 1);
-            if (wildcardSubscribers != null) {
-
-                for (final SubscriberWithQoS subscriber : wildcardSubscribers) {
-                    wildcardSubscriberMap.put(new Key(subscriber), subscriber);
-                }
-
-                //The array can be removed, because the map is used from now on.
-                wildcardSubscribers = null;
-            }
+            wildcardSubscriberMap = createSubscriberMap(wildcardSubscribers);
+            //The array can be removed, because the map is used from now on.
+            wildcardSubscribers = null;
         }
 
         if (wildcardSubscriberMap != null) {
@@ -282,27 +336,29 @@ class Node {
     }
 
     /**
-     * Adds a new entry to an array. Tries to reuse an unused (= null) slot first before expanding the array by copying
-     * the contents to a bigger array.
+     * Adds a new entry to a copy of an array. Tries to reuse an unused (= null) slot first before expanding the array
+     * by copying the contents to a bigger array. The given array is never modified, as it may be read concurrently.
      * <p>
      * If the entry is already present, it will be replaced
      *
      * @param entry the entry to add to the array
      * @param array the array to add the entry to
-     * @return a new array or the same array as the given array, depending if a new array needed to be created.
+     * @return a new array containing the entry.
      */
     private AddToArrayResult addEntryToArray(final SubscriberWithQoS entry, @NotNull final SubscriberWithQoS[] array) {
 
+        final SubscriberWithQoS[] copy = array.clone();
+
         //Let's try to find an existing subscription first
-        if (replaceExisting(array, entry)) {
+        if (replaceExisting(copy, entry)) {
             //We can return if an existing slot was filled
-            return new AddToArrayResult(array, true);
+            return new AddToArrayResult(copy, true);
         }
 
         //Let's try to find an empty slot in the array
-        if (fillEmptyArraySlot(array, entry)) {
+        if (fillEmptyArraySlot(copy, entry)) {
             //We can return if an empty array slot was filled
-            return new AddToArrayResult(array, false);
+            return new AddToArrayResult(copy, false);
         }
 
         final SubscriberWithQoS[] newArray = new SubscriberWithQoS[array.length + 1];
@@ -357,22 +413,20 @@ class Node {
     }
 
     /**
-     * Nulls out a given entry in the array. This does not reduce the array size and only deletes the array.
+     * Finds the index of a given entry in the array.
      *
      * @param array the array
-     * @param topic the entry to delete from the array
+     * @param topic the entry to find in the array
+     * @return the index of the entry or -1 if the entry is not present
      */
-    private SubscriberWithQoS nullOutEntry(final @NotNull SubscriberWithQoS[] array, @NotNull final String topic, @Nullable final String sharedName) {
+    private int indexOfEntry(final @NotNull SubscriberWithQoS[] array, @NotNull final String topic, @Nullable final String sharedName) {
         for (int i = 0; i < array.length; i++) {
             final SubscriberWithQoS arrayEntry = array[i];
             if (arrayEntry != null && new Key(topic, sharedName).equals(new Key(arrayEntry.getSubscriber(), arrayEntry.getSharedName()))) {
-                if (topic.equals(arrayEntry.getSubscriber())) {
-                    array[i] = null;
-                    return arrayEntry;
-                }
+                return i;
             }
         }
-        return null;
+        return -1;
     }
 
     @Nullable
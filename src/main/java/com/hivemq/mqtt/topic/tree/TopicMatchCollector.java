@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.topic.tree;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Reusable buffer for the subscriptions that match a topic. One instance is used per thread, so matching a topic
+ * does not allocate any intermediate collections.
+ * <p>
+ * Only the topic filters of shared subscriptions are materialized, all other matches are stored as references to the
+ * subscriptions in the topic tree.
+ */
+@NotThreadSafe
+class TopicMatchCollector {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The capacity up to which the buffers are kept between matches. Larger buffers are released after a match so a
+     * single topic with a huge number of subscribers doesn't keep the memory forever.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
+    private static final @NotNull Comparator<SubscriberWithQoS> COMPARATOR = SubscriberWithQoS::compareTo;
+
+    private @NotNull SubscriberWithQoS[] matches = new SubscriberWithQoS[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * The nodes from the segment root to the current node, used to build the topic filter of shared subscriptions.
+     */
+    private @NotNull Node[] path = new Node[INITIAL_CAPACITY];
+
+    void setPathNode(final int depth, @NotNull final Node node) {
+        if (depth >= path.length) {
+            path = Arrays.copyOf(path, Math.max(path.length * 2, depth + 1));
+        }
+        path[depth] = node;
+    }
+
+    /**
+     * Adds a subscription that matched the topic.
+     *
+     * @param subscriber the subscription
+     * @param depth      the depth of the node the subscription was found in, or -1 for root wildcard subscriptions
+     * @param wildcard   if the subscription is a multi level wildcard subscription on that node
+     */
+    void add(@NotNull final SubscriberWithQoS subscriber, final int depth, final boolean wildcard) {
+        if (!subscriber.isSharedSubscription()) {
+            addMatch(subscriber);
+            return;
+        }
+        // We have to copy the subscriber because we don't want to store the topic filter in the topic tree.
+        addMatch(new SubscriberWithQoS(subscriber.getSubscriber(), subscriber.getQos(), subscriber.getFlags(), subscriber.getSharedName(),
+                subscriber.getSubscriptionIdentifier(), topicFilter(depth, wildcard)));
+    }
+
+    private void addMatch(@NotNull final SubscriberWithQoS subscriber) {
+        if (size == matches.length) {
+            matches = Arrays.copyOf(matches, matches.length * 2);
+        }
+        matches[size++] = subscriber;
+    }
+
+    @NotNull
+    private String topicFilter(final int depth, final boolean wildcard) {
+        if (depth < 0) {
+            return "#";
+        }
+        final StringBuilder topicFilter = new StringBuilder();
+        for (int i = 0; i <= depth; i++) {
+            if (i > 0) {
+                topicFilter.append('/');
+            }
+            topicFilter.append(path[i].getTopicPart());
+        }
+        if (wildcard) {
+            topicFilter.append("/#");
+        }
+        return topicFilter.toString();
+    }
+
+    /**
+     * Creates one entry per subscription (client id, shared name and topic filter) out of the collected matches. The
+     * entry has the maximum QoS and the subscription identifiers of all matching subscriptions for the subscription.
+     *
+     * @return the distinct subscribers
+     */
+    @NotNull
+    TopicSubscribers distinctSubscribers() {
+        if (size == 0) {
+            return TopicSubscribers.empty();
+        }
+
+        Arrays.sort(matches, 0, size, COMPARATOR);
+
+        int distinct = 1;
+        for (int i = 1; i < size; i++) {
+            if (!equalSubscription(matches[i], matches[i - 1])) {
+                distinct++;
+            }
+        }
+
+        final SubscriberWithIdentifiers[] result = new SubscriberWithIdentifiers[distinct];
+        int resultIndex = 0;
+        SubscriberWithIdentifiers last = new SubscriberWithIdentifiers(matches[0]);
+        for (int i = 1; i < size; i++) {
+            final SubscriberWithQoS current = matches[i];
+            if (!equalSubscription(current, matches[i - 1])) {
+                result[resultIndex++] = last;
+                last = new SubscriberWithIdentifiers(current);
+            } else {
+                last.setQos(current.getQos());
+                final Integer subscriptionId = current.getSubscriptionIdentifier();
+                if (subscriptionId != null) {
+                    final ImmutableList<Integer> subscriptionIds = last.getSubscriptionIdentifier();
+                    last.setSubscriptionIdentifiers(ImmutableList.<Integer>builderWithExpectedSize(subscriptionIds.size() + 1)
+                            .addAll(subscriptionIds).add(subscriptionId).build());
+                }
+            }
+        }
+        result[resultIndex] = last;
+
+        return new TopicSubscribers(result);
+    }
+
+    /**
+     * Clears the collected matches, so the collector can be reused for the next topic.
+     */
+    void reset() {
+        if (matches.length > MAX_RETAINED_CAPACITY) {
+            matches = new SubscriberWithQoS[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(matches, 0, size, null);
+        }
+        if (path.length > MAX_RETAINED_CAPACITY) {
+            path = new Node[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(path, null);
+        }
+        size = 0;
+    }
+
+    private static boolean equalSubscription(@NotNull final SubscriberWithQoS first, @Nullable final SubscriberWithQoS second) {
+        return second != null &&
+                first.getSubscriber().equals(second.getSubscriber()) &&
+                Objects.equals(first.getTopicFilter(), second.getTopicFilter()) &&
+                Objects.equals(first.getSharedName(), second.getSharedName());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.Counter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded cache for the subscribers of a topic.
+ * <p>
+ * The result for a topic depends on the root wildcard subscriptions, the segment of the first topic level and the
+ * "+" segment. Every modification of one of those increments a version, and a cached result is only valid as long as
+ * the sum of the versions (the stamp) is the same as when the result was computed. As versions only ever increase,
+ * the stamp changes with every relevant modification.
+ * <p>
+ * The versions are striped by the hash code of the segment key, a collision only leads to unnecessary cache misses.
+ * A version must be incremented <b>after</b> the topic tree was modified, and the stamp must be taken <b>before</b>
+ * the topic tree is traversed. This way a result that was computed concurrently to a modification can never be
+ * returned after the modification.
+ */
+@ThreadSafe
+class TopicSubscriberCache {
+
+    private static final int VERSION_STRIPES = 64;
+
+    static final @NotNull String ROOT_WILDCARD_KEY = "#";
+    static final @NotNull String WILDCARD_SEGMENT_KEY = "+";
+
+    private final @NotNull Cache<String, Entry> cache;
+    private final @NotNull AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final @NotNull Counter hitCounter;
+    private final @NotNull Counter missCounter;
+
+    private final int rootWildcardStripe = stripe(ROOT_WILDCARD_KEY.hashCode());
+    private final int wildcardSegmentStripe = stripe(WILDCARD_SEGMENT_KEY.hashCode());
+
+    TopicSubscriberCache(final int maximumSize, @NotNull final Counter hitCounter, @NotNull final Counter missCounter) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.hitCounter = hitCounter;
+        this.missCounter = missCounter;
+    }
+
+    /**
+     * Takes the stamp for a topic. The segment key is the first level of the topic, which is hashed in place so no
+     * substring has to be created.
+     *
+     * @param topic         the topic
+     * @param firstLevelEnd the end index of the first topic level
+     * @return the current stamp for the topic
+     */
+    long stamp(@NotNull final String topic, final int firstLevelEnd) {
+        int hash = 0;
+        for (int i = 0; i < firstLevelEnd; i++) {
+            hash = 31 * hash + topic.charAt(i);
+        }
+        return versions.get(stripe(hash)) + versions.get(wildcardSegmentStripe) + versions.get(rootWildcardStripe);
+    }
+
+    /**
+     * @return the cached subscribers for the topic or <code>null</code> if no valid result is cached
+     */
+    @Nullable
+    TopicSubscribers get(@NotNull final String topic, final long stamp) {
+        final Entry entry = cache.getIfPresent(topic);
+        if (entry != null && entry.stamp == stamp) {
+            hitCounter.inc();
+            return entry.subscribers;
+        }
+        missCounter.inc();
+        return null;
+    }
+
+    void put(@NotNull final String topic, final long stamp, @NotNull final TopicSubscribers subscribers) {
+        cache.put(topic, new Entry(subscribers, stamp));
+    }
+
+    /**
+     * Invalidates all cached results that depend on the given segment.
+     *
+     * @param segmentKey the first topic level of the modified subscription or {@link #ROOT_WILDCARD_KEY} for root
+     *                   wildcard subscriptions
+     */
+    void invalidate(@NotNull final String segmentKey) {
+        versions.incrementAndGet(stripe(segmentKey.hashCode()));
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private static int stripe(final int hash) {
+        return Math.floorMod(hash, VERSION_STRIPES);
+    }
+
+    @Immutable
+    private static class Entry {
+
+        private final @NotNull TopicSubscribers subscribers;
+        private final long stamp;
+
+        private Entry(@NotNull final TopicSubscribers subscribers, final long stamp) {
+            this.subscribers = subscribers;
+            this.stamp = stamp;
+        }
+    }
+}
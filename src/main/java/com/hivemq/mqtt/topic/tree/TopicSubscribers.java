@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.topic.tree;
+
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The distinct subscribers for a topic, as returned by {@link LocalTopicTree#findSubscribers(String)}.
+ * <p>
+ * This is a thin wrapper around an array, it contains one entry per subscription (client id, shared name and topic
+ * filter) in the same order as {@link LocalTopicTree#getSubscribers(String)}.
+ */
+@Immutable
+public class TopicSubscribers implements Iterable<SubscriberWithIdentifiers> {
+
+    private static final @NotNull TopicSubscribers EMPTY = new TopicSubscribers(new SubscriberWithIdentifiers[0]);
+
+    private final @NotNull SubscriberWithIdentifiers[] subscribers;
+
+    TopicSubscribers(@NotNull final SubscriberWithIdentifiers[] subscribers) {
+        this.subscribers = subscribers;
+    }
+
+    @NotNull
+    public static TopicSubscribers empty() {
+        return EMPTY;
+    }
+
+    @NotNull
+    public static TopicSubscribers of(@NotNull final SubscriberWithIdentifiers... subscribers) {
+        if (subscribers.length == 0) {
+            return EMPTY;
+        }
+        return new TopicSubscribers(subscribers.clone());
+    }
+
+    public int size() {
+        return subscribers.length;
+    }
+
+    public boolean isEmpty() {
+        return subscribers.length == 0;
+    }
+
+    @NotNull
+    public SubscriberWithIdentifiers get(final int index) {
+        return subscribers[index];
+    }
+
+    @NotNull
+    public ImmutableSet<SubscriberWithIdentifiers> toSet() {
+        return ImmutableSet.copyOf(subscribers);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<SubscriberWithIdentifiers> iterator() {
+        return new Iterator<>() {
+
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < subscribers.length;
+            }
+
+            @Override
+            public SubscriberWithIdentifiers next() {
+                if (index >= subscribers.length) {
+                    throw new NoSuchElementException();
+                }
+                return subscribers[index++];
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return Arrays.toString(subscribers);
+    }
+}
@@ -37,14 +37,24 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_SUBSCRIBER_CACHE_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_SUBSCRIBER_CACHE_SIZE;
+import static com.hivemq.mqtt.topic.tree.TopicSubscriberCache.ROOT_WILDCARD_KEY;
 
 /**
- * A topic tree implementation which works with a standard read write lock with fairness guarantees. Either the whole
- * tree is locked or unlocked.
+ * A topic tree implementation where modifications are guarded by a lock per first topic segment and lookups don't
+ * lock at all.
+ * <p>
+ * All arrays in the {@link Node}s are copy-on-write and published via volatile fields, the index maps are concurrent
+ * maps. A lookup therefore sees every node in a consistent state, and a subscription that is added or removed
+ * concurrently to a lookup is either fully visible or not visible at all for that node. The cost of the copies is
+ * paid by subscribes and unsubscribes, not by the (much more frequent) publishes.
+ * <p>
+ * Optionally the subscribers of a topic are cached (see {@link TopicSubscriberCache}), so repeated publishes to the same
+ * topic don't have to traverse the tree at all.
  *
  * @author Dominik Obermaier
  */
@@ -55,7 +65,7 @@ public class TopicTreeImpl implements LocalTopicTree {
 
     final CopyOnWriteArrayList<SubscriberWithQoS> rootWildcardSubscribers = new CopyOnWriteArrayList<>();
 
-    private final Striped<ReadWriteLock> segmentLocks;
+    private final Striped<Lock> segmentLocks;
 
     @VisibleForTesting
     final Counter subscriptionCounter;
@@ -65,13 +75,25 @@ public class TopicTreeImpl implements LocalTopicTree {
 
     private final int mapCreationThreshold;
 
+    private final ThreadLocal<TopicMatchCollector> matchCollectors = ThreadLocal.withInitial(TopicMatchCollector::new);
+
+    @VisibleForTesting
+    final @Nullable TopicSubscriberCache subscriberCache;
+
     @Inject
     public TopicTreeImpl(@NotNull final MetricsHolder metricsHolder) {
 
         this.subscriptionCounter = metricsHolder.getSubscriptionCounter();
         this.mapCreationThreshold = TOPIC_TREE_MAP_CREATION_THRESHOLD.get();
 
-        segmentLocks = Striped.readWriteLock(64);
+        if (TOPIC_TREE_SUBSCRIBER_CACHE_ENABLED.get()) {
+            subscriberCache = new TopicSubscriberCache(TOPIC_TREE_SUBSCRIBER_CACHE_SIZE.get(),
+                    metricsHolder.getTopicTreeSubscriberCacheHitCounter(), metricsHolder.getTopicTreeSubscriberCacheMissCounter());
+        } else {
+            subscriberCache = null;
+        }
+
+        segmentLocks = Striped.lock(64);
     }
 
     /* *****************
@@ -110,6 +132,7 @@ public class TopicTreeImpl implements LocalTopicTree {
                 if (added) {
                     subscriptionCounter.inc();
                 }
+                invalidateCache(ROOT_WILDCARD_KEY);
                 return removed;
             }
             return true;
@@ -117,7 +140,7 @@ public class TopicTreeImpl implements LocalTopicTree {
 
         final String segmentKey = contents[0];
 
-        final Lock lock = segmentLocks.get(segmentKey).writeLock();
+        final Lock lock = segmentLocks.get(segmentKey);
 
         lock.lock();
         try {
@@ -135,6 +158,7 @@ public class TopicTreeImpl implements LocalTopicTree {
                 return addNode(entry, contents, node, 1);
             }
         } finally {
+            invalidateCache(segmentKey);
             lock.unlock();
         }
     }
@@ -167,265 +191,189 @@ public class TopicTreeImpl implements LocalTopicTree {
     @Override
     @NotNull
     public ImmutableSet<SubscriberWithIdentifiers> getSubscribers(@NotNull final String topic) {
-        return getSubscribers(topic, false);
+        return findSubscribers(topic).toSet();
     }
 
     @Override
     @NotNull
     public ImmutableSet<SubscriberWithIdentifiers> getSubscribers(@NotNull final String topic, final boolean excludeRootLevelWildcard) {
-
-        checkNotNull(topic, "Topic must not be null");
-
-        final ImmutableList.Builder<SubscriberWithQoS> subscribers = ImmutableList.builder();
-
-        //Root wildcard subscribers always match
-        if (!excludeRootLevelWildcard) {
-            for (final SubscriberWithQoS rootWildcardSubscriber : rootWildcardSubscribers) {
-                addWithTopicFilter(subscribers, rootWildcardSubscriber, "#");
-            }
-        }
-
-        //This is a shortcut in case there are no nodes beside the root node
-        if (segments.isEmpty() || topic.isEmpty()) {
-            return createDistinctSubscribers(subscribers.build());
-        }
-
-
-        final String[] topicPart = StringUtils.splitPreserveAllTokens(topic, '/');
-        final String segmentKey = topicPart[0];
-
-        final Lock lock = segmentLocks.get(segmentKey).readLock();
-        lock.lock();
-
-        try {
-            final Node firstSegmentNode = segments.get(segmentKey);
-            if (firstSegmentNode != null) {
-                traverseTree(firstSegmentNode, subscribers, topicPart, 0, "");
-            }
-        } finally {
-            lock.unlock();
-        }
-
-        //We now have to traverse the wildcard node if something matches here
-        if (!excludeRootLevelWildcard) {
-
-            final Lock wildcardLock = segmentLocks.get("+").readLock();
-            wildcardLock.lock();
-
-            try {
-                final Node firstSegmentNode = segments.get("+");
-                if (firstSegmentNode != null) {
-                    traverseTree(firstSegmentNode, subscribers, topicPart, 0, "");
-                }
-            } finally {
-                wildcardLock.unlock();
-            }
-        }
-
-        return createDistinctSubscribers(subscribers.build());
+        return findSubscribers(topic, excludeRootLevelWildcard).toSet();
     }
 
     /**
-     * Add a subscriber to the given builder.
-     * In case it is a shared subscription, the subscriber is copied and the topic filter is added to the copy.
+     * {@inheritDoc}
      */
-    private void addWithTopicFilter(@NotNull final ImmutableList.Builder<SubscriberWithQoS> builder, @NotNull final SubscriberWithQoS subscriber, final String topicFilter) {
-        if (!subscriber.isSharedSubscription()) {
-            builder.add(subscriber);
-            return;
-        }
-        // We have to copy the subscriber because we don't want to store the topic filter in the topic tree.
-        final SubscriberWithQoS copy = new SubscriberWithQoS(subscriber.getSubscriber(), subscriber.getQos(), subscriber.getFlags(), subscriber.getSharedName(),
-                subscriber.getSubscriptionIdentifier(), topicFilter);
-        builder.add(copy);
-    }
+    @Override
+    @NotNull
+    public TopicSubscribers findSubscribers(@NotNull final String topic) {
 
-    /**
-     * Add a subscriber to the given builder.
-     * In case it is a shared subscription, the subscriber is copied and the topic filter is added to the copy.
-     */
-    private void addWithTopicFilter(@NotNull final ImmutableList.Builder<SubscriberWithQoS> builder, final SubscriberWithQoS subscriber,
-                                    @NotNull final String[] topicParts, final int topicIndex, @NotNull final String topicPrefix) {
-        if (!subscriber.isSharedSubscription()) {
-            builder.add(subscriber);
-            return;
+        checkNotNull(topic, "Topic must not be null");
+
+        final TopicSubscriberCache subscriberCache = this.subscriberCache;
+        if (subscriberCache == null || topic.isEmpty()) {
+            return findSubscribers(topic, false);
         }
-        final StringBuilder topicFilter = new StringBuilder();
-        for (int i = 0; i <= topicIndex; i++) {
-            topicFilter.append(topicParts[i]);
-            topicFilter.append("/");
+
+        //The stamp must be taken before the tree is traversed
+        final long stamp = subscriberCache.stamp(topic, levelEnd(topic, 0));
+        final TopicSubscribers cachedSubscribers = subscriberCache.get(topic, stamp);
+        if (cachedSubscribers != null) {
+            return cachedSubscribers;
         }
-        topicFilter.append(topicPrefix);
 
-        // We have to copy the subscriber because we don't want to store the topic filter in the topic tree.
-        final SubscriberWithQoS copy = new SubscriberWithQoS(subscriber.getSubscriber(), subscriber.getQos(), subscriber.getFlags(), subscriber.getSharedName(),
-                subscriber.getSubscriptionIdentifier(), topicFilter.toString());
-        builder.add(copy);
+        final TopicSubscribers subscribers = findSubscribers(topic, false);
+        subscriberCache.put(topic, stamp, subscribers);
+        return subscribers;
     }
 
     /**
-     * Returns a distinct immutable Set of SubscribersWithQoS. The set is guaranteed to only contain one entry per
-     * subscriber string. This entry has the maximum QoS found in the topic tree and the subscription identifiers of all
-     * subscriptions for the client.
-     *
-     * @param subscribers a list of subscribers
-     * @return a immutable Set of distinct Subscribers with the maximum QoS.
+     * Walks the topic levels by their index in the topic string and collects the matching subscriptions in the
+     * collector of the current thread. Apart from the result, only the first topic level (to look up the segment),
+     * the topic filters of shared subscriptions and the topic levels that are looked up in a children index map are
+     * allocated.
      */
     @NotNull
-    private ImmutableSet<SubscriberWithIdentifiers> createDistinctSubscribers(@NotNull final ImmutableList<SubscriberWithQoS> subscribers) {
-
-
-        final ImmutableSet.Builder<SubscriberWithIdentifiers> newSet = ImmutableSet.builder();
-
-        final ImmutableList<SubscriberWithQoS> subscriberWithQoS = ImmutableList.sortedCopyOf((sub1, sub2) -> sub1.compareTo(sub2), subscribers);
+    private TopicSubscribers findSubscribers(@NotNull final String topic, final boolean excludeRootLevelWildcard) {
 
-        final Iterator<SubscriberWithQoS> iterator = subscriberWithQoS.iterator();
-
-
-        SubscriberWithIdentifiers last = null;
-
-        // Create a single entry per client id, with the highest QoS an all subscription identifiers
-        while (iterator.hasNext()) {
-            final SubscriberWithQoS current = iterator.next();
-
-            if (last != null) {
+        checkNotNull(topic, "Topic must not be null");
 
-                if (!equalSubscription(current, last)) {
-                    newSet.add(last);
-                    last = new SubscriberWithIdentifiers(current);
-                } else {
-                    last.setQos(current.getQos());
-                    if (current.getSubscriptionIdentifier() != null) {
-                        final ImmutableList<Integer> subscriptionIds = last.getSubscriptionIdentifier();
-                        final Integer subscriptionId = current.getSubscriptionIdentifier();
-                        final ImmutableList<Integer> mergedSubscriptionIds = ImmutableList
-                                .<Integer>builderWithExpectedSize(subscriptionIds.size() + 1)
-                                .addAll(subscriptionIds).add(subscriptionId).build();
-                        last.setSubscriptionIdentifiers(mergedSubscriptionIds);
-                    }
+        final TopicMatchCollector collector = matchCollectors.get();
+        try {
+            //Root wildcard subscribers always match
+            if (!excludeRootLevelWildcard) {
+                for (final SubscriberWithQoS rootWildcardSubscriber : rootWildcardSubscribers) {
+                    collector.add(rootWildcardSubscriber, -1, true);
                 }
-            } else {
-                last = new SubscriberWithIdentifiers(current);
             }
 
-            if (!iterator.hasNext()) {
-                newSet.add(last);
+            //This is a shortcut in case there are no nodes beside the root node
+            if (segments.isEmpty() || topic.isEmpty()) {
+                return collector.distinctSubscribers();
             }
-        }
 
-        return newSet.build();
-    }
+            final int firstLevelEnd = levelEnd(topic, 0);
+            final Node firstSegmentNode = segments.get(firstLevelEnd == topic.length() ? topic : topic.substring(0, firstLevelEnd));
+            if (firstSegmentNode != null) {
+                traverseTree(firstSegmentNode, collector, topic, 0, firstLevelEnd, 0);
+            }
 
-    private boolean equalSubscription(@NotNull final SubscriberWithQoS first, @NotNull final SubscriberWithIdentifiers second) {
-        return equalSubscription(first, second.getSubscriber(), second.getTopicFilter(), second.getSharedName());
-    }
+            //We now have to traverse the wildcard node if something matches here
+            if (!excludeRootLevelWildcard) {
 
-    private boolean equalSubscription(@NotNull final SubscriberWithQoS first, @NotNull final SubscriberWithQoS second) {
-        return equalSubscription(first, second.getSubscriber(), second.getTopicFilter(), second.getSharedName());
-    }
+                final Node wildcardSegmentNode = segments.get("+");
+                if (wildcardSegmentNode != null) {
+                    traverseTree(wildcardSegmentNode, collector, topic, 0, firstLevelEnd, 0);
+                }
+            }
 
-    private boolean equalSubscription(@NotNull final SubscriberWithQoS first, @NotNull final String secondClient, @Nullable final String secondTopicFilter, @Nullable final String secondSharedName) {
-        if (!first.getSubscriber().equals(secondClient)) {
-            return false;
-        }
-        if (!Objects.equals(first.getTopicFilter(), secondTopicFilter)) {
-            return false;
+            return collector.distinctSubscribers();
+        } finally {
+            collector.reset();
         }
-        return Objects.equals(first.getSharedName(), secondSharedName);
     }
 
+    private void traverseTree(@NotNull final Node node, @NotNull final TopicMatchCollector collector, @NotNull final String topic,
+                              final int levelStart, final int levelEnd, final int depth) {
 
-    private void traverseTree(@NotNull final Node node, @NotNull final ImmutableList.Builder<SubscriberWithQoS> subscribers,
-                              final String[] topicPart, final int depth, @NotNull String topic) {
-
-        if (!topicPart[depth].equals(node.getTopicPart()) && !"+".equals(node.getTopicPart())) {
+        final String topicPart = node.getTopicPart();
+        if (!"+".equals(topicPart) && !levelEquals(topic, levelStart, levelEnd, topicPart)) {
             return;
         }
-        topic += node.getTopicPart();
-
-        if (node.wildcardSubscriberMap != null) {
-
-            for (final SubscriberWithQoS value : node.wildcardSubscriberMap.values()) {
-                addWithTopicFilter(subscribers, value, topic + "/#");
+        collector.setPathNode(depth, node);
+
+        //The arrays are read first, because they are only removed after the index map was published
+        final SubscriberWithQoS[] wcSubs = node.getWildcardSubscribers();
+        if (wcSubs != null) {
+            for (final SubscriberWithQoS wildcardSubscriber : wcSubs) {
+                if (wildcardSubscriber != null) {
+                    collector.add(wildcardSubscriber, depth, true);
+                }
             }
-
         } else {
-
-            final SubscriberWithQoS[] wcSubs = node.getWildcardSubscribers();
-            if (wcSubs != null) {
-                for (final SubscriberWithQoS wildcardSubscriber : wcSubs) {
-                    if (wildcardSubscriber != null) {
-                        addWithTopicFilter(subscribers, wildcardSubscriber, topic + "/#");
-                    }
+            final Map<Node.Key, SubscriberWithQoS> wildcardSubscriberMap = node.wildcardSubscriberMap;
+            if (wildcardSubscriberMap != null) {
+                for (final SubscriberWithQoS value : wildcardSubscriberMap.values()) {
+                    collector.add(value, depth, true);
                 }
             }
         }
 
-        final boolean end = topicPart.length - 1 == depth;
+        final boolean end = levelEnd == topic.length();
         if (end) {
-            if (NodeUtils.getExactSubscriberCount(node) > 0) {
-
-                if (node.exactSubscriberMap != null) {
-
-                    for (final SubscriberWithQoS value : node.exactSubscriberMap.values()) {
-                        addWithTopicFilter(subscribers, value, topic);
+            final SubscriberWithQoS[] exactSubs = node.getExactSubscribers();
+            if (exactSubs != null) {
+                for (final SubscriberWithQoS subscriberWithQoS : exactSubs) {
+                    if (subscriberWithQoS != null) {
+                        collector.add(subscriberWithQoS, depth, false);
                     }
-
-                } else {
-
-                    for (final SubscriberWithQoS subscriberWithQoS : node.getExactSubscribers()) {
-                        if (subscriberWithQoS != null) {
-                            addWithTopicFilter(subscribers, subscriberWithQoS, topic);
-                        }
+                }
+            } else {
+                final Map<Node.Key, SubscriberWithQoS> exactSubscriberMap = node.exactSubscriberMap;
+                if (exactSubscriberMap != null) {
+                    for (final SubscriberWithQoS value : exactSubscriberMap.values()) {
+                        collector.add(value, depth, false);
                     }
                 }
             }
-        } else {
-            if (NodeUtils.getChildrenCount(node) == 0) {
-                return;
-            }
-
-
-            //if the node has an index, we can just use the index instead of traversing the whole node set
-            if (node.getChildrenMap() != null) {
+            return;
+        }
 
-                //Get the exact node by the index
-                final Node matchingChildNode = getIndexForChildNode(topicPart[depth + 1], node);
-                //We also need to check if there is a wildcard node
-                final Node matchingWildcardNode = getIndexForChildNode("+", node);
+        final int nextLevelStart = levelEnd + 1;
+        final int nextLevelEnd = levelEnd(topic, nextLevelStart);
 
-                if (matchingChildNode != null) {
-                    traverseTree(matchingChildNode, subscribers, topicPart, depth + 1, topic + "/");
-                }
-
-                if (matchingWildcardNode != null) {
-                    traverseTree(matchingWildcardNode, subscribers, topicPart, depth + 1, topic + "/");
+        //The children are stored as array
+        final Node[] children = node.getChildren();
+        if (children != null) {
+            for (final Node childNode : children) {
+                if (childNode != null) {
+                    traverseTree(childNode, collector, topic, nextLevelStart, nextLevelEnd, depth + 1);
                 }
-                //We can return without any further recursion because we found all matching nodes
-                return;
             }
+            return;
+        }
 
-            //The children are stored as array
-            final Node[] children = node.getChildren();
-            if (children == null) {
-                return;
+        //if the node has an index, we can just use the index instead of traversing the whole node set
+        final Map<String, Node> childrenMap = node.getChildrenMap();
+        if (childrenMap != null) {
+
+            //Get the exact node by the index
+            final Node matchingChildNode = childrenMap.get(topic.substring(nextLevelStart, nextLevelEnd));
+            //We also need to check if there is a wildcard node
+            final Node matchingWildcardNode = childrenMap.get("+");
+
+            if (matchingChildNode != null) {
+                traverseTree(matchingChildNode, collector, topic, nextLevelStart, nextLevelEnd, depth + 1);
             }
 
-            for (final Node childNode : children) {
-                if (childNode != null) {
-                    traverseTree(childNode, subscribers, topicPart, depth + 1, topic + "/");
-                }
+            if (matchingWildcardNode != null) {
+                traverseTree(matchingWildcardNode, collector, topic, nextLevelStart, nextLevelEnd, depth + 1);
             }
         }
     }
 
-    @Nullable
-    private Node getIndexForChildNode(final @NotNull String key, final @NotNull Node node) {
-        final Map<String, Node> childrenMap = node.getChildrenMap();
-        if (childrenMap == null) {
-            return null;
+    /**
+     * @return the index of the '/' which ends the topic level starting at the given index or the length of the topic
+     * if it is the last level
+     */
+    private static int levelEnd(@NotNull final String topic, final int levelStart) {
+        final int separator = topic.indexOf('/', levelStart);
+        return separator == -1 ? topic.length() : separator;
+    }
+
+    private static boolean levelEquals(@NotNull final String topic, final int levelStart, final int levelEnd, @NotNull final String topicPart) {
+        return topicPart.length() == levelEnd - levelStart && topic.regionMatches(levelStart, topicPart, 0, topicPart.length());
+    }
+
+    /**
+     * Must be called after every modification of the tree, as cached results are only invalidated by the version
+     * change.
+     *
+     * @param segmentKey the first topic level of the modified subscription
+     */
+    private void invalidateCache(@NotNull final String segmentKey) {
+        if (subscriberCache != null) {
+            subscriberCache.invalidate(segmentKey);
         }
-        return childrenMap.get(key);
     }
 
     /* ***************************************
@@ -449,6 +397,7 @@ public class TopicTreeImpl implements LocalTopicTree {
         final ImmutableList<SubscriberWithQoS> foundSubscriberList = foundSubscribers.build();
         rootWildcardSubscribers.removeAll(foundSubscriberList);
         subscriptionCounter.dec(foundSubscriberList.size());
+        invalidateCache(ROOT_WILDCARD_KEY);
         return foundSubscriberList.size() > 0;
     }
 
@@ -468,6 +417,7 @@ public class TopicTreeImpl implements LocalTopicTree {
         final ImmutableList<SubscriberWithQoS> foundSubscriberList = foundSubscribers.build();
         rootWildcardSubscribers.removeAll(foundSubscriberList);
         subscriptionCounter.dec(foundSubscriberList.size());
+        invalidateCache(ROOT_WILDCARD_KEY);
         return foundSubscriberList.size() > 0;
     }
 
@@ -529,7 +479,7 @@ public class TopicTreeImpl implements LocalTopicTree {
 
                     final boolean canGetRemoved = removeSubscriberFromAllSubnodes(child, condition, topic + node.getTopicPart() + "/");
                     if (canGetRemoved) {
-                        children[i] = null;
+                        node.removeChild(child);
                     }
                 }
             }
@@ -571,7 +521,7 @@ public class TopicTreeImpl implements LocalTopicTree {
 
         final Node[] nodes = new Node[topicPart.length];
         final String segmentKey = topicPart[0];
-        final Lock lock = segmentLocks.get(segmentKey).writeLock();
+        final Lock lock = segmentLocks.get(segmentKey);
         lock.lock();
         try {
             //The segment doesn't exist, we can abort
@@ -612,19 +562,7 @@ public class TopicTreeImpl implements LocalTopicTree {
                         if (parent == null) {
                             parent = segmentNode;
                         }
-                        final Node[] childrenOfParent = parent.getChildren();
-                        if (childrenOfParent != null) {
-                            for (int j = 0; j < childrenOfParent.length; j++) {
-                                if (childrenOfParent[j] == node) {
-                                    childrenOfParent[j] = null;
-                                }
-                            }
-                        } else if (parent.getChildrenMap() != null) {
-                            final Node childOfParent = parent.getChildrenMap().get(node.getTopicPart());
-                            if (childOfParent == node) {
-                                parent.getChildrenMap().remove(childOfParent.getTopicPart());
-                            }
-                        }
+                        parent.removeChild(node);
                     }
                 }
             }
@@ -636,6 +574,7 @@ public class TopicTreeImpl implements LocalTopicTree {
             }
 
         } finally {
+            invalidateCache(segmentKey);
             lock.unlock();
         }
     }
@@ -745,31 +684,17 @@ public class TopicTreeImpl implements LocalTopicTree {
         final String[] topicPart = StringUtils.splitPreserveAllTokens(topic, '/');
         final String segmentKey = topicPart[0];
 
-        final Lock lock = segmentLocks.get(segmentKey).readLock();
-        lock.lock();
-
-        try {
-            final Node firstSegmentNode = segments.get(segmentKey);
-            if (firstSegmentNode != null) {
-                traverseTreeWithFilter(firstSegmentNode, subscribers, topicPart, 0, itemFilter);
-            }
-        } finally {
-            lock.unlock();
+        final Node firstSegmentNode = segments.get(segmentKey);
+        if (firstSegmentNode != null) {
+            traverseTreeWithFilter(firstSegmentNode, subscribers, topicPart, 0, itemFilter);
         }
 
         //We now have to traverse the wildcard node if something matches here
         if (!excludeRootLevelWildcard) {
 
-            final Lock wildcardLock = segmentLocks.get("+").readLock();
-            wildcardLock.lock();
-
-            try {
-                final Node firstSegmentNode = segments.get("+");
-                if (firstSegmentNode != null) {
-                    traverseTreeWithFilter(firstSegmentNode, subscribers, topicPart, 0, itemFilter);
-                }
-            } finally {
-                wildcardLock.unlock();
+            final Node wildcardSegmentNode = segments.get("+");
+            if (wildcardSegmentNode != null) {
+                traverseTreeWithFilter(wildcardSegmentNode, subscribers, topicPart, 0, itemFilter);
             }
         }
 
@@ -784,80 +709,69 @@ public class TopicTreeImpl implements LocalTopicTree {
             return;
         }
 
-        if (node.wildcardSubscriberMap != null) {
-
-            for (final SubscriberWithQoS value : node.wildcardSubscriberMap.values()) {
-                addAfterItemCallback(itemFilter, subscribers, value);
+        //The arrays are read first, because they are only removed after the index map was published
+        final SubscriberWithQoS[] wcSubs = node.getWildcardSubscribers();
+        if (wcSubs != null) {
+            for (final SubscriberWithQoS wildcardSubscriber : wcSubs) {
+                if (wildcardSubscriber != null) {
+                    addAfterItemCallback(itemFilter, subscribers, wildcardSubscriber);
+                }
             }
-
         } else {
-
-            final SubscriberWithQoS[] wcSubs = node.getWildcardSubscribers();
-            if (wcSubs != null) {
-                for (final SubscriberWithQoS wildcardSubscriber : wcSubs) {
-                    if (wildcardSubscriber != null) {
-                        addAfterItemCallback(itemFilter, subscribers, wildcardSubscriber);
-                    }
+            final Map<Node.Key, SubscriberWithQoS> wildcardSubscriberMap = node.wildcardSubscriberMap;
+            if (wildcardSubscriberMap != null) {
+                for (final SubscriberWithQoS value : wildcardSubscriberMap.values()) {
+                    addAfterItemCallback(itemFilter, subscribers, value);
                 }
             }
         }
 
         final boolean end = topicPart.length - 1 == depth;
         if (end) {
-            if (NodeUtils.getExactSubscriberCount(node) > 0) {
-
-                if (node.exactSubscriberMap != null) {
-
-                    for (final SubscriberWithQoS value : node.exactSubscriberMap.values()) {
-                        addAfterItemCallback(itemFilter, subscribers, value);
+            final SubscriberWithQoS[] exactSubs = node.getExactSubscribers();
+            if (exactSubs != null) {
+                for (final SubscriberWithQoS subscriberWithQoS : exactSubs) {
+                    if (subscriberWithQoS != null) {
+                        addAfterItemCallback(itemFilter, subscribers, subscriberWithQoS);
                     }
-
-                } else {
-
-                    if (node.getExactSubscribers() != null) {
-                        for (final SubscriberWithQoS subscriberWithQoS : node.getExactSubscribers()) {
-                            if (subscriberWithQoS != null) {
-                                addAfterItemCallback(itemFilter, subscribers, subscriberWithQoS);
-                            }
-                        }
+                }
+            } else {
+                final Map<Node.Key, SubscriberWithQoS> exactSubscriberMap = node.exactSubscriberMap;
+                if (exactSubscriberMap != null) {
+                    for (final SubscriberWithQoS value : exactSubscriberMap.values()) {
+                        addAfterItemCallback(itemFilter, subscribers, value);
                     }
                 }
             }
-        } else {
-            if (NodeUtils.getChildrenCount(node) == 0) {
-                return;
-            }
-
-
-            //if the node has an index, we can just use the index instead of traversing the whole node set
-            if (node.getChildrenMap() != null) {
-
-                //Get the exact node by the index
-                final Node matchingChildNode = getIndexForChildNode(topicPart[depth + 1], node);
-                //We also need to check if there is a wildcard node
-                final Node matchingWildcardNode = getIndexForChildNode("+", node);
-
-                if (matchingChildNode != null) {
-                    traverseTreeWithFilter(matchingChildNode, subscribers, topicPart, depth + 1, itemFilter);
-                }
+            return;
+        }
 
-                if (matchingWildcardNode != null) {
-                    traverseTreeWithFilter(matchingWildcardNode, subscribers, topicPart, depth + 1, itemFilter);
+        //The children are stored as array
+        final Node[] children = node.getChildren();
+        if (children != null) {
+            for (final Node childNode : children) {
+                if (childNode != null) {
+                    traverseTreeWithFilter(childNode, subscribers, topicPart, depth + 1, itemFilter);
                 }
-                //We can return without any further recursion because we found all matching nodes
-                return;
             }
+            return;
+        }
 
-            //The children are stored as array
-            final Node[] children = node.getChildren();
-            if (children == null) {
-                return;
+        //if the node has an index, we can just use the index instead of traversing the whole node set
+        final Map<String, Node> childrenMap = node.getChildrenMap();
+        if (childrenMap != null) {
+
+            //Get the exact node by the index
+            final Node matchingChildNode = childrenMap.get(topicPart[depth + 1]);
+            //We also need to check if there is a wildcard node
+            final Node matchingWildcardNode = childrenMap.get("+");
+
+            if (matchingChildNode != null) {
+                traverseTreeWithFilter(matchingChildNode, subscribers, topicPart, depth + 1, itemFilter);
             }
 
-            for (final Node childNode : children) {
-                if (childNode != null) {
-                    traverseTreeWithFilter(childNode, subscribers, topicPart, depth + 1, itemFilter);
-                }
+            if (matchingWildcardNode != null) {
+                traverseTreeWithFilter(matchingWildcardNode, subscribers, topicPart, depth + 1, itemFilter);
             }
         }
     }
@@ -884,78 +798,76 @@ public class TopicTreeImpl implements LocalTopicTree {
 
         final String[] contents = StringUtils.splitPreserveAllTokens(topicFilter, '/');
         final String firstSegment = contents[0];
-        final Lock lock = segmentLocks.get(firstSegment).readLock();
-        lock.lock();
-        try {
-            Node node = segments.get(firstSegment);
-            if (node == null) {
-                return subscribers.build();
+        Node node = segments.get(firstSegment);
+        if (node == null) {
+            return subscribers.build();
+        }
+
+        contentLoop:
+        for (int i = 1; i < contents.length; i++) {
+            if (contents[i].equals("#")) {
+                break;
             }
 
-            contentLoop:
-            for (int i = 1; i < contents.length; i++) {
-                if (contents[i].equals("#")) {
-                    break;
-                }
+            final Node[] children = node.getChildren();
+            final Map<String, Node> childrenMap = node.getChildrenMap();
+            if (children == null && childrenMap == null) {
+                // No matching node in the topic tree
+                return subscribers.build();
+            }
 
-                if (node.getChildren() == null && node.getChildrenMap() == null) {
+            if (children != null) {
+                for (final Node child : children) {
+                    if (child != null && child.getTopicPart().equals(contents[i])) {
+                        node = child;
+                        continue contentLoop;
+                    }
                     // No matching node in the topic tree
-                    return subscribers.build();
                 }
+            } else {
 
-                final Node[] children = node.getChildren();
-                if (children != null) {
-                    for (final Node child : children) {
-                        if (child != null && child.getTopicPart().equals(contents[i])) {
-                            node = child;
-                            continue contentLoop;
-                        }
-                        // No matching node in the topic tree
-                    }
-                } else if (node.getChildrenMap() != null) {
-
-                    for (final Node child : node.getChildrenMap().values()) {
-                        if (child != null && child.getTopicPart().equals(contents[i])) {
-                            node = child;
-                            continue contentLoop;
-                        }
-                        // No matching node in the topic tree
+                for (final Node child : childrenMap.values()) {
+                    if (child != null && child.getTopicPart().equals(contents[i])) {
+                        node = child;
+                        continue contentLoop;
                     }
+                    // No matching node in the topic tree
                 }
-                return subscribers.build();
             }
+            return subscribers.build();
+        }
 
-            if (contents[contents.length - 1].equals("#")) {
-                if (node.wildcardSubscriberMap != null) {
-                    for (final SubscriberWithQoS value : node.wildcardSubscriberMap.values()) {
+        //The arrays are read first, because they are only removed after the index map was published
+        if (contents[contents.length - 1].equals("#")) {
+            final SubscriberWithQoS[] wildcardSubscribers = node.getWildcardSubscribers();
+            if (wildcardSubscribers != null) {
+                for (final SubscriberWithQoS wildcardSubscriber : wildcardSubscribers) {
+                    addAfterCallback(itemFilter, subscribers, wildcardSubscriber);
+                }
+            } else {
+                final Map<Node.Key, SubscriberWithQoS> wildcardSubscriberMap = node.wildcardSubscriberMap;
+                if (wildcardSubscriberMap != null) {
+                    for (final SubscriberWithQoS value : wildcardSubscriberMap.values()) {
                         addAfterCallback(itemFilter, subscribers, value);
                     }
-                } else {
-                    if (node.getWildcardSubscribers() == null) {
-                        return subscribers.build();
-                    }
-                    for (final SubscriberWithQoS wildcardSubscriber : node.getWildcardSubscribers()) {
-                        addAfterCallback(itemFilter, subscribers, wildcardSubscriber);
-                    }
+                }
+            }
+        } else {
+            final SubscriberWithQoS[] exactSubscribers = node.getExactSubscribers();
+            if (exactSubscribers != null) {
+                for (final SubscriberWithQoS exactSubscriber : exactSubscribers) {
+                    addAfterCallback(itemFilter, subscribers, exactSubscriber);
                 }
             } else {
-                if (node.exactSubscriberMap != null) {
-                    for (final SubscriberWithQoS value : node.exactSubscriberMap.values()) {
+                final Map<Node.Key, SubscriberWithQoS> exactSubscriberMap = node.exactSubscriberMap;
+                if (exactSubscriberMap != null) {
+                    for (final SubscriberWithQoS value : exactSubscriberMap.values()) {
                         addAfterCallback(itemFilter, subscribers, value);
                     }
-                } else {
-                    if (node.getExactSubscribers() == null) {
-                        return subscribers.build();
-                    }
-                    for (final SubscriberWithQoS exactSubscriber : node.getExactSubscribers()) {
-                        addAfterCallback(itemFilter, subscribers, exactSubscriber);
-                    }
                 }
             }
-            return subscribers.build();
-        } finally {
-            lock.unlock();
         }
+        return subscribers.build();
     }
 
     private void addAfterCallback(@NotNull final ItemFilter itemFilter,
@@ -984,7 +896,7 @@ public class TopicTreeImpl implements LocalTopicTree {
     @Override
     @Nullable
     public SubscriberWithIdentifiers getSubscriber(@NotNull final String client, @NotNull final String topic) {
-        final ImmutableSet<SubscriberWithIdentifiers> subscribers = getSubscribers(topic);
+        final TopicSubscribers subscribers = findSubscribers(topic);
         // Regular subscriptions are prioritized but the message is still sent if there are only matching shared subscriptions
         @Nullable SubscriberWithIdentifiers matchingSharedSubscription = null;
         for (final SubscriberWithIdentifiers subscriber : subscribers) {
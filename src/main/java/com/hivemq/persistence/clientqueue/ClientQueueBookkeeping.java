@@ -0,0 +1,482 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.local.ExpiryIndex;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.PublishUtil;
+import com.hivemq.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static com.hivemq.configuration.service.InternalConfigurations.QOS_0_MEMORY_HARD_LIMIT_DIVISOR;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+
+/**
+ * The in-memory state of a {@link ClientQueueLocalPersistence} that does not depend on the storage backend: the qos 0
+ * messages and their memory limits, the queue sizes and the expiry index of the queues.
+ * <p>
+ * The persistences only read and write the qos 1 and 2 messages of their storage and report the changes here. Like
+ * the persistences, the state of a bucket must only be changed by the single writer thread of the bucket.
+ */
+class ClientQueueBookkeeping {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ClientQueueBookkeeping.class);
+
+    private final @NotNull PublishPayloadPersistence payloadPersistence;
+    private final @NotNull MessageDroppedService messageDroppedService;
+
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> queueSizeBuckets;
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> retainedQueueSizeBuckets;
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, Qos0Queue>> qos0MessageBuckets;
+    private final @NotNull ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap;
+    private final @NotNull ExpiryIndex<Key> expiryIndex;
+
+    private final @NotNull AtomicLong qos0MessagesMemory = new AtomicLong();
+    private final long qos0MemoryLimit;
+    private final int qos0ClientMemoryLimit;
+    private final int retainedMessageMax;
+
+    ClientQueueBookkeeping(
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull MessageDroppedService messageDroppedService,
+            final int bucketCount) {
+        this.payloadPersistence = payloadPersistence;
+        this.messageDroppedService = messageDroppedService;
+        this.queueSizeBuckets = new ConcurrentHashMap<>();
+        this.retainedQueueSizeBuckets = new ConcurrentHashMap<>();
+        this.qos0MessageBuckets = new ConcurrentHashMap<>();
+        this.clientQos0MemoryMap = new ConcurrentHashMap<>();
+        this.expiryIndex = new ExpiryIndex<>(bucketCount);
+        this.qos0MemoryLimit = getQos0MemoryLimit();
+        this.qos0ClientMemoryLimit = InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT.get();
+        this.retainedMessageMax = InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.get();
+
+        for (int i = 0; i < bucketCount; i++) {
+            qos0MessageBuckets.put(i, new HashMap<>());
+            queueSizeBuckets.put(i, new ConcurrentSkipListMap<>());
+            retainedQueueSizeBuckets.put(i, new ConcurrentHashMap<>());
+        }
+    }
+
+    private static long getQos0MemoryLimit() {
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+        final long maxHardLimit;
+
+        final int hardLimitDivisor = QOS_0_MEMORY_HARD_LIMIT_DIVISOR.get();
+
+        if (hardLimitDivisor < 1) {
+            //fallback to default if config failed
+            maxHardLimit = maxHeap / 4;
+        } else {
+            maxHardLimit = maxHeap / hardLimitDivisor;
+        }
+        log.debug("{} allocated for qos 0 inflight messages", Strings.convertBytes(maxHardLimit));
+        return maxHardLimit;
+    }
+
+    // ********** Queue sizes **********
+
+    /**
+     * Must be called for every message that is read from the storage at startup or imported from another persistence.
+     */
+    void messageRestored(
+            @NotNull final Key key, final int bucketIndex, @NotNull final MessageWithID message,
+            final boolean retained) {
+        getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+        if (retained) {
+            getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
+        }
+        messageStored(key, bucketIndex, message);
+    }
+
+    /**
+     * Must be called after a new message was written to the storage.
+     */
+    void messageStored(@NotNull final Key key, final int bucketIndex, @NotNull final MessageWithID message) {
+        expiryIndex.putIfEarlier(bucketIndex, key, getExpiryTimestamp(message));
+    }
+
+    /**
+     * Counts a new qos 1 or 2 message in the queue sizes, if it fits into the queue.
+     *
+     * @return false if the queue is full, so that a message must be dropped according to the queued messages strategy
+     */
+    boolean tryReserve(@NotNull final Key key, final int bucketIndex, final long max, final boolean retained) {
+        final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
+        final AtomicInteger retainedQueueSize = getOrPutRetainedQueueSize(key, bucketIndex);
+        if (retained) {
+            if (retainedQueueSize.get() >= retainedMessageMax) {
+                return false;
+            }
+        } else if (queueSize.get() - qos0Size(key, bucketIndex) - retainedQueueSize.get() >= max) {
+            return false;
+        }
+        queueSize.incrementAndGet();
+        if (retained) {
+            retainedQueueSize.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Must be called after a qos 1 or 2 message or a PUBREL was removed from the storage.
+     */
+    void messageRemoved(@NotNull final Key key, final int bucketIndex, final boolean retained) {
+        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
+        if (retained) {
+            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
+        }
+    }
+
+    /**
+     * Must be called after a PUBREL for an unknown packet id was added to the storage.
+     */
+    void pubrelAdded(@NotNull final Key key, final int bucketIndex) {
+        getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+    }
+
+    int size(@NotNull final Key key, final int bucketIndex) {
+        final AtomicInteger queueSize = queueSizeBuckets.get(bucketIndex).get(key);
+        return (queueSize == null) ? 0 : queueSize.get();
+    }
+
+    /**
+     * Removes all in-memory state of the queue after its messages were removed from the storage.
+     */
+    void clear(@NotNull final Key key, final int bucketIndex) {
+        final Qos0Queue qos0Messages = qos0MessageBuckets.get(bucketIndex).remove(key);
+        if (qos0Messages != null) {
+            removeQos0Messages(key, bucketIndex, qos0Messages, qos0Publish -> true);
+        }
+        queueSizeBuckets.get(bucketIndex).remove(key);
+        retainedQueueSizeBuckets.get(bucketIndex).remove(key);
+        expiryIndex.remove(bucketIndex, key);
+    }
+
+    @NotNull
+    ImmutableSet<String> getSharedQueues(final int bucketIndex) {
+        final ImmutableSet.Builder<String> sharedQueues = ImmutableSet.builder();
+        for (final Key bucketKey : queueSizeBuckets.get(bucketIndex).keySet()) {
+            if (bucketKey.isShared()) {
+                sharedQueues.add(bucketKey.getQueueId());
+            }
+        }
+        return sharedQueues.build();
+    }
+
+    // ********** Expiry **********
+
+    /**
+     * @return the queues that contain at least one message that may be expired by now
+     */
+    @NotNull
+    List<Key> getDueQueues(final int bucketIndex, final long now) {
+        return expiryIndex.getDue(bucketIndex, now);
+    }
+
+    /**
+     * Removes the expired qos 0 messages of the queue.
+     *
+     * @return the earliest expiry of the qos 0 messages that stay in the queue
+     */
+    long removeExpiredQos0Messages(@NotNull final Key key, final int bucketIndex, final long now) {
+        final long[] nextExpiry = {ExpiryIndex.NO_EXPIRY};
+        final Qos0Queue qos0Messages = qos0MessageBuckets.get(bucketIndex).get(key);
+        if (qos0Messages != null) {
+            removeQos0Messages(key, bucketIndex, qos0Messages, qos0Message -> {
+                final long expiry = getExpiryTimestamp(qos0Message);
+                if (expiry > now) {
+                    nextExpiry[0] = Math.min(nextExpiry[0], expiry);
+                    return false;
+                }
+                return true;
+            });
+        }
+        return nextExpiry[0];
+    }
+
+    /**
+     * Must be called after the clean up of the queue with the earliest expiry of the messages that stay in the queue.
+     */
+    void cleanedUp(@NotNull final Key key, final int bucketIndex, final long nextExpiry) {
+        expiryIndex.put(bucketIndex, key, nextExpiry);
+    }
+
+    /**
+     * @return the timestamp at which the message may be removed from the queue by the clean up or {@link
+     * ExpiryIndex#NO_EXPIRY} if the clean up must never remove it
+     */
+    static long getExpiryTimestamp(@NotNull final MessageWithID message) {
+        if (message instanceof PUBREL) {
+            final PUBREL pubrel = (PUBREL) message;
+            if (!InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS) {
+                return ExpiryIndex.NO_EXPIRY;
+            }
+            if (pubrel.getExpiryInterval() == null || pubrel.getPublishTimestamp() == null) {
+                return ExpiryIndex.NO_EXPIRY;
+            }
+            return PublishUtil.getExpiryTimestamp(pubrel.getPublishTimestamp(), pubrel.getExpiryInterval());
+        }
+        if (message instanceof PUBLISH) {
+            final PUBLISH publish = (PUBLISH) message;
+            final boolean isInflight = publish.getQoS() == QoS.EXACTLY_ONCE && publish.getPacketIdentifier() > 0;
+            if (isInflight && !InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES) {
+                return ExpiryIndex.NO_EXPIRY;
+            }
+            return PublishUtil.getExpiryTimestamp(publish.getTimestamp(), publish.getMessageExpiryInterval());
+        }
+        return ExpiryIndex.NO_EXPIRY;
+    }
+
+    // ********** Dropped messages **********
+
+    void logAndDecrementPayloadReference(
+            final @NotNull PUBLISH publish, final boolean shared, final @NotNull String queueId) {
+        if (shared) {
+            messageDroppedService.queueFullShared(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        } else {
+            messageDroppedService.queueFull(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        }
+        payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
+    }
+
+    // ********** QoS 0 messages **********
+
+    void addQos0Publish(
+            @NotNull final Key key, @NotNull final PUBLISH publish, final boolean retained, final int bucketIndex) {
+        final long currentQos0MessagesMemory = qos0MessagesMemory.get();
+        if (currentQos0MessagesMemory >= qos0MemoryLimit) {
+            if (key.isShared()) {
+                messageDroppedService.qos0MemoryExceededShared(
+                        key.getQueueId(), publish.getTopic(), 0, currentQos0MessagesMemory, qos0MemoryLimit);
+            } else {
+                messageDroppedService.qos0MemoryExceeded(
+                        key.getQueueId(), publish.getTopic(), 0, currentQos0MessagesMemory, qos0MemoryLimit);
+            }
+            payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
+            return;
+        }
+
+        final Qos0Queue qos0Messages = getOrPutQos0Messages(key, bucketIndex);
+        if (!key.isShared()) {
+            // discard the oldest messages of the client to make room for the new one
+            while (!qos0Messages.isEmpty() && qos0Messages.getMemory() >= qos0ClientMemoryLimit) {
+                final long clientQos0Memory = qos0Messages.getMemory();
+                final PUBLISH discarded = pollQos0Message(key, bucketIndex, qos0Messages);
+                messageDroppedService.qos0MemoryExceeded(
+                        key.getQueueId(), discarded.getTopic(), 0, clientQos0Memory, qos0ClientMemoryLimit);
+            }
+        }
+
+        qos0Messages.add(publish, retained);
+        getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+        if (retained) {
+            getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
+        }
+        increaseQos0MessagesMemory(key, Qos0Queue.getSlotSize(publish));
+        expiryIndex.putIfEarlier(bucketIndex, key, getExpiryTimestamp(publish));
+    }
+
+    /**
+     * @return true if the queue contains nothing but qos 0 messages
+     */
+    boolean onlyQos0Messages(@NotNull final Key key, final int bucketIndex) {
+        return size(key, bucketIndex) == qos0Size(key, bucketIndex);
+    }
+
+    @NotNull
+    Qos0Queue getOrPutQos0Messages(@NotNull final Key key, final int bucketIndex) {
+        final Map<Key, Qos0Queue> bucketMessages = qos0MessageBuckets.get(bucketIndex);
+        Qos0Queue publishes = bucketMessages.get(key);
+        if (publishes != null) {
+            return publishes;
+        }
+        publishes = new Qos0Queue();
+        bucketMessages.put(key, publishes);
+        return publishes;
+    }
+
+    int qos0Size(@NotNull final Key key, final int bucketIndex) {
+        final Map<Key, Qos0Queue> bucketMessages = qos0MessageBuckets.get(bucketIndex);
+        final Qos0Queue publishes = bucketMessages.get(key);
+        if (publishes != null) {
+            return publishes.size();
+        }
+        return 0;
+    }
+
+    @NotNull
+    PUBLISH pollQos0Message(@NotNull final Key key, final int bucketIndex, @NotNull final Qos0Queue qos0Messages) {
+        final PUBLISH[] polled = new PUBLISH[1];
+        drainQos0Messages(key, bucketIndex, qos0Messages, qos0Publish -> {
+            polled[0] = qos0Publish;
+            return false;
+        });
+        return polled[0];
+    }
+
+    /**
+     * Remove qos 0 messages from the head of the queue until the consumer returns false or the queue is empty. The
+     * queue sizes and the qos 0 memory are updated once for all removed messages.
+     */
+    void drainQos0Messages(
+            @NotNull final Key key, final int bucketIndex, @NotNull final Qos0Queue qos0Messages,
+            @NotNull final Predicate<PUBLISH> consumer) {
+        final int retainedCount = qos0Messages.getRetainedCount();
+        final long memory = qos0Messages.getMemory();
+        final int removed = qos0Messages.drain(qos0Publish -> {
+            payloadPersistence.decrementReferenceCounter(qos0Publish.getPayloadId());
+            return consumer.test(qos0Publish);
+        });
+        qos0MessagesRemoved(key, bucketIndex, qos0Messages, removed, retainedCount, memory);
+    }
+
+    void removeAllQos0Messages(@NotNull final Key key, final int bucketIndex) {
+        final Qos0Queue qos0Messages = qos0MessageBuckets.get(bucketIndex).get(key);
+        if (qos0Messages != null) {
+            removeQos0Messages(key, bucketIndex, qos0Messages, qos0Publish -> true);
+        }
+    }
+
+    /**
+     * Remove all qos 0 messages that match the filter. The queue sizes and the qos 0 memory are updated once for all
+     * removed messages.
+     */
+    private void removeQos0Messages(
+            @NotNull final Key key, final int bucketIndex, @NotNull final Qos0Queue qos0Messages,
+            @NotNull final Predicate<PUBLISH> filter) {
+        final int retainedCount = qos0Messages.getRetainedCount();
+        final long memory = qos0Messages.getMemory();
+        final int removed = qos0Messages.removeIf(qos0Publish -> {
+            if (!filter.test(qos0Publish)) {
+                return false;
+            }
+            payloadPersistence.decrementReferenceCounter(qos0Publish.getPayloadId());
+            return true;
+        });
+        qos0MessagesRemoved(key, bucketIndex, qos0Messages, removed, retainedCount, memory);
+    }
+
+    private void qos0MessagesRemoved(
+            @NotNull final Key key, final int bucketIndex, @NotNull final Qos0Queue qos0Messages, final int removed,
+            final int retainedCountBefore, final long memoryBefore) {
+        if (removed == 0) {
+            return;
+        }
+        getOrPutQueueSize(key, bucketIndex).addAndGet(-removed);
+        final int retainedRemoved = retainedCountBefore - qos0Messages.getRetainedCount();
+        if (retainedRemoved > 0) {
+            getOrPutRetainedQueueSize(key, bucketIndex).addAndGet(-retainedRemoved);
+        }
+        increaseQos0MessagesMemory(key, qos0Messages.getMemory() - memoryBefore);
+    }
+
+    /**
+     * @param bytes the amount of bytes the currently used qos 0 memory of the queue will be increased by, including the
+     *              slot overhead. May be negative.
+     */
+    private void increaseQos0MessagesMemory(@NotNull final Key key, final long bytes) {
+        qos0MessagesMemory.addAndGet(bytes);
+        addClientQos0MessagesMemory(key, (int) bytes);
+    }
+
+    /**
+     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
+     */
+    @VisibleForTesting
+    void increaseClientQos0MessagesMemory(final @NotNull Key key, final int size) {
+        if (size < 0) {
+            addClientQos0MessagesMemory(key, size - Qos0Queue.SLOT_OVERHEAD);
+        } else {
+            addClientQos0MessagesMemory(key, size + Qos0Queue.SLOT_OVERHEAD);
+        }
+    }
+
+    private void addClientQos0MessagesMemory(final @NotNull Key key, final int bytes) {
+        if (key.isShared()) {
+            return;
+        }
+
+        final AtomicInteger qos0MemoryPerClient = clientQos0MemoryMap.compute(key.getQueueId(), (clientId, clientQos0Memory) -> {
+            if (clientQos0Memory == null) {
+                if (bytes < 0) {
+                    //strange case that should never happen as there must be a increase before a decrease..
+                    return new AtomicInteger(0);
+                } else {
+                    return new AtomicInteger(bytes);
+                }
+            }
+            clientQos0Memory.addAndGet(bytes);
+            return clientQos0Memory;
+        });
+
+        if (qos0MemoryPerClient.get() <= 0) {
+            clientQos0MemoryMap.remove(key.getQueueId());
+        }
+    }
+
+    @NotNull
+    ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets() {
+        return queueSizeBuckets;
+    }
+
+    @NotNull
+    ConcurrentHashMap<String, AtomicInteger> getClientQos0MemoryMap() {
+        return clientQos0MemoryMap;
+    }
+
+    @NotNull
+    private AtomicInteger getOrPutQueueSize(@NotNull final Key key, final int bucketIndex) {
+        return getOrPutQueueSizeFromBucket(key, queueSizeBuckets.get(bucketIndex));
+    }
+
+    @NotNull
+    private AtomicInteger getOrPutRetainedQueueSize(@NotNull final Key key, final int bucketIndex) {
+        return getOrPutQueueSizeFromBucket(key, retainedQueueSizeBuckets.get(bucketIndex));
+    }
+
+    @NotNull
+    private static AtomicInteger getOrPutQueueSizeFromBucket(
+            final @NotNull Key key, final @NotNull Map<Key, AtomicInteger> queueSizeBucket) {
+        final AtomicInteger queueSize = queueSizeBucket.get(key);
+        if (queueSize != null) {
+            return queueSize;
+        }
+        final AtomicInteger newQueueSize = new AtomicInteger();
+        queueSizeBucket.put(key, newQueueSize);
+        return newQueueSize;
+    }
+}
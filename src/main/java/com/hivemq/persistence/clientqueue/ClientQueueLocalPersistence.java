@@ -27,6 +27,7 @@ import com.hivemq.mqtt.message.pubrel.PUBREL;
 import com.hivemq.persistence.LocalPersistence;
 
 import java.util.List;
+import java.util.Map;
 
 import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
 
@@ -36,6 +37,8 @@ import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMe
  */
 public interface ClientQueueLocalPersistence extends LocalPersistence {
 
+    String PERSISTENCE_NAME = "client_queue";
+
     /**
      * Adds a PUBLISH to a client or shared subscription queue. If the size exceeds the queue limit, the given PUBLISH
      * or the oldest PUBLISH in the queue will be dropped dependent on the queued messages strategy.
@@ -71,6 +74,22 @@ public interface ClientQueueLocalPersistence extends LocalPersistence {
             @NotNull String queueId, boolean shared, @NotNull List<PUBLISH> publishes, long max,
             @NotNull QueuedMessagesStrategy strategy, boolean retained, int bucketIndex);
 
+    /**
+     * Adds one PUBLISH to each of the given client or shared subscription queues. All queues must belong to the
+     * given bucket. The QoS 1 and 2 messages for all queues are written in a single transaction. If the size of a
+     * queue exceeds the queue limit, the given PUBLISH or the oldest PUBLISH in the queue will be dropped dependent on
+     * the queued messages strategy.
+     *
+     * @param publishes   the PUBLISH to queue, mapped to the queue id
+     * @param shared      is true if the queue ids are actually shared subscriptions false if they are client IDs
+     * @param max         maximum amount of messages queued for a client
+     * @param strategy    how to discard messages in case a queue is full
+     * @param bucketIndex provided by the single writer
+     */
+    void addAll(
+            @NotNull Map<String, PUBLISH> publishes, boolean shared, long max,
+            @NotNull QueuedMessagesStrategy strategy, int bucketIndex);
+
     /**
      * Returns a batch of PUBLISHes and marks them by setting packet identifiers. The size of the batch is limited by 2
      * factors:
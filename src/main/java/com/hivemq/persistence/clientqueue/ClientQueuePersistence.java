@@ -24,6 +24,7 @@ import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Lukas Brandl
@@ -67,6 +68,19 @@ public interface ClientQueuePersistence {
     @NotNull
     ListenableFuture<Void> add(@NotNull String queueId, boolean shared, @NotNull List<PUBLISH> publishes, boolean retained);
 
+    /**
+     * Add one publish to each of the given queues.
+     * The publishes will be queued without packet IDs.
+     * <p>
+     * The queues are grouped by persistence bucket and each group is written in a single task of the single writer.
+     *
+     * @param publishes the publish to add, mapped to the id of the queue
+     * @param shared    is true if the queue ids are actually shared subscriptions
+     * @return a future which completes as soon as the publishes are added to all queues
+     */
+    @NotNull
+    ListenableFuture<Void> addAll(@NotNull Map<String, PUBLISH> publishes, boolean shared);
+
     /**
      * Read publishes that are not yet in-flight.
      * Sets the given packet ID's for the returned publishes if qos > 0.
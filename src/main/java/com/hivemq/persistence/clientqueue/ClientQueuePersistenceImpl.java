@@ -39,12 +39,15 @@ import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.SharedSubscriptionServiceImpl;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.persistence.payload.PayloadPersistenceException;
+import com.hivemq.persistence.util.FutureUtils;
 import com.hivemq.util.ChannelUtils;
 import io.netty.channel.Channel;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -161,6 +164,46 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         });
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public ListenableFuture<Void> addAll(@NotNull final Map<String, PUBLISH> publishes, final boolean shared) {
+        try {
+            checkNotNull(publishes, "Publishes must not be null");
+        } catch (final Exception exception) {
+            return Futures.immediateFailedFuture(exception);
+        }
+
+        final Map<Integer, Map<String, PUBLISH>> publishesPerBucket = new HashMap<>();
+        for (final Map.Entry<String, PUBLISH> entry : publishes.entrySet()) {
+            publishesPerBucket.computeIfAbsent(singleWriter.getBucket(entry.getKey()), bucket -> new HashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+
+        final ImmutableList.Builder<ListenableFuture<Void>> futures = ImmutableList.builder();
+        for (final Map.Entry<Integer, Map<String, PUBLISH>> bucketEntry : publishesPerBucket.entrySet()) {
+            final Map<String, PUBLISH> bucketPublishes = bucketEntry.getValue();
+            futures.add(singleWriter.submit(bucketEntry.getKey(), (bucketIndex, queueBuckets, queueIndex) -> {
+                localPersistence.addAll(bucketPublishes, shared, mqttConfigurationService.maxQueuedMessages(),
+                        mqttConfigurationService.getQueuedMessagesStrategy(), bucketIndex);
+                for (final String queueId : bucketPublishes.keySet()) {
+                    final int queueSize = localPersistence.size(queueId, shared, bucketIndex);
+                    if (queueSize == 1) {
+                        if (shared) {
+                            sharedPublishAvailable(queueId);
+                        } else {
+                            publishAvailable(queueId);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        return FutureUtils.voidFutureFromList(futures.build());
+    }
+
     /**
      * {@inheritDoc}
      */
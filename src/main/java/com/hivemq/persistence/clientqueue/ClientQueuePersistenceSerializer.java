@@ -173,6 +173,17 @@ class ClientQueuePersistenceSerializer {
         return XodusUtils.bytesToByteIterable(bytes);
     }
 
+    /**
+     * @param packetId the packet id of an in-flight message
+     * @return the serialized packet id, readable with {@link #deserializePacketId(ByteIterable)}
+     */
+    @NotNull
+    ByteIterable serializePacketId(final int packetId) {
+        final byte[] bytes = new byte[Short.BYTES];
+        Bytes.copyUnsignedShortToByteArray(packetId, bytes, 0);
+        return XodusUtils.bytesToByteIterable(bytes);
+    }
+
     @NotNull
     ByteIterable serializePubRel(@NotNull final PUBREL pubrel, final boolean retained) {
         return XodusUtils.bytesToByteIterable(createPubrelBytes(pubrel.getPacketIdentifier(), retained, pubrel.getExpiryInterval(),
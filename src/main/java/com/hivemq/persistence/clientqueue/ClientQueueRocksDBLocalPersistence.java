@@ -0,0 +1,943 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService;
+import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBBucket;
+import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBPersistenceException;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import com.hivemq.util.PublishUtil;
+import com.hivemq.util.ThreadPreConditions;
+import jetbrains.exodus.ByteIterable;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
+import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
+import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
+
+/**
+ * An implementation of the ClientQueueLocalPersistence based on RocksDB. It uses the same keys and values as the
+ * {@link ClientQueueXodusLocalPersistence}.
+ * <p>
+ * The packet id of an in-flight PUBLISH is stored as a marker next to the message, like in the in-flight store of the
+ * Xodus persistence, so polling a message does not rewrite it. The markers use the key of their message with the
+ * {@link #INFLIGHT_MARKER_PREFIX}, which sorts them behind all messages of the bucket.
+ * <p>
+ * All writes go directly to RocksDB instead of a write batch, because the iterations of an operation must see the
+ * messages that an earlier step of the same operation discarded. All calls for a bucket come from the same single
+ * writer thread.
+ */
+@LazySingleton
+public class ClientQueueRocksDBLocalPersistence extends RocksDBLocalPersistence
+        implements ClientQueueLocalPersistence, SerializedEntryPersistence {
+
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(ClientQueueRocksDBLocalPersistence.class);
+
+    public static final String PERSISTENCE_VERSION = "040000_R";
+
+    /**
+     * The first byte of the keys of the in-flight markers. Serialized client ids are UTF-8, which never contains this
+     * byte, so a marker never matches the prefix of a queue.
+     */
+    private static final byte INFLIGHT_MARKER_PREFIX = (byte) 0xFF;
+
+    private final @NotNull ClientQueuePersistenceSerializer serializer;
+
+    private final @NotNull PublishPayloadPersistence payloadPersistence;
+
+    private final @NotNull ClientQueueBookkeeping bookkeeping;
+
+    @Inject
+    ClientQueueRocksDBLocalPersistence(
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull PersistenceStartup persistenceStartup,
+            final @NotNull MessageDroppedService messageDroppedService) {
+
+        super(localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.QUEUED_MESSAGES_MEMTABLE_SIZE_PORTION,
+                InternalConfigurations.QUEUED_MESSAGES_BLOCK_CACHE_SIZE_PORTION,
+                InternalConfigurations.QUEUED_MESSAGES_BLOCK_SIZE,
+                InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE);
+
+        this.serializer = new ClientQueuePersistenceSerializer(payloadPersistence);
+        this.payloadPersistence = payloadPersistence;
+        this.bookkeeping = new ClientQueueBookkeeping(payloadPersistence, messageDroppedService, getBucketCount());
+    }
+
+    @NotNull
+    @Override
+    protected String getName() {
+        return PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    protected String getVersion() {
+        return PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    protected Options getOptions() {
+        return new Options()
+                .setCreateIfMissing(true)
+                .setStatistics(new Statistics());
+    }
+
+    @NotNull
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        super.postConstruct();
+    }
+
+    @Override
+    protected void init() {
+        log.debug("Initializing payload reference count and queue sizes for {} persistence.", PERSISTENCE_NAME);
+
+        Preconditions.checkNotNull(buckets, "Buckets must be initialized at this point");
+
+        long nextMessageIndex = ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.get();
+
+        for (int i = 0; i < buckets.length; i++) {
+            final InflightMarkers markers = new InflightMarkers(buckets[i]);
+            try (final RocksIterator iterator = buckets[i].newIterator()) {
+                for (iterator.seekToFirst(); iterator.isValid() && !isInflightMarker(iterator.key()); iterator.next()) {
+                    final ByteIterable serializedKey = bytesToByteIterable(iterator.key());
+                    final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                    final Key key = serializer.deserializeKeyId(serializedKey);
+
+                    final MessageWithID messageWithID = markers.readMessage(iterator);
+                    if (messageWithID instanceof PUBLISH) {
+                        nextMessageIndex = Math.max(nextMessageIndex, serializer.deserializeIndex(serializedKey) + 1);
+                        payloadPersistence.incrementReferenceCounterOnBootstrap(((PUBLISH) messageWithID).getPayloadId());
+                    }
+                    bookkeeping.messageRestored(
+                            key, i, messageWithID, serializer.deserializeRetained(serializedValue));
+                }
+            }
+        }
+
+        ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.set(nextMessageIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The packet ids of the in-flight markers are written into the serialized messages, so the entries are complete
+     * without the markers.
+     */
+    @Override
+    public void iterateSerialized(final @NotNull SerializedEntryCallback callback) {
+        for (int i = 0; i < getBucketCount(); i++) {
+            final RocksDBBucket bucket = buckets[i];
+            try (final RocksIterator iterator = bucket.newIterator()) {
+                for (iterator.seekToFirst(); iterator.isValid() && !isInflightMarker(iterator.key()); iterator.next()) {
+                    byte[] value = iterator.value();
+                    final byte[] marker = get(bucket, inflightMarkerKey(iterator.key()));
+                    if (marker != null) {
+                        value = byteIterableToBytes(serializer.serializeAndSetPacketId(
+                                bytesToByteIterable(value), serializer.deserializePacketId(bytesToByteIterable(marker))));
+                    }
+                    callback.onEntry(i, iterator.key(), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putSerialized(final int bucketIndex, final @NotNull byte[] key, final @NotNull byte[] value) {
+        checkBucketIndex(bucketIndex);
+
+        put(buckets[bucketIndex], key, value);
+
+        final ByteIterable keyBytes = bytesToByteIterable(key);
+        final ByteIterable valueBytes = bytesToByteIterable(value);
+        final MessageWithID message = serializer.deserializeValue(valueBytes);
+        if (message instanceof PUBLISH) {
+            final long index = serializer.deserializeIndex(keyBytes);
+            ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.accumulateAndGet(index + 1, Math::max);
+        }
+        bookkeeping.messageRestored(
+                serializer.deserializeKeyId(keyBytes), bucketIndex, message, serializer.deserializeRetained(valueBytes));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(
+            @NotNull final String queueId, final boolean shared, @NotNull final PUBLISH publish, final long max,
+            @NotNull final QueuedMessagesStrategy strategy, final boolean retained, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publish, "Publish must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+        if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+            bookkeeping.addQos0Publish(key, publish, retained, bucketIndex);
+            return;
+        }
+
+        if (!bookkeeping.tryReserve(key, bucketIndex, max, retained) &&
+                dropForStrategy(queueId, shared, retained, publish, strategy, key, bucketIndex)) {
+            return;
+        }
+
+        putPublish(bucketIndex, key, publish, retained);
+    }
+
+    /**
+     * @return true if the argument publish was discarded, false if another publish was discarded
+     */
+    private boolean dropForStrategy(
+            final @NotNull String queueId,
+            final boolean shared,
+            final boolean retained,
+            final @NotNull PUBLISH publish,
+            final @NotNull MqttConfigurationService.QueuedMessagesStrategy strategy,
+            final @NotNull Key key,
+            final int bucketIndex) {
+        if (strategy == QueuedMessagesStrategy.DISCARD) {
+            bookkeeping.logAndDecrementPayloadReference(publish, shared, queueId);
+            return true;
+        } else {
+            final boolean discarded = discardOldest(bucketIndex, key, retained);
+            if (!discarded) {
+                bookkeeping.logAndDecrementPayloadReference(publish, shared, queueId);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(
+            @NotNull final String queueId, final boolean shared, @NotNull final List<PUBLISH> publishes, final long max,
+            @NotNull final QueuedMessagesStrategy strategy, final boolean retained, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publishes, "Publishes must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+        final ImmutableList.Builder<PUBLISH> qos1and2Publishes = ImmutableList.builder();
+
+        for (final PUBLISH publish : publishes) {
+            if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+                bookkeeping.addQos0Publish(key, publish, retained, bucketIndex);
+            } else {
+                qos1and2Publishes.add(publish);
+            }
+        }
+
+        for (final PUBLISH publish : qos1and2Publishes.build()) {
+            if (!bookkeeping.tryReserve(key, bucketIndex, max, retained) &&
+                    dropForStrategy(queueId, shared, retained, publish, strategy, key, bucketIndex)) {
+                continue;
+            }
+            putPublish(bucketIndex, key, publish, retained);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAll(
+            @NotNull final Map<String, PUBLISH> publishes, final boolean shared, final long max,
+            @NotNull final QueuedMessagesStrategy strategy, final int bucketIndex) {
+        checkNotNull(publishes, "Publishes must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        for (final Map.Entry<String, PUBLISH> entry : publishes.entrySet()) {
+            final Key key = new Key(entry.getKey(), shared);
+            final PUBLISH publish = entry.getValue();
+            if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+                bookkeeping.addQos0Publish(key, publish, false, bucketIndex);
+                continue;
+            }
+
+            if (!bookkeeping.tryReserve(key, bucketIndex, max, false) &&
+                    dropForStrategy(key.getQueueId(), shared, false, publish, strategy, key, bucketIndex)) {
+                continue;
+            }
+            putPublish(bucketIndex, key, publish, false);
+        }
+    }
+
+    private void putPublish(final int bucketIndex, @NotNull final Key key, @NotNull final PUBLISH publish, final boolean retained) {
+        final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
+        final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
+
+        put(buckets[bucketIndex], byteIterableToBytes(keyBytes), byteIterableToBytes(valueBytes));
+        bookkeeping.messageStored(key, bucketIndex, publish);
+    }
+
+    /**
+     * @return true if a message was discarded, else false
+     */
+    private boolean discardOldest(final int bucketIndex, @NotNull final Key key, final boolean retainedOnly) {
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        final AtomicBoolean discarded = new AtomicBoolean();
+        try (final RocksIterator iterator = bucket.newIterator()) {
+
+            // Go to the first entry without a packet id because we don't discard in-flight messages
+            iterateQueue(iterator, key, markers, () -> {
+                final ByteIterable value = bytesToByteIterable(iterator.value());
+                // Messages that are queue as retained messages are not discarded,
+                // otherwise a client could only receive a limited amount of retained message per subscription.
+                if (retainedOnly && !serializer.deserializeRetained(value) ||
+                        !retainedOnly && serializer.deserializeRetained(value)) {
+                    return true;
+                }
+                final PUBLISH publish = (PUBLISH) serializer.deserializeValue(value);
+                bookkeeping.logAndDecrementPayloadReference(publish, key.isShared(), key.getQueueId());
+                delete(bucket, iterator.key());
+
+                discarded.set(true);
+                return false;
+            });
+        }
+
+        return discarded.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public ImmutableList<PUBLISH> readNew(
+            @NotNull final String queueId, final boolean shared, @NotNull final ImmutableIntArray packetIds,
+            final long bytesLimit, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(packetIds, "Packet IDs must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+
+        if (bookkeeping.size(key, bucketIndex) == 0) {
+            return ImmutableList.of();
+        }
+
+        final Qos0Queue qos0Messages = bookkeeping.getOrPutQos0Messages(key, bucketIndex);
+        if (bookkeeping.onlyQos0Messages(key, bucketIndex)) {
+            // In case there are only qos 0 messages
+            if (packetIds.isEmpty()) {
+                return ImmutableList.of();
+            }
+            final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+            final int[] qos0MessagesFound = {0};
+            bookkeeping.drainQos0Messages(key, bucketIndex, qos0Messages, qos0Publish -> {
+                if (!PublishUtil.isExpired(qos0Publish.getTimestamp(), qos0Publish.getMessageExpiryInterval())) {
+                    publishes.add(qos0Publish);
+                    qos0MessagesFound[0]++;
+                }
+                return qos0MessagesFound[0] < packetIds.length();
+            });
+
+            return publishes.build();
+        }
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+
+            final int countLimit = packetIds.length();
+            final int[] messageCount = {0};
+            final int[] packetIdIndex = {0};
+            final int[] bytes = {0};
+            final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+
+            iterateQueue(iterator, key, markers, () -> {
+                final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                final PUBLISH publish = (PUBLISH) serializer.deserializeValue(serializedValue);
+                if (PublishUtil.isExpired(publish.getTimestamp(), publish.getMessageExpiryInterval())) {
+                    delete(bucket, iterator.key());
+                    payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
+                    bookkeeping.messageRemoved(key, bucketIndex, serializer.deserializeRetained(serializedValue));
+                    //do not return here, because we could have a QoS 0 message left
+                } else {
+
+                    final int packetId = packetIds.get(packetIdIndex[0]);
+                    publish.setPacketIdentifier(packetId);
+                    markers.put(iterator, packetId);
+
+                    publishes.add(publish);
+                    packetIdIndex[0]++;
+                    messageCount[0]++;
+                    bytes[0] += publish.getEstimatedSizeInMemory();
+                    if ((messageCount[0] == countLimit) || (bytes[0] > bytesLimit)) {
+                        return false;
+                    }
+                }
+
+                // Add a qos 0 message
+                if (!qos0Messages.isEmpty()) {
+                    final PUBLISH qos0Publish = bookkeeping.pollQos0Message(key, bucketIndex, qos0Messages);
+                    if (!PublishUtil.isExpired(
+                            qos0Publish.getTimestamp(), qos0Publish.getMessageExpiryInterval())) {
+                        publishes.add(qos0Publish);
+                        messageCount[0]++;
+                        bytes[0] += qos0Publish.getEstimatedSizeInMemory();
+                    }
+                }
+                return (messageCount[0] != countLimit) && (bytes[0] <= bytesLimit);
+            });
+            return publishes.build();
+        }
+    }
+
+    @NotNull
+    @Override
+    public ImmutableList<MessageWithID> readInflight(
+            @NotNull final String client, final boolean shared, final int batchSize,
+            final long bytesLimit, final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(client, shared);
+
+        final InflightMarkers markers = new InflightMarkers(buckets[bucketIndex]);
+        try (final RocksIterator iterator = buckets[bucketIndex].newIterator()) {
+
+            final int[] count = {0};
+            final int[] bytes = {0};
+            final ImmutableList.Builder<MessageWithID> messages = ImmutableList.builder();
+
+            iterateQueue(iterator, key, null, () -> {
+                final MessageWithID message = markers.readMessage(iterator);
+
+                // This works because in-flight messages are always first in the queue
+                if (message.getPacketIdentifier() == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                    return false;
+                }
+
+                messages.add(message);
+
+                count[0]++;
+
+                if (message instanceof PUBLISH) {
+                    bytes[0] += ((PUBLISH) message).getEstimatedSizeInMemory();
+                    ((PUBLISH) message).setDuplicateDelivery(true);
+                }
+
+                return (count[0] != batchSize) && (bytes[0] <= bytesLimit);
+            });
+            return messages.build();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public String replace(@NotNull final String client, @NotNull final PUBREL pubrel, final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        checkNotNull(pubrel, "pubrel must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(client, false);
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+
+            final boolean[] packetIdFound = new boolean[1];
+            final String[] replacedId = new String[1];
+
+            iterateQueue(iterator, key, null, () -> {
+                final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                final MessageWithID message = markers.readMessage(iterator);
+                final int packetId = message.getPacketIdentifier();
+                if (packetId == pubrel.getPacketIdentifier()) {
+                    packetIdFound[0] = true;
+                    final boolean retained = serializer.deserializeRetained(serializedValue);
+                    if (message instanceof PUBLISH) {
+                        final PUBLISH publish = (PUBLISH) message;
+                        payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
+                        pubrel.setExpiryInterval(publish.getMessageExpiryInterval());
+                        pubrel.setPublishTimestamp(publish.getTimestamp());
+                        replacedId[0] = publish.getUniqueId();
+                    } else if (message instanceof PUBREL) {
+                        pubrel.setExpiryInterval(((PUBREL) message).getExpiryInterval());
+                        pubrel.setPublishTimestamp(((PUBREL) message).getPublishTimestamp());
+                    }
+                    // the packet id of the PUBREL is part of the value
+                    markers.remove(iterator);
+                    put(bucket, iterator.key(), byteIterableToBytes(serializer.serializePubRel(pubrel, retained)));
+                    return false;
+                }
+                return packetId != ClientQueuePersistenceSerializer.NO_PACKET_ID;
+            });
+            if (!packetIdFound[0]) {
+                bookkeeping.pubrelAdded(key, bucketIndex);
+                put(bucket, byteIterableToBytes(serializer.serializeUnknownPubRelKey(key)),
+                        byteIterableToBytes(serializer.serializePubRel(pubrel, false)));
+            }
+            return replacedId[0];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String remove(@NotNull final String client, final int packetId, final int bucketIndex) {
+        return remove(client, packetId, null, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public String remove(
+            @NotNull final String client, final int packetId, @Nullable final String uniqueId, final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(client, false);
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+
+            final String[] result = {null};
+
+            iterateQueue(iterator, key, null, () -> {
+                final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                final MessageWithID message = markers.readMessage(iterator);
+                if (message.getPacketIdentifier() == packetId) {
+                    String removedId = null;
+                    if (message instanceof PUBLISH) {
+                        final PUBLISH publish = (PUBLISH) message;
+                        if (uniqueId != null && !uniqueId.equals(publish.getUniqueId())) {
+                            return false;
+                        }
+                        payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
+                        removedId = publish.getUniqueId();
+                    }
+                    bookkeeping.messageRemoved(key, bucketIndex, serializer.deserializeRetained(serializedValue));
+                    markers.remove(iterator);
+                    delete(bucket, iterator.key());
+                    result[0] = removedId;
+                    return false;
+                }
+                return true;
+            });
+            return result[0];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX); // QueueSizes are not thread save
+        return bookkeeping.size(new Key(queueId, shared), bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int qos0Size(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX); // QueueSizes are not thread save
+        return bookkeeping.qos0Size(new Key(queueId, shared), bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+            iterateQueue(iterator, key, null, () -> {
+                final MessageWithID message = serializer.deserializeValue(bytesToByteIterable(iterator.value()));
+                if (message instanceof PUBLISH) {
+                    payloadPersistence.decrementReferenceCounter(((PUBLISH) message).getPayloadId());
+                }
+                markers.remove(iterator);
+                delete(bucket, iterator.key());
+                return true;
+            });
+        }
+
+        bookkeeping.clear(key, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAllQos0Messages(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        bookkeeping.removeAllQos0Messages(new Key(queueId, shared), bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public ImmutableSet<String> cleanUp(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        if (stopped.get()) {
+            return ImmutableSet.of();
+        }
+
+        final ImmutableSet<String> sharedQueues = bookkeeping.getSharedQueues(bucketIndex);
+
+        // only queues that contain at least one message that may be expired by now
+        for (final Key dueKey : bookkeeping.getDueQueues(bucketIndex, System.currentTimeMillis())) {
+            cleanExpiredMessages(dueKey, bucketIndex);
+        }
+
+        return sharedQueues;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeShared(
+            @NotNull final String sharedSubscription, @NotNull final String uniqueId, final int bucketIndex) {
+        checkNotNull(sharedSubscription, "Shared subscription must not be null");
+        checkNotNull(uniqueId, "Unique id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(sharedSubscription, true);
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+            iterateQueue(iterator, key, null, () -> {
+                final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                final MessageWithID message = serializer.deserializeValue(serializedValue);
+
+                if (message instanceof PUBLISH) {
+                    final PUBLISH publish = (PUBLISH) message;
+                    if (!uniqueId.equals(publish.getUniqueId())) {
+                        return true;
+                    }
+                    payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
+                    bookkeeping.messageRemoved(key, bucketIndex, serializer.deserializeRetained(serializedValue));
+                    markers.remove(iterator);
+                    delete(bucket, iterator.key());
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeInFlightMarker(
+            @NotNull final String sharedSubscription, @NotNull final String uniqueId, final int bucketIndex) {
+        checkNotNull(sharedSubscription, "Shared subscription must not be null");
+        checkNotNull(uniqueId, "Unique id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(sharedSubscription, true);
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+            iterateQueue(iterator, key, null, () -> {
+                final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                final MessageWithID message = serializer.deserializeValue(serializedValue);
+
+                if (message instanceof PUBLISH) {
+                    final PUBLISH publish = (PUBLISH) message;
+                    if (!uniqueId.equals(publish.getUniqueId())) {
+                        return true;
+                    }
+                    if (!markers.remove(iterator)) {
+                        // the packet id was written into the message by a previous version
+                        put(bucket, iterator.key(), byteIterableToBytes(serializer.serializeAndSetPacketId(
+                                serializedValue, ClientQueuePersistenceSerializer.NO_PACKET_ID)));
+                    }
+                }
+                return false;
+            });
+        }
+    }
+
+    public @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets() {
+        return bookkeeping.getQueueSizeBuckets();
+    }
+
+    public @NotNull ConcurrentHashMap<String, AtomicInteger> getClientQos0MemoryMap() {
+        return bookkeeping.getClientQos0MemoryMap();
+    }
+
+    /**
+     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
+     */
+    @VisibleForTesting
+    void increaseClientQos0MessagesMemory(final @NotNull Key key, final int size) {
+        bookkeeping.increaseClientQos0MessagesMemory(key, size);
+    }
+
+    private void cleanExpiredMessages(@NotNull final Key key, final int bucketIndex) {
+        final long now = System.currentTimeMillis();
+        // the earliest expiry of the messages that stay in the queue
+        final long[] nextExpiry = {bookkeeping.removeExpiredQos0Messages(key, bucketIndex, now)};
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(bucket);
+        try (final RocksIterator iterator = bucket.newIterator()) {
+            iterateQueue(iterator, key, null, () -> {
+                final ByteIterable serializedValue = bytesToByteIterable(iterator.value());
+                final MessageWithID message = markers.readMessage(iterator);
+                final long expiry = ClientQueueBookkeeping.getExpiryTimestamp(message);
+                if (expiry > now) {
+                    nextExpiry[0] = Math.min(nextExpiry[0], expiry);
+                    return true;
+                }
+                if (message instanceof PUBLISH) {
+                    payloadPersistence.decrementReferenceCounter(((PUBLISH) message).getPayloadId());
+                }
+                bookkeeping.messageRemoved(key, bucketIndex, serializer.deserializeRetained(serializedValue));
+                markers.remove(iterator);
+                delete(bucket, iterator.key());
+                return true;
+            });
+        }
+
+        bookkeeping.cleanedUp(key, bucketIndex, nextExpiry[0]);
+    }
+
+    private int skipPrefix(@NotNull final ByteIterable serializedKey, @NotNull final RocksIterator iterator) {
+        int comparison = serializer.compareClientId(serializedKey, bytesToByteIterable(iterator.key()));
+        while (comparison == ClientQueuePersistenceSerializer.CLIENT_ID_SAME_PREFIX) {
+            comparison = compareNextClientId(serializedKey, iterator);
+        }
+        return comparison;
+    }
+
+    private int skipWithId(
+            @NotNull final ByteIterable serializedKey, @NotNull final RocksIterator iterator,
+            @NotNull final InflightMarkers markers, int comparison) {
+        while (comparison == ClientQueuePersistenceSerializer.CLIENT_ID_MATCH) {
+            if (markers.readPacketId(iterator) == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                break;
+            }
+            comparison = compareNextClientId(serializedKey, iterator);
+        }
+        return comparison;
+    }
+
+    private int compareNextClientId(@NotNull final ByteIterable serializedClientId, @NotNull final RocksIterator iterator) {
+        iterator.next();
+        if (!iterator.isValid()) {
+            return ClientQueuePersistenceSerializer.CLIENT_ID_NO_MATCH;
+        }
+        return serializer.compareClientId(serializedClientId, bytesToByteIterable(iterator.key()));
+    }
+
+    /**
+     * Move the iterator to every position of the client id order and calls the given callback.
+     *
+     * @param skipWithId if not null, the in-flight messages at the start of the queue are skipped
+     */
+    private void iterateQueue(
+            final @NotNull RocksIterator iterator, @NotNull final Key key, @Nullable final InflightMarkers skipWithId,
+            @NotNull final Callback callback) {
+        final ByteIterable serializedKey = serializer.serializeKey(key);
+
+        iterator.seek(byteIterableToBytes(serializedKey));
+        if (!iterator.isValid()) {
+            return;
+        }
+        int comparison = skipPrefix(serializedKey, iterator);
+        if (skipWithId != null) {
+            comparison = skipWithId(serializedKey, iterator, skipWithId, comparison);
+        }
+        while (comparison == ClientQueuePersistenceSerializer.CLIENT_ID_MATCH) {
+            if (!callback.call()) {
+                return;
+            }
+            comparison = compareNextClientId(serializedKey, iterator);
+        }
+    }
+
+    private interface Callback {
+
+        boolean call();
+    }
+
+    private static boolean isInflightMarker(@NotNull final byte[] key) {
+        return key.length > 0 && key[0] == INFLIGHT_MARKER_PREFIX;
+    }
+
+    @NotNull
+    private static byte[] inflightMarkerKey(@NotNull final byte[] messageKey) {
+        final byte[] markerKey = new byte[messageKey.length + 1];
+        markerKey[0] = INFLIGHT_MARKER_PREFIX;
+        System.arraycopy(messageKey, 0, markerKey, 1, messageKey.length);
+        return markerKey;
+    }
+
+    /**
+     * The in-flight markers of a bucket. A message without a marker may still carry a packet id in its value, if it
+     * was written by a previous version or migrated from another persistence.
+     */
+    private class InflightMarkers {
+
+        private final @NotNull RocksDBBucket bucket;
+
+        private InflightMarkers(@NotNull final RocksDBBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        private int readPacketId(@NotNull final RocksIterator iterator) {
+            final byte[] marker = get(bucket, inflightMarkerKey(iterator.key()));
+            if (marker != null) {
+                return serializer.deserializePacketId(bytesToByteIterable(marker));
+            }
+            return serializer.deserializePacketId(bytesToByteIterable(iterator.value()));
+        }
+
+        @NotNull
+        private MessageWithID readMessage(@NotNull final RocksIterator iterator) {
+            final MessageWithID message = serializer.deserializeValue(bytesToByteIterable(iterator.value()));
+            if (message instanceof PUBLISH) {
+                final byte[] marker = get(bucket, inflightMarkerKey(iterator.key()));
+                if (marker != null) {
+                    ((PUBLISH) message).setPacketIdentifier(serializer.deserializePacketId(bytesToByteIterable(marker)));
+                }
+            }
+            return message;
+        }
+
+        private void put(@NotNull final RocksIterator iterator, final int packetId) {
+            ClientQueueRocksDBLocalPersistence.put(
+                    bucket, inflightMarkerKey(iterator.key()), byteIterableToBytes(serializer.serializePacketId(packetId)));
+        }
+
+        /**
+         * Must be called before the message at the iterator position is deleted or replaced.
+         *
+         * @return true if the message had a marker
+         */
+        private boolean remove(@NotNull final RocksIterator iterator) {
+            final byte[] markerKey = inflightMarkerKey(iterator.key());
+            if (get(bucket, markerKey) == null) {
+                return false;
+            }
+            delete(bucket, markerKey);
+            return true;
+        }
+    }
+
+    @Nullable
+    private static byte[] get(@NotNull final RocksDBBucket bucket, @NotNull final byte[] key) {
+        try {
+            return bucket.get(key);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private static void put(@NotNull final RocksDBBucket bucket, @NotNull final byte[] key, @NotNull final byte[] value) {
+        try {
+            bucket.put(key, value);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private static void delete(@NotNull final RocksDBBucket bucket, @NotNull final byte[] key) {
+        try {
+            bucket.delete(key);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+}
@@ -27,23 +27,25 @@ import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
 import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
 import com.hivemq.persistence.local.xodus.EnvironmentUtil;
 import com.hivemq.persistence.local.xodus.XodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.bucket.Bucket;
-import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.util.LocalPersistenceFileUtil;
 import com.hivemq.util.PublishUtil;
-import com.hivemq.util.Strings;
 import com.hivemq.util.ThreadPreConditions;
 import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.StoreConfig;
 import jetbrains.exodus.env.Transaction;
 import org.slf4j.Logger;
@@ -53,15 +55,14 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.hivemq.configuration.service.InternalConfigurations.QOS_0_MEMORY_HARD_LIMIT_DIVISOR;
-import static com.hivemq.configuration.service.InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT;
 import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
+import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
 import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
 
 /**
@@ -69,37 +70,26 @@ import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
  * @author Silvio Giebl
  */
 @LazySingleton
-public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence implements ClientQueueLocalPersistence {
+public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence
+        implements ClientQueueLocalPersistence, SerializedEntryPersistence {
 
     @NotNull
     private static final Logger log = LoggerFactory.getLogger(ClientQueueXodusLocalPersistence.class);
 
-    private static final String PERSISTENCE_NAME = "client_queue";
+    private static final String INFLIGHT_STORE_NAME = "client_queue_inflight";
     public static final String PERSISTENCE_VERSION = "040000";
-    private static final int LINKED_LIST_NODE_OVERHEAD = 24;
 
     private final @NotNull ClientQueuePersistenceSerializer serializer;
 
-    private final @NotNull MessageDroppedService messageDroppedService;
-
-    private final @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> queueSizeBuckets;
-
-    @NotNull
-    private final ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> retainedQueueSizeBuckets;
-
-    private final int retainedMessageMax;
-
     private final @NotNull PublishPayloadPersistence payloadPersistence;
 
-    private final ConcurrentHashMap<Integer, Map<Key, LinkedList<PublishWithRetained>>> qos0MessageBuckets;
-
-    private final @NotNull AtomicLong qos0MessagesMemory = new AtomicLong();
-    private final long qos0MemoryLimit;
+    private final @NotNull ClientQueueBookkeeping bookkeeping;
 
-    private final int qos0ClientMemoryLimit;
-
-    @NotNull
-    private final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap;
+    /**
+     * The packet ids of in-flight PUBLISHes, stored under the key of the message in a separate store of each bucket,
+     * so that a poll does not rewrite the whole message.
+     */
+    private @NotNull Store[] inflightStores;
 
     @Inject
     ClientQueueXodusLocalPersistence(
@@ -110,34 +100,12 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             final @NotNull MessageDroppedService messageDroppedService) {
 
         super(environmentUtil, localPersistenceFileUtil, persistenceStartup,
-                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(), true);
-        retainedMessageMax = InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.get();
-        qos0ClientMemoryLimit = InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT.get();
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
 
         this.serializer = new ClientQueuePersistenceSerializer(payloadPersistence);
-        this.messageDroppedService = messageDroppedService;
-        this.queueSizeBuckets = new ConcurrentHashMap<>();
-        this.retainedQueueSizeBuckets = new ConcurrentHashMap<>();
         this.payloadPersistence = payloadPersistence;
-        this.qos0MessageBuckets = new ConcurrentHashMap<>();
-        this.qos0MemoryLimit = getQos0MemoryLimit();
-        this.clientQos0MemoryMap = new ConcurrentHashMap<>();
-    }
-
-    private long getQos0MemoryLimit() {
-        final long maxHeap = Runtime.getRuntime().maxMemory();
-        final long maxHardLimit;
-
-        final int hardLimitDivisor = QOS_0_MEMORY_HARD_LIMIT_DIVISOR.get();
-
-        if (hardLimitDivisor < 1) {
-            //fallback to default if config failed
-            maxHardLimit = maxHeap / 4;
-        } else {
-            maxHardLimit = maxHeap / hardLimitDivisor;
-        }
-        log.debug("{} allocated for qos 0 inflight messages", Strings.convertBytes(maxHardLimit));
-        return maxHardLimit;
+        this.bookkeeping = new ClientQueueBookkeeping(payloadPersistence, messageDroppedService, getBucketCount());
     }
 
     @NotNull
@@ -175,43 +143,27 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         Preconditions.checkNotNull(buckets, "Buckets must be initialized at this point");
 
+        inflightStores = new Store[buckets.length];
         for (int i = 0; i < buckets.length; i++) {
-            qos0MessageBuckets.put(i, new HashMap<>());
-            queueSizeBuckets.put(i, new ConcurrentSkipListMap<>());
-            retainedQueueSizeBuckets.put(i, new ConcurrentHashMap<>());
+            final Environment environment = buckets[i].getEnvironment();
+            inflightStores[i] = environment.computeInTransaction(
+                    txn -> environment.openStore(INFLIGHT_STORE_NAME, StoreConfig.WITHOUT_DUPLICATES, txn));
         }
 
         final AtomicLong nextMessageIndex = new AtomicLong(Long.MAX_VALUE / 2);
 
-        for (final Bucket bucket : buckets) {
+        for (int i = 0; i < buckets.length; i++) {
+            final Bucket bucket = buckets[i];
+            final Store inflightStore = inflightStores[i];
+            final int bucketIndex = i;
 
             bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+                final InflightMarkers markers = new InflightMarkers(txn, inflightStore);
                 try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
-                    Key currentKey = null;
-                    int queueSize = 0;
-                    int retainedSize = 0;
                     while (cursor.getNext()) {
-
                         final Key key = serializer.deserializeKeyId(cursor.getKey());
 
-                        if (currentKey == null || !currentKey.equals(key)) {
-
-                            if (currentKey != null && queueSize != 0) {
-                                queueSizeBuckets.get(BucketUtils.getBucket(currentKey.getQueueId(), getBucketCount()))
-                                        .put(currentKey, new AtomicInteger(queueSize));
-                                if (retainedSize != 0) {
-                                    retainedQueueSizeBuckets.get(
-                                            BucketUtils.getBucket(currentKey.getQueueId(), getBucketCount()))
-                                            .put(currentKey, new AtomicInteger(retainedSize));
-                                }
-                            }
-                            queueSize = 0;
-                            retainedSize = 0;
-                        }
-
-                        currentKey = key;
-
-                        final MessageWithID messageWithID = serializer.deserializeValue(cursor.getValue());
+                        final MessageWithID messageWithID = markers.readMessage(cursor);
                         if (messageWithID instanceof PUBLISH) {
                             final long deserializeIndex = serializer.deserializeIndex(cursor.getKey());
                             if (nextMessageIndex.get() < deserializeIndex) {
@@ -220,34 +172,62 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             final PUBLISH publish = (PUBLISH) messageWithID;
                             payloadPersistence.incrementReferenceCounterOnBootstrap(publish.getPayloadId());
                         }
-                        queueSize++;
-                        if (serializer.deserializeRetained(cursor.getValue())) {
-                            retainedSize++;
-                        }
+                        bookkeeping.messageRestored(
+                                key, bucketIndex, messageWithID, serializer.deserializeRetained(cursor.getValue()));
                     }
+                }
+            });
+        }
 
-                    //we do not put if we change bucket, therefor we must check after
-                    //we must check this, because a bucket may be empty
-                    if (currentKey != null) {
-                        if (queueSizeBuckets.get(BucketUtils.getBucket(currentKey.getQueueId(), getBucketCount()))
-                                .get(currentKey) == null) {
-                            queueSizeBuckets.get(BucketUtils.getBucket(currentKey.getQueueId(), getBucketCount()))
-                                    .put(currentKey, new AtomicInteger(queueSize));
-                        }
-                        if (retainedQueueSizeBuckets.get(
-                                BucketUtils.getBucket(currentKey.getQueueId(), getBucketCount())).get(currentKey) ==
-                                null) {
-                            retainedQueueSizeBuckets.get(
-                                    BucketUtils.getBucket(currentKey.getQueueId(), getBucketCount()))
-                                    .put(currentKey, new AtomicInteger(retainedSize));
+        ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.set(nextMessageIndex.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The packet ids of in-flight PUBLISHes are written into the serialized messages, so the entries are complete
+     * without the separate in-flight store.
+     */
+    @Override
+    public void iterateSerialized(final @NotNull SerializedEntryCallback callback) {
+        for (int i = 0; i < bucketCount; i++) {
+            final Bucket bucket = buckets[i];
+            final Store inflightStore = inflightStores[i];
+            final int bucketIndex = i;
+            bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+                try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+                    while (cursor.getNext()) {
+                        ByteIterable value = cursor.getValue();
+                        final ByteIterable marker = inflightStore.get(txn, cursor.getKey());
+                        if (marker != null) {
+                            value = serializer.serializeAndSetPacketId(value, serializer.deserializePacketId(marker));
                         }
+                        callback.onEntry(bucketIndex, byteIterableToBytes(cursor.getKey()), byteIterableToBytes(value));
                     }
-
                 }
             });
         }
+    }
 
-        ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.set(nextMessageIndex.get());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putSerialized(final int bucketIndex, final @NotNull byte[] key, final @NotNull byte[] value) {
+        checkBucketIndex(bucketIndex);
+
+        final Bucket bucket = buckets[bucketIndex];
+        final ByteIterable keyBytes = bytesToByteIterable(key);
+        final ByteIterable valueBytes = bytesToByteIterable(value);
+        bucket.getEnvironment().executeInTransaction(txn -> bucket.getStore().put(txn, keyBytes, valueBytes));
+
+        final MessageWithID message = serializer.deserializeValue(valueBytes);
+        if (message instanceof PUBLISH) {
+            final long index = serializer.deserializeIndex(keyBytes);
+            ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.accumulateAndGet(index + 1, Math::max);
+        }
+        bookkeeping.messageRestored(
+                serializer.deserializeKeyId(keyBytes), bucketIndex, message, serializer.deserializeRetained(valueBytes));
     }
 
     /**
@@ -264,38 +244,26 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Key key = new Key(queueId, shared);
         if (publish.getQoS() == QoS.AT_MOST_ONCE) {
-            addQos0Publish(key, new PublishWithRetained(publish, retained), bucketIndex);
+            bookkeeping.addQos0Publish(key, publish, retained, bucketIndex);
             return;
         }
 
         final Bucket bucket = buckets[bucketIndex];
 
-        final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
-        final AtomicInteger retainedQueueSize = getOrPutRetainedQueueSize(key, bucketIndex);
-        final int qos1And2QueueSize = queueSize.get() - qos0Size(key, bucketIndex) - retainedQueueSize.get();
-
-        if (!retained && qos1And2QueueSize >= max) {
-            if (dropForStrategy(queueId, shared, retained, publish, strategy, key, bucket)) {
-                return;
-            }
-        } else if (retained && retainedQueueSize.get() >= retainedMessageMax) {
-            if (dropForStrategy(queueId, shared, retained, publish, strategy, key, bucket)) {
-                return;
-            }
-        } else {
-            queueSize.incrementAndGet();
-            if (retained) {
-                retainedQueueSize.incrementAndGet();
-            }
+        if (!bookkeeping.tryReserve(key, bucketIndex, max, retained) &&
+                dropForStrategy(queueId, shared, retained, publish, strategy, key, bucketIndex, null)) {
+            return;
         }
 
         final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
         final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
 
         bucket.getEnvironment().executeInTransaction(txn -> bucket.getStore().put(txn, keyBytes, valueBytes));
+        bookkeeping.messageStored(key, bucketIndex, publish);
     }
 
     /**
+     * @param txn the transaction of the caller or null if the oldest publish is discarded in a transaction of its own
      * @return true if the argument publish was discarded, false if another publish was discarded
      */
     private boolean dropForStrategy(
@@ -305,14 +273,16 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             final @NotNull PUBLISH publish,
             final @NotNull MqttConfigurationService.QueuedMessagesStrategy strategy,
             final @NotNull Key key,
-            final @NotNull Bucket bucket) {
+            final int bucketIndex,
+            final @Nullable Transaction txn) {
         if (strategy == QueuedMessagesStrategy.DISCARD) {
-            logAndDecrementPayloadReference(publish, shared, queueId);
+            bookkeeping.logAndDecrementPayloadReference(publish, shared, queueId);
             return true;
         } else {
-            final boolean discarded = discardOldest(bucket, key, retained);
+            final boolean discarded = (txn == null) ?
+                    discardOldest(bucketIndex, key, retained) : discardOldest(bucketIndex, key, retained, txn);
             if (!discarded) {
-                logAndDecrementPayloadReference(publish, shared, queueId);
+                bookkeeping.logAndDecrementPayloadReference(publish, shared, queueId);
                 return true;
             }
         }
@@ -336,7 +306,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         for (final PUBLISH publish : publishes) {
             if (publish.getQoS() == QoS.AT_MOST_ONCE) {
-                addQos0Publish(key, new PublishWithRetained(publish, retained), bucketIndex);
+                bookkeeping.addQos0Publish(key, publish, retained, bucketIndex);
             } else {
                 qos1and2Publishes.add(publish);
             }
@@ -344,158 +314,90 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
 
-        final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
-        final AtomicInteger retainedQueueSize = getOrPutRetainedQueueSize(key, bucketIndex);
-        final int qos0Size = qos0Size(key, bucketIndex);
-
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
             for (final PUBLISH publish : qos1and2Publishes.build()) {
-
-                final int qos1And2QueueSize = queueSize.get() - qos0Size - retainedQueueSize.get();
-
-                if (qos1And2QueueSize >= max && !retained) {
-                    if (strategy == QueuedMessagesStrategy.DISCARD) {
-                        logAndDecrementPayloadReference(publish, shared, queueId);
-                        continue;
-                    } else {
-                        final boolean discarded = discardOldest(bucket, key, retained, txn);
-                        if (!discarded) {
-                            logAndDecrementPayloadReference(publish, shared, queueId);
-                            continue;
-                        }
-                    }
-                } else if (retainedQueueSize.get() >= retainedMessageMax && retained) {
-                    if (strategy == QueuedMessagesStrategy.DISCARD) {
-                        logAndDecrementPayloadReference(publish, shared, queueId);
-                        continue;
-                    } else {
-                        final boolean discarded = discardOldest(bucket, key, retained, txn);
-                        if (!discarded) {
-                            //If there is no other message that could be dropped than this message will not be added
-                            logAndDecrementPayloadReference(publish, shared, queueId);
-                            continue;
-                        }
-                    }
-                } else {
-                    queueSize.incrementAndGet();
-                    if (retained) {
-                        retainedQueueSize.incrementAndGet();
-                    }
+                if (!bookkeeping.tryReserve(key, bucketIndex, max, retained) &&
+                        dropForStrategy(queueId, shared, retained, publish, strategy, key, bucketIndex, txn)) {
+                    continue;
                 }
                 final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
                 final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
 
                 bucket.getStore().put(txn, keyBytes, valueBytes);
+                bookkeeping.messageStored(key, bucketIndex, publish);
             }
         });
     }
 
-    private void addQos0Publish(
-            @NotNull final Key key, @NotNull final PublishWithRetained publishWithRetained, final int bucketIndex) {
-        final long currentQos0MessagesMemory = qos0MessagesMemory.get();
-        final PUBLISH publish = publishWithRetained.publish;
-        if (currentQos0MessagesMemory >= qos0MemoryLimit) {
-            if (key.isShared()) {
-                messageDroppedService.qos0MemoryExceededShared(
-                        key.getQueueId(), publish.getTopic(), 0, currentQos0MessagesMemory, qos0MemoryLimit);
-            } else {
-                messageDroppedService.qos0MemoryExceeded(
-                        key.getQueueId(), publish.getTopic(), 0, currentQos0MessagesMemory, qos0MemoryLimit);
-            }
-            payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-            return;
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAll(
+            @NotNull final Map<String, PUBLISH> publishes, final boolean shared, final long max,
+            @NotNull final QueuedMessagesStrategy strategy, final int bucketIndex) {
+        checkNotNull(publishes, "Publishes must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
-        if (!key.isShared()) {
-            final AtomicInteger clientQos0Memory = clientQos0MemoryMap.get(key.getQueueId());
-            if (clientQos0Memory != null && clientQos0Memory.get() >= qos0ClientMemoryLimit) {
-                messageDroppedService.qos0MemoryExceeded(key.getQueueId(), publish.getTopic(), 0, clientQos0Memory.get(), qos0ClientMemoryLimit);
-                payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-                return;
+        final Map<Key, PUBLISH> qos1and2Publishes = new HashMap<>(publishes.size());
+        for (final Map.Entry<String, PUBLISH> entry : publishes.entrySet()) {
+            final Key key = new Key(entry.getKey(), shared);
+            final PUBLISH publish = entry.getValue();
+            if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+                bookkeeping.addQos0Publish(key, publish, false, bucketIndex);
+            } else {
+                qos1and2Publishes.put(key, publish);
             }
         }
 
-        getOrPutQos0Messages(key, bucketIndex).add(publishWithRetained);
-        getOrPutQueueSize(key, bucketIndex).incrementAndGet();
-        if (publishWithRetained.retained) {
-            getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
-        }
-        increaseQos0MessagesMemory(publish.getEstimatedSizeInMemory());
-        increaseClientQos0MessagesMemory(key, publish.getEstimatedSizeInMemory());
-    }
-
-    private void logMessageDropped(
-            @NotNull final PUBLISH publish, final boolean shared, @NotNull final String queueId) {
-        if (shared) {
-            messageDroppedService.queueFullShared(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
-        } else {
-            messageDroppedService.queueFull(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        if (qos1and2Publishes.isEmpty()) {
+            return;
         }
-    }
 
-    /**
-     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
-     */
-    private void increaseQos0MessagesMemory(final int size) {
-        if (size < 0) {
-            qos0MessagesMemory.addAndGet(size - LINKED_LIST_NODE_OVERHEAD);
-        } else {
-            qos0MessagesMemory.addAndGet(size + LINKED_LIST_NODE_OVERHEAD);
-        }
-    }
+        final Bucket bucket = buckets[bucketIndex];
 
-    /**
-     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
-     */
-    @VisibleForTesting
-    void increaseClientQos0MessagesMemory(final Key key, final int size) {
-        if (key.isShared()) {
-            return;
-        }
+        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            for (final Map.Entry<Key, PUBLISH> entry : qos1and2Publishes.entrySet()) {
+                final Key key = entry.getKey();
+                final PUBLISH publish = entry.getValue();
 
-        final AtomicInteger qos0MemoryPerClient = clientQos0MemoryMap.compute(key.getQueueId(), (clientId, clientQos0Memory) -> {
-            if (clientQos0Memory == null) {
-                if (size < 0) {
-                    //strange case that should never happen as there must be a increase before a decrease..
-                    return new AtomicInteger(0);
-                } else {
-                    return new AtomicInteger(size + LINKED_LIST_NODE_OVERHEAD);
+                if (!bookkeeping.tryReserve(key, bucketIndex, max, false) &&
+                        dropForStrategy(key.getQueueId(), shared, false, publish, strategy, key, bucketIndex, txn)) {
+                    continue;
                 }
+                final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
+                final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, false);
+
+                bucket.getStore().put(txn, keyBytes, valueBytes);
+                bookkeeping.messageStored(key, bucketIndex, publish);
             }
-            if (size < 0) {
-                clientQos0Memory.addAndGet(size - LINKED_LIST_NODE_OVERHEAD);
-            } else {
-                clientQos0Memory.addAndGet(size + LINKED_LIST_NODE_OVERHEAD);
-            }
-            return clientQos0Memory;
         });
-
-        if (qos0MemoryPerClient.get() <= 0) {
-            clientQos0MemoryMap.remove(key.getQueueId());
-        }
     }
 
     /**
      * @return true if a message was discarded, else false
      */
-    private boolean discardOldest(@NotNull final Bucket bucket, @NotNull final Key key, final boolean retainedOnly) {
+    private boolean discardOldest(final int bucketIndex, @NotNull final Key key, final boolean retainedOnly) {
 
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn ->
-                discardOldest(bucket, key, retainedOnly, txn));
+        return buckets[bucketIndex].getEnvironment().computeInExclusiveTransaction(txn ->
+                discardOldest(bucketIndex, key, retainedOnly, txn));
     }
 
     /**
      * @return true if a message was discarded, else false
      */
     private boolean discardOldest(
-            @NotNull final Bucket bucket, @NotNull final Key key, final boolean retainedOnly,
+            final int bucketIndex, @NotNull final Key key, final boolean retainedOnly,
             @NotNull final Transaction txn) {
 
+        final Bucket bucket = buckets[bucketIndex];
+        final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
         final AtomicBoolean discarded = new AtomicBoolean();
         try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
             // Go to the first entry without a packet id because we don't discard in-flight messages
-            iterateQueue(cursor, key, true, () -> {
+            iterateQueue(cursor, key, markers, () -> {
                 final ByteIterable value = cursor.getValue();
                 // Messages that are queue as retained messages are not discarded,
                 // otherwise a client could only receive a limited amount of retained message per subscription.
@@ -504,7 +406,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     return true;
                 }
                 final PUBLISH publish = (PUBLISH) serializer.deserializeValue(value);
-                logAndDecrementPayloadReference(publish, key.isShared(), key.getQueueId());
+                bookkeeping.logAndDecrementPayloadReference(publish, key.isShared(), key.getQueueId());
                 cursor.deleteCurrent();
 
                 discarded.set(true);
@@ -515,12 +417,6 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         return discarded.get();
     }
 
-    private void logAndDecrementPayloadReference(
-            final @NotNull PUBLISH publish, final boolean shared, final @NotNull String queueId) {
-        logMessageDropped(publish, shared, queueId);
-        payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -535,32 +431,32 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Key key = new Key(queueId, shared);
 
-        final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
-        if (queueSize.get() == 0) {
+        if (bookkeeping.size(key, bucketIndex) == 0) {
             return ImmutableList.of();
         }
 
-        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
-        if (queueSize.get() == qos0Messages.size()) {
+        final Qos0Queue qos0Messages = bookkeeping.getOrPutQos0Messages(key, bucketIndex);
+        if (bookkeeping.onlyQos0Messages(key, bucketIndex)) {
             // In case there are only qos 0 messages
+            if (packetIds.isEmpty()) {
+                return ImmutableList.of();
+            }
             final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
-            int qos0MessagesFound = 0;
-            while (qos0MessagesFound < packetIds.length()) {
-                final PUBLISH qos0Publish = pollQos0Message(key, bucketIndex);
+            final int[] qos0MessagesFound = {0};
+            bookkeeping.drainQos0Messages(key, bucketIndex, qos0Messages, qos0Publish -> {
                 if (!PublishUtil.isExpired(qos0Publish.getTimestamp(), qos0Publish.getMessageExpiryInterval())) {
                     publishes.add(qos0Publish);
-                    qos0MessagesFound++;
+                    qos0MessagesFound[0]++;
                 }
-                if (qos0Messages.isEmpty()) {
-                    break;
-                }
-            }
+                return qos0MessagesFound[0] < packetIds.length();
+            });
 
             return publishes.build();
         }
 
         final Bucket bucket = buckets[bucketIndex];
         return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final int countLimit = packetIds.length();
@@ -569,24 +465,19 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 final int[] bytes = {0};
                 final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
 
-                iterateQueue(cursor, key, true, () -> {
+                iterateQueue(cursor, key, markers, () -> {
                     final ByteIterable serializedValue = cursor.getValue();
                     final PUBLISH publish = (PUBLISH) serializer.deserializeValue(serializedValue);
                     if (PublishUtil.isExpired(publish.getTimestamp(), publish.getMessageExpiryInterval())) {
                         cursor.deleteCurrent();
                         payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(serializedValue)) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        bookkeeping.messageRemoved(key, bucketIndex, serializer.deserializeRetained(serializedValue));
                         //do not return here, because we could have a QoS 0 message left
                     } else {
 
                         final int packetId = packetIds.get(packetIdIndex[0]);
                         publish.setPacketIdentifier(packetId);
-                        bucket.getStore()
-                                .put(txn, cursor.getKey(),
-                                        serializer.serializeAndSetPacketId(serializedValue, packetId));
+                        markers.put(cursor, packetId);
 
                         publishes.add(publish);
                         packetIdIndex[0]++;
@@ -599,7 +490,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
                     // Add a qos 0 message
                     if (!qos0Messages.isEmpty()) {
-                        final PUBLISH qos0Publish = pollQos0Message(key, bucketIndex);
+                        final PUBLISH qos0Publish = bookkeeping.pollQos0Message(key, bucketIndex, qos0Messages);
                         if (!PublishUtil.isExpired(
                                 qos0Publish.getTimestamp(), qos0Publish.getMessageExpiryInterval())) {
                             publishes.add(qos0Publish);
@@ -614,22 +505,6 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         });
     }
 
-    @NotNull
-    private PUBLISH pollQos0Message(@NotNull final Key key, final int bucketIndex) {
-        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
-        final PublishWithRetained publishWithRetained = qos0Messages.get(0);
-        final PUBLISH qos0Publish = publishWithRetained.publish;
-        qos0Messages.remove(0);
-        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-        if (publishWithRetained.retained) {
-            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-        }
-        increaseQos0MessagesMemory(qos0Publish.getEstimatedSizeInMemory() * -1);
-        increaseClientQos0MessagesMemory(key, qos0Publish.getEstimatedSizeInMemory() * -1);
-        payloadPersistence.decrementReferenceCounter(qos0Publish.getPayloadId());
-        return qos0Publish;
-    }
-
     @NotNull
     @Override
     public ImmutableList<MessageWithID> readInflight(
@@ -643,15 +518,15 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Bucket bucket = buckets[bucketIndex];
 
         return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final int[] count = {0};
                 final int[] bytes = {0};
                 final ImmutableList.Builder<MessageWithID> messages = ImmutableList.builder();
 
-                iterateQueue(cursor, key, false, () -> {
-                    final ByteIterable serializedValue = cursor.getValue();
-                    final MessageWithID message = serializer.deserializeValue(serializedValue);
+                iterateQueue(cursor, key, null, () -> {
+                    final MessageWithID message = markers.readMessage(cursor);
 
                     // This works because in-flight messages are always first in the queue
                     if (message.getPacketIdentifier() == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
@@ -689,13 +564,14 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Bucket bucket = buckets[bucketIndex];
 
         return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final boolean[] packetIdFound = new boolean[1];
                 final String[] replacedId = new String[1];
 
-                iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                iterateQueue(cursor, key, null, () -> {
+                    final MessageWithID message = markers.readMessage(cursor);
                     final int packetId = message.getPacketIdentifier();
                     if (packetId == pubrel.getPacketIdentifier()) {
                         packetIdFound[0] = true;
@@ -711,13 +587,15 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             pubrel.setPublishTimestamp(((PUBREL) message).getPublishTimestamp());
                         }
                         final ByteIterable serializedPubRel = serializer.serializePubRel(pubrel, retained);
+                        // the packet id of the PUBREL is part of the value
+                        markers.remove(cursor);
                         bucket.getStore().put(txn, cursor.getKey(), serializedPubRel);
                         return false;
                     }
                     return packetId != ClientQueuePersistenceSerializer.NO_PACKET_ID;
                 });
                 if (!packetIdFound[0]) {
-                    getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+                    bookkeeping.pubrelAdded(key, bucketIndex);
                     final ByteIterable serializedPubRel = serializer.serializePubRel(pubrel, false);
                     bucket.getStore().put(txn, serializer.serializeUnknownPubRelKey(key), serializedPubRel);
                 }
@@ -748,12 +626,13 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
         return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final String[] result = {null};
 
-                iterateQueue(cursor, key, false, () -> {
-                    final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+                iterateQueue(cursor, key, null, () -> {
+                    final MessageWithID message = markers.readMessage(cursor);
                     if (message.getPacketIdentifier() == packetId) {
                         String removedId = null;
                         if (message instanceof PUBLISH) {
@@ -764,10 +643,9 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
                             removedId = publish.getUniqueId();
                         }
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(cursor.getValue())) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        bookkeeping.messageRemoved(
+                                key, bucketIndex, serializer.deserializeRetained(cursor.getValue()));
+                        markers.remove(cursor);
                         cursor.deleteCurrent();
                         result[0] = removedId;
                         return false;
@@ -786,9 +664,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     public int size(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
         checkNotNull(queueId, "Queue ID must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX); // QueueSizes are not thread save
-        final Key key = new Key(queueId, shared);
-        final AtomicInteger queueSize = queueSizeBuckets.get(bucketIndex).get(key);
-        return (queueSize == null) ? 0 : queueSize.get();
+        return bookkeeping.size(new Key(queueId, shared), bucketIndex);
     }
 
     /**
@@ -798,8 +674,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     public int qos0Size(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
         checkNotNull(queueId, "Queue ID must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX); // QueueSizes are not thread save
-        final Key key = new Key(queueId, shared);
-        return qos0Size(key, bucketIndex);
+        return bookkeeping.qos0Size(new Key(queueId, shared), bucketIndex);
     }
 
     /**
@@ -814,28 +689,22 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
-                iterateQueue(cursor, key, false, () -> {
+                iterateQueue(cursor, key, null, () -> {
                     final MessageWithID message = serializer.deserializeValue(cursor.getValue());
                     if (message instanceof PUBLISH) {
                         payloadPersistence.decrementReferenceCounter(((PUBLISH) message).getPayloadId());
                     }
+                    markers.remove(cursor);
                     cursor.deleteCurrent();
                     return true;
                 });
             }
         });
 
-        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
-        for (final PublishWithRetained qos0Message : qos0Messages) {
-            increaseQos0MessagesMemory(qos0Message.publish.getEstimatedSizeInMemory() * -1);
-            increaseClientQos0MessagesMemory(key, qos0Message.publish.getEstimatedSizeInMemory() * -1);
-            payloadPersistence.decrementReferenceCounter(qos0Message.publish.getPayloadId());
-        }
-        qos0MessageBuckets.get(bucketIndex).remove(key);
-        queueSizeBuckets.get(bucketIndex).remove(key);
-        retainedQueueSizeBuckets.get(bucketIndex).remove(key);
+        bookkeeping.clear(key, bucketIndex);
     }
 
     /**
@@ -846,21 +715,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         checkNotNull(queueId, "Queue id must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
-        final Key key = new Key(queueId, shared);
-        final LinkedList<PublishWithRetained> publishesWithRetained = getOrPutQos0Messages(key, bucketIndex);
-        final Iterator<PublishWithRetained> iterator = publishesWithRetained.iterator();
-        while (iterator.hasNext()) {
-            final PublishWithRetained publishWithRetained = iterator.next();
-            final PUBLISH publish = publishWithRetained.publish;
-            iterator.remove();
-            payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-            getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-            if (publishWithRetained.retained) {
-                getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-            }
-            increaseQos0MessagesMemory(publish.getEstimatedSizeInMemory() * -1);
-            increaseClientQos0MessagesMemory(key, publish.getEstimatedSizeInMemory() * -1);
-        }
+        bookkeeping.removeAllQos0Messages(new Key(queueId, shared), bucketIndex);
     }
 
     /**
@@ -875,17 +730,14 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             return ImmutableSet.of();
         }
 
-        final ImmutableSet.Builder<String> sharedQueues = ImmutableSet.builder();
-        final Map<Key, AtomicInteger> bucketClients = queueSizeBuckets.get(bucketIndex);
+        final ImmutableSet<String> sharedQueues = bookkeeping.getSharedQueues(bucketIndex);
 
-        for (final Key bucketKey : bucketClients.keySet()) {
-            if (bucketKey.isShared()) {
-                sharedQueues.add(bucketKey.getQueueId());
-            }
-            cleanExpiredMessages(bucketKey, bucketIndex);
+        // only queues that contain at least one message that may be expired by now
+        for (final Key dueKey : bookkeeping.getDueQueues(bucketIndex, System.currentTimeMillis())) {
+            cleanExpiredMessages(dueKey, bucketIndex);
         }
 
-        return sharedQueues.build();
+        return sharedQueues;
     }
 
     /**
@@ -902,9 +754,10 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
-                iterateQueue(cursor, key, false, () -> {
+                iterateQueue(cursor, key, null, () -> {
                     final MessageWithID message = serializer.deserializeValue(cursor.getValue());
 
                     if (message instanceof PUBLISH) {
@@ -913,10 +766,9 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             return true;
                         }
                         payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(cursor.getValue())) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        bookkeeping.messageRemoved(
+                                key, bucketIndex, serializer.deserializeRetained(cursor.getValue()));
+                        markers.remove(cursor);
                         cursor.deleteCurrent();
                     }
                     return false;
@@ -939,9 +791,10 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
-                iterateQueue(cursor, key, false, () -> {
+                iterateQueue(cursor, key, null, () -> {
                     final MessageWithID message = serializer.deserializeValue(cursor.getValue());
 
                     if (message instanceof PUBLISH) {
@@ -949,8 +802,11 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         if (!uniqueId.equals(publish.getUniqueId())) {
                             return true;
                         }
-                        bucket.getStore()
-                                .put(txn, cursor.getKey(), serializer.serializePublishWithoutPacketId(publish, false));
+                        if (!markers.remove(cursor)) {
+                            // the packet id was written into the message by a previous version
+                            bucket.getStore().put(txn, cursor.getKey(),
+                                    serializer.serializePublishWithoutPacketId(publish, false));
+                        }
                     }
                     return false;
                 });
@@ -959,74 +815,52 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     }
 
     public @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets() {
-        return queueSizeBuckets;
+        return bookkeeping.getQueueSizeBuckets();
     }
 
     public @NotNull ConcurrentHashMap<String, AtomicInteger> getClientQos0MemoryMap() {
-        return clientQos0MemoryMap;
+        return bookkeeping.getClientQos0MemoryMap();
+    }
+
+    /**
+     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
+     */
+    @VisibleForTesting
+    void increaseClientQos0MessagesMemory(final @NotNull Key key, final int size) {
+        bookkeeping.increaseClientQos0MessagesMemory(key, size);
     }
 
     private void cleanExpiredMessages(@NotNull final Key key, final int bucketIndex) {
-        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
-        final Iterator<PublishWithRetained> iterator = qos0Messages.iterator();
-        while (iterator.hasNext()) {
-            final PublishWithRetained publishWithRetained = iterator.next();
-            final PUBLISH qos0Message = publishWithRetained.publish;
-            if (PublishUtil.isExpired(qos0Message.getTimestamp(), qos0Message.getMessageExpiryInterval())) {
-                getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                increaseQos0MessagesMemory(qos0Message.getEstimatedSizeInMemory() * -1);
-                increaseClientQos0MessagesMemory(key, qos0Message.getEstimatedSizeInMemory() * -1);
-                payloadPersistence.decrementReferenceCounter(qos0Message.getPayloadId());
-                if (publishWithRetained.retained) {
-                    getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                }
-                iterator.remove();
-            }
-        }
+        final long now = System.currentTimeMillis();
+        // the earliest expiry of the messages that stay in the queue
+        final long[] nextExpiry = {bookkeeping.removeExpiredQos0Messages(key, bucketIndex, now)};
 
         final Bucket bucket = buckets[bucketIndex];
 
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            final InflightMarkers markers = new InflightMarkers(txn, inflightStores[bucketIndex]);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
-                iterateQueue(cursor, key, false, () -> {
+                iterateQueue(cursor, key, null, () -> {
                     final ByteIterable serializedValue = cursor.getValue();
-                    final MessageWithID message = serializer.deserializeValue(serializedValue);
-                    if (message instanceof PUBREL) {
-                        final PUBREL pubrel = (PUBREL) message;
-                        if (!InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS) {
-                            return true;
-                        }
-                        if (pubrel.getExpiryInterval() == null || pubrel.getPublishTimestamp() == null) {
-                            return true;
-                        }
-                        if (!PublishUtil.isExpired(pubrel.getPublishTimestamp(), pubrel.getExpiryInterval())) {
-                            return true;
-                        }
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(serializedValue)) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
-                        cursor.deleteCurrent();
-
-                    } else if (message instanceof PUBLISH) {
-                        final PUBLISH publish = (PUBLISH) message;
-                        final boolean expireInflight = InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES;
-                        final boolean isInflight = publish.getQoS() == QoS.EXACTLY_ONCE && publish.getPacketIdentifier() > 0;
-                        final boolean drop = PublishUtil.isExpired(publish) && (!isInflight || expireInflight);
-                        if (drop) {
-                            payloadPersistence.decrementReferenceCounter(publish.getPayloadId());
-                            getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                            if (serializer.deserializeRetained(serializedValue)) {
-                                getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                            }
-                            cursor.deleteCurrent();
-                        }
+                    final MessageWithID message = markers.readMessage(cursor);
+                    final long expiry = ClientQueueBookkeeping.getExpiryTimestamp(message);
+                    if (expiry > now) {
+                        nextExpiry[0] = Math.min(nextExpiry[0], expiry);
+                        return true;
+                    }
+                    if (message instanceof PUBLISH) {
+                        payloadPersistence.decrementReferenceCounter(((PUBLISH) message).getPayloadId());
                     }
+                    bookkeeping.messageRemoved(key, bucketIndex, serializer.deserializeRetained(serializedValue));
+                    markers.remove(cursor);
+                    cursor.deleteCurrent();
                     return true;
                 });
             }
         });
+
+        bookkeeping.cleanedUp(key, bucketIndex, nextExpiry[0]);
     }
 
     private int skipPrefix(@NotNull final ByteIterable serializedKey, @NotNull final Cursor cursor) {
@@ -1038,9 +872,10 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     }
 
     private int skipWithId(
-            @NotNull final ByteIterable serializedKey, @NotNull final Cursor cursor, int comparison) {
+            @NotNull final ByteIterable serializedKey, @NotNull final Cursor cursor,
+            @NotNull final InflightMarkers markers, int comparison) {
         while (comparison == ClientQueuePersistenceSerializer.CLIENT_ID_MATCH) {
-            if (serializer.deserializePacketId(cursor.getValue()) == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+            if (markers.readPacketId(cursor) == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
                 break;
             }
             comparison = compareNextClientId(serializedKey, cursor);
@@ -1057,17 +892,20 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
     /**
      * Move the cursor to every position of the client id order and calls the given callback.
+     *
+     * @param skipWithId if not null, the in-flight messages at the start of the queue are skipped
      */
     private void iterateQueue(
-            final Cursor cursor, @NotNull final Key key, final boolean skipWithId, @NotNull final Callback callback) {
+            final Cursor cursor, @NotNull final Key key, @Nullable final InflightMarkers skipWithId,
+            @NotNull final Callback callback) {
         final ByteIterable serializedKey = serializer.serializeKey(key);
 
         if (cursor.getSearchKeyRange(serializedKey) == null) {
             return;
         }
         int comparison = skipPrefix(serializedKey, cursor);
-        if (skipWithId) {
-            comparison = skipWithId(serializedKey, cursor, comparison);
+        if (skipWithId != null) {
+            comparison = skipWithId(serializedKey, cursor, skipWithId, comparison);
         }
         while (comparison == ClientQueuePersistenceSerializer.CLIENT_ID_MATCH) {
             if (!callback.call()) {
@@ -1082,57 +920,51 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         boolean call();
     }
 
-    @NotNull
-    private AtomicInteger getOrPutQueueSize(@NotNull final Key key, final int bucketIndex) {
-        final Map<Key, AtomicInteger> queueSizeBucket = queueSizeBuckets.get(bucketIndex);
-        return getOrPutQueueSizeFromBucket(key, queueSizeBucket);
-    }
+    /**
+     * Access to the packet ids of the in-flight PUBLISHes of a bucket within a transaction. Messages that were
+     * written by a previous version may still carry their packet id in the serialized message itself.
+     */
+    private class InflightMarkers {
 
-    private @NotNull AtomicInteger getOrPutRetainedQueueSize(@NotNull final Key key, final int bucketIndex) {
-        final Map<Key, AtomicInteger> queueSizeBucket = retainedQueueSizeBuckets.get(bucketIndex);
-        return getOrPutQueueSizeFromBucket(key, queueSizeBucket);
-    }
+        private final @NotNull Transaction txn;
+        private final @NotNull Store store;
 
-    private @NotNull AtomicInteger getOrPutQueueSizeFromBucket(
-            final @NotNull Key key, final @NotNull Map<Key, AtomicInteger> queueSizeBucket) {
-        final AtomicInteger queueSize = queueSizeBucket.get(key);
-        if (queueSize != null) {
-            return queueSize;
+        private InflightMarkers(@NotNull final Transaction txn, @NotNull final Store store) {
+            this.txn = txn;
+            this.store = store;
         }
-        final AtomicInteger newQueueSize = new AtomicInteger();
-        queueSizeBucket.put(key, newQueueSize);
-        return newQueueSize;
-    }
 
-    @NotNull
-    private LinkedList<PublishWithRetained> getOrPutQos0Messages(@NotNull final Key key, final int bucketIndex) {
-        final Map<Key, LinkedList<PublishWithRetained>> bucketMessages = qos0MessageBuckets.get(bucketIndex);
-        LinkedList<PublishWithRetained> publishes = bucketMessages.get(key);
-        if (publishes != null) {
-            return publishes;
+        private int readPacketId(@NotNull final Cursor cursor) {
+            final ByteIterable marker = store.get(txn, cursor.getKey());
+            if (marker != null) {
+                return serializer.deserializePacketId(marker);
+            }
+            return serializer.deserializePacketId(cursor.getValue());
         }
-        publishes = new LinkedList<>();
-        bucketMessages.put(key, publishes);
-        return publishes;
-    }
 
-    private int qos0Size(@NotNull final Key key, final int bucketIndex) {
-        final Map<Key, LinkedList<PublishWithRetained>> bucketMessages = qos0MessageBuckets.get(bucketIndex);
-        final LinkedList<PublishWithRetained> publishes = bucketMessages.get(key);
-        if (publishes != null) {
-            return publishes.size();
+        @NotNull
+        private MessageWithID readMessage(@NotNull final Cursor cursor) {
+            final MessageWithID message = serializer.deserializeValue(cursor.getValue());
+            if (message instanceof PUBLISH) {
+                final ByteIterable marker = store.get(txn, cursor.getKey());
+                if (marker != null) {
+                    ((PUBLISH) message).setPacketIdentifier(serializer.deserializePacketId(marker));
+                }
+            }
+            return message;
         }
-        return 0;
-    }
 
-    private static class PublishWithRetained {
-
-        private final @NotNull PUBLISH publish;
-        private final boolean retained;
+        private void put(@NotNull final Cursor cursor, final int packetId) {
+            store.put(txn, cursor.getKey(), serializer.serializePacketId(packetId));
+        }
 
-        private PublishWithRetained(@NotNull final PUBLISH publish, final boolean retained) {
-            this.publish = publish;
-            this.retained = retained;
+        /**
+         * Must be called before the message at the cursor position is deleted or replaced.
+         *
+         * @return true if the message had a marker
+         */
+        private boolean remove(@NotNull final Cursor cursor) {
+            return store.delete(txn, cursor.getKey());
         }
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.function.Predicate;
+
+/**
+ * A FIFO queue for the QoS 0 messages of a single client or shared subscription queue.
+ * <p>
+ * The messages are kept in a growable array ring and the retained flags in a bit set, so adding and polling does not
+ * allocate a node per message. The estimated memory of all queued messages and the amount of retained messages are
+ * maintained on every change, so the memory limits can be checked without iterating the queue.
+ * <p>
+ * Each instance must only be accessed by the single writer thread of its bucket.
+ */
+@NotThreadSafe
+class Qos0Queue {
+
+    /**
+     * The estimated memory of a queue slot in addition to the estimated size of the PUBLISH.
+     */
+    static final int SLOT_OVERHEAD = 8;
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final @NotNull PUBLISH[] EMPTY = new PUBLISH[0];
+
+    private @NotNull PUBLISH[] publishes = EMPTY;
+    private @NotNull long[] retainedFlags = new long[0];
+    private int head;
+    private int size;
+    private long memory;
+    private int retainedCount;
+
+    /**
+     * Add a message to the tail of the queue.
+     *
+     * @param publish  the message to add
+     * @param retained whether the message is sent because of a retained message
+     */
+    void add(@NotNull final PUBLISH publish, final boolean retained) {
+        if (size == publishes.length) {
+            grow();
+        }
+        final int slot = slot(size);
+        publishes[slot] = publish;
+        if (retained) {
+            retainedFlags[slot >>> 6] |= 1L << slot;
+            retainedCount++;
+        }
+        size++;
+        memory += getSlotSize(publish);
+    }
+
+    /**
+     * @return the oldest message or <code>null</code> if the queue is empty
+     */
+    @Nullable
+    PUBLISH peek() {
+        if (size == 0) {
+            return null;
+        }
+        return publishes[head];
+    }
+
+    /**
+     * Remove the oldest message in O(1).
+     *
+     * @return the removed message or <code>null</code> if the queue is empty
+     */
+    @Nullable
+    PUBLISH poll() {
+        if (size == 0) {
+            return null;
+        }
+        final PUBLISH publish = removeSlot(head);
+        head = slot(1);
+        size--;
+        if (size == 0) {
+            head = 0;
+        }
+        return publish;
+    }
+
+    /**
+     * Remove messages from the head of the queue and pass them to the consumer, until the consumer returns
+     * <code>false</code> or the queue is empty.
+     *
+     * @param consumer receives each removed message and returns whether to continue
+     * @return the amount of removed messages
+     */
+    int drain(@NotNull final Predicate<PUBLISH> consumer) {
+        int removed = 0;
+        while (size > 0) {
+            final PUBLISH publish = poll();
+            removed++;
+            if (!consumer.test(publish)) {
+                break;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all messages that match the filter. The order of the remaining messages is kept.
+     *
+     * @param filter returns <code>true</code> for each message to remove
+     * @return the amount of removed messages
+     */
+    int removeIf(@NotNull final Predicate<PUBLISH> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            final int from = slot(i);
+            final PUBLISH publish = publishes[from];
+            if (filter.test(publish)) {
+                removeSlot(from);
+                continue;
+            }
+            final int to = slot(kept);
+            if (to != from) {
+                final boolean retained = isRetained(from);
+                removeSlot(from);
+                publishes[to] = publish;
+                memory += getSlotSize(publish);
+                if (retained) {
+                    retainedFlags[to >>> 6] |= 1L << to;
+                    retainedCount++;
+                }
+            }
+            kept++;
+        }
+        final int removed = size - kept;
+        size = kept;
+        if (size == 0) {
+            head = 0;
+        }
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the estimated memory of all queued messages including the slot overhead
+     */
+    long getMemory() {
+        return memory;
+    }
+
+    /**
+     * @return the amount of queued messages that are sent because of a retained message
+     */
+    int getRetainedCount() {
+        return retainedCount;
+    }
+
+    static long getSlotSize(@NotNull final PUBLISH publish) {
+        return publish.getEstimatedSizeInMemory() + SLOT_OVERHEAD;
+    }
+
+    @NotNull
+    private PUBLISH removeSlot(final int slot) {
+        final PUBLISH publish = publishes[slot];
+        publishes[slot] = null;
+        if (isRetained(slot)) {
+            retainedFlags[slot >>> 6] &= ~(1L << slot);
+            retainedCount--;
+        }
+        memory -= getSlotSize(publish);
+        return publish;
+    }
+
+    private boolean isRetained(final int slot) {
+        return (retainedFlags[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private int slot(final int offset) {
+        // the capacity is always a power of two
+        return (head + offset) & (publishes.length - 1);
+    }
+
+    private void grow() {
+        final int capacity = publishes.length == 0 ? INITIAL_CAPACITY : publishes.length << 1;
+        final PUBLISH[] newPublishes = new PUBLISH[capacity];
+        final long[] newRetainedFlags = new long[(capacity + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            final int slot = slot(i);
+            newPublishes[i] = publishes[slot];
+            if (isRetained(slot)) {
+                newRetainedFlags[i >>> 6] |= 1L << i;
+            }
+        }
+        publishes = newPublishes;
+        retainedFlags = newRetainedFlags;
+        head = 0;
+    }
+}
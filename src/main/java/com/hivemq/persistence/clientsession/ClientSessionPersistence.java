@@ -68,6 +68,15 @@ public interface ClientSessionPersistence {
     @Nullable
     ClientSession getSession(@NotNull String clientId, boolean includeWill);
 
+    /**
+     * Get the in-memory state of a client session. This method never accesses the disk and does not lock.
+     *
+     * @param clientId the client id.
+     * @return the state of the client session or <null> if there is no session or the session is expired.
+     */
+    @Nullable
+    ClientSessionStateIndex.SessionState getSessionState(@NotNull String clientId);
+
     /**
      * Trigger a cleanup for a specific bucket
      *
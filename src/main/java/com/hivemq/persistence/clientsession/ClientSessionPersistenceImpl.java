@@ -297,6 +297,18 @@ public class ClientSessionPersistenceImpl extends AbstractPersistence implements
         return localPersistence.getSession(clientId, true, includeWill);
     }
 
+    @Nullable
+    @Override
+    public ClientSessionStateIndex.SessionState getSessionState(@NotNull final String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        final ClientSessionStateIndex.SessionState sessionState = localPersistence.getSessionState(clientId);
+        if (sessionState == null || sessionState.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return sessionState;
+    }
+
     /**
      * {@inheritDoc}
      */
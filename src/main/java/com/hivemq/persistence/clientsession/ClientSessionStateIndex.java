@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In-memory index of the state of all client sessions, that is whether the client is connected, its session expiry
+ * interval, the timestamp of the last connect/disconnect and the persistence bucket of the client.
+ * <p>
+ * The index is written only from the single writer tasks of the client session persistence, so there is at most one
+ * writer per client at a time. Reads never lock and never touch the disk, which makes this index suitable for the
+ * publish fan-out, where the state of every subscriber must be checked for every message.
+ */
+@ThreadSafe
+public class ClientSessionStateIndex {
+
+    private final @NotNull Map<String, SessionState> states = new ConcurrentHashMap<>();
+
+    /**
+     * @param clientId the client identifier
+     * @return the state of the session of the client or <code>null</code> if no session is stored for the client.
+     * Expired sessions and tombstones are included.
+     */
+    @Nullable
+    public SessionState get(@NotNull final String clientId) {
+        return states.get(clientId);
+    }
+
+    /**
+     * Update the state of a client session after it was written to the persistence.
+     *
+     * @param clientId      the client identifier
+     * @param clientSession the session that was written
+     * @param timestamp     the timestamp of the latest connect/disconnect
+     * @param bucketIndex   the persistence bucket of the client
+     */
+    public void put(@NotNull final String clientId, @NotNull final ClientSession clientSession, final long timestamp, final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkNotNull(clientSession, "Client session must not be null");
+
+        states.put(clientId, new SessionState(clientSession.isConnected(), clientSession.getSessionExpiryInterval(), timestamp, bucketIndex));
+    }
+
+    /**
+     * Remove the state of a client session after it was removed from the persistence.
+     *
+     * @param clientId the client identifier
+     */
+    public void remove(@NotNull final String clientId) {
+        states.remove(clientId);
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public void clear() {
+        states.clear();
+    }
+
+    @Immutable
+    public static class SessionState {
+
+        private final boolean connected;
+        private final long sessionExpiryInterval;
+        private final long timestamp;
+        private final int bucketIndex;
+
+        public SessionState(final boolean connected, final long sessionExpiryInterval, final long timestamp, final int bucketIndex) {
+            this.connected = connected;
+            this.sessionExpiryInterval = sessionExpiryInterval;
+            this.timestamp = timestamp;
+            this.bucketIndex = bucketIndex;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public long getSessionExpiryInterval() {
+            return sessionExpiryInterval;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getBucketIndex() {
+            return bucketIndex;
+        }
+
+        /**
+         * Same semantics as {@link com.hivemq.util.ClientSessions#isExpired(ClientSession, long)}.
+         *
+         * @param now the current time in milliseconds
+         * @return true if the session is expired
+         */
+        public boolean isExpired(final long now) {
+            if (connected) {
+                return false;
+            }
+
+            final long timeToLiveMilliseconds = sessionExpiryInterval * 1000L;
+
+            //prevent accidental overflow
+            if (timeToLiveMilliseconds < 0) {
+                return false;
+            }
+
+            return now - timestamp >= timeToLiveMilliseconds;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.util.ChannelUtils;
+import io.netty.channel.Channel;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Offers the messages to the members with the fewest messages in flight first. Members are offered messages as long
+ * as their in-flight window is not full, so a member that is still working on a message can take more.
+ */
+@Immutable
+class LeastInflightDispatchStrategy extends PrioritizedDispatchStrategy {
+
+    @Override
+    int priority(@NotNull final Channel channel) {
+        final int inFlightMessages = ChannelUtils.inFlightMessageCount(channel);
+        if (inFlightMessages < 0 || inFlightMessages >= ChannelUtils.maxInflightWindow(channel)) {
+            return SKIP;
+        }
+        return inFlightMessages;
+    }
+}
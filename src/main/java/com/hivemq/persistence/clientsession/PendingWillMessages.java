@@ -35,8 +35,13 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -59,6 +64,13 @@ public class PendingWillMessages {
 
     @VisibleForTesting
     final Map<String, PendingWill> pendingWills = new ConcurrentHashMap<>();
+
+    /**
+     * The clients with pending wills by the send time of their will, so a check only visits the wills that are due.
+     * Written together with {@link #pendingWills} while holding the lock of this map.
+     */
+    private final @NotNull TreeMap<Long, Set<String>> sendTimes = new TreeMap<>();
+
     @NotNull
     private final ClientSessionPersistence clientSessionPersistence;
 
@@ -89,20 +101,49 @@ public class PendingWillMessages {
             sendWill(clientId, session);
             return;
         }
-        pendingWills.put(clientId, new PendingWill(Math.min(willPublish.getDelayInterval(), session.getSessionExpiryInterval()), System.currentTimeMillis()));
+        addPendingWill(clientId, new PendingWill(Math.min(willPublish.getDelayInterval(), session.getSessionExpiryInterval()), System.currentTimeMillis()));
+    }
+
+    @VisibleForTesting
+    void addPendingWill(@NotNull final String clientId, @NotNull final PendingWill pendingWill) {
+        synchronized (sendTimes) {
+            final PendingWill previousWill = pendingWills.put(clientId, pendingWill);
+            if (previousWill != null) {
+                removeSendTime(clientId, previousWill);
+            }
+            sendTimes.computeIfAbsent(pendingWill.getSendTime(), sendTime -> new HashSet<>()).add(clientId);
+        }
     }
 
     public void cancelWill(@NotNull final String clientId) {
-        pendingWills.remove(clientId);
+        synchronized (sendTimes) {
+            final PendingWill pendingWill = pendingWills.remove(clientId);
+            if (pendingWill != null) {
+                removeSendTime(clientId, pendingWill);
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of {@link #sendTimes}.
+     */
+    private void removeSendTime(@NotNull final String clientId, @NotNull final PendingWill pendingWill) {
+        final Set<String> clientIds = sendTimes.get(pendingWill.getSendTime());
+        if (clientIds != null && clientIds.remove(clientId) && clientIds.isEmpty()) {
+            sendTimes.remove(pendingWill.getSendTime());
+        }
     }
 
     public void reset() {
-        pendingWills.clear();
+        synchronized (sendTimes) {
+            pendingWills.clear();
+            sendTimes.clear();
+        }
         final ListenableFuture<Map<String, PendingWill>> future = clientSessionPersistence.pendingWills();
         FutureUtils.addPersistenceCallback(future, new FutureCallback<>() {
             @Override
             public void onSuccess(@NotNull final Map<String, PendingWill> result) {
-                pendingWills.putAll(result);
+                result.forEach(PendingWillMessages.this::addPendingWill);
             }
 
             @Override
@@ -120,6 +161,94 @@ public class PendingWillMessages {
         }
     }
 
+    /**
+     * Send the wills of the clients that were due in a check. The sessions of all due clients are read and their wills
+     * are published in bulk. A will is removed from the pending wills only after it was sent, so it is retried with
+     * the next check if reading the session or sending fails.
+     */
+    private void sendDueWills(@NotNull final List<String> clientIds) {
+        final long now = System.currentTimeMillis();
+        final Map<String, PendingWill> dueWills = new HashMap<>();
+        for (final String clientId : clientIds) {
+            final PendingWill pendingWill = pendingWills.get(clientId);
+            //skip wills that were cancelled or added again in the meantime
+            if (pendingWill != null && pendingWill.getSendTime() <= now) {
+                dueWills.put(clientId, pendingWill);
+            }
+        }
+        if (dueWills.isEmpty()) {
+            return;
+        }
+
+        final Map<String, ClientSession> sessions = readSessions(dueWills.keySet());
+        final Map<String, PUBLISH> publishes = new HashMap<>();
+        final List<String> handledClients = new ArrayList<>();
+        for (final Map.Entry<String, PendingWill> entry : dueWills.entrySet()) {
+            final String clientId = entry.getKey();
+            //the session could not be read, so the will is retried with the next check
+            if (!sessions.containsKey(clientId)) {
+                continue;
+            }
+            //the client may have reconnected while the session was read
+            if (pendingWills.get(clientId) != entry.getValue()) {
+                continue;
+            }
+            final ClientSession session = sessions.get(clientId);
+            if (session != null && session.getWillPublish() != null) {
+                publishes.put(clientId, publishFromWill(session.getWillPublish()));
+            }
+            handledClients.add(clientId);
+        }
+
+        if (!publishes.isEmpty()) {
+            try {
+                publishService.publishAll(publishes, executorService);
+            } catch (final Exception e) {
+                log.error("Exception while sending the will messages of {} clients", publishes.size(), e);
+                handledClients.removeAll(publishes.keySet());
+            }
+        }
+
+        for (final String clientId : handledClients) {
+            if (publishes.containsKey(clientId)) {
+                clientSessionPersistence.removeWill(clientId);
+            }
+            synchronized (sendTimes) {
+                final PendingWill pendingWill = dueWills.get(clientId);
+                if (pendingWills.remove(clientId, pendingWill)) {
+                    removeSendTime(clientId, pendingWill);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the sessions by client id, with a {@code null} value for clients without a session. Clients whose
+     * session could not be read are omitted.
+     */
+    @NotNull
+    private Map<String, ClientSession> readSessions(@NotNull final Set<String> clientIds) {
+        final Map<String, ClientSession> sessions = new HashMap<>();
+        try {
+            final Map<String, ClientSession> storedSessions = clientSessionLocalPersistence.getSessions(clientIds, false);
+            for (final String clientId : clientIds) {
+                sessions.put(clientId, storedSessions.get(clientId));
+            }
+            return sessions;
+        } catch (final Exception e) {
+            log.debug("Exception while reading the sessions of clients with due will messages, reading them one by one", e);
+        }
+        //a single broken session must not hold back the wills of the other clients
+        for (final String clientId : clientIds) {
+            try {
+                sessions.put(clientId, clientSessionLocalPersistence.getSession(clientId, false));
+            } catch (final Exception e) {
+                log.error("Exception while sending the will message of client {}", clientId, e);
+            }
+        }
+        return sessions;
+    }
+
     private PUBLISH publishFromWill(final ClientSessionWill sessionWill) {
         return new PUBLISHFactory.Mqtt5Builder().withTopic(sessionWill.getTopic()).withQoS(sessionWill.getQos()).withPayload(sessionWill.getPayload())
                 .withRetain(sessionWill.isRetain()).withHivemqId(sessionWill.getHivemqId()).withUserProperties(sessionWill.getUserProperties())
@@ -132,16 +261,16 @@ public class PendingWillMessages {
         @Override
         public void run() {
             try {
-                final Iterator<Map.Entry<String, PendingWill>> iterator = pendingWills.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    final Map.Entry<String, PendingWill> entry = iterator.next();
-                    final String clientId = entry.getKey();
-                    final PendingWill pendingWill = entry.getValue();
-                    if (pendingWill.getStartTime() + pendingWill.getDelayInterval() * 1000 < System.currentTimeMillis()) {
-                        sendWill(clientId, clientSessionLocalPersistence.getSession(clientId, false));
-                        iterator.remove();
+                final List<String> dueClients = new ArrayList<>();
+                synchronized (sendTimes) {
+                    for (final Set<String> clientIds : sendTimes.headMap(System.currentTimeMillis(), true).values()) {
+                        dueClients.addAll(clientIds);
                     }
                 }
+                if (dueClients.isEmpty()) {
+                    return;
+                }
+                sendDueWills(dueClients);
             } catch (final Exception e) {
                 log.error("Exception while checking pending will messages", e);
             }
@@ -164,5 +293,12 @@ public class PendingWillMessages {
         public long getStartTime() {
             return startTime;
         }
+
+        /**
+         * @return the timestamp in milliseconds at which the will is due
+         */
+        public long getSendTime() {
+            return startTime + delayInterval * 1000;
+        }
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.persistence.ChannelPersistence;
+import io.netty.channel.Channel;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base class for strategies that offer the messages to the members by priority. Members with the same priority are
+ * offered the messages in turn.
+ * <p>
+ * The priority and the position of each member are packed into a long, so ordering the members only sorts a primitive
+ * array.
+ */
+abstract class PrioritizedDispatchStrategy implements SharedSubscriptionDispatchStrategy {
+
+    /**
+     * The priority of a member that can not take any more messages.
+     */
+    static final int SKIP = -1;
+
+    @Override
+    public void dispatch(@NotNull final List<SubscriberWithQoS> subscribers, final int rotation,
+                         @NotNull final ChannelPersistence channelPersistence, @NotNull final Poller poller) {
+        final int size = subscribers.size();
+        final Channel[] channels = new Channel[size];
+        final long[] order = new long[size];
+        int candidates = 0;
+        for (int i = 0; i < size; i++) {
+            final int index = (rotation + i) % size;
+            final SubscriberWithQoS subscriber = subscribers.get(index);
+            final Channel channel = channelPersistence.get(subscriber.getSubscriber());
+            if (channel == null) {
+                continue; // client is disconnected
+            }
+            final int priority = priority(channel);
+            if (priority == SKIP) {
+                poller.skipped(subscriber);
+                continue;
+            }
+            channels[index] = channel;
+            // lower values come first, ties are broken by the position in the rotation
+            order[candidates++] = ((long) priority << 32) | i;
+        }
+
+        Arrays.sort(order, 0, candidates);
+        for (int i = 0; i < candidates; i++) {
+            final int index = (rotation + (int) order[i]) % size;
+            poller.poll(subscribers.get(index), channels[index]);
+        }
+    }
+
+    /**
+     * @param channel the channel of a connected member
+     * @return a non negative priority, members with lower values are offered the messages first, or {@link #SKIP}
+     */
+    abstract int priority(@NotNull Channel channel);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.persistence.ChannelPersistence;
+import com.hivemq.util.ChannelUtils;
+import io.netty.channel.Channel;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.List;
+
+/**
+ * Offers the messages to the members in turn, starting with the next member on every dispatch. Only members without
+ * messages in flight are offered messages.
+ */
+@Immutable
+class RoundRobinDispatchStrategy implements SharedSubscriptionDispatchStrategy {
+
+    @Override
+    public void dispatch(@NotNull final List<SubscriberWithQoS> subscribers, final int rotation,
+                         @NotNull final ChannelPersistence channelPersistence, @NotNull final Poller poller) {
+        final int size = subscribers.size();
+        for (int i = 0; i < size; i++) {
+            final SubscriberWithQoS subscriber = subscribers.get((rotation + i) % size);
+            final Channel channel = channelPersistence.get(subscriber.getSubscriber());
+            if (channel == null) {
+                continue; // client is disconnected
+            }
+            if (ChannelUtils.messagesInFlight(channel)) {
+                poller.skipped(subscriber);
+                continue;
+            }
+            poller.poll(subscriber, channel);
+        }
+    }
+}
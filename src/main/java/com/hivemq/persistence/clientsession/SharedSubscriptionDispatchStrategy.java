@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.persistence.ChannelPersistence;
+import io.netty.channel.Channel;
+
+import java.util.List;
+
+/**
+ * Decides which members of a shared subscription group are offered the queued messages of the group, and in which
+ * order. The member that is offered first reads the first batch of the shared queue.
+ */
+@ThreadSafe
+public interface SharedSubscriptionDispatchStrategy {
+
+    /**
+     * @param subscribers        the members of the group
+     * @param rotation           a counter that is increased for every dispatch of the group, used to rotate between
+     *                           members that are equally suited
+     * @param channelPersistence to look up the channels of the members
+     * @param poller             is called for every member that is offered messages, in order
+     */
+    void dispatch(@NotNull List<SubscriberWithQoS> subscribers, int rotation,
+                  @NotNull ChannelPersistence channelPersistence, @NotNull Poller poller);
+
+    interface Poller {
+
+        /**
+         * Read messages from the shared queue for a member.
+         *
+         * @param subscriber the member
+         * @param channel    the channel of the member
+         */
+        void poll(@NotNull SubscriberWithQoS subscriber, @NotNull Channel channel);
+
+        /**
+         * Called for a connected member that is not offered messages, because it can not take any more.
+         *
+         * @param subscriber the member
+         */
+        void skipped(@NotNull SubscriberWithQoS subscriber);
+    }
+}
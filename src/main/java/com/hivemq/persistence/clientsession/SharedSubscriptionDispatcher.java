@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.persistence.ChannelPersistence;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offers the queued messages of a shared subscription group to its members, in the order of the configured
+ * {@link SharedSubscriptionDispatchStrategy}.
+ * <p>
+ * The dispatcher keeps the following counters per group, named
+ * <code>com.hivemq.subscriptions.shared.[group].[counter]</code>:
+ * <ul>
+ * <li><code>polls.count</code>: the members that were offered messages</li>
+ * <li><code>skipped.count</code>: the connected members that were not offered messages, because they could not take
+ * any more</li>
+ * <li><code>messages.count</code>: the messages that were sent to the members</li>
+ * </ul>
+ * The messages that were sent to each member are counted in
+ * <code>com.hivemq.subscriptions.shared.[group].members.[client].messages.count</code>. The counters of a group and
+ * of its members are removed when they leave the group.
+ */
+@LazySingleton
+public class SharedSubscriptionDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedSubscriptionDispatcher.class);
+
+    private static final String METRIC_PREFIX = "com.hivemq.subscriptions.shared";
+
+    private final @NotNull SharedSubscriptionService sharedSubscriptionService;
+    private final @NotNull ChannelPersistence channelPersistence;
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull SharedSubscriptionDispatchStrategy strategy;
+
+    private final @NotNull Map<String, Group> groups = new ConcurrentHashMap<>();
+
+    @Inject
+    SharedSubscriptionDispatcher(@NotNull final SharedSubscriptionService sharedSubscriptionService,
+                                 @NotNull final ChannelPersistence channelPersistence,
+                                 @NotNull final MetricsHolder metricsHolder) {
+        this(sharedSubscriptionService, channelPersistence, metricsHolder.getMetricRegistry(),
+                createStrategy(InternalConfigurations.SHARED_SUBSCRIPTION_DISPATCH_STRATEGY.get()));
+    }
+
+    @VisibleForTesting
+    public SharedSubscriptionDispatcher(@NotNull final SharedSubscriptionService sharedSubscriptionService,
+                                        @NotNull final ChannelPersistence channelPersistence,
+                                        @NotNull final MetricRegistry metricRegistry,
+                                        @NotNull final SharedSubscriptionDispatchStrategy strategy) {
+        this.sharedSubscriptionService = sharedSubscriptionService;
+        this.channelPersistence = channelPersistence;
+        this.metricRegistry = metricRegistry;
+        this.strategy = strategy;
+    }
+
+    /**
+     * @param name the name of the strategy: "round-robin", "least-inflight" or "writability-weighted"
+     * @return the strategy, round-robin if the name is unknown
+     */
+    @NotNull
+    public static SharedSubscriptionDispatchStrategy createStrategy(@NotNull final String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "round-robin":
+                return new RoundRobinDispatchStrategy();
+            case "least-inflight":
+                return new LeastInflightDispatchStrategy();
+            case "writability-weighted":
+                return new WritabilityWeightedDispatchStrategy();
+            default:
+                log.warn("Unknown shared subscription dispatch strategy '{}', using round-robin.", name);
+                return new RoundRobinDispatchStrategy();
+        }
+    }
+
+    /**
+     * Offer the queued messages of a shared subscription to its connected members.
+     *
+     * @param sharedSubscription the share name and the topic filter separated by a '/'
+     * @param poller             reads the messages for each member that is offered messages
+     */
+    public void dispatch(@NotNull final String sharedSubscription,
+                         @NotNull final SharedSubscriptionDispatchStrategy.Poller poller) {
+        final ImmutableSet<SubscriberWithQoS> subscribers = sharedSubscriptionService.getSharedSubscriber(sharedSubscription);
+        if (subscribers.isEmpty()) {
+            //the counters are removed inside the map operation, so a new group for the share can only register its
+            //counters after the counters of the old group are gone
+            groups.computeIfPresent(sharedSubscription, (key, group) -> {
+                group.remove();
+                return null;
+            });
+            return;
+        }
+        final Group group = groups.computeIfAbsent(sharedSubscription, Group::new);
+        group.update(subscribers);
+
+        final int rotation = group.rotation.getAndIncrement() & Integer.MAX_VALUE;
+        strategy.dispatch(subscribers.asList(), rotation, channelPersistence, new SharedSubscriptionDispatchStrategy.Poller() {
+            @Override
+            public void poll(@NotNull final SubscriberWithQoS subscriber, @NotNull final Channel channel) {
+                group.polls.inc();
+                poller.poll(subscriber, channel);
+            }
+
+            @Override
+            public void skipped(@NotNull final SubscriberWithQoS subscriber) {
+                group.skipped.inc();
+                poller.skipped(subscriber);
+            }
+        });
+    }
+
+    /**
+     * Count the messages of a shared subscription that were sent to a member.
+     *
+     * @param sharedSubscription the share name and the topic filter separated by a '/'
+     * @param client             the client id of the member
+     * @param messages           the amount of sent messages
+     */
+    public void messagesSent(@NotNull final String sharedSubscription, @NotNull final String client, final int messages) {
+        if (messages == 0) {
+            return;
+        }
+        final Group group = groups.get(sharedSubscription);
+        if (group == null) {
+            return;
+        }
+        group.messages.inc(messages);
+        final Counter memberMessages = group.memberMessages(client);
+        if (memberMessages != null) {
+            memberMessages.inc(messages);
+        }
+    }
+
+    @NotNull
+    @VisibleForTesting
+    SharedSubscriptionDispatchStrategy getStrategy() {
+        return strategy;
+    }
+
+    private class Group {
+
+        private final @NotNull String name;
+        private final @NotNull AtomicInteger rotation = new AtomicInteger();
+        private final @NotNull Counter polls;
+        private final @NotNull Counter skipped;
+        private final @NotNull Counter messages;
+        private final @NotNull Map<String, Counter> members = new ConcurrentHashMap<>();
+
+        private @Nullable ImmutableSet<SubscriberWithQoS> subscribers;
+
+        Group(@NotNull final String sharedSubscription) {
+            this.name = MetricRegistry.name(METRIC_PREFIX, sharedSubscription);
+            this.polls = metricRegistry.counter(MetricRegistry.name(name, "polls", "count"));
+            this.skipped = metricRegistry.counter(MetricRegistry.name(name, "skipped", "count"));
+            this.messages = metricRegistry.counter(MetricRegistry.name(name, "messages", "count"));
+        }
+
+        /**
+         * Register the counters of new members and remove the counters of members that left. The subscriber cache
+         * hands out the same set until it changes, so the members are only compared when the set was reloaded.
+         */
+        synchronized void update(@NotNull final ImmutableSet<SubscriberWithQoS> subscribers) {
+            if (subscribers == this.subscribers) {
+                return;
+            }
+            this.subscribers = subscribers;
+            final Set<String> clients = new HashSet<>();
+            for (final SubscriberWithQoS subscriber : subscribers) {
+                final String client = subscriber.getSubscriber();
+                clients.add(client);
+                members.computeIfAbsent(client, id -> metricRegistry.counter(memberMetricName(id)));
+            }
+            members.keySet().removeIf(client -> {
+                if (clients.contains(client)) {
+                    return false;
+                }
+                metricRegistry.remove(memberMetricName(client));
+                return true;
+            });
+        }
+
+        @Nullable
+        Counter memberMessages(@NotNull final String client) {
+            return members.get(client);
+        }
+
+        synchronized void remove() {
+            metricRegistry.remove(MetricRegistry.name(name, "polls", "count"));
+            metricRegistry.remove(MetricRegistry.name(name, "skipped", "count"));
+            metricRegistry.remove(MetricRegistry.name(name, "messages", "count"));
+            for (final String client : members.keySet()) {
+                metricRegistry.remove(memberMetricName(client));
+            }
+            members.clear();
+        }
+
+        @NotNull
+        private String memberMetricName(@NotNull final String client) {
+            return MetricRegistry.name(name, "members", client, "messages", "count");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.util.ChannelUtils;
+import io.netty.channel.Channel;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Offers the messages to the members with the most free space in their write buffer first. Members whose channel is
+ * not writable or whose in-flight window is full are not offered messages.
+ */
+@Immutable
+class WritabilityWeightedDispatchStrategy extends PrioritizedDispatchStrategy {
+
+    @Override
+    int priority(@NotNull final Channel channel) {
+        if (!channel.isWritable()) {
+            return SKIP;
+        }
+        final int inFlightMessages = ChannelUtils.inFlightMessageCount(channel);
+        if (inFlightMessages < 0 || inFlightMessages >= ChannelUtils.maxInflightWindow(channel)) {
+            return SKIP;
+        }
+        final long bytesBeforeUnwritable = Math.min(channel.bytesBeforeUnwritable(), Integer.MAX_VALUE);
+        return Integer.MAX_VALUE - (int) bytesBeforeUnwritable;
+    }
+}
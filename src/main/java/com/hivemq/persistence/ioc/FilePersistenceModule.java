@@ -29,8 +29,8 @@ import com.hivemq.mqtt.message.dropping.MessageDroppedServiceProvider;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.PersistenceStartupShutdownHookInstaller;
 import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
-import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
 import com.hivemq.persistence.ioc.annotation.PayloadPersistence;
+import com.hivemq.persistence.ioc.provider.local.ClientQueueLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.ClientSessionLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.ClientSessionSubscriptionLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.PayloadPersistenceScheduledExecutorProvider;
@@ -72,7 +72,7 @@ public class FilePersistenceModule extends SingletonModule<Class<FilePersistence
         bind(ClientSessionLocalPersistence.class).toProvider(ClientSessionLocalProvider.class).in(Singleton.class);
         bind(ClientSessionSubscriptionLocalPersistence.class).toProvider(ClientSessionSubscriptionLocalProvider.class)
                 .in(Singleton.class);
-        bind(ClientQueueLocalPersistence.class).to(ClientQueueXodusLocalPersistence.class).in(Singleton.class);
+        bind(ClientQueueLocalPersistence.class).toProvider(ClientQueueLocalProvider.class).in(Singleton.class);
         bind(RetainedMessageLocalPersistence.class).toProvider(RetainedMessageLocalPersistenceProvider.class)
                 .in(Singleton.class);
         bind(PublishPayloadLocalPersistence.class).toProvider(PublishPayloadLocalPersistenceProvider.class)
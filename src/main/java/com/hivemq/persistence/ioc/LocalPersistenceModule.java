@@ -31,8 +31,10 @@ import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
 import com.hivemq.persistence.clientsession.*;
+import com.hivemq.persistence.ioc.provider.local.ClientQueueLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.ClientSessionLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.ClientSessionSubscriptionLocalProvider;
 import com.hivemq.persistence.ioc.provider.local.IncomingMessageFlowPersistenceLocalProvider;
@@ -42,6 +44,8 @@ import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
 import com.hivemq.persistence.local.IncomingMessageFlowLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageXodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
 import com.hivemq.persistence.payload.*;
@@ -61,12 +65,18 @@ class LocalPersistenceModule extends SingletonModule<Class<LocalPersistenceModul
     private final @NotNull Injector persistenceInjector;
     private final @NotNull PersistenceType payloadPersistenceType;
     private final @NotNull PersistenceType retainedPersistenceType;
+    private final @NotNull PersistenceType clientSessionPersistenceType;
+    private final @NotNull PersistenceType subscriptionPersistenceType;
+    private final @NotNull PersistenceType queuedMessagesPersistenceType;
 
     public LocalPersistenceModule(@NotNull final Injector persistenceInjector) {
         super(LocalPersistenceModule.class);
         this.persistenceInjector = persistenceInjector;
         this.payloadPersistenceType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
         this.retainedPersistenceType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        this.clientSessionPersistenceType = InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get();
+        this.subscriptionPersistenceType = InternalConfigurations.SUBSCRIPTION_PERSISTENCE_TYPE.get();
+        this.queuedMessagesPersistenceType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
     }
 
     @Override
@@ -76,9 +86,9 @@ class LocalPersistenceModule extends SingletonModule<Class<LocalPersistenceModul
         bindLocalPersistence(RetainedMessageLocalPersistence.class, retainedPersistenceType == PersistenceType.FILE_NATIVE ? RetainedMessageRocksDBLocalPersistence.class : RetainedMessageXodusLocalPersistence.class, RetainedMessageLocalPersistenceProvider.class);
         bindLocalPersistence(PublishPayloadLocalPersistence.class, payloadPersistenceType == PersistenceType.FILE_NATIVE ? PublishPayloadRocksDBLocalPersistence.class : PublishPayloadXodusLocalPersistence.class, PublishPayloadLocalPersistenceProvider.class);
 
-        bindLocalPersistence(ClientSessionLocalPersistence.class, ClientSessionXodusLocalPersistence.class, ClientSessionLocalProvider.class);
-        bindLocalPersistence(ClientSessionSubscriptionLocalPersistence.class, ClientSessionSubscriptionXodusLocalPersistence.class, ClientSessionSubscriptionLocalProvider.class);
-        bindLocalPersistence(ClientQueueLocalPersistence.class, ClientQueueXodusLocalPersistence.class, null);
+        bindLocalPersistence(ClientSessionLocalPersistence.class, clientSessionPersistenceType == PersistenceType.FILE_NATIVE ? ClientSessionRocksDBLocalPersistence.class : ClientSessionXodusLocalPersistence.class, ClientSessionLocalProvider.class);
+        bindLocalPersistence(ClientSessionSubscriptionLocalPersistence.class, subscriptionPersistenceType == PersistenceType.FILE_NATIVE ? ClientSessionSubscriptionRocksDBLocalPersistence.class : ClientSessionSubscriptionXodusLocalPersistence.class, ClientSessionSubscriptionLocalProvider.class);
+        bindLocalPersistence(ClientQueueLocalPersistence.class, queuedMessagesPersistenceType == PersistenceType.FILE_NATIVE ? ClientQueueRocksDBLocalPersistence.class : ClientQueueXodusLocalPersistence.class, ClientQueueLocalProvider.class);
 
         /* Retained Message */
         bind(RetainedMessagePersistence.class).toProvider(RetainedMessagePersistenceProvider.class).in(LazySingleton.class);
@@ -91,6 +101,7 @@ class LocalPersistenceModule extends SingletonModule<Class<LocalPersistenceModul
 
         /* Client Session Sub */
         bind(SharedSubscriptionService.class).to(SharedSubscriptionServiceImpl.class).in(LazySingleton.class);
+        bind(SharedSubscriptionDispatcher.class).in(LazySingleton.class);
         bind(ClientSessionSubscriptionPersistence.class).toProvider(ClientSessionSubscriptionPersistenceProvider.class).in(LazySingleton.class);
 
         /* Topic Tree */
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.ioc.provider.local;
+
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * The provider which is responsible for creating and providing the
+ * local Client Queue Store.
+ */
+public class ClientQueueLocalProvider implements Provider<ClientQueueLocalPersistence> {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientQueueLocalProvider.class);
+
+    private final Provider<ClientQueueXodusLocalPersistence> localFilePersistence;
+    private final Provider<ClientQueueRocksDBLocalPersistence> rocksDBLocalPersistence;
+    private final PersistenceType persistenceType;
+
+    @Inject
+    ClientQueueLocalProvider(final Provider<ClientQueueXodusLocalPersistence> localFilePersistence,
+            final Provider<ClientQueueRocksDBLocalPersistence> rocksDBLocalPersistence) {
+        this.localFilePersistence = localFilePersistence;
+        this.rocksDBLocalPersistence = rocksDBLocalPersistence;
+        this.persistenceType = InternalConfigurations.QUEUED_MESSAGES_PERSISTENCE_TYPE.get();
+    }
+
+    @Override
+    public ClientQueueLocalPersistence get() {
+        if (persistenceType == PersistenceType.FILE_NATIVE) {
+            log.trace("Using native file based Client Queue store");
+            return rocksDBLocalPersistence.get();
+        }
+        log.trace("Using file based Client Queue store");
+        return localFilePersistence.get();
+    }
+}
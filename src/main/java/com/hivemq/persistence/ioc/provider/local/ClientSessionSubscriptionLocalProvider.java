@@ -16,7 +16,10 @@
 
 package com.hivemq.persistence.ioc.provider.local;
 
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,14 +38,23 @@ public class ClientSessionSubscriptionLocalProvider implements Provider<ClientSe
     private static final Logger log = LoggerFactory.getLogger(ClientSessionSubscriptionLocalProvider.class);
 
     private final Provider<ClientSessionSubscriptionXodusLocalPersistence> localFilePersistence;
+    private final Provider<ClientSessionSubscriptionRocksDBLocalPersistence> rocksDBLocalPersistence;
+    private final PersistenceType persistenceType;
 
     @Inject
-    ClientSessionSubscriptionLocalProvider(final Provider<ClientSessionSubscriptionXodusLocalPersistence> localFilePersistence) {
+    ClientSessionSubscriptionLocalProvider(final Provider<ClientSessionSubscriptionXodusLocalPersistence> localFilePersistence,
+            final Provider<ClientSessionSubscriptionRocksDBLocalPersistence> rocksDBLocalPersistence) {
         this.localFilePersistence = localFilePersistence;
+        this.rocksDBLocalPersistence = rocksDBLocalPersistence;
+        this.persistenceType = InternalConfigurations.SUBSCRIPTION_PERSISTENCE_TYPE.get();
     }
 
     @Override
     public ClientSessionSubscriptionLocalPersistence get() {
+        if (persistenceType == PersistenceType.FILE_NATIVE) {
+            log.trace("Using native file based ClientSession Subscription store");
+            return rocksDBLocalPersistence.get();
+        }
         log.trace("Using file based ClientSession Subscription store");
         return localFilePersistence.get();
     }
@@ -22,10 +22,12 @@ import com.hivemq.persistence.LocalPersistence;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.PersistenceFilter;
 import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
 import com.hivemq.persistence.local.xodus.BucketChunkResult;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -35,6 +37,8 @@ import java.util.Set;
  */
 public interface ClientSessionLocalPersistence extends LocalPersistence {
 
+    String PERSISTENCE_NAME = "client_session_store";
+
     /**
      * Get a {@link ClientSession} for a specific client id and a bucket index with an expired check.
      *
@@ -91,6 +95,27 @@ public interface ClientSessionLocalPersistence extends LocalPersistence {
     @Nullable
     ClientSession getSession(@NotNull String clientId);
 
+    /**
+     * Get the {@link ClientSession}s of multiple clients with an optional expired check. Every bucket is only read
+     * once for all clients that are stored in it.
+     *
+     * @param clientIds    The ids associated with the sessions
+     * @param checkExpired true => omit expired sessions, false include tombstones and expired sessions
+     * @return The sessions by client id. Clients without a stored session are omitted.
+     */
+    @NotNull
+    Map<String, ClientSession> getSessions(@NotNull Collection<String> clientIds, boolean checkExpired);
+
+    /**
+     * Get the in-memory state of the session of a client without accessing the disk.
+     *
+     * @param clientId The id associated with the session
+     * @return The {@link ClientSessionStateIndex.SessionState} or {@code null} if there is no session stored for the
+     * given id. Expired sessions and tombstones are included.
+     */
+    @Nullable
+    ClientSessionStateIndex.SessionState getSessionState(@NotNull String clientId);
+
     /**
      * @param clientId The id associated with the session
      * @return The timestamp of the client session (last connected/disconnected) or {@code null} if there is no session
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+
+import java.util.*;
+
+/**
+ * Time ordered in-memory index of the entries of a bucketed persistence that expire at some point, e.g. sessions,
+ * queued messages or retained messages. The clean up of a bucket only visits the entries that are due instead of
+ * scanning the whole bucket.
+ * <p>
+ * The index is not persisted, the persistences rebuild it when they iterate their buckets at startup. An entry may
+ * be due earlier than the data it points to (e.g. when the earliest message of a queue was already removed), so the
+ * clean up must always check the real expiry and then update or remove the entry.
+ *
+ * @param <K> the type of the keys of the persistence
+ */
+@ThreadSafe
+public class ExpiryIndex<K> {
+
+    /**
+     * The expiry of entries that never expire, these entries are not stored in the index.
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final @NotNull BucketIndex<K>[] buckets;
+
+    @SuppressWarnings("unchecked")
+    public ExpiryIndex(final int bucketCount) {
+        buckets = new BucketIndex[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new BucketIndex<>();
+        }
+    }
+
+    /**
+     * Set the expiry of an entry, {@link #NO_EXPIRY} removes it from the index.
+     *
+     * @param bucketIndex the bucket of the entry
+     * @param key         the key of the entry
+     * @param expiry      the timestamp in milliseconds at which the entry expires
+     */
+    public void put(final int bucketIndex, @NotNull final K key, final long expiry) {
+        final BucketIndex<K> bucket = buckets[bucketIndex];
+        synchronized (bucket) {
+            bucket.remove(key);
+            if (expiry != NO_EXPIRY) {
+                bucket.add(key, expiry);
+            }
+        }
+    }
+
+    /**
+     * Set the expiry of an entry only if it is earlier than the current expiry of the entry. Used for containers
+     * like queues, which are due as soon as their first element is due.
+     *
+     * @param bucketIndex the bucket of the entry
+     * @param key         the key of the entry
+     * @param expiry      the timestamp in milliseconds at which the entry expires
+     */
+    public void putIfEarlier(final int bucketIndex, @NotNull final K key, final long expiry) {
+        if (expiry == NO_EXPIRY) {
+            return;
+        }
+        final BucketIndex<K> bucket = buckets[bucketIndex];
+        synchronized (bucket) {
+            final Long current = bucket.expiries.get(key);
+            if (current != null && current <= expiry) {
+                return;
+            }
+            bucket.remove(key);
+            bucket.add(key, expiry);
+        }
+    }
+
+    public void remove(final int bucketIndex, @NotNull final K key) {
+        final BucketIndex<K> bucket = buckets[bucketIndex];
+        synchronized (bucket) {
+            bucket.remove(key);
+        }
+    }
+
+    /**
+     * @param bucketIndex the bucket
+     * @param now         the current time in milliseconds
+     * @return the keys of all entries of the bucket that expire at or before the given time, earliest first
+     */
+    @NotNull
+    public List<K> getDue(final int bucketIndex, final long now) {
+        final BucketIndex<K> bucket = buckets[bucketIndex];
+        synchronized (bucket) {
+            final SortedMap<Long, Set<K>> due = bucket.keysByExpiry.headMap(now, true);
+            if (due.isEmpty()) {
+                return Collections.emptyList();
+            }
+            final List<K> keys = new ArrayList<>();
+            for (final Set<K> expiringKeys : due.values()) {
+                keys.addAll(expiringKeys);
+            }
+            return keys;
+        }
+    }
+
+    public int size(final int bucketIndex) {
+        final BucketIndex<K> bucket = buckets[bucketIndex];
+        synchronized (bucket) {
+            return bucket.expiries.size();
+        }
+    }
+
+    public void clear(final int bucketIndex) {
+        final BucketIndex<K> bucket = buckets[bucketIndex];
+        synchronized (bucket) {
+            bucket.expiries.clear();
+            bucket.keysByExpiry.clear();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < buckets.length; i++) {
+            clear(i);
+        }
+    }
+
+    private static class BucketIndex<K> {
+
+        private final @NotNull Map<K, Long> expiries = new HashMap<>();
+        private final @NotNull NavigableMap<Long, Set<K>> keysByExpiry = new TreeMap<>();
+
+        private void add(@NotNull final K key, final long expiry) {
+            expiries.put(key, expiry);
+            keysByExpiry.computeIfAbsent(expiry, ignored -> new HashSet<>(2)).add(key);
+        }
+
+        private void remove(@NotNull final K key) {
+            final Long expiry = expiries.remove(key);
+            if (expiry == null) {
+                return;
+            }
+            final Set<K> keys = keysByExpiry.get(expiry);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByExpiry.remove(expiry);
+            }
+        }
+    }
+}
@@ -16,22 +16,28 @@
 
 package com.hivemq.persistence.local;
 
-import com.hivemq.extension.sdk.api.annotations.Immutable;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.persistence.qos.IncomingMessageFlowTable;
 
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is an in-memory on-heap implementation of the
  * incoming message flow persistence.
  * <p>
+ * The flows are stored in one {@link IncomingMessageFlowTable} per client, so deleting all flows of a client is a
+ * single map removal instead of a scan over the flows of all clients. Tables are removed as soon as they are empty.
+ * <p>
  * Implementation note: No Locking is used since this implementation assumes the following:
  * <p>
  * - The same thread is used for each client id
+ * <p>
+ * The tables are only synchronized to make their content visible when a persistent session is taken over by a
+ * channel on another thread. Tables are changed inside {@link ConcurrentHashMap#compute} so an empty table is never
+ * removed while another thread still adds a flow to it.
  *
  * @author Dominik Obermaier
  */
@@ -39,7 +45,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class IncomingMessageFlowInMemoryLocalPersistence implements IncomingMessageFlowLocalPersistence {
 
 
-    private final ConcurrentHashMap<MessageFlowKey, MessageWithID> backingMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, IncomingMessageFlowTable> tables = new ConcurrentHashMap<>();
 
 
     @Override
@@ -49,79 +55,42 @@ public class IncomingMessageFlowInMemoryLocalPersistence implements IncomingMess
     @Override
     @Nullable
     public MessageWithID get(@NotNull final String client, final int messageId) {
-        return backingMap.get(new MessageFlowKey(client, messageId));
+        final IncomingMessageFlowTable table = tables.get(client);
+        if (table == null) {
+            return null;
+        }
+        synchronized (table) {
+            return table.get(messageId);
+        }
     }
 
     @Override
     public void addOrReplace(@NotNull final String client, final int messageId, @NotNull final MessageWithID message) {
-        backingMap.put(new MessageFlowKey(client, messageId), message);
+        tables.compute(client, (key, table) -> {
+            final IncomingMessageFlowTable clientTable = table != null ? table : new IncomingMessageFlowTable();
+            synchronized (clientTable) {
+                clientTable.put(messageId, message);
+            }
+            return clientTable;
+        });
     }
 
     @Override
     public void remove(@NotNull final String client, final int messageId) {
-        backingMap.remove(new MessageFlowKey(client, messageId));
+        tables.computeIfPresent(client, (key, table) -> {
+            synchronized (table) {
+                table.remove(messageId);
+                return table.isEmpty() ? null : table;
+            }
+        });
     }
 
     @Override
     public void delete(@NotNull final String client) {
-
-        /* dobermai: This is a dangerous operation since that delete is not atomic.
-        It shouldn't be a problem, though, since if delete is called, no adds / removes
-        are expected for the same client key at the same time due to other threads interfering.
-
-        Since the Netty layer gives us this guarantee,
-        this should work for us. In case this guarantee is removed in the future,
-        then we have a problem here and we need to lock the whole map while doing this expensive operation!
-
-        Another problem here is that the removal has a complexity of O(n), which isn't really good for large maps.
-        Fortunately we don't block and don't lock, so this shouldn't be much of a problem. However, the calling
-        thread will be blocked. In case we have very large maps, it may be a good idea to execute this in a
-        separate executor or we do parallel iteration.*/
-        final Set<MessageFlowKey> keys = backingMap.keySet();
-        for (final MessageFlowKey messageFlowKey : keys) {
-            if (messageFlowKey.getClientId().equals(client)) {
-                keys.remove(messageFlowKey);
-            }
-        }
+        tables.remove(client);
     }
 
-
-    @Immutable
-    static class MessageFlowKey {
-
-        private final String clientId;
-
-        //We only need the message ID for hashing, so we don't provide
-        //any access to it
-        private final int messageId;
-
-        public MessageFlowKey(@NotNull final String clientId, final int messageId) {
-            this.clientId = clientId;
-            this.messageId = messageId;
-        }
-
-        public String getClientId() {
-            return clientId;
-        }
-
-
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            final MessageFlowKey that = (MessageFlowKey) o;
-
-            if (messageId != that.messageId) return false;
-            return clientId.equals(that.clientId);
-
-        }
-
-        @Override
-        public int hashCode() {
-            int result = clientId.hashCode();
-            result = 31 * result + messageId;
-            return result;
-        }
+    int size() {
+        return tables.size();
     }
 }
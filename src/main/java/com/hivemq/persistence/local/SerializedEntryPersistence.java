@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.persistence.FilePersistence;
+
+/**
+ * A file persistence that exchanges its entries in serialized form with a file persistence of another
+ * {@link com.hivemq.migration.meta.PersistenceType}. Both types use the same serializers, so entries are copied
+ * between them without deserializing the stored messages and sessions.
+ * <p>
+ * The serialized form is the key and value of the Xodus store of the persistence.
+ */
+public interface SerializedEntryPersistence extends FilePersistence {
+
+    /**
+     * Calls the callback for every serialized entry of the persistence.
+     *
+     * @param callback the callback that is called for every entry
+     */
+    void iterateSerialized(@NotNull SerializedEntryCallback callback);
+
+    /**
+     * Put a serialized entry that was read from a persistence of another type. The in-memory state of the persistence
+     * is updated, payload references are not incremented.
+     *
+     * @param bucketIndex the bucket of the entry
+     * @param key         the serialized key
+     * @param value       the serialized value
+     */
+    void putSerialized(int bucketIndex, @NotNull byte[] key, @NotNull byte[] value);
+
+    @FunctionalInterface
+    interface SerializedEntryCallback {
+
+        void onEntry(int bucketIndex, @NotNull byte[] key, @NotNull byte[] value);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.rocksdb;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import org.rocksdb.*;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bucket of a RocksDB persistence. Depending on the layout, a bucket is either a RocksDB instance of its own or a
+ * column family of a RocksDB instance that is shared by all buckets of the persistence.
+ */
+public class RocksDBBucket {
+
+    private final @NotNull RocksDB rocksDB;
+    private final @Nullable ColumnFamilyHandle columnFamily;
+
+    /**
+     * Creates a bucket that uses the default column family of its own RocksDB instance.
+     */
+    public RocksDBBucket(final @NotNull RocksDB rocksDB) {
+        this(rocksDB, null);
+    }
+
+    /**
+     * Creates a bucket that uses a column family of a shared RocksDB instance.
+     */
+    public RocksDBBucket(final @NotNull RocksDB rocksDB, final @Nullable ColumnFamilyHandle columnFamily) {
+        this.rocksDB = rocksDB;
+        this.columnFamily = columnFamily;
+    }
+
+    @Nullable
+    public byte[] get(final @NotNull byte[] key) throws RocksDBException {
+        if (columnFamily == null) {
+            return rocksDB.get(key);
+        }
+        return rocksDB.get(columnFamily, key);
+    }
+
+    /**
+     * Reads the values of multiple keys of this bucket with a single lookup.
+     *
+     * @return the values in the order of the keys, {@code null} for keys without a value
+     */
+    @NotNull
+    public List<byte[]> multiGet(final @NotNull List<byte[]> keys) throws RocksDBException {
+        if (columnFamily == null) {
+            return rocksDB.multiGetAsList(keys);
+        }
+        return rocksDB.multiGetAsList(Collections.nCopies(keys.size(), columnFamily), keys);
+    }
+
+    public void put(final @NotNull byte[] key, final @NotNull byte[] value) throws RocksDBException {
+        if (columnFamily == null) {
+            rocksDB.put(key, value);
+        } else {
+            rocksDB.put(columnFamily, key, value);
+        }
+    }
+
+    public void delete(final @NotNull byte[] key) throws RocksDBException {
+        if (columnFamily == null) {
+            rocksDB.delete(key);
+        } else {
+            rocksDB.delete(columnFamily, key);
+        }
+    }
+
+    /**
+     * Adds a delete of the key in this bucket to the write batch.
+     */
+    public void delete(final @NotNull WriteBatch writeBatch, final @NotNull byte[] key) throws RocksDBException {
+        if (columnFamily == null) {
+            writeBatch.delete(key);
+        } else {
+            writeBatch.delete(columnFamily, key);
+        }
+    }
+
+    /**
+     * Adds a put of the key and value in this bucket to the write batch.
+     */
+    public void put(final @NotNull WriteBatch writeBatch, final @NotNull byte[] key, final @NotNull byte[] value)
+            throws RocksDBException {
+        if (columnFamily == null) {
+            writeBatch.put(key, value);
+        } else {
+            writeBatch.put(columnFamily, key, value);
+        }
+    }
+
+    public void write(final @NotNull WriteOptions writeOptions, final @NotNull WriteBatch writeBatch)
+            throws RocksDBException {
+        rocksDB.write(writeOptions, writeBatch);
+    }
+
+    @NotNull
+    public RocksIterator newIterator() {
+        if (columnFamily == null) {
+            return rocksDB.newIterator();
+        }
+        return rocksDB.newIterator(columnFamily);
+    }
+
+    /**
+     * Closes the RocksDB instance of the bucket, or only the column family handle if the instance is shared.
+     */
+    public void close() {
+        if (columnFamily == null) {
+            rocksDB.close();
+        } else {
+            columnFamily.close();
+        }
+    }
+}
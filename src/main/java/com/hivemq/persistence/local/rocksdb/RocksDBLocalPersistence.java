@@ -17,30 +17,47 @@
 package com.hivemq.persistence.local.rocksdb;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.persistence.FilePersistence;
 import com.hivemq.persistence.LocalPersistence;
 import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.LocalPersistenceFileUtil;
+import org.apache.commons.io.FileUtils;
 import org.rocksdb.*;
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.hivemq.configuration.service.InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED;
 
 /**
+ * Depending on {@link com.hivemq.configuration.service.InternalConfigurations#PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED}
+ * the buckets are either stored in a RocksDB instance per bucket, or in a single RocksDB instance with a column family
+ * per bucket. The single instance shares its WAL, block cache and write buffer manager between all buckets. Buckets
+ * that are found in the per bucket layout are migrated to the column families on startup.
+ *
  * @author Florian Limpöck
  */
 public abstract class RocksDBLocalPersistence implements LocalPersistence, FilePersistence {
 
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
     protected final AtomicBoolean stopped = new AtomicBoolean(false);
-    protected final @NotNull RocksDB[] buckets;
+    protected final @NotNull RocksDBBucket[] buckets;
     private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
     private final @NotNull PersistenceStartup persistenceStartup;
     private final AtomicBoolean constructed = new AtomicBoolean(false);
@@ -49,6 +66,12 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
     private final int blockCacheSizePortion;
     private final int blockSize;
     private final boolean enabled;
+    private final boolean columnFamilies;
+
+    //only used for the column family layout
+    private @Nullable RocksDB sharedRocksDB;
+    private final @NotNull List<ColumnFamilyHandle> unbucketedColumnFamilies = new ArrayList<>();
+    private final AtomicInteger openBuckets = new AtomicInteger();
 
     protected RocksDBLocalPersistence(
             final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
@@ -61,11 +84,12 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
         this.localPersistenceFileUtil = localPersistenceFileUtil;
         this.persistenceStartup = persistenceStartup;
         this.bucketCount = internalBucketCount;
-        this.buckets = new RocksDB[bucketCount];
+        this.buckets = new RocksDBBucket[bucketCount];
         this.memtableSizePortion = memtableSizePortion;
         this.blockCacheSizePortion = blockCacheSizePortion;
         this.blockSize = blockSize;
         this.enabled = enabled;
+        this.columnFamilies = PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.get();
     }
 
     @NotNull
@@ -109,21 +133,27 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
         try {
             final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(name, version);
 
-            final long memtableSize = physicalMemory() / memtableSizePortion / bucketCount;
-            final LRUCache cache = new LRUCache(physicalMemory() / blockCacheSizePortion);
-            final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
-            tableConfig.setBlockCache(cache);
-            tableConfig.setBlockSize(blockSize);
-            options.setTableFormatConfig(tableConfig);
-            options.setWriteBufferSize(memtableSize);
-
-            for (int i = 0; i < bucketCount; i++) {
-                final File persistenceFile = new File(persistenceFolder, name + "_" + i);
-                final RocksDB rocksDB = RocksDB.open(options, persistenceFile.getAbsolutePath());
-                buckets[i] = rocksDB;
+            if (columnFamilies) {
+                openColumnFamilies(persistenceFolder);
+            } else {
+                checkForColumnFamilies(persistenceFolder);
+
+                final long memtableSize = physicalMemory() / memtableSizePortion / bucketCount;
+                final LRUCache cache = new LRUCache(physicalMemory() / blockCacheSizePortion);
+                final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+                tableConfig.setBlockCache(cache);
+                tableConfig.setBlockSize(blockSize);
+                options.setTableFormatConfig(tableConfig);
+                options.setWriteBufferSize(memtableSize);
+
+                for (int i = 0; i < bucketCount; i++) {
+                    final File persistenceFile = new File(persistenceFolder, name + "_" + i);
+                    final RocksDB rocksDB = RocksDB.open(options, persistenceFile.getAbsolutePath());
+                    buckets[i] = new RocksDBBucket(rocksDB);
+                }
             }
 
-        } catch (final RocksDBException e) {
+        } catch (final RocksDBException | IOException e) {
             logger.error(
                     "An error occurred while opening the {} persistence. Is another HiveMQ instance running?", name);
             logger.debug("Original Exception:", e);
@@ -143,36 +173,44 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
 
         try {
 
-            final long memtableSize = physicalMemory() / memtableSizePortion / bucketCount;
-            final long blockCacheMaxSize = physicalMemory() / blockCacheSizePortion;
-            final LRUCache cache = new LRUCache(blockCacheMaxSize);
-            final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
-            tableConfig.setBlockCache(cache);
-            tableConfig.setBlockSize(blockSize);
-            options.setTableFormatConfig(tableConfig);
-            options.setWriteBufferSize(memtableSize);
-
             final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(name, version);
-            final CountDownLatch counter = new CountDownLatch(bucketCount);
-            for (int i = 0; i < bucketCount; i++) {
-                final int finalI = i;
-                persistenceStartup.submitEnvironmentCreate(() -> {
-                    try {
-                        final File persistenceFile = new File(persistenceFolder, name + "_" + finalI);
-                        final RocksDB rocksDB = RocksDB.open(options, persistenceFile.getAbsolutePath());
-                        buckets[finalI] = rocksDB;
-                        counter.countDown();
-                    } catch (final Exception e) {
-                        logger.error(
-                                "An error occurred while opening the {} persistence. Is another HiveMQ instance running?",
-                                name);
-                        logger.debug("Original Exception:", e);
-                        throw new UnrecoverableException();
-                    }
-                });
-            }
 
-            counter.await();
+            if (columnFamilies) {
+                //a single instance, so there is nothing to open in parallel
+                openColumnFamilies(persistenceFolder);
+            } else {
+                checkForColumnFamilies(persistenceFolder);
+
+                final long memtableSize = physicalMemory() / memtableSizePortion / bucketCount;
+                final long blockCacheMaxSize = physicalMemory() / blockCacheSizePortion;
+                final LRUCache cache = new LRUCache(blockCacheMaxSize);
+                final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+                tableConfig.setBlockCache(cache);
+                tableConfig.setBlockSize(blockSize);
+                options.setTableFormatConfig(tableConfig);
+                options.setWriteBufferSize(memtableSize);
+
+                final CountDownLatch counter = new CountDownLatch(bucketCount);
+                for (int i = 0; i < bucketCount; i++) {
+                    final int finalI = i;
+                    persistenceStartup.submitEnvironmentCreate(() -> {
+                        try {
+                            final File persistenceFile = new File(persistenceFolder, name + "_" + finalI);
+                            final RocksDB rocksDB = RocksDB.open(options, persistenceFile.getAbsolutePath());
+                            buckets[finalI] = new RocksDBBucket(rocksDB);
+                            counter.countDown();
+                        } catch (final Exception e) {
+                            logger.error(
+                                    "An error occurred while opening the {} persistence. Is another HiveMQ instance running?",
+                                    name);
+                            logger.debug("Original Exception:", e);
+                            throw new UnrecoverableException();
+                        }
+                    });
+                }
+
+                counter.await();
+            }
 
         } catch (final Exception e) {
             logger.error(
@@ -185,6 +223,111 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
 
     }
 
+    /**
+     * Opens the single RocksDB instance of the column family layout, with one column family per bucket.
+     */
+    private void openColumnFamilies(final @NotNull File persistenceFolder) throws RocksDBException, IOException {
+
+        final String name = getName();
+
+        final long memtableSize = physicalMemory() / memtableSizePortion;
+        final LRUCache cache = new LRUCache(physicalMemory() / blockCacheSizePortion);
+        final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+        tableConfig.setBlockCache(cache);
+        tableConfig.setBlockSize(blockSize);
+
+        final DBOptions dbOptions = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setStatistics(new Statistics())
+                //the memtables of all buckets are limited together and charged to the shared block cache
+                .setWriteBufferManager(new WriteBufferManager(memtableSize, cache));
+        final ColumnFamilyOptions columnFamilyOptions = new ColumnFamilyOptions()
+                .setTableFormatConfig(tableConfig)
+                .setWriteBufferSize(memtableSize / bucketCount);
+
+        final File persistenceFile = new File(persistenceFolder, name);
+
+        final List<ColumnFamilyDescriptor> descriptors = new ArrayList<>(bucketCount + 1);
+        for (int i = 0; i < bucketCount; i++) {
+            descriptors.add(new ColumnFamilyDescriptor(columnFamilyName(i), columnFamilyOptions));
+        }
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, columnFamilyOptions));
+
+        //all existing column families must be opened, e.g. if the bucket count was decreased
+        if (persistenceFile.exists()) {
+            try (final Options options = new Options()) {
+                for (final byte[] existing : RocksDB.listColumnFamilies(options, persistenceFile.getAbsolutePath())) {
+                    if (descriptors.stream().noneMatch(descriptor -> Arrays.equals(descriptor.getName(), existing))) {
+                        getLogger().warn("Ignoring column family {} of the {} persistence, because it does not belong to a bucket.",
+                                new String(existing, StandardCharsets.UTF_8), name);
+                        descriptors.add(new ColumnFamilyDescriptor(existing, columnFamilyOptions));
+                    }
+                }
+            }
+        }
+
+        final List<ColumnFamilyHandle> handles = new ArrayList<>(descriptors.size());
+        final RocksDB rocksDB = RocksDB.open(dbOptions, persistenceFile.getAbsolutePath(), descriptors, handles);
+        sharedRocksDB = rocksDB;
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new RocksDBBucket(rocksDB, handles.get(i));
+        }
+        unbucketedColumnFamilies.addAll(handles.subList(bucketCount, handles.size()));
+        openBuckets.set(bucketCount);
+
+        migrateBuckets(persistenceFolder);
+    }
+
+    /**
+     * Moves the content of the instances of the per bucket layout into the column families and deletes the instances.
+     * The migrated entries are written synchronously, so an instance is only deleted after its content is durable.
+     */
+    private void migrateBuckets(final @NotNull File persistenceFolder) throws RocksDBException, IOException {
+        final String name = getName();
+        for (int i = 0; i < bucketCount; i++) {
+            final File bucketFile = new File(persistenceFolder, name + "_" + i);
+            if (!bucketFile.exists()) {
+                continue;
+            }
+            getLogger().debug("Migrating bucket {} of the {} persistence to a column family.", i, name);
+            final RocksDBBucket bucket = buckets[i];
+            try (final Options options = getOptions();
+                 final RocksDB bucketRocksDB = RocksDB.open(options, bucketFile.getAbsolutePath());
+                 final RocksIterator iterator = bucketRocksDB.newIterator();
+                 final WriteBatch writeBatch = new WriteBatch();
+                 final WriteOptions writeOptions = new WriteOptions()) {
+                writeOptions.setSync(true);
+                iterator.seekToFirst();
+                int batched = 0;
+                while (iterator.isValid()) {
+                    bucket.put(writeBatch, iterator.key(), iterator.value());
+                    if (++batched == MIGRATION_BATCH_SIZE) {
+                        bucket.write(writeOptions, writeBatch);
+                        writeBatch.clear();
+                        batched = 0;
+                    }
+                    iterator.next();
+                }
+                bucket.write(writeOptions, writeBatch);
+            }
+            FileUtils.deleteDirectory(bucketFile);
+        }
+    }
+
+    private void checkForColumnFamilies(final @NotNull File persistenceFolder) {
+        final String name = getName();
+        if (new File(persistenceFolder, name).exists()) {
+            getLogger().warn("The {} persistence contains data that was stored in RocksDB column families. " +
+                    "This data is not read while column families are disabled.", name);
+        }
+    }
+
+    @NotNull
+    private static byte[] columnFamilyName(final int bucketIndex) {
+        return ("bucket_" + bucketIndex).getBytes(StandardCharsets.UTF_8);
+    }
+
     private long physicalMemory() {
         final long heap = Runtime.getRuntime().maxMemory();
         try {
@@ -220,12 +363,36 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
     @Override
     public void closeDB(final int bucketIndex) {
         checkBucketIndex(bucketIndex);
-        final RocksDB bucket = buckets[bucketIndex];
+        final RocksDBBucket bucket = buckets[bucketIndex];
         bucket.close();
+
+        final RocksDB rocksDB = sharedRocksDB;
+        //the shared instance is closed together with its last bucket
+        if (rocksDB != null && openBuckets.decrementAndGet() == 0) {
+            for (final ColumnFamilyHandle handle : unbucketedColumnFamilies) {
+                handle.close();
+            }
+            rocksDB.close();
+        }
+    }
+
+    /**
+     * @see SerializedEntryPersistence#iterateSerialized(SerializedEntryPersistence.SerializedEntryCallback)
+     */
+    public void iterateSerialized(final @NotNull SerializedEntryPersistence.SerializedEntryCallback callback) {
+        for (int i = 0; i < bucketCount; i++) {
+            try (final RocksIterator iterator = buckets[i].newIterator()) {
+                iterator.seekToFirst();
+                while (iterator.isValid()) {
+                    callback.onEntry(i, iterator.key(), iterator.value());
+                    iterator.next();
+                }
+            }
+        }
     }
 
     @NotNull
-    protected RocksDB getRocksDb(final @NotNull String key) {
+    protected RocksDBBucket getBucket(final @NotNull String key) {
         return buckets[BucketUtils.getBucket(key, bucketCount)];
     }
 
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.rocksdb;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.rocksdb.RocksDBException;
+
+/**
+ * Unchecked wrapper of a {@link RocksDBException}, so that RocksDB based persistences fail the same way as the Xodus
+ * based persistences, which throw unchecked exceptions.
+ */
+public class RocksDBPersistenceException extends RuntimeException {
+
+    public RocksDBPersistenceException(final @NotNull RocksDBException cause) {
+        super(cause);
+    }
+}
@@ -26,6 +26,8 @@ import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.RetainedMessage;
+import com.hivemq.persistence.local.ExpiryIndex;
+import com.hivemq.persistence.local.rocksdb.RocksDBBucket;
 import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
@@ -40,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -61,6 +64,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
     private final @NotNull PublishPayloadPersistence payloadPersistence;
     private final @NotNull RetainedMessageXodusSerializer serializer;
     private final AtomicLong retainMessageCounter = new AtomicLong(0);
+    private final @NotNull ExpiryIndex<String> expiryIndex;
 
     @Inject
     public RetainedMessageRocksDBLocalPersistence(
@@ -82,7 +86,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
         for (int i = 0; i < bucketCount; i++) {
             topicTrees[i] = new PublishTopicTree();
         }
-
+        this.expiryIndex = new ExpiryIndex<>(bucketCount);
     }
 
     @NotNull
@@ -121,7 +125,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
 
         try {
             for (int i = 0; i < buckets.length; i++) {
-                final RocksDB bucket = buckets[i];
+                final RocksDBBucket bucket = buckets[i];
                 try (final RocksIterator iterator = bucket.newIterator()) {
                     iterator.seekToFirst();
                     while (iterator.isValid()) {
@@ -132,6 +136,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
                         }
                         final String topic = serializer.deserializeKey(iterator.key());
                         topicTrees[i].add(topic);
+                        expiryIndex.put(i, topic, getExpiryTimestamp(message));
                         retainMessageCounter.incrementAndGet();
                         iterator.next();
                     }
@@ -150,8 +155,9 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
 
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
         topicTrees[bucketIndex] = new PublishTopicTree();
+        expiryIndex.clear(bucketIndex);
 
-        final RocksDB bucket = buckets[bucketIndex];
+        final RocksDBBucket bucket = buckets[bucketIndex];
         try (final WriteBatch writeBatch = new WriteBatch();
              final WriteOptions options = new WriteOptions();
              final RocksIterator iterator = bucket.newIterator()) {
@@ -161,7 +167,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
                 Preconditions.checkNotNull(message.getPayloadId(), "Payload ID must not be null here");
                 payloadPersistence.decrementReferenceCounter(message.getPayloadId());
                 retainMessageCounter.decrementAndGet();
-                writeBatch.delete(iterator.key());
+                bucket.delete(writeBatch, iterator.key());
                 iterator.next();
             }
             bucket.write(options, writeBatch);
@@ -180,7 +186,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
     public void remove(@NotNull final String topic, final int bucketIndex) {
         checkNotNull(topic, "Topic must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
-        final RocksDB bucket = buckets[bucketIndex];
+        final RocksDBBucket bucket = buckets[bucketIndex];
 
         try {
             final byte[] key = serializer.serializeKey(topic);
@@ -195,6 +201,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
             log.trace("Removing retained message for topic {}", topic);
             bucket.delete(key);
             topicTrees[bucketIndex].remove(topic);
+            expiryIndex.remove(bucketIndex, topic);
             checkNotNull(message.getPayloadId(), "Payload id must never be null");
             payloadPersistence.decrementReferenceCounter(message.getPayloadId());
             retainMessageCounter.decrementAndGet();
@@ -229,7 +236,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
         checkNotNull(topic, "Topic must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
-        final RocksDB bucket = buckets[bucketIndex];
+        final RocksDBBucket bucket = buckets[bucketIndex];
 
         final byte[] messageAsBytes = bucket.get(serializer.serializeKey(topic));
         if (messageAsBytes != null) {
@@ -263,7 +270,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
         checkNotNull(retainedMessage, "Retained message must not be null");
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
-        final RocksDB bucket = buckets[bucketIndex];
+        final RocksDBBucket bucket = buckets[bucketIndex];
 
         try {
             final byte[] serializedTopic = serializer.serializeKey(topic);
@@ -282,6 +289,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
                 //persist needs increment.
                 retainMessageCounter.incrementAndGet();
             }
+            expiryIndex.put(bucketIndex, topic, getExpiryTimestamp(retainedMessage));
         } catch (
                 final Exception e) {
             log.error("An error occurred while persisting a retained message.");
@@ -308,24 +316,36 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
             return;
         }
 
-        final RocksDB bucket = buckets[bucketId];
+        final long now = System.currentTimeMillis();
+        final List<String> dueTopics = expiryIndex.getDue(bucketId, now);
+        if (dueTopics.isEmpty()) {
+            return;
+        }
+
+        final RocksDBBucket bucket = buckets[bucketId];
         final PublishTopicTree topicTree = topicTrees[bucketId];
 
-        try (final RocksIterator iterator = bucket.newIterator();
-             final WriteBatch writeBatch = new WriteBatch();
+        try (final WriteBatch writeBatch = new WriteBatch();
              final WriteOptions options = new WriteOptions()) {
-            iterator.seekToFirst();
-            while (iterator.isValid()) {
-                final String topic = serializer.deserializeKey(iterator.key());
-                final RetainedMessage message = serializer.deserializeValue(iterator.value());
-                if (PublishUtil.isExpired(message.getTimestamp(), message.getMessageExpiryInterval())) {
-                    writeBatch.delete(iterator.key());
-                    checkNotNull(message.getPayloadId(), "Payload id must never be null");
-                    payloadPersistence.decrementReferenceCounter(message.getPayloadId());
-                    retainMessageCounter.decrementAndGet();
-                    topicTree.remove(topic);
+            for (final String topic : dueTopics) {
+                final byte[] key = serializer.serializeKey(topic);
+                final byte[] value = bucket.get(key);
+                if (value == null) {
+                    expiryIndex.remove(bucketId, topic);
+                    continue;
                 }
-                iterator.next();
+                final RetainedMessage message = serializer.deserializeValue(value);
+                final long expiry = getExpiryTimestamp(message);
+                if (expiry > now) {
+                    expiryIndex.put(bucketId, topic, expiry);
+                    continue;
+                }
+                bucket.delete(writeBatch, key);
+                checkNotNull(message.getPayloadId(), "Payload id must never be null");
+                payloadPersistence.decrementReferenceCounter(message.getPayloadId());
+                retainMessageCounter.decrementAndGet();
+                topicTree.remove(topic);
+                expiryIndex.remove(bucketId, topic);
             }
             bucket.write(options, writeBatch);
         } catch (final Exception e) {
@@ -339,7 +359,7 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
 
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
-        for (final RocksDB bucket : buckets) {
+        for (final RocksDBBucket bucket : buckets) {
             try (final RocksIterator iterator = bucket.newIterator()) {
                 iterator.seekToFirst();
                 while (iterator.isValid()) {
@@ -356,4 +376,8 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
         }
     }
 
+    private static long getExpiryTimestamp(@NotNull final RetainedMessage message) {
+        return PublishUtil.getExpiryTimestamp(message.getTimestamp(), message.getMessageExpiryInterval());
+    }
+
 }
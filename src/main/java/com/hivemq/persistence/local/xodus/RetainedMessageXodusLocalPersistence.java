@@ -26,6 +26,7 @@ import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.RetainedMessage;
+import com.hivemq.persistence.local.ExpiryIndex;
 import com.hivemq.persistence.local.xodus.bucket.Bucket;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
@@ -42,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.File;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -72,6 +74,8 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
     @VisibleForTesting
     final ConcurrentHashMap<Integer, PublishTopicTree> topicTrees = new ConcurrentHashMap<>();
 
+    private final @NotNull ExpiryIndex<String> expiryIndex;
+
     @Inject
     public RetainedMessageXodusLocalPersistence(final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
                                                 final @NotNull PublishPayloadPersistence payloadPersistence,
@@ -86,6 +90,7 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
                 InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get().equals(PersistenceType.FILE));
         this.payloadPersistence = payloadPersistence;
         this.serializer = new RetainedMessageXodusSerializer();
+        this.expiryIndex = new ExpiryIndex<>(bucketCount);
         for (int i = 0; i < bucketCount; i++) {
             topicTrees.put(i, new PublishTopicTree());
         }
@@ -138,6 +143,7 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
                             }
                             final String topic = serializer.deserializeKey(byteIterableToBytes(cursor.getKey()));
                             topicTrees.get(bucketIndex).add(topic);
+                            expiryIndex.put(bucketIndex, topic, getExpiryTimestamp(message));
                             retainMessageCounter.incrementAndGet();
                         }
                     }
@@ -156,6 +162,7 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
 
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
         topicTrees.put(bucketIndex, new PublishTopicTree());
+        expiryIndex.clear(bucketIndex);
 
         final Bucket bucket = buckets[bucketIndex];
 
@@ -195,6 +202,7 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
             log.trace("Removing retained message for topic {}", topic);
             bucket.getStore().delete(txn, key);
             topicTrees.get(bucketIndex).remove(topic);
+            expiryIndex.remove(bucketIndex, topic);
             payloadPersistence.decrementReferenceCounter(message.getPayloadId());
             retainMessageCounter.decrementAndGet();
         });
@@ -283,6 +291,7 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
                 }
             }
         });
+        expiryIndex.put(bucketIndex, topic, getExpiryTimestamp(retainedMessage));
     }
 
     @NotNull
@@ -303,21 +312,32 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
             return;
         }
 
+        final long now = System.currentTimeMillis();
+        final List<String> dueTopics = expiryIndex.getDue(bucketId, now);
+        if (dueTopics.isEmpty()) {
+            return;
+        }
+
         final Bucket bucket = buckets[bucketId];
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
-            try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
-                if (cursor.getNext()) {
-                    do {
-                        final RetainedMessage message = serializer.deserializeValue(byteIterableToBytes(cursor.getValue()));
-                        if (PublishUtil.isExpired(message.getTimestamp(), message.getMessageExpiryInterval())) {
-                            cursor.deleteCurrent();
-                            payloadPersistence.decrementReferenceCounter(message.getPayloadId());
-                            retainMessageCounter.decrementAndGet();
-                            topicTrees.get(bucketId).remove(serializer.deserializeKey(byteIterableToBytes(cursor.getKey())));
-                        }
-
-                    } while (cursor.getNext());
+            for (final String topic : dueTopics) {
+                final ByteIterable key = bytesToByteIterable(serializer.serializeKey(topic));
+                final ByteIterable value = bucket.getStore().get(txn, key);
+                if (value == null) {
+                    expiryIndex.remove(bucketId, topic);
+                    continue;
+                }
+                final RetainedMessage message = serializer.deserializeValue(byteIterableToBytes(value));
+                final long expiry = getExpiryTimestamp(message);
+                if (expiry > now) {
+                    expiryIndex.put(bucketId, topic, expiry);
+                    continue;
                 }
+                bucket.getStore().delete(txn, key);
+                payloadPersistence.decrementReferenceCounter(message.getPayloadId());
+                retainMessageCounter.decrementAndGet();
+                topicTrees.get(bucketId).remove(topic);
+                expiryIndex.remove(bucketId, topic);
             }
         });
     }
@@ -344,4 +364,8 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
         }
     }
 
+    private static long getExpiryTimestamp(@NotNull final RetainedMessage message) {
+        return PublishUtil.getExpiryTimestamp(message.getTimestamp(), message.getMessageExpiryInterval());
+    }
+
 }
@@ -21,6 +21,7 @@ import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.persistence.FilePersistence;
 import com.hivemq.persistence.LocalPersistence;
 import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
 import com.hivemq.persistence.local.xodus.bucket.Bucket;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.LocalPersistenceFileUtil;
@@ -203,6 +204,24 @@ public abstract class XodusLocalPersistence implements LocalPersistence, FilePer
         }
     }
 
+    /**
+     * @see SerializedEntryPersistence#iterateSerialized(SerializedEntryPersistence.SerializedEntryCallback)
+     */
+    public void iterateSerialized(final @NotNull SerializedEntryPersistence.SerializedEntryCallback callback) {
+        for (int i = 0; i < bucketCount; i++) {
+            final Bucket bucket = buckets[i];
+            final int bucketIndex = i;
+            bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+                try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+                    while (cursor.getNext()) {
+                        callback.onEntry(bucketIndex, XodusUtils.byteIterableToBytes(cursor.getKey()),
+                                XodusUtils.byteIterableToBytes(cursor.getValue()));
+                    }
+                }
+            });
+        }
+    }
+
     @NotNull
     public Bucket getBucket(final @NotNull String key) {
         return buckets[BucketUtils.getBucket(key, bucketCount)];
@@ -19,6 +19,12 @@ package com.hivemq.persistence.local.xodus.bucket;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import net.openhft.hashing.LongHashFunction;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Dominik Obermaier
  */
@@ -30,4 +36,16 @@ public class BucketUtils {
         return Math.abs((int) (XX.hashChars(id) % bucketSize));
     }
 
+    /**
+     * @return the ids grouped by the index of their bucket
+     */
+    @NotNull
+    public static Map<Integer, List<String>> groupByBucket(@NotNull final Collection<String> ids, final int bucketSize) {
+        final Map<Integer, List<String>> idsByBucket = new HashMap<>();
+        for (final String id : ids) {
+            idsByBucket.computeIfAbsent(getBucket(id, bucketSize), bucket -> new ArrayList<>()).add(id);
+        }
+        return idsByBucket;
+    }
+
 }
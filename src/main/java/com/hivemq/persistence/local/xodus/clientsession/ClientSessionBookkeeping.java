@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.logging.EventLog;
+import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
+import com.hivemq.persistence.clientsession.ClientSessionWill;
+import com.hivemq.persistence.clientsession.PendingWillMessages;
+import com.hivemq.persistence.local.ExpiryIndex;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.ClientSessions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
+import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_NOT_SET;
+
+/**
+ * The in-memory state of a {@link com.hivemq.persistence.local.ClientSessionLocalPersistence} that does not depend on
+ * the storage backend: the sessions count, the session state index, the expiry index and the will payload references.
+ * <p>
+ * The persistences only read and write the sessions of their storage and report the changes here.
+ */
+class ClientSessionBookkeeping {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ClientSessionBookkeeping.class);
+
+    private final @NotNull PublishPayloadPersistence payloadPersistence;
+    private final @NotNull EventLog eventLog;
+    private final long configuredSessionExpiryInterval;
+
+    private final @NotNull AtomicInteger sessionsCount = new AtomicInteger(0);
+    private final @NotNull ClientSessionStateIndex sessionStateIndex = new ClientSessionStateIndex();
+    private final @NotNull ExpiryIndex<String> expiryIndex;
+
+    ClientSessionBookkeeping(
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull EventLog eventLog,
+            final long configuredSessionExpiryInterval,
+            final int bucketCount) {
+        this.payloadPersistence = payloadPersistence;
+        this.eventLog = eventLog;
+        this.configuredSessionExpiryInterval = configuredSessionExpiryInterval;
+        this.expiryIndex = new ExpiryIndex<>(bucketCount);
+    }
+
+    void sessionRestored(
+            @NotNull final String clientId,
+            @NotNull final ClientSession clientSession,
+            final long timestamp,
+            final int bucketIndex) {
+        if (persistent(clientSession)) {
+            sessionsCount.incrementAndGet();
+        }
+        updateIndexes(clientId, clientSession, timestamp, bucketIndex);
+    }
+
+    /**
+     * Must be called before a session is stored. The indexes must be updated with {@link #updateIndexes} afterwards.
+     *
+     * @param prevClientSession the session that is replaced or <code>null</code> if there is none
+     * @param clientSession     the session that is stored
+     */
+    void sessionStored(@Nullable final ClientSession prevClientSession, @NotNull final ClientSession clientSession) {
+        final boolean isPersistent = persistent(clientSession);
+
+        if (prevClientSession != null) {
+            removeWillReference(prevClientSession);
+
+            final boolean prevIsPersistent = persistent(prevClientSession);
+
+            if ((isPersistent || clientSession.isConnected()) && (!prevIsPersistent && !prevClientSession.isConnected())) {
+                sessionsCount.incrementAndGet();
+            } else if ((prevIsPersistent || prevClientSession.isConnected()) && (!isPersistent && !clientSession.isConnected())) {
+                sessionsCount.decrementAndGet();
+            }
+
+        } else if (isPersistent || clientSession.isConnected()) {
+            sessionsCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the session that is stored for a client that disconnects without a stored session
+     */
+    @NotNull
+    ClientSession newDisconnectedSession() {
+        return new ClientSession(false, configuredSessionExpiryInterval);
+    }
+
+    /**
+     * Marks the stored session as disconnected, before it is written back to the storage.
+     */
+    void disconnected(@NotNull final ClientSession clientSession, final boolean sendWill, final long sessionExpiry) {
+        if (sessionExpiry != SESSION_EXPIRY_NOT_SET) {
+            clientSession.setSessionExpiryInterval(sessionExpiry);
+        }
+
+        if (clientSession.isConnected() && !persistent(clientSession)) {
+            sessionsCount.decrementAndGet();
+        }
+        clientSession.setConnected(false);
+        if (!sendWill) {
+            willRemoved(clientSession);
+        }
+    }
+
+    void willRemoved(@NotNull final ClientSession clientSession) {
+        removeWillReference(clientSession);
+        clientSession.setWillPublish(null);
+    }
+
+    /**
+     * @param clientSession the removed session or <code>null</code> if there was none
+     */
+    void sessionRemoved(@NotNull final String clientId, @Nullable final ClientSession clientSession, final int bucketIndex) {
+        if (clientSession != null) {
+            if (persistent(clientSession) || clientSession.isConnected()) {
+                sessionsCount.decrementAndGet();
+            }
+            removeWillReference(clientSession);
+        }
+        sessionStateIndex.remove(clientId);
+        expiryIndex.remove(bucketIndex, clientId);
+    }
+
+    boolean isTombstone(@NotNull final ClientSession clientSession) {
+        return !clientSession.isConnected() && !persistent(clientSession);
+    }
+
+    @NotNull
+    List<String> getDueClients(final int bucketIndex, final long now) {
+        return expiryIndex.getDue(bucketIndex, now);
+    }
+
+    /**
+     * Must be called for a client that is due in the expiry index but has no stored session.
+     */
+    void sessionMissing(@NotNull final String clientId, final int bucketIndex) {
+        expiryIndex.remove(bucketIndex, clientId);
+    }
+
+    /**
+     * Checks the session of a client that is due in the expiry index.
+     *
+     * @return true if the session expired and must be removed from the storage
+     */
+    boolean checkExpired(
+            @NotNull final String clientId,
+            @NotNull final ClientSession clientSession,
+            final long timestamp,
+            final long now,
+            final int bucketIndex) {
+        final long sessionExpiryInterval = clientSession.getSessionExpiryInterval();
+        final long timeSinceDisconnect = now - timestamp;
+
+        // Expired is true if the persistent date for the client has to be removed
+        final boolean expired = ClientSessions.isExpired(clientSession, timeSinceDisconnect);
+        if (expired) {
+            if (sessionExpiryInterval > SESSION_EXPIRE_ON_DISCONNECT) {
+                sessionsCount.decrementAndGet();
+            }
+
+            eventLog.clientSessionExpired(timestamp + sessionExpiryInterval * 1000, clientId);
+            sessionStateIndex.remove(clientId);
+            expiryIndex.remove(bucketIndex, clientId);
+        } else {
+            expiryIndex.put(bucketIndex, clientId, ClientSessions.getExpiryTimestamp(clientSession, timestamp));
+        }
+        return expired;
+    }
+
+    boolean isDisconnectedAndNotExpired(@NotNull final ClientSession clientSession, final long timestamp) {
+        if (clientSession.isConnected() || clientSession.getSessionExpiryInterval() <= 0) {
+            return false;
+        }
+        final long timeSinceDisconnect = System.currentTimeMillis() - timestamp;
+        final long sessionExpiryIntervalInMillis = clientSession.getSessionExpiryInterval() * 1000L;
+        // We don't remove expired client sessions here, since this method is often called for all buckets at once.
+        // Handling the TTL in the cleanup job will result in a more evenly distributed CPU usage.
+        return timeSinceDisconnect < sessionExpiryIntervalInMillis;
+    }
+
+    /**
+     * @return the pending will of the session or <code>null</code> if the will must not be sent
+     */
+    @Nullable
+    PendingWillMessages.PendingWill getPendingWill(@NotNull final ClientSession clientSession, final long timestamp) {
+        final ClientSessionWill willPublish = clientSession.getWillPublish();
+        if (clientSession.isConnected() || willPublish == null) {
+            return null;
+        }
+        return new PendingWillMessages.PendingWill(Math.min(willPublish.getDelayInterval(), clientSession.getSessionExpiryInterval()), timestamp);
+    }
+
+    void dereferenceWillPayload(@NotNull final ClientSession clientSession) {
+        final ClientSessionWill willPublish = clientSession.getWillPublish();
+        if (willPublish == null) {
+            return;
+        }
+        if (willPublish.getPayload() != null) {
+            return;
+        }
+        final Long payloadId = willPublish.getPayloadId();
+        final byte[] payload = payloadPersistence.getPayloadOrNull(payloadId);
+        if (payload == null) {
+            clientSession.setWillPublish(null);
+            log.warn("Will Payload for payloadid {} not found", payloadId);
+            return;
+        }
+        willPublish.getMqttWillPublish().setPayload(payload);
+    }
+
+    void updateIndexes(@NotNull final String clientId, @NotNull final ClientSession clientSession, final long timestamp, final int bucketIndex) {
+        sessionStateIndex.put(clientId, clientSession, timestamp, bucketIndex);
+        expiryIndex.put(bucketIndex, clientId, ClientSessions.getExpiryTimestamp(clientSession, timestamp));
+    }
+
+    @Nullable
+    ClientSessionStateIndex.SessionState getSessionState(@NotNull final String clientId) {
+        return sessionStateIndex.get(clientId);
+    }
+
+    int getSessionsCount() {
+        return sessionsCount.get();
+    }
+
+    private void removeWillReference(@NotNull final ClientSession clientSession) {
+        final ClientSessionWill willPublish = clientSession.getWillPublish();
+        if (willPublish == null) {
+            return;
+        }
+        payloadPersistence.decrementReferenceCounter(willPublish.getPayloadId());
+    }
+
+    private static boolean persistent(@NotNull final ClientSession clientSession) {
+        return clientSession.getSessionExpiryInterval() > SESSION_EXPIRE_ON_DISCONNECT;
+    }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.logging.EventLog;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.NoSessionException;
+import com.hivemq.persistence.PersistenceEntry;
+import com.hivemq.persistence.PersistenceFilter;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
+import com.hivemq.persistence.clientsession.PendingWillMessages;
+import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBBucket;
+import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBPersistenceException;
+import com.hivemq.persistence.local.xodus.BucketChunkResult;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.ClientSessions;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.rocksdb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An implementation of the ClientSessionLocalPersistence based on RocksDB. It uses the same serialization as the
+ * {@link ClientSessionXodusLocalPersistence}.
+ * <p>
+ * This implementation is thread safe and all methods block.
+ */
+@ThreadSafe
+@LazySingleton
+public class ClientSessionRocksDBLocalPersistence extends RocksDBLocalPersistence
+        implements ClientSessionLocalPersistence, SerializedEntryPersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientSessionRocksDBLocalPersistence.class);
+
+    public static final String PERSISTENCE_VERSION = "040000_R";
+
+    private final @NotNull ClientSessionPersistenceSerializer serializer;
+    private final @NotNull ClientSessionBookkeeping bookkeeping;
+
+    @Inject
+    ClientSessionRocksDBLocalPersistence(
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull MqttConfigurationService mqttConfigurationService,
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull EventLog eventLog,
+            final @NotNull PersistenceStartup persistenceStartup) {
+
+        super(localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.CLIENT_SESSION_MEMTABLE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_SESSION_BLOCK_CACHE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_SESSION_BLOCK_SIZE,
+                InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE);
+
+        this.serializer = new ClientSessionPersistenceSerializer();
+        this.bookkeeping = new ClientSessionBookkeeping(payloadPersistence, eventLog,
+                mqttConfigurationService.maxSessionExpiryInterval(), getBucketCount());
+    }
+
+    @NotNull
+    @Override
+    protected String getName() {
+        return PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    protected String getVersion() {
+        return PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    protected Options getOptions() {
+        return new Options()
+                .setCreateIfMissing(true)
+                .setStatistics(new Statistics());
+    }
+
+    @NotNull
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        super.postConstruct();
+    }
+
+    @Override
+    protected void init() {
+        for (int i = 0; i < getBucketCount(); i++) {
+            try (final RocksIterator iterator = buckets[i].newIterator()) {
+                iterator.seekToFirst();
+                while (iterator.isValid()) {
+                    restoreIndexes(iterator.key(), iterator.value(), i);
+                    iterator.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putSerialized(final int bucketIndex, @NotNull final byte[] key, @NotNull final byte[] value) {
+        checkBucketIndex(bucketIndex);
+
+        try {
+            buckets[bucketIndex].put(key, value);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+        restoreIndexes(key, value, bucketIndex);
+    }
+
+    private void restoreIndexes(@NotNull final byte[] keyBytes, @NotNull final byte[] valueBytes, final int bucketIndex) {
+        final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+        final String clientId = serializer.deserializeKey(keyBytes);
+        bookkeeping.sessionRestored(clientId, clientSession, serializer.deserializeTimestamp(valueBytes), bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ClientSessionStateIndex.SessionState getSessionState(@NotNull final String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return bookkeeping.getSessionState(clientId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClientSession getSession(@NotNull final String clientId, final int bucketIndex, final boolean checkExpired) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkBucketIndex(bucketIndex);
+
+        return getSession(clientId, buckets[bucketIndex], checkExpired, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClientSession getSession(@NotNull final String clientId, final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkBucketIndex(bucketIndex);
+
+        return getSession(clientId, buckets[bucketIndex], true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ClientSession getSession(@NotNull final String clientId, final boolean checkExpired) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return getSession(clientId, getBucket(clientId), checkExpired, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ClientSession getSession(@NotNull final String clientId, final boolean checkExpired, final boolean includeWill) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return getSession(clientId, getBucket(clientId), checkExpired, includeWill);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ClientSession getSession(@NotNull final String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return getSession(clientId, getBucket(clientId), true, true);
+    }
+
+    @Nullable
+    private ClientSession getSession(@NotNull final String clientId, @NotNull final RocksDBBucket bucket, final boolean checkExpired, final boolean includeWill) {
+        final byte[] bytes = get(bucket, serializer.serializeKey(clientId));
+        if (bytes == null) {
+            return null;
+        }
+        return deserializeSession(bytes, checkExpired, includeWill);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public Map<String, ClientSession> getSessions(@NotNull final Collection<String> clientIds, final boolean checkExpired) {
+        checkNotNull(clientIds, "Client ids must not be null");
+
+        final Map<String, ClientSession> sessions = new HashMap<>();
+        for (final Map.Entry<Integer, List<String>> bucketEntry : BucketUtils.groupByBucket(clientIds, getBucketCount()).entrySet()) {
+            final List<String> bucketClientIds = bucketEntry.getValue();
+            final List<byte[]> keys = new ArrayList<>(bucketClientIds.size());
+            for (final String clientId : bucketClientIds) {
+                keys.add(serializer.serializeKey(clientId));
+            }
+            final List<byte[]> values = multiGet(buckets[bucketEntry.getKey()], keys);
+            for (int i = 0; i < bucketClientIds.size(); i++) {
+                final byte[] bytes = values.get(i);
+                if (bytes == null) {
+                    continue;
+                }
+                final ClientSession clientSession = deserializeSession(bytes, checkExpired, true);
+                if (clientSession != null) {
+                    sessions.put(bucketClientIds.get(i), clientSession);
+                }
+            }
+        }
+        return sessions;
+    }
+
+    @Nullable
+    private ClientSession deserializeSession(@NotNull final byte[] bytes, final boolean checkExpired, final boolean includeWill) {
+        final ClientSession clientSession;
+        if (includeWill) {
+            clientSession = serializer.deserializeValue(bytes);
+        } else {
+            clientSession = serializer.deserializeValueWithoutWill(bytes);
+        }
+
+        if (checkExpired && ClientSessions.isExpired(clientSession, System.currentTimeMillis() - serializer.deserializeTimestamp(bytes))) {
+            return null;
+        }
+
+        if (includeWill) {
+            bookkeeping.dereferenceWillPayload(clientSession);
+        }
+        return clientSession;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public Long getTimestamp(@NotNull final String clientId) {
+        return getTimestamp(clientId, BucketUtils.getBucket(clientId, getBucketCount()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public Long getTimestamp(@NotNull final String clientId, final int bucketIndex) {
+        final byte[] bytes = get(buckets[bucketIndex], serializer.serializeKey(clientId));
+        if (bytes == null) {
+            return null;
+        }
+        return serializer.deserializeTimestamp(bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(@NotNull final String clientId, @NotNull final ClientSession clientSession, final long timestamp, final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkNotNull(clientSession, "Client session must not be null");
+        checkArgument(timestamp > 0, "Timestamp must be greater than 0");
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+
+        final byte[] value = get(bucket, key);
+        bookkeeping.sessionStored(value != null ? serializer.deserializeValue(value) : null, clientSession);
+
+        put(bucket, key, serializer.serializeValue(clientSession, timestamp));
+        bookkeeping.updateIndexes(clientId, clientSession, timestamp, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public ClientSession disconnect(@NotNull final String clientId, final long timestamp, final boolean sendWill, final int bucketIndex, final long sessionExpiry) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        final byte[] bytes = get(bucket, key);
+
+        if (bytes == null) {
+            final ClientSession clientSession = bookkeeping.newDisconnectedSession();
+            put(bucket, key, serializer.serializeValue(clientSession, timestamp));
+            bookkeeping.updateIndexes(clientId, clientSession, timestamp, bucketIndex);
+            return clientSession;
+        }
+
+        final ClientSession clientSession = serializer.deserializeValue(bytes);
+
+        bookkeeping.disconnected(clientSession, sendWill, sessionExpiry);
+        put(bucket, key, serializer.serializeValue(clientSession, timestamp));
+        bookkeeping.dereferenceWillPayload(clientSession);
+        bookkeeping.updateIndexes(clientId, clientSession, timestamp, bucketIndex);
+        return clientSession;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public PersistenceEntry<ClientSession> removeWill(@NotNull final String clientId, final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        final byte[] bytes = get(bucket, key);
+
+        if (bytes == null) {
+            return null;
+        }
+
+        final ClientSession clientSession = serializer.deserializeValue(bytes);
+        // Just to be save
+        if (clientSession.isConnected()) {
+            return null;
+        }
+        final long timestamp = serializer.deserializeTimestamp(bytes);
+        bookkeeping.willRemoved(clientSession);
+        put(bucket, key, serializer.serializeValue(clientSession, timestamp));
+        return new PersistenceEntry<>(clientSession, timestamp);
+    }
+
+    @Override
+    public @NotNull BucketChunkResult<Map<String, ClientSession>> getAllClientsChunk(@NotNull final PersistenceFilter filter,
+                                                                                     final int bucketIndex,
+                                                                                     @Nullable final String lastClientId,
+                                                                                     final int maxResults) {
+
+        checkNotNull(filter, "Filter must not be null");
+        checkBucketIndex(bucketIndex);
+
+        final Map<String, ClientSession> resultMap = Maps.newHashMap();
+
+        try (final RocksIterator iterator = buckets[bucketIndex].newIterator()) {
+            int counter = 0;
+
+            //determine starting point
+            if (lastClientId != null) {
+                final byte[] lastClientKey = serializer.serializeKey(lastClientId);
+                iterator.seek(lastClientKey);
+                if (!iterator.isValid()) {
+                    //this key is not in the persistence and no key larger than this key is there anymore
+                    return new BucketChunkResult<>(resultMap, true, lastClientId, bucketIndex);
+                }
+                if (Arrays.equals(iterator.key(), lastClientKey)) {
+                    //jump to the next key
+                    iterator.next();
+                }
+            } else {
+                iterator.seekToFirst();
+            }
+
+            String lastKey = lastClientId;
+
+            for (; iterator.isValid(); iterator.next()) {
+
+                final String key = serializer.deserializeKey(iterator.key());
+                lastKey = key;
+
+                if (!filter.match(key)) {
+                    continue;
+                }
+
+                final byte[] valueBytes = iterator.value();
+
+                final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+                final long timestamp = serializer.deserializeTimestamp(valueBytes);
+
+                final boolean expired = ClientSessions.isExpired(clientSession, System.currentTimeMillis() - timestamp);
+                if (expired) {
+                    continue;
+                }
+
+                resultMap.put(key, clientSession);
+                counter++;
+
+                if (counter >= maxResults) {
+                    iterator.next();
+                    return new BucketChunkResult<>(resultMap, !iterator.isValid(), lastKey, bucketIndex);
+                }
+            }
+
+            return new BucketChunkResult<>(resultMap, true, lastKey, bucketIndex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Set<String> getAllClients(final int bucketIndex) {
+        final ImmutableSet.Builder<String> clientSessions = ImmutableSet.builder();
+        try (final RocksIterator iterator = buckets[bucketIndex].newIterator()) {
+            iterator.seekToFirst();
+            while (iterator.isValid()) {
+                clientSessions.add(serializer.deserializeKey(iterator.key()));
+                iterator.next();
+            }
+        }
+        return clientSessions.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeWithTimestamp(final @NotNull String client, final int bucketIndex) {
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(client);
+        final byte[] value = get(bucket, key);
+        delete(bucket, key);
+        bookkeeping.sessionRemoved(client, value != null ? serializer.deserializeValue(value) : null, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSessionExpiryInterval(@NotNull final String clientId, final long sessionExpiryInterval, final int bucketIndex) {
+        checkNotNull(clientId, "Client Id must not be null");
+
+        if (sessionExpiryInterval < 0) {
+            throw new InvalidSessionExpiryIntervalException("Invalid session expiry interval " + sessionExpiryInterval);
+        }
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        final byte[] valueFromStore = get(bucket, key);
+
+        if (valueFromStore == null) {
+            throw NoSessionException.INSTANCE;
+        }
+
+        final ClientSession clientSession = serializer.deserializeValue(valueFromStore);
+
+        // is tombstone?
+        if (bookkeeping.isTombstone(clientSession)) {
+            throw NoSessionException.INSTANCE;
+        }
+
+        clientSession.setSessionExpiryInterval(sessionExpiryInterval);
+
+        final long timestamp = System.currentTimeMillis();
+        put(bucket, key, serializer.serializeValue(clientSession, timestamp));
+        bookkeeping.updateIndexes(clientId, clientSession, timestamp, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Long getSessionExpiryInterval(@NotNull final String clientId) {
+        checkNotNull(clientId, "Client Id must not be null");
+
+        final byte[] bytes = get(getBucket(clientId), serializer.serializeKey(clientId));
+        if (bytes == null) {
+            throw NoSessionException.INSTANCE;
+        }
+
+        final ClientSession clientSession = serializer.deserializeValue(bytes);
+
+        // is tombstone?
+        if (bookkeeping.isTombstone(clientSession)) {
+            throw NoSessionException.INSTANCE;
+        }
+
+        return clientSession.getSessionExpiryInterval();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Set<String> cleanUp(final int bucketIndex) {
+
+        final ImmutableSet.Builder<String> expiredSessionsBuilder = ImmutableSet.builder();
+
+        if (stopped.get()) {
+            return expiredSessionsBuilder.build();
+        }
+        final long now = System.currentTimeMillis();
+        final List<String> dueClients = bookkeeping.getDueClients(bucketIndex, now);
+        if (dueClients.isEmpty()) {
+            return expiredSessionsBuilder.build();
+        }
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions()) {
+            for (final String clientId : dueClients) {
+                final byte[] key = serializer.serializeKey(clientId);
+                final byte[] valueBytes = bucket.get(key);
+                if (valueBytes == null) {
+                    bookkeeping.sessionMissing(clientId, bucketIndex);
+                    continue;
+                }
+
+                final ClientSession clientSession = serializer.deserializeValue(valueBytes);
+                final long timestamp = serializer.deserializeTimestamp(valueBytes);
+                if (bookkeeping.checkExpired(clientId, clientSession, timestamp, now, bucketIndex)) {
+                    bucket.delete(writeBatch, key);
+                    expiredSessionsBuilder.add(clientId);
+                }
+            }
+            bucket.write(writeOptions, writeBatch);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+        return expiredSessionsBuilder.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Set<String> getDisconnectedClients(final int bucketIndex) {
+
+        checkBucketIndex(bucketIndex);
+
+        final Set<String> collectSet = new HashSet<>();
+        try (final RocksIterator iterator = buckets[bucketIndex].newIterator()) {
+            iterator.seekToFirst();
+            for (; iterator.isValid(); iterator.next()) {
+                final byte[] valueBytes = iterator.value();
+                final ClientSession clientSession = serializer.deserializeValue(valueBytes);
+                if (bookkeeping.isDisconnectedAndNotExpired(clientSession, serializer.deserializeTimestamp(valueBytes))) {
+                    collectSet.add(serializer.deserializeKey(iterator.key()));
+                }
+            }
+        }
+        return collectSet;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSessionsCount() {
+        return bookkeeping.getSessionsCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Map<String, PendingWillMessages.PendingWill> getPendingWills(final int bucketIndex) {
+        final Map<String, PendingWillMessages.PendingWill> resultMap = new HashMap<>();
+        try (final RocksIterator iterator = buckets[bucketIndex].newIterator()) {
+            iterator.seekToFirst();
+            for (; iterator.isValid(); iterator.next()) {
+                final byte[] valueBytes = iterator.value();
+                final ClientSession clientSession = serializer.deserializeValue(valueBytes);
+                final PendingWillMessages.PendingWill pendingWill =
+                        bookkeeping.getPendingWill(clientSession, serializer.deserializeTimestamp(valueBytes));
+                if (pendingWill != null) {
+                    resultMap.put(serializer.deserializeKey(iterator.key()), pendingWill);
+                }
+            }
+        }
+        return resultMap;
+    }
+
+    @Nullable
+    private static byte[] get(@NotNull final RocksDBBucket bucket, @NotNull final byte[] key) {
+        try {
+            return bucket.get(key);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    @NotNull
+    private static List<byte[]> multiGet(@NotNull final RocksDBBucket bucket, @NotNull final List<byte[]> keys) {
+        try {
+            return bucket.multiGet(keys);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private static void put(@NotNull final RocksDBBucket bucket, @NotNull final byte[] key, @NotNull final byte[] value) {
+        try {
+            bucket.put(key, value);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private static void delete(@NotNull final RocksDBBucket bucket, @NotNull final byte[] key) {
+        try {
+            bucket.delete(key);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+}
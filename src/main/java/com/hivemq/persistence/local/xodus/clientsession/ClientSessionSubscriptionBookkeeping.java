@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.subscribe.Topic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a {@link com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence} that does not depend
+ * on the storage backend: the id of the next stored subscription and the resolution of duplicate subscriptions.
+ * <p>
+ * A client may have several stored subscriptions for the same topic until the duplicates are cleaned up. Only the
+ * subscription with the highest id is valid.
+ */
+class ClientSessionSubscriptionBookkeeping {
+
+    // Next id = max stored id + 1
+    private final @NotNull AtomicLong nextId = new AtomicLong(1);
+
+    void idRestored(final long id) {
+        nextId.accumulateAndGet(id + 1, Math::max);
+    }
+
+    long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Collects the latest subscription for every topic of a single client.
+     */
+    static class LatestTopics {
+
+        private final @NotNull Map<Topic, Long> topics = new HashMap<>();
+
+        void add(@NotNull final Topic topic, final long id) {
+            final Long valueFromMap = topics.get(topic);
+            if (valueFromMap == null) {
+                topics.put(topic, id);
+            } else if (valueFromMap < id) {
+                topics.remove(topic); // We have to remove the entry here, otherwise the key will not be replaced since it is considered equal.
+                topics.put(topic, id);
+            }
+        }
+
+        @NotNull
+        Set<Topic> getTopics() {
+            return topics.keySet();
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.persistence.PersistenceFilter;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBBucket;
+import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBPersistenceException;
+import com.hivemq.persistence.local.xodus.BucketChunkResult;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.rocksdb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A persistent ClientSessionSubscriptionLocalPersistence based on RocksDB.
+ * <p>
+ * RocksDB has no duplicate keys, so every subscription is stored with the serialized client id followed by the
+ * serialized subscription as key and an empty value. The keys of a client are sorted like the duplicates of the
+ * {@link ClientSessionSubscriptionXodusLocalPersistence} and all subscriptions of a client are found with a prefix
+ * seek.
+ */
+@LazySingleton
+public class ClientSessionSubscriptionRocksDBLocalPersistence extends RocksDBLocalPersistence
+        implements ClientSessionSubscriptionLocalPersistence, SerializedEntryPersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientSessionSubscriptionRocksDBLocalPersistence.class);
+    public static final String PERSISTENCE_VERSION = "040000_R";
+
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    @VisibleForTesting
+    final @NotNull ClientSessionSubscriptionXodusSerializer serializer;
+
+    private final @NotNull ClientSessionSubscriptionBookkeeping bookkeeping = new ClientSessionSubscriptionBookkeeping();
+
+    @Inject
+    ClientSessionSubscriptionRocksDBLocalPersistence(
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull PersistenceStartup persistenceStartup) {
+
+        super(localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.SUBSCRIPTION_MEMTABLE_SIZE_PORTION,
+                InternalConfigurations.SUBSCRIPTION_BLOCK_CACHE_SIZE_PORTION,
+                InternalConfigurations.SUBSCRIPTION_BLOCK_SIZE,
+                InternalConfigurations.SUBSCRIPTION_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE);
+        this.serializer = new ClientSessionSubscriptionXodusSerializer();
+    }
+
+    @NotNull
+    @Override
+    protected String getName() {
+        return PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    protected String getVersion() {
+        return PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    protected Options getOptions() {
+        return new Options()
+                .setCreateIfMissing(true)
+                .setStatistics(new Statistics());
+    }
+
+    @NotNull
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        super.postConstruct();
+    }
+
+    @Override
+    protected void init() {
+        for (int i = 0; i < getBucketCount(); i++) {
+            try (final RocksIterator iterator = buckets[i].newIterator()) {
+                iterator.seekToFirst();
+                while (iterator.isValid()) {
+                    bookkeeping.idRestored(serializer.deserializeId(iterator.key()));
+                    iterator.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The combined key is split into the serialized client id and the serialized subscription, which are the key and
+     * the duplicate value of the Xodus store.
+     */
+    @Override
+    public void iterateSerialized(final @NotNull SerializedEntryCallback callback) {
+        for (int i = 0; i < getBucketCount(); i++) {
+            try (final RocksIterator iterator = buckets[i].newIterator()) {
+                iterator.seekToFirst();
+                while (iterator.isValid()) {
+                    final byte[] key = iterator.key();
+                    final int clientKeyLength = clientKeyLength(key);
+                    callback.onEntry(i,
+                            Arrays.copyOfRange(key, 0, clientKeyLength),
+                            Arrays.copyOfRange(key, clientKeyLength, key.length));
+                    iterator.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putSerialized(final int bucketIndex, @NotNull final byte[] key, @NotNull final byte[] value) {
+        checkBucketIndex(bucketIndex);
+
+        put(buckets[bucketIndex], concat(key, value));
+
+        bookkeeping.idRestored(serializer.deserializeId(value));
+    }
+
+    @Override
+    public void addSubscription(@NotNull final String client, @NotNull final Topic topic, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Clientid must not be null");
+        checkNotNull(topic, "Topic must not be null");
+        checkNotNull(topic.getTopic(), "Topic must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        put(buckets[bucketIndex],
+                concat(serializer.serializeKey(client), serializer.serializeValue(topic, timestamp, bookkeeping.nextId())));
+    }
+
+    @Override
+    public void addSubscriptions(@NotNull final String client, @NotNull final Set<Topic> topics, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Client id must not be null");
+        checkNotNull(topics, "Topics must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] clientKey = serializer.serializeKey(client);
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions()) {
+            for (final Topic topic : topics) {
+                final long rowId = bookkeeping.nextId();
+                bucket.put(writeBatch, concat(clientKey, serializer.serializeValue(topic, timestamp, rowId)), EMPTY_VALUE);
+            }
+            bucket.write(writeOptions, writeBatch);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    @Override
+    public void removeSubscriptions(final @NotNull String client, final @NotNull ImmutableSet<String> topics, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Client id must not be null");
+        checkNotNull(topics, "Topics must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+        final byte[] clientKey = serializer.serializeKey(client);
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions();
+             final RocksIterator iterator = bucket.newIterator()) {
+
+            for (iterator.seek(clientKey); iterator.isValid() && startsWith(iterator.key(), clientKey); iterator.next()) {
+                final byte[] key = iterator.key();
+                final Topic topic = serializer.deserializeValue(Arrays.copyOfRange(key, clientKey.length, key.length));
+                if (topics.contains(topic.getTopic())) {
+                    bucket.delete(writeBatch, key);
+                }
+            }
+            bucket.write(writeOptions, writeBatch);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    @Override
+    @NotNull
+    public ImmutableSet<Topic> getSubscriptions(@NotNull final String client) {
+        checkNotNull(client, "Clientid must not be null");
+
+        final byte[] clientKey = serializer.serializeKey(client);
+        final ClientSessionSubscriptionBookkeeping.LatestTopics results = new ClientSessionSubscriptionBookkeeping.LatestTopics();
+        try (final RocksIterator iterator = getBucket(client).newIterator()) {
+
+            //since serialized-key starts with clientId length and then clientId, this only matches the exact client
+            for (iterator.seek(clientKey); iterator.isValid() && startsWith(iterator.key(), clientKey); iterator.next()) {
+                final byte[] key = iterator.key();
+                final byte[] bytes = Arrays.copyOfRange(key, clientKey.length, key.length);
+                results.add(serializer.deserializeValue(bytes), serializer.deserializeId(bytes));
+            }
+        }
+        return ImmutableSet.copyOf(results.getTopics());
+    }
+
+    @Override
+    public void removeAll(@NotNull final String client, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Clientid must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        removePrefix(buckets[bucketIndex], serializer.serializeKey(client));
+    }
+
+    @Override
+    public void remove(@NotNull final String client, @NotNull final String topic, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Clientid must not be null");
+        checkNotNull(topic, "Topic must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        // the serialized topic is prefixed with its length, so this prefix only matches the exact topic
+        removePrefix(buckets[bucketIndex], concat(serializer.serializeKey(client), serializer.serializeTopic(topic)));
+    }
+
+    @Override
+    @NotNull
+    public BucketChunkResult<Map<String, Set<Topic>>> getAllSubscribersChunk(@NotNull final PersistenceFilter filter, final int bucketIndex, @Nullable final String lastClientId, final int maxResults) {
+        checkNotNull(filter, "Filter must not be null");
+        checkArgument(maxResults > 0, "max results must be greater than 0");
+        checkBucketIndex(bucketIndex);
+
+        final ImmutableMap.Builder<String, Set<Topic>> resultBuilder = ImmutableMap.builder();
+
+        String lastKey = null;
+        int containedItemCount = 0;
+
+        try (final RocksIterator iterator = buckets[bucketIndex].newIterator()) {
+
+            if (lastClientId != null) {
+                //jump to the first key after all entries of the last known client
+                iterator.seek(serializer.serializeKey(lastClientId));
+                skipClient(iterator, serializer.serializeKey(lastClientId));
+            } else {
+                //start at the beginning
+                iterator.seekToFirst();
+            }
+
+            while (iterator.isValid()) {
+                final byte[] firstKey = iterator.key();
+                final byte[] clientKey = Arrays.copyOfRange(firstKey, 0, clientKeyLength(firstKey));
+
+                final String clientId = serializer.deserializeKey(clientKey);
+                if (!filter.match(clientId)) {
+                    skipClient(iterator, clientKey);
+                    continue;
+                }
+
+                final ClientSessionSubscriptionBookkeeping.LatestTopics latestTopics = new ClientSessionSubscriptionBookkeeping.LatestTopics();
+                //read all subscriptions for this clientId
+                for (; iterator.isValid() && startsWith(iterator.key(), clientKey); iterator.next()) {
+                    final byte[] key = iterator.key();
+                    final byte[] bytes = Arrays.copyOfRange(key, clientKey.length, key.length);
+                    latestTopics.add(serializer.deserializeValue(bytes), serializer.deserializeId(bytes));
+                }
+
+                lastKey = clientId;
+                if (!latestTopics.getTopics().isEmpty()) {
+                    final Set<Topic> topicSet = latestTopics.getTopics();
+                    containedItemCount += topicSet.size();
+                    resultBuilder.put(clientId, topicSet);
+
+                    if (containedItemCount >= maxResults) {
+                        return new BucketChunkResult<>(resultBuilder.build(), !iterator.isValid(), lastKey, bucketIndex);
+                    }
+                }
+            }
+        }
+        return new BucketChunkResult<>(resultBuilder.build(), true, lastKey, bucketIndex);
+    }
+
+    @Override
+    public void cleanUp(final int bucket) {
+        if (stopped.get()) {
+            return;
+        }
+        cleanDuplicateEntries(bucket);
+    }
+
+    @VisibleForTesting
+    void cleanDuplicateEntries(final int bucketIndex) {
+
+        final RocksDBBucket bucket = buckets[bucketIndex];
+
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions();
+             final RocksIterator iterator = bucket.newIterator()) {
+
+            iterator.seekToFirst();
+            while (iterator.isValid()) {
+                final byte[] firstKey = iterator.key();
+                final byte[] clientKey = Arrays.copyOfRange(firstKey, 0, clientKeyLength(firstKey));
+
+                // Keep only the entry with the maximum id for every topic of the client
+                final Map<String/*Topic*/, byte[]/*Key*/> maxKeys = new HashMap<>();
+                final Map<String/*Topic*/, Long/*ID*/> maxIds = new HashMap<>();
+                for (; iterator.isValid() && startsWith(iterator.key(), clientKey); iterator.next()) {
+                    final byte[] key = iterator.key();
+                    final byte[] bytes = Arrays.copyOfRange(key, clientKey.length, key.length);
+                    final long id = serializer.deserializeId(bytes);
+                    final String topic = serializer.deserializeValue(bytes).getTopic();
+                    final Long maxId = maxIds.get(topic);
+                    if (maxId == null) {
+                        maxIds.put(topic, id);
+                        maxKeys.put(topic, key);
+                    } else if (maxId < id) {
+                        bucket.delete(writeBatch, maxKeys.get(topic));
+                        maxIds.put(topic, id);
+                        maxKeys.put(topic, key);
+                    } else {
+                        bucket.delete(writeBatch, key);
+                    }
+                }
+            }
+            bucket.write(writeOptions, writeBatch);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private void removePrefix(final @NotNull RocksDBBucket bucket, final @NotNull byte[] prefix) {
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions();
+             final RocksIterator iterator = bucket.newIterator()) {
+
+            for (iterator.seek(prefix); iterator.isValid() && startsWith(iterator.key(), prefix); iterator.next()) {
+                bucket.delete(writeBatch, iterator.key());
+            }
+            bucket.write(writeOptions, writeBatch);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private static void put(final @NotNull RocksDBBucket bucket, final @NotNull byte[] key) {
+        try {
+            bucket.put(key, EMPTY_VALUE);
+        } catch (final RocksDBException e) {
+            throw new RocksDBPersistenceException(e);
+        }
+    }
+
+    private static void skipClient(final @NotNull RocksIterator iterator, final @NotNull byte[] clientKey) {
+        while (iterator.isValid() && startsWith(iterator.key(), clientKey)) {
+            iterator.next();
+        }
+    }
+
+    /**
+     * @return the length of the serialized client id at the start of a combined key, see
+     * {@link ClientSessionSubscriptionXodusSerializer#serializeKey(String)}
+     */
+    private static int clientKeyLength(final @NotNull byte[] key) {
+        final int clientIdLength = (key[0] & 0xFF) + ((key[1] & 0xFF) << 8);
+        return clientIdLength + 10;
+    }
+
+    @NotNull
+    private static byte[] concat(final @NotNull byte[] first, final @NotNull byte[] second) {
+        final byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static boolean startsWith(final @NotNull byte[] bytes, final @NotNull byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
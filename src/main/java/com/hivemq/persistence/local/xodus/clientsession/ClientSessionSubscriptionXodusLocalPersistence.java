@@ -24,10 +24,12 @@ import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.exceptions.UnrecoverableException;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.persistence.PersistenceFilter;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
 import com.hivemq.persistence.local.xodus.BucketChunkResult;
 import com.hivemq.persistence.local.xodus.EnvironmentUtil;
 import com.hivemq.persistence.local.xodus.XodusLocalPersistence;
@@ -47,7 +49,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.*;
 import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
@@ -59,16 +60,16 @@ import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
  * @author Dominik Obermaier
  */
 @LazySingleton
-public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPersistence implements ClientSessionSubscriptionLocalPersistence {
+public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPersistence
+        implements ClientSessionSubscriptionLocalPersistence, SerializedEntryPersistence {
 
     private static final Logger log = LoggerFactory.getLogger(ClientSessionSubscriptionXodusLocalPersistence.class);
-    private static final String PERSISTENCE_NAME = "client_session_subscriptions";
     public static final String PERSISTENCE_VERSION = "040000";
 
     @VisibleForTesting
     final @NotNull ClientSessionSubscriptionXodusSerializer serializer;
 
-    private final AtomicLong nextId = new AtomicLong();
+    private final @NotNull ClientSessionSubscriptionBookkeeping bookkeeping = new ClientSessionSubscriptionBookkeeping();
 
     @Inject
     ClientSessionSubscriptionXodusLocalPersistence(
@@ -76,7 +77,12 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
             final @NotNull EnvironmentUtil environmentUtil,
             final @NotNull PersistenceStartup persistenceStartup) {
 
-        super(environmentUtil, localPersistenceFileUtil, persistenceStartup, InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(), true);
+        super(environmentUtil,
+                localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                //check if enabled
+                InternalConfigurations.SUBSCRIPTION_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
         this.serializer = new ClientSessionSubscriptionXodusSerializer();
 
     }
@@ -122,10 +128,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
                         while (cursor.getNext()) {
                             final String clientId = serializer.deserializeKey(byteIterableToBytes(cursor.getKey()));
                             final long timestamp = serializer.deserializeTimestamp(byteIterableToBytes(cursor.getValue()));
-                            final long id = serializer.deserializeId(byteIterableToBytes(cursor.getValue()));
-                            if (nextId.get() < id) {
-                                nextId.set(id);
-                            }
+                            bookkeeping.idRestored(serializer.deserializeId(byteIterableToBytes(cursor.getValue())));
 
                             final Long currentTimestamp = timestampsInBucket.get(clientId);
                             if (currentTimestamp == null || currentTimestamp < timestamp) {
@@ -136,7 +139,6 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
                     }
                 });
             }
-            nextId.incrementAndGet(); // Next id = max + 1
 
         } catch (final ExodusException e) {
             log.error("An error occurred while preparing the Client Session Subscription persistence.");
@@ -146,6 +148,20 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putSerialized(final int bucketIndex, @NotNull final byte[] key, @NotNull final byte[] value) {
+        checkBucketIndex(bucketIndex);
+
+        final Bucket bucket = buckets[bucketIndex];
+        bucket.getEnvironment().executeInTransaction(txn ->
+                bucket.getStore().put(txn, bytesToByteIterable(key), bytesToByteIterable(value)));
+
+        bookkeeping.idRestored(serializer.deserializeId(value));
+    }
+
     @Override
     public void addSubscription(@NotNull final String client, @NotNull final Topic topic, final long timestamp, final int bucketIndex) {
         checkNotNull(client, "Clientid must not be null");
@@ -158,7 +174,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(client));
             bucket.getStore()
                     .put(txn, key,
-                            bytesToByteIterable(serializer.serializeValue(topic, timestamp, nextId.getAndIncrement())));
+                            bytesToByteIterable(serializer.serializeValue(topic, timestamp, bookkeeping.nextId())));
         });
     }
 
@@ -171,7 +187,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInTransaction(txn -> {
             for (final Topic topic : topics) {
-                final long rowId = nextId.getAndIncrement();
+                final long rowId = bookkeeping.nextId();
                 final ByteIterable key = bytesToByteIterable(serializer.serializeKey(client));
                 bucket.getStore()
                         .put(txn, key, bytesToByteIterable(serializer.serializeValue(topic, timestamp, rowId)));
@@ -213,7 +229,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         final Bucket bucket = buckets[BucketUtils.getBucket(client, bucketCount)];
         return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
 
-            final Map<Topic, Long> results = new HashMap<>();
+            final ClientSessionSubscriptionBookkeeping.LatestTopics results = new ClientSessionSubscriptionBookkeeping.LatestTopics();
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 //since serialized-key starts with clientId length and then clientId, this only matches the exact client
@@ -226,20 +242,11 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
 
                 do {
                     final byte[] bytes = byteIterableToBytes(cursor.getValue());
-                    final Topic value = serializer.deserializeValue(bytes);
-                    final long id = serializer.deserializeId(bytes);
-                    final Long valueFromMap = results.get(value);
-                    if (valueFromMap == null) {
-                        results.put(value, id);
-                    } else if (valueFromMap < id) {
-                        results.remove(
-                                value); // We have to remove the entry here, otherwise the key will not be replaced since it is considered equal.
-                        results.put(value, id);
-                    }
+                    results.add(serializer.deserializeValue(bytes), serializer.deserializeId(bytes));
                 } while (cursor.getNextDup());
             }
 
-            return ImmutableSet.copyOf(results.keySet());
+            return ImmutableSet.copyOf(results.getTopics());
         });
     }
 
@@ -334,26 +341,16 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
                         continue;
                     }
 
-                    final Map<Topic, Long> topicMap = new HashMap<>();
+                    final ClientSessionSubscriptionBookkeeping.LatestTopics latestTopics = new ClientSessionSubscriptionBookkeeping.LatestTopics();
                     //read all subscriptions for this clientId
                     do {
-
-                        final long id = serializer.deserializeId(byteIterableToBytes(cursor.getValue()));
-                        final Topic topic = serializer.deserializeValue(cursor.getValue());
-
-                        final Long valueFromMap = topicMap.get(topic);
-                        if (valueFromMap == null) {
-                            topicMap.put(topic, id);
-                        } else if (valueFromMap < id) {
-                            topicMap.remove(topic); // We have to remove the entry here, otherwise the key will not be replaced since it is considered equal.
-                            topicMap.put(topic, id);
-                        }
-
+                        final byte[] bytes = byteIterableToBytes(cursor.getValue());
+                        latestTopics.add(serializer.deserializeValue(bytes), serializer.deserializeId(bytes));
                     } while (cursor.getNextDup());
 
                     lastKey = clientId;
-                    if (topicMap.size() > 0) {
-                        final Set<Topic> topicSet = topicMap.keySet();
+                    if (!latestTopics.getTopics().isEmpty()) {
+                        final Set<Topic> topicSet = latestTopics.getTopics();
                         containedItemCount += topicSet.size();
                         resultBuilder.put(clientId, topicSet);
 
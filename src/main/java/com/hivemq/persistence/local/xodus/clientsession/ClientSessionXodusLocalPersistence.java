@@ -25,15 +25,17 @@ import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.logging.EventLog;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.PersistenceFilter;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.clientsession.ClientSession;
-import com.hivemq.persistence.clientsession.ClientSessionWill;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
 import com.hivemq.persistence.clientsession.PendingWillMessages;
 import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
 import com.hivemq.persistence.local.xodus.BucketChunkResult;
 import com.hivemq.persistence.local.xodus.EnvironmentUtil;
 import com.hivemq.persistence.local.xodus.XodusLocalPersistence;
@@ -50,16 +52,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
-import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_NOT_SET;
 import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
 import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
 
@@ -72,20 +73,14 @@ import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
  */
 @ThreadSafe
 @LazySingleton
-public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence implements ClientSessionLocalPersistence {
+public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence implements ClientSessionLocalPersistence, SerializedEntryPersistence {
 
     private static final Logger log = LoggerFactory.getLogger(ClientSessionXodusLocalPersistence.class);
 
-    private static final String PERSISTENCE_NAME = "client_session_store";
     public static final String PERSISTENCE_VERSION = "040000";
 
     private final @NotNull ClientSessionPersistenceSerializer serializer;
-    private final @NotNull PublishPayloadPersistence payloadPersistence;
-    private final @NotNull EventLog eventLog;
-
-    private final long configuredSessionExpiryInterval;
-
-    private final AtomicInteger sessionsCount = new AtomicInteger(0);
+    private final @NotNull ClientSessionBookkeeping bookkeeping;
 
     @Inject
     ClientSessionXodusLocalPersistence(
@@ -96,13 +91,16 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final @NotNull EventLog eventLog,
             final @NotNull PersistenceStartup persistenceStartup) {
 
-        super(environmentUtil, localPersistenceFileUtil, persistenceStartup, InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(), true);
+        super(environmentUtil,
+                localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                //check if enabled
+                InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
 
-        this.payloadPersistence = payloadPersistence;
-        this.eventLog = eventLog;
         this.serializer = new ClientSessionPersistenceSerializer();
-        this.configuredSessionExpiryInterval = mqttConfigurationService.maxSessionExpiryInterval();
-
+        this.bookkeeping = new ClientSessionBookkeeping(payloadPersistence, eventLog,
+                mqttConfigurationService.maxSessionExpiryInterval(), bucketCount);
     }
 
 
@@ -138,18 +136,46 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     protected void init() {
         for (int i = 0; i < bucketCount; i++) {
             final Bucket bucket = buckets[i];
+            final int bucketIndex = i;
             bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
                 final Cursor cursor = bucket.getStore().openCursor(txn);
                 while (cursor.getNext()) {
-                    final ClientSession clientSession = serializer.deserializeValue(byteIterableToBytes(cursor.getValue()));
-                    if (persistent(clientSession)) {
-                        sessionsCount.incrementAndGet();
-                    }
+                    restoreIndexes(byteIterableToBytes(cursor.getKey()), byteIterableToBytes(cursor.getValue()), bucketIndex);
                 }
             });
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putSerialized(final int bucketIndex, @NotNull final byte[] key, @NotNull final byte[] value) {
+        checkBucketIndex(bucketIndex);
+
+        final Bucket bucket = buckets[bucketIndex];
+        bucket.getEnvironment().executeInTransaction(txn ->
+                bucket.getStore().put(txn, bytesToByteIterable(key), bytesToByteIterable(value)));
+        restoreIndexes(key, value, bucketIndex);
+    }
+
+    private void restoreIndexes(@NotNull final byte[] keyBytes, @NotNull final byte[] valueBytes, final int bucketIndex) {
+        final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+        final String clientId = serializer.deserializeKey(keyBytes);
+        bookkeeping.sessionRestored(clientId, clientSession, serializer.deserializeTimestamp(valueBytes), bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Nullable
+    @Override
+    public ClientSessionStateIndex.SessionState getSessionState(@NotNull final String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return bookkeeping.getSessionState(clientId);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -213,24 +239,54 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             if (byteIterable == null) {
                 return null;
             }
-            final ClientSession clientSession;
-            final @NotNull byte[] bytes = byteIterableToBytes(byteIterable);
+            return deserializeSession(byteIterableToBytes(byteIterable), checkExpired, includeWill);
+        });
+    }
 
-            if (includeWill) {
-                clientSession = serializer.deserializeValue(bytes);
-            } else {
-                clientSession = serializer.deserializeValueWithoutWill(bytes);
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public Map<String, ClientSession> getSessions(@NotNull final Collection<String> clientIds, final boolean checkExpired) {
+        checkNotNull(clientIds, "Client ids must not be null");
 
-            if (checkExpired && ClientSessions.isExpired(clientSession, System.currentTimeMillis() - serializer.deserializeTimestamp(bytes))) {
-                return null;
-            }
+        final Map<String, ClientSession> sessions = new HashMap<>();
+        for (final Map.Entry<Integer, List<String>> bucketEntry : BucketUtils.groupByBucket(clientIds, bucketCount).entrySet()) {
+            final Bucket bucket = buckets[bucketEntry.getKey()];
+            bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+                for (final String clientId : bucketEntry.getValue()) {
+                    final ByteIterable byteIterable = bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(clientId)));
+                    if (byteIterable == null) {
+                        continue;
+                    }
+                    final ClientSession clientSession = deserializeSession(byteIterableToBytes(byteIterable), checkExpired, true);
+                    if (clientSession != null) {
+                        sessions.put(clientId, clientSession);
+                    }
+                }
+            });
+        }
+        return sessions;
+    }
 
-            if (includeWill) {
-                dereferenceWillPayload(clientSession);
-            }
-            return clientSession;
-        });
+    @Nullable
+    private ClientSession deserializeSession(@NotNull final byte[] bytes, final boolean checkExpired, final boolean includeWill) {
+        final ClientSession clientSession;
+        if (includeWill) {
+            clientSession = serializer.deserializeValue(bytes);
+        } else {
+            clientSession = serializer.deserializeValueWithoutWill(bytes);
+        }
+
+        if (checkExpired && ClientSessions.isExpired(clientSession, System.currentTimeMillis() - serializer.deserializeTimestamp(bytes))) {
+            return null;
+        }
+
+        if (includeWill) {
+            bookkeeping.dereferenceWillPayload(clientSession);
+        }
+        return clientSession;
     }
 
     /**
@@ -273,31 +329,14 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
 
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
 
-            final boolean isPersistent = persistent(clientSession);
-
             final ByteIterable value = bucket.getStore().get(txn, key);
-            if (value != null) {
-                final ClientSession prevClientSession = serializer.deserializeValue(byteIterableToBytes(value));
-                if (prevClientSession.getWillPublish() != null) {
-                    removeWillReference(prevClientSession);
-                }
-
-                final boolean prevIsPersistent = persistent(prevClientSession);
-
-                if ((isPersistent || clientSession.isConnected()) && (!prevIsPersistent && !prevClientSession.isConnected())) {
-                    sessionsCount.incrementAndGet();
-                } else if ((prevIsPersistent || prevClientSession.isConnected()) && (!isPersistent && !clientSession.isConnected())) {
-                    sessionsCount.decrementAndGet();
-                }
-
-            } else if (isPersistent || clientSession.isConnected()) {
-                sessionsCount.incrementAndGet();
-            }
+            bookkeeping.sessionStored(value != null ? serializer.deserializeValue(byteIterableToBytes(value)) : null, clientSession);
 
             bucket.getStore().put(txn, key,
                     bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
 
         });
+        bookkeeping.updateIndexes(clientId, clientSession, timestamp, bucketIndex);
     }
 
     /**
@@ -309,35 +348,26 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         checkNotNull(clientId, "Client id must not be null");
 
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInTransaction(txn -> {
+        final ClientSession disconnectedSession = bucket.getEnvironment().computeInTransaction(txn -> {
 
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
             final ByteIterable byteIterable = bucket.getStore().get(txn, key);
 
             if (byteIterable == null) {
-                final ClientSession clientSession = new ClientSession(false, configuredSessionExpiryInterval);
+                final ClientSession clientSession = bookkeeping.newDisconnectedSession();
                 bucket.getStore().put(txn, key, bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
                 return clientSession;
             }
 
             final ClientSession clientSession = serializer.deserializeValue(byteIterableToBytes(byteIterable));
 
-            if (sessionExpiry != SESSION_EXPIRY_NOT_SET) {
-                clientSession.setSessionExpiryInterval(sessionExpiry);
-            }
-
-            if (clientSession.isConnected() && !persistent(clientSession)) {
-                sessionsCount.decrementAndGet();
-            }
-            clientSession.setConnected(false);
-            if (!sendWill) {
-                removeWillReference(clientSession);
-                clientSession.setWillPublish(null);
-            }
+            bookkeeping.disconnected(clientSession, sendWill, sessionExpiry);
             bucket.getStore().put(txn, key, bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
-            dereferenceWillPayload(clientSession);
+            bookkeeping.dereferenceWillPayload(clientSession);
             return clientSession;
         });
+        bookkeeping.updateIndexes(clientId, disconnectedSession, timestamp, bucketIndex);
+        return disconnectedSession;
     }
 
     /**
@@ -363,8 +393,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
                 return null;
             }
             final long timestamp = serializer.deserializeTimestamp(byteIterableToBytes(byteIterable));
-            removeWillReference(clientSession);
-            clientSession.setWillPublish(null);
+            bookkeeping.willRemoved(clientSession);
             bucket.getStore().put(txn, key, bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
             return new PersistenceEntry<>(clientSession, timestamp);
         });
@@ -468,17 +497,13 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     @Override
     public void removeWithTimestamp(final @NotNull String client, final int bucketIndex) {
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInTransaction(txn -> {
-            final ByteIterable value = bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(client)));
-            if (value != null) {
-                final ClientSession clientSession = serializer.deserializeValue(byteIterableToBytes(value));
-                if (persistent(clientSession) || clientSession.isConnected()) {
-                    sessionsCount.decrementAndGet();
-                }
-                removeWillReference(clientSession);
-            }
-            bucket.getStore().delete(txn, bytesToByteIterable(serializer.serializeKey(client)));
+        final ClientSession clientSession = bucket.getEnvironment().computeInTransaction(txn -> {
+            final ByteIterable key = bytesToByteIterable(serializer.serializeKey(client));
+            final ByteIterable value = bucket.getStore().get(txn, key);
+            bucket.getStore().delete(txn, key);
+            return value != null ? serializer.deserializeValue(byteIterableToBytes(value)) : null;
         });
+        bookkeeping.sessionRemoved(client, clientSession, bucketIndex);
     }
 
     /**
@@ -506,15 +531,17 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final ClientSession clientSession = serializer.deserializeValue(byteIterableToBytes(valueFromStore));
 
             // is tombstone?
-            if (!clientSession.isConnected() && !persistent(clientSession)) {
+            if (bookkeeping.isTombstone(clientSession)) {
                 throw NoSessionException.INSTANCE;
             }
 
             clientSession.setSessionExpiryInterval(sessionExpiryInterval);
 
-            final ByteIterable value = bytesToByteIterable(serializer.serializeValue(clientSession, System.currentTimeMillis()));
+            final long timestamp = System.currentTimeMillis();
+            final ByteIterable value = bytesToByteIterable(serializer.serializeValue(clientSession, timestamp));
 
             bucket.getStore().put(txn, key, value);
+            bookkeeping.updateIndexes(clientId, clientSession, timestamp, bucketIndex);
 
         });
     }
@@ -538,7 +565,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final ClientSession clientSession = serializer.deserializeValue(byteIterableToBytes(byteIterable));
 
             // is tombstone?
-            if (!clientSession.isConnected() && !persistent(clientSession)) {
+            if (bookkeeping.isTombstone(clientSession)) {
                 throw NoSessionException.INSTANCE;
             }
 
@@ -558,28 +585,27 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         if (stopped.get()) {
             return expiredSessionsBuilder.build();
         }
+        final long now = System.currentTimeMillis();
+        final List<String> dueClients = bookkeeping.getDueClients(bucketIndex, now);
+        if (dueClients.isEmpty()) {
+            return expiredSessionsBuilder.build();
+        }
+
         final Bucket bucket = buckets[bucketIndex];
         bucket.getEnvironment().executeInTransaction(txn -> {
-            final Cursor cursor = bucket.getStore().openCursor(txn);
-            while (cursor.getNext()) {
-                final String clientId = serializer.deserializeKey(byteIterableToBytes(cursor.getKey()));
+            for (final String clientId : dueClients) {
+                final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
+                final ByteIterable value = bucket.getStore().get(txn, key);
+                if (value == null) {
+                    bookkeeping.sessionMissing(clientId, bucketIndex);
+                    continue;
+                }
 
-                final byte[] valueBytes = byteIterableToBytes(cursor.getValue());
+                final byte[] valueBytes = byteIterableToBytes(value);
                 final ClientSession clientSession = serializer.deserializeValue(valueBytes);
                 final long timestamp = serializer.deserializeTimestamp(valueBytes);
-
-                final long sessionExpiryInterval = clientSession.getSessionExpiryInterval();
-                final long timeSinceDisconnect = System.currentTimeMillis() - timestamp;
-
-                // Expired is true if the persistent date for the client has to be removed
-                final boolean expired = ClientSessions.isExpired(clientSession, timeSinceDisconnect);
-                if (expired) {
-                    if (sessionExpiryInterval > SESSION_EXPIRE_ON_DISCONNECT) {
-                        sessionsCount.decrementAndGet();
-                    }
-
-                    eventLog.clientSessionExpired(timestamp + sessionExpiryInterval * 1000, clientId);
-                    cursor.deleteCurrent();
+                if (bookkeeping.checkExpired(clientId, clientSession, timestamp, now, bucketIndex)) {
+                    bucket.getStore().delete(txn, key);
                     expiredSessionsBuilder.add(clientId);
                 }
             }
@@ -606,16 +632,8 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             while (cursor.getNext()) {
                 final byte[] valueBytes = byteIterableToBytes(cursor.getValue());
                 final ClientSession clientSession = serializer.deserializeValue(valueBytes);
-                final String clientId = serializer.deserializeKey(byteIterableToBytes(cursor.getKey()));
-                if (!clientSession.isConnected() && clientSession.getSessionExpiryInterval() > 0) {
-                    final long timestamp = serializer.deserializeTimestamp(valueBytes);
-                    final long timeSinceDisconnect = System.currentTimeMillis() - timestamp;
-                    final long sessionExpiryIntervalInMillis = clientSession.getSessionExpiryInterval() * 1000L;
-                    // We don't remove expired client sessions here, since this method is often called for all buckets at once.
-                    // Handling the TTL in the cleanup job will result in a more evenly distributed CPU usage.
-                    if (timeSinceDisconnect < sessionExpiryIntervalInMillis) {
-                        collectSet.add(clientId);
-                    }
+                if (bookkeeping.isDisconnectedAndNotExpired(clientSession, serializer.deserializeTimestamp(valueBytes))) {
+                    collectSet.add(serializer.deserializeKey(byteIterableToBytes(cursor.getKey())));
                 }
             }
             return collectSet;
@@ -627,7 +645,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
      */
     @Override
     public int getSessionsCount() {
-        return sessionsCount.get();
+        return bookkeeping.getSessionsCount();
     }
 
     /**
@@ -644,46 +662,13 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             while (cursor.getNext()) {
                 final byte[] valueBytes = byteIterableToBytes(cursor.getValue());
                 final ClientSession clientSession = serializer.deserializeValue(valueBytes);
-                final String clientId = serializer.deserializeKey(byteIterableToBytes(cursor.getKey()));
-                final long timestamp = serializer.deserializeTimestamp(valueBytes);
-                if (clientSession.isConnected() || clientSession.getWillPublish() == null) {
-                    // Will must not be sent
-                    continue;
+                final PendingWillMessages.PendingWill pendingWill =
+                        bookkeeping.getPendingWill(clientSession, serializer.deserializeTimestamp(valueBytes));
+                if (pendingWill != null) {
+                    resultMap.put(serializer.deserializeKey(byteIterableToBytes(cursor.getKey())), pendingWill);
                 }
-                final ClientSessionWill willPublish = clientSession.getWillPublish();
-                resultMap.put(clientId, new PendingWillMessages.PendingWill(Math.min(willPublish.getDelayInterval(), clientSession.getSessionExpiryInterval()), timestamp));
             }
             return resultMap;
         });
     }
-
-    private void removeWillReference(final ClientSession clientSession) {
-        final ClientSessionWill willPublish = clientSession.getWillPublish();
-        if (willPublish == null) {
-            return;
-        }
-        payloadPersistence.decrementReferenceCounter(willPublish.getPayloadId());
-    }
-
-    private void dereferenceWillPayload(final ClientSession clientSession) {
-        final ClientSessionWill willPublish = clientSession.getWillPublish();
-        if (willPublish == null) {
-            return;
-        }
-        if (willPublish.getPayload() != null) {
-            return;
-        }
-        final Long payloadId = willPublish.getPayloadId();
-        final byte[] payload = payloadPersistence.getPayloadOrNull(payloadId);
-        if (payload == null) {
-            clientSession.setWillPublish(null);
-            log.warn("Will Payload for payloadid {} not found", payloadId);
-            return;
-        }
-        willPublish.getMqttWillPublish().setPayload(payload);
-    }
-
-    private boolean persistent(final ClientSession clientSession) {
-        return clientSession.getSessionExpiryInterval() > SESSION_EXPIRE_ON_DISCONNECT;
-    }
 }
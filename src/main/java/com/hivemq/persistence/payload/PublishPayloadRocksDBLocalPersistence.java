@@ -25,6 +25,7 @@ import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.rocksdb.RocksDBBucket;
 import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
 import com.hivemq.util.LocalPersistenceFileUtil;
 import org.rocksdb.*;
@@ -92,7 +93,7 @@ public class PublishPayloadRocksDBLocalPersistence extends RocksDBLocalPersisten
     public void init() {
         try {
             long max = 0;
-            for (final RocksDB bucket : buckets) {
+            for (final RocksDBBucket bucket : buckets) {
                 try(final RocksIterator rocksIterator = bucket.newIterator()) {
                     rocksIterator.seekToFirst();
                     while (rocksIterator.isValid()) {
@@ -116,7 +117,7 @@ public class PublishPayloadRocksDBLocalPersistence extends RocksDBLocalPersisten
     @Override
     public void put(final long id, @NotNull final byte[] payload) {
         checkNotNull(payload, "payload must not be null");
-        final RocksDB bucket = getRocksDb(Long.toString(id));
+        final RocksDBBucket bucket = getBucket(Long.toString(id));
         try {
             bucket.put(serializeKey(id), payload);
         } catch (final RocksDBException e) {
@@ -127,7 +128,7 @@ public class PublishPayloadRocksDBLocalPersistence extends RocksDBLocalPersisten
     @Nullable
     @Override
     public byte[] get(final long id) {
-        final RocksDB bucket = getRocksDb(Long.toString(id));
+        final RocksDBBucket bucket = getBucket(Long.toString(id));
         try {
             return bucket.get(serializeKey(id));
         } catch (final RocksDBException e) {
@@ -141,7 +142,7 @@ public class PublishPayloadRocksDBLocalPersistence extends RocksDBLocalPersisten
     public ImmutableList<Long> getAllIds() {
 
         final ImmutableList.Builder<Long> builder = ImmutableList.builder();
-        for (final RocksDB bucket : buckets) {
+        for (final RocksDBBucket bucket : buckets) {
             try(final RocksIterator rocksIterator = bucket.newIterator()) {
                 rocksIterator.seekToFirst();
                 while (rocksIterator.isValid()) {
@@ -160,7 +161,7 @@ public class PublishPayloadRocksDBLocalPersistence extends RocksDBLocalPersisten
         if (stopped.get()) {
             return;
         }
-        final RocksDB bucket = getRocksDb(Long.toString(id));
+        final RocksDBBucket bucket = getBucket(Long.toString(id));
         try {
             bucket.delete(serializeKey(id));
         } catch (final RocksDBException e) {
@@ -175,7 +176,7 @@ public class PublishPayloadRocksDBLocalPersistence extends RocksDBLocalPersisten
 
     @Override
     public void iterate(final @NotNull Callback callback) {
-        for (final RocksDB bucket : buckets) {
+        for (final RocksDBBucket bucket : buckets) {
             try(final RocksIterator rocksIterator = bucket.newIterator()) {
                 rocksIterator.seekToFirst();
                 while (rocksIterator.isValid()) {
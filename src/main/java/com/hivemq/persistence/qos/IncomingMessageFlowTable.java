@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.qos;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.message.MessageWithID;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * The incoming message flows of a single client, indexed by packet identifier.
+ * <p>
+ * This is an open addressing hash table with linear probing on primitive packet identifiers, so lookups neither
+ * allocate keys nor box the identifier. Packet identifiers are mostly assigned sequentially by clients, which maps
+ * them to consecutive slots without collisions.
+ *
+ * @see IncomingMessageFlowPersistence
+ */
+@NotThreadSafe
+public class IncomingMessageFlowTable {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private @NotNull int[] packetIds;
+    //a slot is free if its message is null
+    private @NotNull MessageWithID[] messages;
+    private int size;
+
+    public IncomingMessageFlowTable() {
+        packetIds = new int[INITIAL_CAPACITY];
+        messages = new MessageWithID[INITIAL_CAPACITY];
+    }
+
+    @Nullable
+    public MessageWithID get(final int packetId) {
+        final int mask = messages.length - 1;
+        for (int i = packetId & mask; messages[i] != null; i = (i + 1) & mask) {
+            if (packetIds[i] == packetId) {
+                return messages[i];
+            }
+        }
+        return null;
+    }
+
+    public void put(final int packetId, @NotNull final MessageWithID message) {
+        final int mask = messages.length - 1;
+        int i = packetId & mask;
+        while (messages[i] != null) {
+            if (packetIds[i] == packetId) {
+                messages[i] = message;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        packetIds[i] = packetId;
+        messages[i] = message;
+        size++;
+
+        //keep the load factor at most 0.5 so probe sequences stay short
+        if (size * 2 > messages.length) {
+            resize(messages.length * 2);
+        }
+    }
+
+    public void remove(final int packetId) {
+        final int mask = messages.length - 1;
+        for (int i = packetId & mask; messages[i] != null; i = (i + 1) & mask) {
+            if (packetIds[i] == packetId) {
+                removeAt(i);
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        packetIds = new int[INITIAL_CAPACITY];
+        messages = new MessageWithID[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    private void removeAt(final int index) {
+        final int mask = messages.length - 1;
+        int hole = index;
+        messages[hole] = null;
+        size--;
+
+        //shift the following entries of the probe sequence back, so no tombstones are needed
+        for (int i = (hole + 1) & mask; messages[i] != null; i = (i + 1) & mask) {
+            final int home = packetIds[i] & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                packetIds[hole] = packetIds[i];
+                messages[hole] = messages[i];
+                messages[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    private void resize(final int capacity) {
+        final int[] oldPacketIds = packetIds;
+        final MessageWithID[] oldMessages = messages;
+        packetIds = new int[capacity];
+        messages = new MessageWithID[capacity];
+
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldMessages.length; j++) {
+            if (oldMessages[j] == null) {
+                continue;
+            }
+            int i = oldPacketIds[j] & mask;
+            while (messages[i] != null) {
+                i = (i + 1) & mask;
+            }
+            packetIds[i] = oldPacketIds[j];
+            messages[i] = oldMessages[j];
+        }
+    }
+}
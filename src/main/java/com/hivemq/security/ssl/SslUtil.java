@@ -19,13 +19,19 @@ package com.hivemq.security.ssl;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.entity.Tls;
 import com.hivemq.security.exception.SslException;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslServerContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.SupportedCipherSuiteFilter;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLException;
@@ -34,12 +40,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * @author Georg Held
@@ -47,6 +56,8 @@ import java.util.List;
 @LazySingleton
 public class SslUtil {
 
+    private static final Logger log = LoggerFactory.getLogger(SslUtil.class);
+
     @NotNull
     public TrustManagerFactory createTrustManagerFactory(@NotNull final String trustStoreType, @NotNull final String trustStorePath, @NotNull final String trustStorePassword) {
         try (final FileInputStream fileInputStream = new FileInputStream(new File(trustStorePath))) {
@@ -101,7 +112,7 @@ public class SslUtil {
 
         final SslContextBuilder sslContextBuilder = SslContextBuilder.forServer(kmf);
 
-        sslContextBuilder.sslProvider(SslProvider.JDK).trustManager(tmFactory);
+        sslContextBuilder.sslProvider(getSslProvider()).trustManager(tmFactory);
 
         if (protocols != null && !protocols.isEmpty()) {
             sslContextBuilder.protocols(protocols.toArray(new String[0]));
@@ -113,7 +124,89 @@ public class SslUtil {
         } else {
             sslContextBuilder.ciphers(null, SupportedCipherSuiteFilter.INSTANCE);
         }
-        return sslContextBuilder.build();
+
+        final long sessionCacheSize = InternalConfigurations.SSL_SESSION_CACHE_SIZE.get();
+        if (sessionCacheSize > -1) {
+            sslContextBuilder.sessionCacheSize(sessionCacheSize);
+        }
+        final long sessionTimeout = InternalConfigurations.SSL_SESSION_TIMEOUT.get();
+        if (sessionTimeout > -1) {
+            sslContextBuilder.sessionTimeout(sessionTimeout);
+        }
+
+        final SslContext sslContext = sslContextBuilder.build();
+        setSessionTicketKeys(sslContext);
+        return sslContext;
+    }
+
+    /**
+     * The OpenSSL engine is used if it is configured and the native library is available. OpenSSL contexts are not
+     * reference counted, so contexts that are replaced by a reload of the key store are released by the GC.
+     *
+     * @return the provider of the TLS engine
+     */
+    @NotNull
+    public SslProvider getSslProvider() {
+        final String configuredProvider = InternalConfigurations.SSL_PROVIDER.get();
+        switch (configuredProvider.toLowerCase(Locale.ROOT)) {
+            case "jdk":
+                return SslProvider.JDK;
+            case "openssl":
+                if (OpenSsl.isAvailable()) {
+                    return SslProvider.OPENSSL;
+                }
+                log.warn("The OpenSSL TLS engine is not available, falling back to the JDK TLS engine. Reason: {}",
+                        OpenSsl.unavailabilityCause().getMessage());
+                return SslProvider.JDK;
+            case "auto":
+                if (OpenSsl.isAvailable()) {
+                    return SslProvider.OPENSSL;
+                }
+                log.debug("The OpenSSL TLS engine is not available, using the JDK TLS engine.", OpenSsl.unavailabilityCause());
+                return SslProvider.JDK;
+            default:
+                log.warn("Unknown TLS engine '{}', using the JDK TLS engine.", configuredProvider);
+                return SslProvider.JDK;
+        }
+    }
+
+    private void setSessionTicketKeys(@NotNull final SslContext sslContext) {
+        final String ticketKeyFile = InternalConfigurations.SSL_SESSION_TICKET_KEY_FILE.get();
+        if (StringUtils.isBlank(ticketKeyFile)) {
+            return;
+        }
+        if (!(sslContext instanceof OpenSslServerContext)) {
+            log.warn("Session ticket keys are only supported by the OpenSSL TLS engine, ignoring {}", ticketKeyFile);
+            return;
+        }
+        ((OpenSslServerContext) sslContext).sessionContext().setTicketKeys(readSessionTicketKeys(ticketKeyFile));
+    }
+
+    @NotNull
+    OpenSslSessionTicketKey[] readSessionTicketKeys(@NotNull final String ticketKeyFile) {
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(new File(ticketKeyFile).toPath());
+        } catch (final IOException e) {
+            throw new SslException("Not able to read session ticket keys from '" + ticketKeyFile + "'", e);
+        }
+
+        final int keyLength = OpenSslSessionTicketKey.NAME_SIZE + OpenSslSessionTicketKey.HMAC_KEY_SIZE + OpenSslSessionTicketKey.AES_KEY_SIZE;
+        if (bytes.length == 0 || bytes.length % keyLength != 0) {
+            throw new SslException("Session ticket key file '" + ticketKeyFile + "' must contain one or more keys of " + keyLength + " bytes");
+        }
+
+        final OpenSslSessionTicketKey[] keys = new OpenSslSessionTicketKey[bytes.length / keyLength];
+        for (int i = 0; i < keys.length; i++) {
+            final int offset = i * keyLength;
+            final byte[] name = Arrays.copyOfRange(bytes, offset, offset + OpenSslSessionTicketKey.NAME_SIZE);
+            final int hmacOffset = offset + OpenSslSessionTicketKey.NAME_SIZE;
+            final byte[] hmacKey = Arrays.copyOfRange(bytes, hmacOffset, hmacOffset + OpenSslSessionTicketKey.HMAC_KEY_SIZE);
+            final int aesOffset = hmacOffset + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+            final byte[] aesKey = Arrays.copyOfRange(bytes, aesOffset, aesOffset + OpenSslSessionTicketKey.AES_KEY_SIZE);
+            keys[i] = new OpenSslSessionTicketKey(name, hmacKey, aesKey);
+        }
+        return keys;
     }
 
     @NotNull
@@ -100,6 +100,23 @@ public class ChannelUtils {
         return inFlightMessages.get() > 0;
     }
 
+    /**
+     * @param channel the channel of the client
+     * @return the amount of messages that are currently in flight for the client or <code>-1</code> if the in-flight
+     * messages of the session were not sent yet
+     */
+    public static int inFlightMessageCount(@NotNull final Channel channel) {
+        final boolean inFlightMessagesSent = channel.attr(ChannelAttributes.IN_FLIGHT_MESSAGES_SENT).get() != null;
+        if (!inFlightMessagesSent) {
+            return -1;
+        }
+        final AtomicInteger inFlightMessages = channel.attr(ChannelAttributes.IN_FLIGHT_MESSAGES).get();
+        if (inFlightMessages == null) {
+            return 0;
+        }
+        return inFlightMessages.get();
+    }
+
     public static int maxInflightWindow(@NotNull final Channel channel) {
         final Integer clientReceiveMaximum = channel.attr(ChannelAttributes.CLIENT_RECEIVE_MAXIMUM).get();
         final int max = InternalConfigurations.MAX_INFLIGHT_WINDOW_SIZE;
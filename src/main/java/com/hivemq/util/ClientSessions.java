@@ -49,4 +49,28 @@ public class ClientSessions {
 
         return timeSinceDisconnect >= timeToLiveMilliseconds;
     }
+
+    /**
+     * The timestamp at which a client session expires, same semantics as {@link #isExpired(ClientSession, long)}.
+     *
+     * @param clientSession the client session
+     * @param timestamp     the timestamp of the disconnect in milliseconds
+     * @return the expiry timestamp in milliseconds or {@link Long#MAX_VALUE} if the session does not expire
+     */
+    public static long getExpiryTimestamp(@NotNull final ClientSession clientSession, final long timestamp) {
+        checkNotNull(clientSession);
+
+        if (clientSession.isConnected()) {
+            return Long.MAX_VALUE;
+        }
+
+        final long timeToLiveMilliseconds = clientSession.getSessionExpiryInterval() * 1000L;
+
+        //prevent accidental overflow
+        if (timeToLiveMilliseconds < 0 || timestamp + timeToLiveMilliseconds < 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return timestamp + timeToLiveMilliseconds;
+    }
 }
@@ -75,4 +75,27 @@ public class PublishUtil {
 
         return timestamp + timeToLiveInMilliseconds <= System.currentTimeMillis();
     }
+
+    /**
+     * The timestamp at which a publish expires, same semantics as {@link #isExpired(long, long)}.
+     *
+     * @param timestamp of the publish creation
+     * @param ttl       The time to live in seconds
+     * @return the expiry timestamp in milliseconds or {@link Long#MAX_VALUE} if the publish does not expire
+     */
+    public static long getExpiryTimestamp(final long timestamp, final long ttl) {
+
+        if (ttl == MqttConfigurationDefaults.TTL_DISABLED || ttl == PUBLISH.MESSAGE_EXPIRY_INTERVAL_NOT_SET) {
+            return Long.MAX_VALUE;
+        }
+
+        final long timeToLiveInMilliseconds = ttl * 1000L;
+
+        //prevent accidental overflow
+        if (timeToLiveInMilliseconds < 0 || timestamp + timeToLiveInMilliseconds < 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return timestamp + timeToLiveInMilliseconds;
+    }
 }
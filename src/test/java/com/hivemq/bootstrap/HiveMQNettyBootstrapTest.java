@@ -20,10 +20,16 @@ import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.hivemq.bootstrap.netty.ChannelInitializerFactoryImpl;
 import com.hivemq.bootstrap.netty.NettyConfiguration;
+import com.hivemq.bootstrap.netty.NettyTransport;
 import com.hivemq.bootstrap.netty.initializer.AbstractChannelInitializer;
 import com.hivemq.common.shutdown.ShutdownHooks;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.entity.*;
 import com.hivemq.configuration.service.impl.listener.ListenerConfigurationService;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -37,6 +43,7 @@ import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 import static util.TlsTestUtil.createDefaultTLS;
@@ -159,6 +166,28 @@ public class HiveMQNettyBootstrapTest {
         assertTrue(listenableFuture.get().get(3).isSuccessful());
     }
 
+    @Test
+    public void test_server_bootstrap_epoll_with_reuse_port() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+
+        InternalConfigurations.EPOLL_ACCEPTOR_THREADS.set(2);
+        InternalConfigurations.EPOLL_TCP_QUICKACK.set(true);
+        try {
+            hiveMQNettyBootstrap = new HiveMQNettyBootstrap(shutdownHooks, listenerConfigurationService, channelInitializerFactoryImpl,
+                    new NettyConfiguration(EpollServerSocketChannel.class, EpollSocketChannel.class, new EpollEventLoopGroup(2),
+                            new EpollEventLoopGroup(1), NettyTransport.EPOLL));
+            setupTcpListener(randomPort);
+
+            final ListenableFuture<List<ListenerStartupInformation>> listenableFuture = hiveMQNettyBootstrap.bootstrapServer();
+
+            assertEquals(1, listenableFuture.get().size());
+            assertTrue(listenableFuture.get().get(0).isSuccessful());
+        } finally {
+            InternalConfigurations.EPOLL_ACCEPTOR_THREADS.set(1);
+            InternalConfigurations.EPOLL_TCP_QUICKACK.set(false);
+        }
+    }
+
     private TlsWebsocketListener createTlsWebsocketListener(final int givenPort) {
         final Tls tls = createDefaultTLS();
         final String bindAddress = "0.0.0.0";
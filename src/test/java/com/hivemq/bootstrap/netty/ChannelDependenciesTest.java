@@ -30,6 +30,7 @@ import com.hivemq.mqtt.handler.auth.AuthHandler;
 import com.hivemq.mqtt.handler.auth.AuthInProgressMessageHandler;
 import com.hivemq.mqtt.handler.connect.ConnectHandler;
 import com.hivemq.mqtt.handler.connect.ConnectPersistenceUpdateHandler;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutWheels;
 import com.hivemq.mqtt.handler.connect.StopReadingAfterConnectHandler;
 import com.hivemq.mqtt.handler.disconnect.DisconnectHandler;
 import com.hivemq.mqtt.handler.ping.PingRequestHandler;
@@ -192,6 +193,9 @@ public class ChannelDependenciesTest {
     @Mock
     private PingInterceptorHandler pingInterceptorHandler;
 
+    @Mock
+    private IdleTimeoutWheels idleTimeoutWheels;
+
     @Before
     public void setUp() throws Exception {
 
@@ -241,7 +245,8 @@ public class ChannelDependenciesTest {
                 subAckOutboundInterceptorHandler,
                 unsubackOutboundInterceptorHandler,
                 unsubscribeInboundInterceptorHandler,
-                pingInterceptorHandler
+                pingInterceptorHandler,
+                idleTimeoutWheels
         );
 
     }
@@ -292,5 +297,6 @@ public class ChannelDependenciesTest {
         assertNotNull(channelDependencies.getUnsubackOutboundInterceptorHandler());
         assertNotNull(channelDependencies.getUnsubscribeInboundInterceptorHandler());
         assertNotNull(channelDependencies.getPingInterceptorHandler());
+        assertNotNull(channelDependencies.getIdleTimeoutWheels());
     }
 }
\ No newline at end of file
@@ -23,15 +23,17 @@ import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.logging.EventLog;
+import com.hivemq.mqtt.handler.connect.IdleTimeoutHandler;
 import com.hivemq.security.exception.SslException;
 import io.netty.channel.*;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
@@ -43,6 +45,8 @@ import java.util.concurrent.TimeUnit;
 
 import static com.hivemq.bootstrap.netty.ChannelHandlerNames.*;
 import static com.hivemq.bootstrap.netty.initializer.AbstractChannelInitializer.FIRST_ABSTRACT_HANDLER;
+import static com.hivemq.configuration.service.InternalConfigurations.FLUSH_CONSOLIDATION_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -127,14 +131,14 @@ public class AbstractChannelInitializerTest {
     @Test
     public void test_no_connect_idle_handler_default() throws Exception {
 
-        final IdleStateHandler[] idleStateHandler = new IdleStateHandler[1];
+        final IdleTimeoutHandler[] idleTimeoutHandler = new IdleTimeoutHandler[1];
 
         when(pipeline.addLast(anyString(), any(ChannelHandler.class))).thenAnswer(new Answer<ChannelPipeline>() {
             @Override
             public ChannelPipeline answer(final InvocationOnMock invocation) throws Throwable {
 
                 if (invocation.getArguments()[0].equals(NEW_CONNECTION_IDLE_HANDLER)) {
-                    idleStateHandler[0] = (IdleStateHandler) (invocation.getArguments()[1]);
+                    idleTimeoutHandler[0] = (IdleTimeoutHandler) (invocation.getArguments()[1]);
                 }
                 return pipeline;
             }
@@ -142,7 +146,82 @@ public class AbstractChannelInitializerTest {
 
         abstractChannelInitializer.initChannel(socketChannel);
 
-        assertEquals(500, idleStateHandler[0].getReaderIdleTimeInMillis());
+        assertEquals(500, idleTimeoutHandler[0].getTimeoutMillis());
+    }
+
+    @Test
+    public void test_flush_consolidation_handler_before_writing_handlers() throws Exception {
+
+        abstractChannelInitializer.initChannel(socketChannel);
+
+        final InOrder inOrder = inOrder(pipeline);
+        inOrder.verify(pipeline).addLast(eq(GLOBAL_THROTTLING_HANDLER), any(ChannelHandler.class));
+        inOrder.verify(pipeline).addLast(eq(FLUSH_CONSOLIDATION_HANDLER), any(FlushConsolidationHandler.class));
+        inOrder.verify(pipeline).addLast(eq(MQTT_MESSAGE_DECODER), any(ChannelHandler.class));
+        inOrder.verify(pipeline).addLast(eq(MQTT_MESSAGE_ENCODER), any(ChannelHandler.class));
+    }
+
+    @Test
+    public void test_flush_consolidation_handler_disabled() throws Exception {
+
+        FLUSH_CONSOLIDATION_ENABLED.set(false);
+        try {
+            abstractChannelInitializer.initChannel(socketChannel);
+
+            verify(pipeline, never()).addLast(eq(FLUSH_CONSOLIDATION_HANDLER), any(ChannelHandler.class));
+        } finally {
+            FLUSH_CONSOLIDATION_ENABLED.set(true);
+        }
+    }
+
+    @Test
+    public void test_flush_consolidation_handler_flushes_writes_outside_of_reads() throws Exception {
+
+        final EmbeddedChannel channel = new EmbeddedChannel(createFlushConsolidationHandler());
+
+        channel.writeAndFlush("publish");
+
+        //the flush is deferred until the event loop runs its next task
+        assertNull(channel.readOutbound());
+        channel.runPendingTasks();
+        assertEquals("publish", channel.readOutbound());
+    }
+
+    @Test
+    public void test_flush_consolidation_handler_flushes_after_max_pending_flushes() throws Exception {
+
+        final EmbeddedChannel channel = new EmbeddedChannel(createFlushConsolidationHandler());
+
+        for (int i = 0; i < FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES.get() - 1; i++) {
+            channel.writeAndFlush("publish" + i);
+        }
+        assertNull(channel.readOutbound());
+
+        channel.writeAndFlush("publish" + (FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES.get() - 1));
+
+        for (int i = 0; i < FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES.get(); i++) {
+            assertEquals("publish" + i, channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void test_flush_consolidation_handler_flushes_writes_during_read_on_read_complete() throws Exception {
+
+        final EmbeddedChannel channel = new EmbeddedChannel(createFlushConsolidationHandler(),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                        ctx.writeAndFlush("ack");
+                    }
+                });
+
+        channel.pipeline().fireChannelRead("publish");
+
+        //the flush is deferred until the read is complete
+        assertNull(channel.readOutbound());
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals("ack", channel.readOutbound());
     }
 
     @Test
@@ -161,6 +240,16 @@ public class AbstractChannelInitializerTest {
         verify(eventLog).clientWasDisconnected(any(Channel.class), anyString());
     }
 
+    @NotNull
+    private ChannelHandler createFlushConsolidationHandler() throws Exception {
+        final ArgumentCaptor<ChannelHandler> captor = ArgumentCaptor.forClass(ChannelHandler.class);
+
+        abstractChannelInitializer.initChannel(socketChannel);
+
+        verify(pipeline).addLast(eq(FLUSH_CONSOLIDATION_HANDLER), captor.capture());
+        return captor.getValue();
+    }
+
     private class TestAbstractChannelInitializer extends AbstractChannelInitializer {
 
         public TestAbstractChannelInitializer(final ChannelDependencies channelDependencies) {
@@ -17,6 +17,12 @@
 package com.hivemq.bootstrap.netty.ioc;
 
 import com.hivemq.bootstrap.netty.NettyConfiguration;
+import com.hivemq.bootstrap.netty.NettyTransport;
+import com.hivemq.configuration.service.InternalConfigurations;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -43,6 +49,41 @@ public class NettyConfigurationProviderTest {
 
     }
 
+    @Test
+    public void test_epoll_is_used_if_configured_and_available() {
+        InternalConfigurations.NETTY_TRANSPORT.set("epoll");
+        try {
+            final NettyConfiguration nettyConfiguration = new NettyConfigurationProvider().get();
+
+            if (Epoll.isAvailable()) {
+                assertEquals(NettyTransport.EPOLL, nettyConfiguration.getTransport());
+                assertThat(nettyConfiguration.getChildEventLoopGroup(), instanceOf(EpollEventLoopGroup.class));
+                assertThat(nettyConfiguration.getParentEventLoopGroup(), instanceOf(EpollEventLoopGroup.class));
+                assertEquals(EpollServerSocketChannel.class, nettyConfiguration.getServerSocketChannelClass());
+                assertEquals(EpollSocketChannel.class, nettyConfiguration.getClientSocketChannelClass());
+            } else {
+                assertEquals(NettyTransport.NIO, nettyConfiguration.getTransport());
+                assertEquals(NioServerSocketChannel.class, nettyConfiguration.getServerSocketChannelClass());
+            }
+        } finally {
+            InternalConfigurations.NETTY_TRANSPORT.set("nio");
+        }
+    }
+
+    @Test
+    public void test_unknown_transport_falls_back_to_nio() {
+        InternalConfigurations.NETTY_TRANSPORT.set("carrier-pigeon");
+        try {
+            final NettyConfiguration nettyConfiguration = new NettyConfigurationProvider().get();
+
+            assertEquals(NettyTransport.NIO, nettyConfiguration.getTransport());
+            assertThat(nettyConfiguration.getChildEventLoopGroup(), instanceOf(NioEventLoopGroup.class));
+            assertEquals(NioServerSocketChannel.class, nettyConfiguration.getServerSocketChannelClass());
+        } finally {
+            InternalConfigurations.NETTY_TRANSPORT.set("nio");
+        }
+    }
+
     @Test
     public void test_thread_names_for_nio_are_set() throws Exception {
         final NettyConfigurationProvider provider = new NettyConfigurationProvider();
@@ -26,6 +26,7 @@ import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
 import com.hivemq.extensions.executor.task.*;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -36,6 +37,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -53,6 +55,9 @@ public class PluginTaskExecutorServiceImplTest {
     @Mock
     private PluginTaskExecutor executor2;
 
+    @Mock
+    private WorkStealingPluginTaskExecutor workStealingExecutor;
+
     @Mock
     IsolatedPluginClassloader classloader;
 
@@ -62,7 +67,56 @@ public class PluginTaskExecutorServiceImplTest {
 
         InternalConfigurations.PLUGIN_TASK_QUEUE_EXECUTOR_COUNT.set(2);
 
-        executorService = new PluginTaskExecutorServiceImpl(new ExecutorProvider(Lists.newArrayList(executor1, executor2)));
+        executorService = new PluginTaskExecutorServiceImpl(new ExecutorProvider(Lists.newArrayList(executor1, executor2)),
+                () -> workStealingExecutor);
+    }
+
+    @After
+    public void after() {
+        InternalConfigurations.PLUGIN_TASK_QUEUE_WORK_STEALING_ENABLED.set(false);
+        InternalConfigurations.PLUGIN_TASK_INLINE_EXECUTION_ENABLED.set(false);
+    }
+
+    @Test
+    public void test_inline_execution_uses_the_shared_executor() {
+
+        InternalConfigurations.PLUGIN_TASK_INLINE_EXECUTION_ENABLED.set(true);
+        executorService = new PluginTaskExecutorServiceImpl(new ExecutorProvider(Lists.newArrayList(executor1, executor2)),
+                () -> workStealingExecutor);
+
+        executorService.handlePluginInTaskExecution(
+                new TestPluginInContext(String.class, getIdForBucket(0)),
+                () -> new TestPluginTaskInput(),
+                new TestPluginInTask(classloader)
+        );
+
+        verify(workStealingExecutor, times(1)).handlePluginTaskExecution(any(PluginTaskExecution.class));
+        verify(executor1, never()).handlePluginTaskExecution(any(PluginTaskExecution.class));
+    }
+
+    @Test
+    public void test_work_stealing_executes_all_clients_in_the_shared_executor() {
+
+        InternalConfigurations.PLUGIN_TASK_QUEUE_WORK_STEALING_ENABLED.set(true);
+        executorService = new PluginTaskExecutorServiceImpl(new ExecutorProvider(Lists.newArrayList(executor1, executor2)),
+                () -> workStealingExecutor);
+
+        executorService.handlePluginInOutTaskExecution(
+                new TestPluginInOutContext(String.class, getIdForBucket(0)),
+                () -> new TestPluginTaskInput(),
+                () -> new TestPluginTaskOutput(),
+                new TestPluginInOutTask(classloader)
+        );
+
+        executorService.handlePluginInTaskExecution(
+                new TestPluginInContext(String.class, getIdForBucket(1)),
+                () -> new TestPluginTaskInput(),
+                new TestPluginInTask(classloader)
+        );
+
+        verify(workStealingExecutor, times(2)).handlePluginTaskExecution(any(PluginTaskExecution.class));
+        verify(executor1, never()).handlePluginTaskExecution(any(PluginTaskExecution.class));
+        verify(executor2, never()).handlePluginTaskExecution(any(PluginTaskExecution.class));
     }
 
     @Test
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.executor.task;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.async.TimeoutFallback;
+import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
+import com.hivemq.metrics.HiveMQMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class WorkStealingPluginTaskExecutorTest {
+
+    private WorkStealingPluginTaskExecutor executor;
+
+    private MetricRegistry metricRegistry;
+
+    private AtomicLong counterAllQueues;
+
+    private List<Integer> executionOrder;
+
+    @Mock
+    IsolatedPluginClassloader classloader;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        executionOrder = Collections.synchronizedList(new ArrayList<>());
+        metricRegistry = new MetricRegistry();
+        counterAllQueues = new AtomicLong();
+
+        executor = new WorkStealingPluginTaskExecutor(counterAllQueues, metricRegistry, 2, false);
+    }
+
+    @After
+    public void after() {
+        executor.stop();
+    }
+
+    @Test(timeout = 5000)
+    public void test_tasks_for_same_client_are_executed_in_order() throws Exception {
+
+        final int tries = 1000;
+        final CountDownLatch latch = new CountDownLatch(tries);
+
+        for (int i = 0; i < tries; i++) {
+            addTask("client", i, null, latch::countDown);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(tries, executionOrder.size());
+        for (int i = 0; i < tries; i++) {
+            assertEquals(i, executionOrder.get(i).intValue());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void test_tasks_for_different_clients_are_executed() throws Exception {
+
+        final int tries = 1000;
+        final CountDownLatch latch = new CountDownLatch(tries);
+
+        for (int i = 0; i < tries; i++) {
+            addTask("client" + (i % 100), i, null, latch::countDown);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(tries, executionOrder.size());
+    }
+
+    @Test(timeout = 5000)
+    public void test_async_task_blocks_next_task_of_client_until_done() throws Exception {
+
+        final SettableFuture<Boolean> asyncFuture = SettableFuture.create();
+        final CountDownLatch firstLatch = new CountDownLatch(1);
+        final CountDownLatch secondLatch = new CountDownLatch(1);
+
+        addTask("client", 0, asyncFuture, firstLatch::countDown);
+        addTask("client", 1, null, secondLatch::countDown);
+
+        assertTrue(firstLatch.await(30, TimeUnit.SECONDS));
+        assertFalse(secondLatch.await(100, TimeUnit.MILLISECONDS));
+
+        asyncFuture.set(true);
+
+        assertTrue(secondLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(List.of(0, 1), executionOrder);
+    }
+
+    @Test(timeout = 5000)
+    public void test_blocked_client_does_not_block_other_clients() throws Exception {
+
+        final CountDownLatch blockingLatch = new CountDownLatch(1);
+        final CountDownLatch blockedLatch = new CountDownLatch(1);
+        final CountDownLatch otherLatch = new CountDownLatch(100);
+
+        addTask("blocked", 0, null, () -> {
+            try {
+                blockingLatch.await();
+            } catch (final InterruptedException ignored) {
+                //ignore
+            }
+            blockedLatch.countDown();
+        });
+
+        for (int i = 1; i <= 100; i++) {
+            addTask("other" + (i % 10), i, null, otherLatch::countDown);
+        }
+
+        assertTrue(otherLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(1, blockedLatch.getCount());
+
+        blockingLatch.countDown();
+        assertTrue(blockedLatch.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void test_exception_in_task_does_not_stop_queue() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        addTask("client", 0, null, () -> {
+            throw new RuntimeException("Test-Exception");
+        });
+        addTask("client", 1, null, latch::countDown);
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void test_metrics_and_queues_are_updated() throws Exception {
+
+        final int tries = 100;
+        final CountDownLatch latch = new CountDownLatch(tries);
+
+        for (int i = 0; i < tries; i++) {
+            addTask("client" + (i % 10), i, null, latch::countDown);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        while (counterAllQueues.get() > 0 || executor.getQueueCount() > 0) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(tries, metricRegistry.timer(HiveMQMetrics.EXTENSION_TASK_QUEUE_LATENCY.name()).getCount());
+        assertEquals(0L, metricRegistry.getGauges().get(HiveMQMetrics.EXTENSION_TASK_QUEUE_CURRENT.name()).getValue());
+    }
+
+    @Test(timeout = 5000)
+    public void test_inline_task_is_executed_by_calling_thread() {
+        executor.stop();
+        executor = new WorkStealingPluginTaskExecutor(counterAllQueues, new MetricRegistry(), 2, true);
+
+        final Thread callingThread = Thread.currentThread();
+        final List<Thread> threads = new ArrayList<>();
+
+        addTask("client", 0, null, () -> threads.add(Thread.currentThread()));
+
+        assertEquals(1, threads.size());
+        assertSame(callingThread, threads.get(0));
+        assertEquals(0, counterAllQueues.get());
+        assertEquals(0, executor.getQueueCount());
+    }
+
+    @Test(timeout = 5000)
+    public void test_inline_async_task_is_offloaded_and_order_is_kept() throws Exception {
+        executor.stop();
+        executor = new WorkStealingPluginTaskExecutor(counterAllQueues, new MetricRegistry(), 2, true);
+
+        final Thread callingThread = Thread.currentThread();
+        final SettableFuture<Boolean> asyncFuture = SettableFuture.create();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+
+        addTask("client", 0, asyncFuture, () -> threads.add(Thread.currentThread()));
+        //the client has a pending async task, so the next task must not run inline
+        addTask("client", 1, null, () -> {
+            threads.add(Thread.currentThread());
+            latch.countDown();
+        });
+
+        assertEquals(1, threads.size());
+        assertSame(callingThread, threads.get(0));
+
+        asyncFuture.set(true);
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(List.of(0, 1), executionOrder);
+        assertNotSame(callingThread, threads.get(1));
+    }
+
+    @Test(timeout = 5000)
+    public void test_inline_execution_only_for_interceptor_tasks() throws Exception {
+        executor.stop();
+        executor = new WorkStealingPluginTaskExecutor(counterAllQueues, new MetricRegistry(), 2, true);
+
+        final Thread callingThread = Thread.currentThread();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+
+        executor.handlePluginTaskExecution(
+                new PluginTaskExecution<>(new TestPluginInOutContext("client"),
+                        TestPluginTaskInput::new,
+                        () -> new TestPluginTaskOutput(null),
+                        new TestPluginInOutTask(0, () -> {
+                            threads.add(Thread.currentThread());
+                            latch.countDown();
+                        })));
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertNotSame(callingThread, threads.get(0));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void test_stopped_executor_rejects_tasks() {
+        executor.stop();
+        addTask("client", 0, null, () -> {});
+    }
+
+    private void addTask(@NotNull final String clientId,
+                         final int number,
+                         @Nullable final SettableFuture<Boolean> asyncFuture,
+                         @NotNull final Runnable action) {
+        executor.handlePluginTaskExecution(
+                new PluginTaskExecution<>(new TestPluginInOutContext(clientId),
+                        TestPluginTaskInput::new,
+                        () -> new TestPluginTaskOutput(asyncFuture),
+                        new TestPluginInterceptorTask(number, action)));
+    }
+
+    private static class TestPluginTaskInput implements PluginTaskInput {
+
+    }
+
+    private static class TestPluginInOutContext extends PluginInOutTaskContext<TestPluginTaskOutput> {
+
+        TestPluginInOutContext(@NotNull final String identifier) {
+            super(String.class, identifier);
+        }
+
+        @Override
+        public void pluginPost(@NotNull final TestPluginTaskOutput pluginOutput) {
+
+        }
+    }
+
+    private static class TestPluginTaskOutput implements PluginTaskOutput {
+
+        @Nullable
+        private final SettableFuture<Boolean> asyncFuture;
+
+        TestPluginTaskOutput(@Nullable final SettableFuture<Boolean> asyncFuture) {
+            this.asyncFuture = asyncFuture;
+        }
+
+        @Override
+        public boolean isAsync() {
+            return asyncFuture != null;
+        }
+
+        @Override
+        public void markAsAsync() {
+
+        }
+
+        @Override
+        public boolean isTimedOut() {
+            return false;
+        }
+
+        @Override
+        public void markAsTimedOut() {
+
+        }
+
+        @Override
+        public void resetAsyncStatus() {
+
+        }
+
+        @Nullable
+        @Override
+        public SettableFuture<Boolean> getAsyncFuture() {
+            return asyncFuture;
+        }
+
+        @Override
+        public @NotNull TimeoutFallback getTimeoutFallback() {
+            return TimeoutFallback.FAILURE;
+        }
+    }
+
+    private class TestPluginInOutTask implements PluginInOutTask<TestPluginTaskInput, TestPluginTaskOutput> {
+
+        private final int number;
+        @NotNull
+        private final Runnable action;
+
+        TestPluginInOutTask(final int number, @NotNull final Runnable action) {
+            this.number = number;
+            this.action = action;
+        }
+
+        @NotNull
+        @Override
+        public TestPluginTaskOutput apply(@NotNull final TestPluginTaskInput testPluginTaskInput,
+                                          @NotNull final TestPluginTaskOutput testPluginTaskOutput) {
+            executionOrder.add(number);
+            action.run();
+            return testPluginTaskOutput;
+        }
+
+        @Override
+        public @NotNull IsolatedPluginClassloader getPluginClassLoader() {
+            return classloader;
+        }
+    }
+
+    private class TestPluginInterceptorTask extends TestPluginInOutTask
+            implements PluginInterceptorTask<TestPluginTaskInput, TestPluginTaskOutput> {
+
+        TestPluginInterceptorTask(final int number, @NotNull final Runnable action) {
+            super(number, action);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.extensions.handler;
+
+import com.google.common.collect.ImmutableMap;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundReadOnlyInput;
+import com.hivemq.extensions.services.interceptor.Interceptors;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import util.TestMessageUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+public class PublishOutboundReadOnlyInterceptorHandlerTest {
+
+    @Mock
+    private Interceptors interceptors;
+
+    private PublishOutboundReadOnlyInterceptorHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        handler = new PublishOutboundReadOnlyInterceptorHandler(interceptors);
+    }
+
+    @Test
+    public void test_no_interceptors() {
+        when(interceptors.publishOutboundReadOnlyInterceptors()).thenReturn(ImmutableMap.of());
+
+        handler.interceptOutboundPublish(TestMessageUtil.createMqtt5Publish("topic"), "sender", 1);
+    }
+
+    @Test
+    public void test_interceptors_called_in_order_with_same_input() {
+        final List<String> calls = new ArrayList<>();
+        final List<PublishOutboundReadOnlyInput> inputs = new ArrayList<>();
+
+        final PublishOutboundReadOnlyInterceptor interceptor1 = input -> {
+            calls.add("plugin1");
+            inputs.add(input);
+        };
+        final PublishOutboundReadOnlyInterceptor interceptor2 = input -> {
+            calls.add("plugin2");
+            inputs.add(input);
+        };
+        when(interceptors.publishOutboundReadOnlyInterceptors()).thenReturn(ImmutableMap.of("plugin1", interceptor1, "plugin2", interceptor2));
+
+        final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
+        handler.interceptOutboundPublish(publish, "sender", 10);
+
+        assertEquals(List.of("plugin1", "plugin2"), calls);
+        assertSame(inputs.get(0), inputs.get(1));
+
+        final PublishOutboundReadOnlyInput input = inputs.get(0);
+        assertEquals("topic", input.getPublishPacket().getTopic());
+        assertSame(input.getPublishPacket(), input.getPublishPacket());
+        assertEquals(Optional.of("sender"), input.getSenderClientId());
+        assertEquals(10, input.getSubscriptionCount());
+    }
+
+    @Test
+    public void test_sender_not_present() {
+        final List<PublishOutboundReadOnlyInput> inputs = new ArrayList<>();
+        final PublishOutboundReadOnlyInterceptor interceptor = inputs::add;
+        when(interceptors.publishOutboundReadOnlyInterceptors()).thenReturn(ImmutableMap.of("plugin1", interceptor));
+
+        handler.interceptOutboundPublish(TestMessageUtil.createMqtt5Publish("topic"), null, 1);
+
+        assertEquals(1, inputs.size());
+        assertFalse(inputs.get(0).getSenderClientId().isPresent());
+    }
+
+    @Test
+    public void test_exception_does_not_stop_other_interceptors() {
+        final List<String> calls = new ArrayList<>();
+
+        final PublishOutboundReadOnlyInterceptor interceptor1 = input -> {
+            throw new RuntimeException("Test-Exception");
+        };
+        final PublishOutboundReadOnlyInterceptor interceptor2 = input -> calls.add("plugin2");
+        when(interceptors.publishOutboundReadOnlyInterceptors()).thenReturn(ImmutableMap.of("plugin1", interceptor1, "plugin2", interceptor2));
+
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        handler.interceptOutboundPublish(TestMessageUtil.createMqtt5Publish("topic"), "sender", 1);
+
+        assertEquals(List.of("plugin2"), calls);
+        assertSame(contextClassLoader, Thread.currentThread().getContextClassLoader());
+    }
+}
@@ -18,6 +18,7 @@ package com.hivemq.extensions.services.interceptor;
 
 import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundInterceptorProvider;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -64,4 +65,15 @@ public class GlobalInterceptorRegistryImplTest {
         globalInterceptorRegistry.setConnackOutboundInterceptorProvider(((e) -> null));
         verify(interceptors).addConnackOutboundInterceptorProvider(any(ConnackOutboundInterceptorProvider.class));
     }
-}
\ No newline at end of file
+
+    @Test(expected = NullPointerException.class)
+    public void test_add_null_publish_outbound_read_only() {
+        globalInterceptorRegistry.setPublishOutboundReadOnlyInterceptor(null);
+    }
+
+    @Test
+    public void test_add_publish_outbound_read_only_success() {
+        globalInterceptorRegistry.setPublishOutboundReadOnlyInterceptor((input) -> {});
+        verify(interceptors).addPublishOutboundReadOnlyInterceptor(any(PublishOutboundReadOnlyInterceptor.class));
+    }
+}
@@ -23,6 +23,8 @@ import com.hivemq.extension.sdk.api.interceptor.connack.parameter.ConnackOutboun
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptor;
 import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
 import com.hivemq.extension.sdk.api.interceptor.connect.parameter.ConnectInboundProviderInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundReadOnlyInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundReadOnlyInput;
 import com.hivemq.extensions.HiveMQExtension;
 import com.hivemq.extensions.HiveMQExtensions;
 import com.hivemq.extensions.classloader.IsolatedPluginClassloader;
@@ -150,6 +152,40 @@ public class InterceptorsImplTest {
 
     }
 
+    @Test
+    public void test_add_and_remove_publish_outbound_read_only() throws Exception {
+
+        final JavaArchive javaArchive = ShrinkWrap.create(JavaArchive.class)
+                .addClass("com.hivemq.extensions.services.interceptor.InterceptorsImplTest$TestPublishOutboundReadOnlyInterceptor");
+
+        final File jarFile = temporaryFolder.newFile();
+        javaArchive.as(ZipExporter.class).exportTo(jarFile, true);
+
+        //This classloader contains the classes from the jar file
+        final IsolatedPluginClassloader cl = new IsolatedPluginClassloader(new URL[]{jarFile.toURI().toURL()}, this.getClass().getClassLoader());
+
+        final Class<?> classOne = cl.loadClass("com.hivemq.extensions.services.interceptor.InterceptorsImplTest$TestPublishOutboundReadOnlyInterceptor");
+
+        final PublishOutboundReadOnlyInterceptor readOnlyInterceptor = (PublishOutboundReadOnlyInterceptor) classOne.newInstance();
+
+        when(hiveMQExtensions.getExtensionForClassloader(any(IsolatedPluginClassloader.class))).thenReturn(plugin1);
+        when(plugin1.getId()).thenReturn("plugin1");
+
+        assertEquals(0, interceptors.publishOutboundReadOnlyInterceptors().size());
+
+        interceptors.addPublishOutboundReadOnlyInterceptor(readOnlyInterceptor);
+
+        final ArgumentCaptor<Consumer> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(hiveMQExtensions).addAfterExtensionStopCallback(captor.capture());
+
+        assertSame(readOnlyInterceptor, interceptors.publishOutboundReadOnlyInterceptors().get("plugin1"));
+
+        when(plugin1.getPluginClassloader()).thenReturn(cl);
+        captor.getValue().accept(plugin1);
+        assertEquals(0, interceptors.publishOutboundReadOnlyInterceptors().size());
+
+    }
+
     @Test
     public void test_plugin_null() throws Exception {
 
@@ -197,4 +233,11 @@ public class InterceptorsImplTest {
             };
         }
     }
-}
\ No newline at end of file
+
+    public static class TestPublishOutboundReadOnlyInterceptor implements PublishOutboundReadOnlyInterceptor {
+        @Override
+        public void onOutboundPublish(@NotNull final PublishOutboundReadOnlyInput publishOutboundReadOnlyInput) {
+
+        }
+    }
+}
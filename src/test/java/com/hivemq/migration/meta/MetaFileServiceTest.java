@@ -99,6 +99,9 @@ public class MetaFileServiceTest {
         metaInformation.setPublishPayloadPersistenceVersion("6.3.33");
         metaInformation.setPublishPayloadPersistenceType(PersistenceType.FILE);
         metaInformation.setRetainedMessagesPersistenceType(PersistenceType.FILE_NATIVE);
+        metaInformation.setClientSessionPersistenceType(PersistenceType.FILE_NATIVE);
+        metaInformation.setSubscriptionPersistenceType(PersistenceType.FILE);
+        metaInformation.setQueuedMessagesPersistenceType(PersistenceType.FILE_NATIVE);
 
         MetaFileService.writeMetaFile(systemInformation, metaInformation);
 
@@ -115,6 +118,9 @@ public class MetaFileServiceTest {
         assertEquals("6.3.33", metaFile.getPublishPayloadPersistenceVersion());
         assertEquals(PersistenceType.FILE, metaFile.getPublishPayloadPersistenceType());
         assertEquals(PersistenceType.FILE_NATIVE, metaFile.getRetainedMessagesPersistenceType());
+        assertEquals(PersistenceType.FILE_NATIVE, metaFile.getClientSessionPersistenceType());
+        assertEquals(PersistenceType.FILE, metaFile.getSubscriptionPersistenceType());
+        assertEquals(PersistenceType.FILE_NATIVE, metaFile.getQueuedMessagesPersistenceType());
     }
 
 
@@ -140,6 +146,9 @@ public class MetaFileServiceTest {
         assertNull(metaFile.getPublishPayloadPersistenceVersion());
         assertNull(metaFile.getRetainedMessagesPersistenceType());
         assertNull(metaFile.getPublishPayloadPersistenceType());
+        assertNull(metaFile.getClientSessionPersistenceType());
+        assertNull(metaFile.getSubscriptionPersistenceType());
+        assertNull(metaFile.getQueuedMessagesPersistenceType());
     }
 
 }
\ No newline at end of file
@@ -19,6 +19,9 @@ package com.hivemq.migration.persistence;
 import com.google.common.collect.ImmutableMap;
 import com.hivemq.migration.MigrationUnit;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.migration.persistence.local.ClientQueueTypeMigration;
+import com.hivemq.migration.persistence.local.ClientSessionTypeMigration;
+import com.hivemq.migration.persistence.local.SubscriptionTypeMigration;
 import com.hivemq.migration.persistence.payload.PublishPayloadTypeMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessageTypeMigration;
 import org.junit.Before;
@@ -38,11 +41,18 @@ public class PersistenceMigratorTest {
     private PublishPayloadTypeMigration publishPayloadTypeMigration;
     @Mock
     private RetainedMessageTypeMigration retainedMessageTypeMigration;
+    @Mock
+    private ClientSessionTypeMigration clientSessionTypeMigration;
+    @Mock
+    private SubscriptionTypeMigration subscriptionTypeMigration;
+    @Mock
+    private ClientQueueTypeMigration clientQueueTypeMigration;
 
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        persistenceMigrator = new PersistenceMigrator(() -> publishPayloadTypeMigration, () -> retainedMessageTypeMigration);
+        persistenceMigrator = new PersistenceMigrator(() -> publishPayloadTypeMigration, () -> retainedMessageTypeMigration,
+                () -> clientSessionTypeMigration, () -> subscriptionTypeMigration, () -> clientQueueTypeMigration);
     }
 
     @Test
@@ -93,4 +103,17 @@ public class PersistenceMigratorTest {
         verify(retainedMessageTypeMigration).migrateToType(PersistenceType.FILE);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_migrate_sessions_subscriptions_and_queues() {
+
+        persistenceMigrator.migratePersistenceTypes(ImmutableMap.of(
+                MigrationUnit.FILE_PERSISTENCE_CLIENT_SESSIONS, PersistenceType.FILE_NATIVE,
+                MigrationUnit.FILE_PERSISTENCE_SUBSCRIPTIONS, PersistenceType.FILE,
+                MigrationUnit.FILE_PERSISTENCE_CLIENT_QUEUES, PersistenceType.FILE_NATIVE));
+
+        verify(clientSessionTypeMigration).migrateToType(PersistenceType.FILE_NATIVE);
+        verify(subscriptionTypeMigration).migrateToType(PersistenceType.FILE);
+        verify(clientQueueTypeMigration).migrateToType(PersistenceType.FILE_NATIVE);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.migration.persistence.local;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.inject.Injector;
+import com.hivemq.bootstrap.ioc.GuiceBootstrap;
+import com.hivemq.configuration.ConfigurationBootstrap;
+import com.hivemq.configuration.HivemqId;
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.FullConfigurationService;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.MigrationUnit;
+import com.hivemq.migration.Migrations;
+import com.hivemq.migration.meta.MetaFileService;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+public class ClientSessionTypeMigrationTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private SystemInformation systemInformation;
+
+    private File dataFolder;
+    private FullConfigurationService configurationService;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        dataFolder = temporaryFolder.newFolder();
+        when(systemInformation.getDataFolder()).thenReturn(dataFolder);
+        when(systemInformation.getConfigFolder()).thenReturn(temporaryFolder.newFolder());
+        when(systemInformation.getHiveMQVersion()).thenReturn("2019.2");
+        configurationService = ConfigurationBootstrap.bootstrapConfig(systemInformation);
+
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(4);
+        InternalConfigurations.PAYLOAD_PERSISTENCE_BUCKET_COUNT.set(4);
+
+        final File file = new File(dataFolder, LocalPersistenceFileUtil.PERSISTENCE_SUBFOLDER_NAME);
+        file.mkdirs();
+        new File(file, ClientSessionLocalPersistence.PERSISTENCE_NAME).mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.set(PersistenceType.FILE);
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(64);
+        InternalConfigurations.PAYLOAD_PERSISTENCE_BUCKET_COUNT.set(64);
+        FileUtils.forceDelete(dataFolder);
+    }
+
+    @Test
+    public void test_client_sessions_xodus_to_rocksdb() throws Exception {
+
+        InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.set(PersistenceType.FILE_NATIVE);
+
+        final Map<MigrationUnit, PersistenceType> migrations = Migrations.checkForTypeMigration(systemInformation);
+
+        assertEquals(1, migrations.size());
+        assertEquals(PersistenceType.FILE_NATIVE, migrations.get(MigrationUnit.FILE_PERSISTENCE_CLIENT_SESSIONS));
+
+        final Injector persistenceInjector =
+                GuiceBootstrap.persistenceInjector(systemInformation, new MetricRegistry(), new HivemqId(),
+                        configurationService);
+        final PersistenceStartup persistenceStartup = persistenceInjector.getInstance(PersistenceStartup.class);
+        persistenceStartup.finish();
+
+        final ClientSessionXodusLocalPersistence xodus =
+                persistenceInjector.getInstance(ClientSessionXodusLocalPersistence.class);
+
+        for (int i = 0; i < 1000; i++) {
+            xodus.put("client" + i, new ClientSession(false, 1000L + i), i, BucketUtils.getBucket("client" + i, xodus.getBucketCount()));
+        }
+
+        Migrations.migrate(persistenceInjector, migrations);
+
+        final ClientSessionRocksDBLocalPersistence rocks =
+                persistenceInjector.getInstance(ClientSessionRocksDBLocalPersistence.class);
+        assertEquals(1000, rocks.getSessionsCount());
+        for (int i = 0; i < 1000; i++) {
+            final ClientSession session = rocks.getSession("client" + i, false);
+            assertNotNull(session);
+            assertFalse(session.isConnected());
+            assertEquals(1000L + i, session.getSessionExpiryInterval());
+            assertEquals(i, rocks.getTimestamp("client" + i).longValue());
+        }
+
+        Migrations.afterMigration(systemInformation);
+
+        persistenceStartup.run();
+
+        //check meta after migration
+        final MetaInformation metaInformation = MetaFileService.readMetaFile(systemInformation);
+        assertEquals(ClientSessionRocksDBLocalPersistence.PERSISTENCE_VERSION,
+                metaInformation.getClientSessionPersistenceVersion());
+        assertEquals(PersistenceType.FILE_NATIVE, metaInformation.getClientSessionPersistenceType());
+    }
+
+    @Test
+    public void test_client_sessions_stay_xodus() throws Exception {
+
+        final Map<MigrationUnit, PersistenceType> migrations = Migrations.checkForTypeMigration(systemInformation);
+
+        assertFalse(migrations.containsKey(MigrationUnit.FILE_PERSISTENCE_CLIENT_SESSIONS));
+    }
+}
@@ -16,9 +16,9 @@
 
 package com.hivemq.mqtt;
 
-import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.extensions.handler.PublishOutboundReadOnlyInterceptorHandler;
 import com.hivemq.mqtt.handler.publish.PublishReturnCode;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.PUBLISH;
@@ -27,6 +27,7 @@ import com.hivemq.mqtt.services.PublishDistributor;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.mqtt.topic.SubscriptionFlags;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
+import com.hivemq.mqtt.topic.tree.TopicSubscribers;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
 import org.junit.Before;
 import org.junit.Rule;
@@ -38,6 +39,7 @@ import util.InitFutureUtilsExecutorRule;
 import util.TestException;
 import util.TestMessageUtil;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -68,6 +70,9 @@ public class InternalPublishServiceImplTest {
     @Mock
     private PublishDistributor publishDistributor;
 
+    @Mock
+    private PublishOutboundReadOnlyInterceptorHandler readOnlyInterceptorHandler;
+
     private ExecutorService executorService;
 
     private InternalPublishServiceImpl publishService;
@@ -85,14 +90,15 @@ public class InternalPublishServiceImplTest {
         publishService = new InternalPublishServiceImpl(
                 retainedMessagePersistence,
                 topicTree,
-                publishDistributor);
+                publishDistributor,
+                readOnlyInterceptorHandler);
     }
 
     @Test(timeout = 20000)
     public void test_retained_message_remove() throws Exception {
 
-        when(topicTree.getSubscribers(anyString())).thenReturn(ImmutableSet.of());
-        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor);
+        when(topicTree.findSubscribers(anyString())).thenReturn(TopicSubscribers.of());
+        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor, readOnlyInterceptorHandler);
 
         final PUBLISH publish = TestMessageUtil.createMqtt3Publish("hivemqId", "subonly", QoS.AT_LEAST_ONCE, new byte[0], true);
 
@@ -107,8 +113,8 @@ public class InternalPublishServiceImplTest {
     @Test(timeout = 20000)
     public void test_retained_message_remove_failed() throws Exception {
 
-        when(topicTree.getSubscribers(anyString())).thenReturn(ImmutableSet.of());
-        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor);
+        when(topicTree.findSubscribers(anyString())).thenReturn(TopicSubscribers.of());
+        publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor, readOnlyInterceptorHandler);
 
         final PUBLISH publish = TestMessageUtil.createMqtt3Publish("hivemqId", "subonly", QoS.AT_LEAST_ONCE, new byte[0], true);
 
@@ -122,17 +128,33 @@ public class InternalPublishServiceImplTest {
     @Test(timeout = 20000)
     public void test_no_subs() throws ExecutionException, InterruptedException {
 
-        when(topicTree.getSubscribers(anyString())).thenReturn(ImmutableSet.of());
+        when(topicTree.findSubscribers(anyString())).thenReturn(TopicSubscribers.of());
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
         final PublishReturnCode returnCode = publishService.publish(publish, executorService, "sub1").get();
 
         verify(publishDistributor, never()).distributeToNonSharedSubscribers(anyMap(), any(), any());
+        verify(readOnlyInterceptorHandler, never()).interceptOutboundPublish(any(), any(), anyInt());
 
         assertEquals(NO_MATCHING_SUBSCRIBERS, returnCode);
     }
 
+    @Test(timeout = 20000)
+    public void test_read_only_interceptors_called_once_per_message() {
+
+        final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 0, null);
+        final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
+
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
+
+        final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
+
+        publishService.publish(publish, executorService, "sender");
+
+        verify(readOnlyInterceptorHandler, times(1)).interceptOutboundPublish(publish, "sender", 2);
+    }
+
     @Test(timeout = 20000)
     public void test_no_local() {
 
@@ -140,7 +162,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, noLocalFlag, null);
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
@@ -162,7 +184,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 0, null);
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
@@ -184,7 +206,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 0, null);
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
         publish.setDuplicateDelivery(true);
@@ -205,7 +227,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 0, null);
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
@@ -222,7 +244,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 2, "group1", null, "topic");
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 2, "group2", null, "topic");
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
@@ -245,7 +267,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 2, "group1", null, "topic");
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 2, "group1", null, "#");
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
@@ -268,7 +290,7 @@ public class InternalPublishServiceImplTest {
         final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 2, "group1", null, "topic");
         final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
 
-        when(topicTree.getSubscribers("topic")).thenReturn(ImmutableSet.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
@@ -291,5 +313,39 @@ public class InternalPublishServiceImplTest {
         assertTrue(sharedSet.contains("group1/topic"));
     }
 
+    @Test(timeout = 20000)
+    public void test_publish_all_looks_up_subscribers_once_per_topic() throws Exception {
 
+        final byte noLocalFlag = SubscriptionFlags.getDefaultFlags(false, false, true);
+        final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, noLocalFlag, null);
+        final SubscriberWithIdentifiers sub2 = new SubscriberWithIdentifiers("sub2", 1, (byte) 0, null);
+
+        when(topicTree.findSubscribers("topic")).thenReturn(TopicSubscribers.of(sub1, sub2));
+        when(topicTree.findSubscribers("topic2")).thenReturn(TopicSubscribers.of());
+
+        final PUBLISH publish1 = TestMessageUtil.createMqtt5Publish("topic");
+        final PUBLISH publish2 = TestMessageUtil.createMqtt5Publish("topic");
+        final PUBLISH publish3 = TestMessageUtil.createMqtt5Publish("topic2");
+        publish1.setDuplicateDelivery(true);
+
+        final Map<String, PUBLISH> publishes = new LinkedHashMap<>();
+        publishes.put("sub1", publish1);
+        publishes.put("sender", publish2);
+        publishes.put("sender2", publish3);
+        publishService.publishAll(publishes, executorService).get();
+
+        verify(topicTree, times(1)).findSubscribers("topic");
+        verify(topicTree, times(1)).findSubscribers("topic2");
+        assertFalse(publish1.isDuplicateDelivery());
+
+        final ArgumentCaptor<Map> mapArgumentCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(publishDistributor).distributeToNonSharedSubscribers(mapArgumentCaptor.capture(), same(publish1), any());
+        verify(publishDistributor).distributeToNonSharedSubscribers(anyMap(), same(publish2), any());
+        verify(publishDistributor, never()).distributeToNonSharedSubscribers(anyMap(), same(publish3), any());
+
+        //no local is still checked against the sender of each message
+        final Map map = mapArgumentCaptor.getValue();
+        assertEquals(1, map.size());
+        assertNotNull(map.get("sub2"));
+    }
 }
\ No newline at end of file
@@ -163,6 +163,7 @@ public class ConnectHandlerTest {
 
         when(channelDependencies.getAuthInProgressMessageHandler()).thenReturn(
                 new AuthInProgressMessageHandler(mqttConnacker));
+        when(channelDependencies.getIdleTimeoutWheels()).thenReturn(new IdleTimeoutWheels(metricsHolder));
 
         buildPipeline();
     }
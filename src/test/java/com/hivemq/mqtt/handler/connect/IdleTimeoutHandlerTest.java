@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.connect;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.metrics.MetricsHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class IdleTimeoutHandlerTest {
+
+    private final AtomicLong time = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private final List<Object> events = new ArrayList<>();
+    private MetricsHolder metricsHolder;
+    private IdleTimeoutWheels wheels;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        metricsHolder = new MetricsHolder(new MetricRegistry());
+        wheels = new IdleTimeoutWheels(metricsHolder, new Ticker() {
+            @Override
+            public long read() {
+                return time.get();
+            }
+        });
+        channel = new EmbeddedChannel(new IdleTimeoutHandler(wheels, 1, TimeUnit.SECONDS), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) {
+                events.add(evt);
+            }
+        });
+    }
+
+    @Test
+    public void test_event_when_idle() {
+        tick(900);
+        assertTrue(events.isEmpty());
+
+        tick(200);
+        assertEquals(1, events.size());
+        assertEquals(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT, events.get(0));
+        assertEquals(1, metricsHolder.getMetricRegistry().counter(HiveMQMetrics.IDLE_TIMEOUTS_EXPIRED_COUNT.name()).getCount());
+
+        tick(1000);
+        assertEquals(2, events.size());
+        assertEquals(IdleStateEvent.READER_IDLE_STATE_EVENT, events.get(1));
+    }
+
+    @Test
+    public void test_read_moves_timeout() {
+        tick(600);
+        channel.writeInbound("message");
+        tick(600);
+        assertTrue(events.isEmpty());
+
+        tick(500);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void test_no_event_after_removal() {
+        channel.pipeline().removeFirst();
+        assertEquals(0, wheels.get(channel.eventLoop()).size());
+
+        tick(2000);
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void test_no_event_after_close() {
+        channel.close();
+        assertEquals(0, wheels.get(channel.eventLoop()).size());
+    }
+
+    private void tick(final long millis) {
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        wheels.get(channel.eventLoop()).run();
+    }
+}
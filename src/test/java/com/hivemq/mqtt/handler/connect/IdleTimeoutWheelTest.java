@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.connect;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class IdleTimeoutWheelTest {
+
+    private final AtomicLong time = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private EventLoop eventLoop;
+    private Histogram duePerTick;
+    private IdleTimeoutWheel wheel;
+    private List<String> expired;
+
+    @Before
+    public void setUp() throws Exception {
+        eventLoop = mock(EventLoop.class);
+        doReturn(mock(ScheduledFuture.class)).when(eventLoop).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        duePerTick = new MetricRegistry().histogram("due");
+        wheel = new IdleTimeoutWheel(eventLoop, new Ticker() {
+            @Override
+            public long read() {
+                return time.get();
+            }
+        }, duePerTick, 100, 8);
+        expired = new ArrayList<>();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_wheel_size_must_be_power_of_two() {
+        new IdleTimeoutWheel(eventLoop, Ticker.systemTicker(), duePerTick, 100, 6);
+    }
+
+    @Test
+    public void test_expire_after_deadline() {
+        final IdleTimeoutWheel.Timeout timeout = timeout("a");
+        wheel.schedule(timeout, wheel.now() + TimeUnit.MILLISECONDS.toNanos(250));
+        verify(eventLoop).schedule(wheel, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.NANOSECONDS);
+
+        advance(100);
+        wheel.run();
+        advance(100);
+        wheel.run();
+        assertTrue(expired.isEmpty());
+        assertTrue(timeout.isScheduled());
+
+        advance(100);
+        wheel.run();
+        assertEquals(1, expired.size());
+        assertFalse(timeout.isScheduled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void test_expire_after_more_than_one_revolution() {
+        wheel.schedule(timeout("a"), wheel.now() + TimeUnit.MILLISECONDS.toNanos(2000));
+
+        for (int i = 0; i < 19; i++) {
+            advance(100);
+            wheel.run();
+        }
+        assertTrue(expired.isEmpty());
+
+        advance(100);
+        wheel.run();
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void test_expire_delayed_tick() {
+        wheel.schedule(timeout("a"), wheel.now() + TimeUnit.MILLISECONDS.toNanos(150));
+        wheel.schedule(timeout("b"), wheel.now() + TimeUnit.MILLISECONDS.toNanos(350));
+        wheel.schedule(timeout("c"), wheel.now() + TimeUnit.MILLISECONDS.toNanos(5000));
+
+        advance(3000);
+        wheel.run();
+
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains("a"));
+        assertTrue(expired.contains("b"));
+        assertEquals(1, wheel.size());
+        assertEquals(1, duePerTick.getCount());
+        assertEquals(2, duePerTick.getSnapshot().getMax());
+    }
+
+    @Test
+    public void test_cancel() {
+        final IdleTimeoutWheel.Timeout a = timeout("a");
+        final IdleTimeoutWheel.Timeout b = timeout("b");
+        wheel.schedule(a, wheel.now() + TimeUnit.MILLISECONDS.toNanos(100));
+        wheel.schedule(b, wheel.now() + TimeUnit.MILLISECONDS.toNanos(100));
+
+        wheel.cancel(a);
+        wheel.cancel(a);
+        assertEquals(1, wheel.size());
+
+        advance(100);
+        wheel.run();
+        assertEquals(1, expired.size());
+        assertEquals("b", expired.get(0));
+    }
+
+    @Test
+    public void test_reschedule_moves_timeout() {
+        final IdleTimeoutWheel.Timeout timeout = timeout("a");
+        wheel.schedule(timeout, wheel.now() + TimeUnit.MILLISECONDS.toNanos(100));
+        wheel.schedule(timeout, wheel.now() + TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1, wheel.size());
+
+        advance(100);
+        wheel.run();
+        assertTrue(expired.isEmpty());
+
+        advance(400);
+        wheel.run();
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void test_stop_ticking_when_empty() {
+        wheel.schedule(timeout("a"), wheel.now() + TimeUnit.MILLISECONDS.toNanos(100));
+
+        advance(100);
+        wheel.run();
+
+        //only the initial tick was scheduled
+        verify(eventLoop, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        wheel.schedule(timeout("b"), wheel.now() + TimeUnit.MILLISECONDS.toNanos(100));
+        verify(eventLoop, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void test_callback_can_reschedule() {
+        final IdleTimeoutWheel.Timeout[] timeout = new IdleTimeoutWheel.Timeout[1];
+        timeout[0] = new IdleTimeoutWheel.Timeout(now -> {
+            expired.add("a");
+            wheel.schedule(timeout[0], now + TimeUnit.MILLISECONDS.toNanos(100));
+        });
+        wheel.schedule(timeout[0], wheel.now() + TimeUnit.MILLISECONDS.toNanos(100));
+
+        advance(100);
+        wheel.run();
+        advance(100);
+        wheel.run();
+
+        assertEquals(2, expired.size());
+        assertEquals(1, wheel.size());
+    }
+
+    private IdleTimeoutWheel.Timeout timeout(final String name) {
+        return new IdleTimeoutWheel.Timeout(now -> expired.add(name));
+    }
+
+    private void advance(final long millis) {
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
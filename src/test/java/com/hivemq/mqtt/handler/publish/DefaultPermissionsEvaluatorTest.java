@@ -434,5 +434,58 @@ public class DefaultPermissionsEvaluatorTest {
         assertEquals(false, DefaultPermissionsEvaluator.checkSubscription(permissions, topic3));
     }
 
+    @Test
+    public void test_publish_first_matching_permission_decides() {
+
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder()
+                .withHivemqId("hivemqId1").withPayload(new byte[]{1, 2, 3})
+                .withTopic("test/topic").withQoS(QoS.AT_LEAST_ONCE).withRetain(false).build();
+
+        final ModifiableDefaultPermissionsImpl permissions = new ModifiableDefaultPermissionsImpl();
+        permissions.setDefaultBehaviour(DefaultAuthorizationBehaviour.ALLOW);
+        permissions.add(new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService()).topicFilter("test/+")
+                .type(TopicPermission.PermissionType.DENY).build());
+        permissions.add(new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService()).topicFilter("test/topic")
+                .type(TopicPermission.PermissionType.ALLOW).build());
+
+        assertEquals(false, DefaultPermissionsEvaluator.checkPublish(permissions, publish));
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void test_publish_decision_cache_invalidated_on_change() {
+
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder()
+                .withHivemqId("hivemqId1").withPayload(new byte[]{1, 2, 3})
+                .withTopic("test/topic").withQoS(QoS.AT_LEAST_ONCE).withRetain(false).build();
+
+        final ModifiableDefaultPermissionsImpl permissions = new ModifiableDefaultPermissionsImpl();
+        permissions.add(new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService()).topicFilter("test/#").build());
+
+        assertEquals(true, DefaultPermissionsEvaluator.checkPublish(permissions, publish));
+        assertEquals(true, DefaultPermissionsEvaluator.checkPublish(permissions, publish));
+
+        permissions.clear();
+        assertEquals(false, DefaultPermissionsEvaluator.checkPublish(permissions, publish));
+
+        permissions.setDefaultBehaviour(DefaultAuthorizationBehaviour.ALLOW);
+        assertEquals(true, DefaultPermissionsEvaluator.checkPublish(permissions, publish));
+
+        permissions.add(new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService()).topicFilter("test/topic")
+                .type(TopicPermission.PermissionType.DENY).build());
+        assertEquals(false, DefaultPermissionsEvaluator.checkPublish(permissions, publish));
+    }
+
+    @Test
+    public void test_subscription_first_matching_permission_decides() {
+
+        final Topic topic = new Topic("test/topic", QoS.EXACTLY_ONCE);
+
+        final ModifiableDefaultPermissionsImpl permissions = new ModifiableDefaultPermissionsImpl();
+        permissions.add(new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService()).topicFilter("test/topic")
+                .type(TopicPermission.PermissionType.DENY).build());
+        permissions.add(new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService()).topicFilter("#").build());
+
+        assertEquals(false, DefaultPermissionsEvaluator.checkSubscription(permissions, topic));
+        assertEquals(true, DefaultPermissionsEvaluator.checkSubscription(permissions, new Topic("test/other", QoS.EXACTLY_ONCE)));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.handler.publish;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.packets.auth.DefaultAuthorizationBehaviour;
+import com.hivemq.extensions.services.builder.TopicPermissionBuilderImpl;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.topic.PermissionTopicMatcher;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import util.TestConfigurationBootstrap;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class DefaultPermissionsIndexTest {
+
+    private TopicPermissionBuilderImpl builder;
+
+    @Before
+    public void before() {
+        builder = new TopicPermissionBuilderImpl(new TestConfigurationBootstrap().getFullConfigurationService());
+    }
+
+    @Test
+    public void test_candidates_exact_and_wildcards() {
+        final DefaultPermissionsIndex index = new DefaultPermissionsIndex(0, ImmutableList.of(
+                permission("a/b"),
+                permission("a/+"),
+                permission("a/#"),
+                permission("c/d"),
+                permission("+/b/c"),
+                permission("#")), DefaultAuthorizationBehaviour.DENY, 0);
+
+        assertEquals(bits(0, 1, 2, 5), candidates(index, "a/b"));
+        assertEquals(bits(2, 4, 5), candidates(index, "a/b/c"));
+        assertEquals(bits(2, 5), candidates(index, "a"));
+        assertEquals(bits(3, 5), candidates(index, "c/d"));
+        assertEquals(bits(5), candidates(index, "x/y"));
+    }
+
+    @Test
+    public void test_candidates_trailing_slash() {
+        final DefaultPermissionsIndex index = new DefaultPermissionsIndex(0, ImmutableList.of(
+                permission("a/b/"),
+                permission("a/b/+")), DefaultAuthorizationBehaviour.DENY, 0);
+
+        assertEquals(bits(0, 1), candidates(index, "a/b/"));
+        assertEquals(bits(0), candidates(index, "a/b"));
+    }
+
+    @Test
+    public void test_candidates_superset_of_matches() throws Exception {
+        final ImmutableList<TopicPermission> permissions = ImmutableList.of(
+                permission("a/#"),
+                permission("+/+"),
+                permission("a/+/c"),
+                permission("/+"),
+                permission("a/#/c"),
+                permission("+"));
+        final DefaultPermissionsIndex index = new DefaultPermissionsIndex(0, permissions, DefaultAuthorizationBehaviour.DENY, 0);
+
+        final PermissionTopicMatcher matcher = new PermissionTopicMatcher();
+        final String[] topics = {"a", "a/", "a/b", "a/b/c", "/a", "/", "b", "b/c/d", "a/#/c"};
+        for (final String topic : topics) {
+            final BitSet candidates = candidates(index, topic);
+            for (int i = 0; i < permissions.size(); i++) {
+                if (matcher.matches(permissions.get(i).getTopicFilter(), topic)) {
+                    assertTrue(topic + " " + permissions.get(i).getTopicFilter(), candidates.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_publish_decision_cache() {
+        final DefaultPermissionsIndex index = new DefaultPermissionsIndex(0, ImmutableList.of(permission("a")),
+                DefaultAuthorizationBehaviour.DENY, 2);
+
+        assertNull(index.getPublishDecision("a", QoS.AT_MOST_ONCE, false));
+
+        index.putPublishDecision("a", QoS.AT_MOST_ONCE, false, true);
+        index.putPublishDecision("a", QoS.EXACTLY_ONCE, true, false);
+
+        assertEquals(true, index.getPublishDecision("a", QoS.AT_MOST_ONCE, false));
+        assertEquals(false, index.getPublishDecision("a", QoS.EXACTLY_ONCE, true));
+        assertNull(index.getPublishDecision("a", QoS.AT_MOST_ONCE, true));
+        assertNull(index.getPublishDecision("a", QoS.AT_LEAST_ONCE, false));
+    }
+
+    @Test
+    public void test_publish_decision_cache_evicts_least_recently_used() {
+        final DefaultPermissionsIndex index = new DefaultPermissionsIndex(0, ImmutableList.of(permission("a")),
+                DefaultAuthorizationBehaviour.DENY, 2);
+
+        index.putPublishDecision("a", QoS.AT_MOST_ONCE, false, true);
+        index.putPublishDecision("b", QoS.AT_MOST_ONCE, false, true);
+        index.getPublishDecision("a", QoS.AT_MOST_ONCE, false);
+        index.putPublishDecision("c", QoS.AT_MOST_ONCE, false, true);
+
+        assertEquals(true, index.getPublishDecision("a", QoS.AT_MOST_ONCE, false));
+        assertNull(index.getPublishDecision("b", QoS.AT_MOST_ONCE, false));
+        assertEquals(true, index.getPublishDecision("c", QoS.AT_MOST_ONCE, false));
+    }
+
+    @Test
+    public void test_publish_decision_cache_disabled() {
+        final DefaultPermissionsIndex index = new DefaultPermissionsIndex(0, ImmutableList.of(permission("a")),
+                DefaultAuthorizationBehaviour.DENY, 0);
+
+        index.putPublishDecision("a", QoS.AT_MOST_ONCE, false, true);
+
+        assertNull(index.getPublishDecision("a", QoS.AT_MOST_ONCE, false));
+    }
+
+    private TopicPermission permission(final String topicFilter) {
+        return builder.topicFilter(topicFilter).build();
+    }
+
+    private static BitSet candidates(final DefaultPermissionsIndex index, final String topic) {
+        final String stripedTopic = topic.length() > 1 ? StringUtils.stripEnd(topic, "/") : topic;
+        return index.candidates(stripedTopic, StringUtils.splitPreserveAllTokens(topic, "/"));
+    }
+
+    private static BitSet bits(final int... indices) {
+        final BitSet bitSet = new BitSet();
+        for (final int index : indices) {
+            bitSet.set(index);
+        }
+        return bitSet;
+    }
+}
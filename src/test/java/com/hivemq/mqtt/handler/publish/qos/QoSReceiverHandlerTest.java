@@ -282,6 +282,37 @@ public class QoSReceiverHandlerTest {
         verify(incomingMessageFlowPersistence, never()).delete(CLIENT_ID);
     }
 
+    @Test
+    public void test_clean_session_flows_not_stored_in_persistence() {
+        embeddedChannel.attr(ChannelAttributes.CLIENT_SESSION_EXPIRY_INTERVAL).set(Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT);
+
+        final PUBLISH publish = new PUBLISHFactory.Mqtt3Builder()
+                .withTopic("topic")
+                .withHivemqId("hivemqId")
+                .withQoS(QoS.EXACTLY_ONCE)
+                .withPayload(new byte[100])
+                .withDuplicateDelivery(true)
+                .withPacketIdentifier(1)
+                .build();
+
+        embeddedChannel.writeInbound(publish);
+        //duplicate is found in the table of the channel and ignored
+        embeddedChannel.writeInbound(publish);
+        assertEquals(1, embeddedChannel.inboundMessages().size());
+
+        embeddedChannel.writeInbound(new PUBREL(1));
+        final PUBCOMP pubcomp = embeddedChannel.readOutbound();
+        assertEquals(1, pubcomp.getPacketIdentifier());
+
+        //flow is complete, so the publish is processed again
+        embeddedChannel.writeInbound(publish);
+        assertEquals(2, embeddedChannel.inboundMessages().size());
+
+        verify(incomingMessageFlowPersistence, never()).get(anyString(), anyInt());
+        verify(incomingMessageFlowPersistence, never()).addOrReplace(anyString(), anyInt(), any());
+        verify(incomingMessageFlowPersistence, never()).remove(anyString(), anyInt());
+    }
+
     private PUBLISH createPublish(final QoS qoS) {
         return TestMessageUtil.createMqtt3Publish(qoS);
     }
@@ -17,7 +17,6 @@
 package com.hivemq.mqtt.message;
 
 
-import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.mqtt.message.pool.MessageIDPool;
 import org.junit.Before;
 import org.junit.Test;
@@ -25,6 +24,7 @@ import org.mockito.MockitoAnnotations;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Lukas Brandl
@@ -36,7 +36,6 @@ public class MessageIDPoolsTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        InternalConfigurations.MESSAGE_ID_PRODUCER_LOCK_SIZE.set(8);
         messageIDPools = new MessageIDPools();
     }
 
@@ -56,4 +55,13 @@ public class MessageIDPoolsTest {
         final MessageIDPool messageIDPool = messageIDPools.forClient("client");
         assertEquals(messageIDPool, messageIDPools.forClientOrNull("client"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_for_client_returns_same_pool() throws Exception {
+        final MessageIDPool messageIDPool = messageIDPools.forClient("client");
+        assertSame(messageIDPool, messageIDPools.forClient("client"));
+
+        messageIDPools.remove("client");
+        assertNull(messageIDPools.forClientOrNull("client"));
+    }
+}
@@ -23,6 +23,13 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -151,6 +158,94 @@ public class SequentialMessageIDPoolImplTest {
         messageIDPool.takeIfAvailable(70_000);
     }
 
+    @Test
+    public void test_return_id_twice() throws Exception {
+        final SequentialMessageIDPoolImpl messageIDPool = new SequentialMessageIDPoolImpl();
+
+        final int id = messageIDPool.takeNextId();
+        messageIDPool.takeNextId();
+        messageIDPool.returnId(id);
+        messageIDPool.returnId(id);
+        messageIDPool.returnId(4242);
+
+        assertEquals(1, messageIDPool.getUsedMessageIdCount());
+    }
+
+    @Test
+    public void test_take_if_available_skips_used_ids_across_words() throws Exception {
+        final SequentialMessageIDPoolImpl messageIDPool = new SequentialMessageIDPoolImpl();
+
+        for (int i = 100; i <= 300; i++) {
+            messageIDPool.takeIfAvailable(i);
+        }
+        messageIDPool.returnId(300);
+
+        //ticker is at 300, so the next free id after it is 301
+        assertEquals(301, messageIDPool.takeNextId());
+        //100 is used, so the next id after the ticker is taken
+        assertEquals(302, messageIDPool.takeIfAvailable(100));
+    }
+
+    @Test
+    public void test_wrap_around_skips_to_free_id_in_other_page() throws Exception {
+        final SequentialMessageIDPoolImpl messageIDPool = new SequentialMessageIDPoolImpl();
+
+        final List<Integer> ints = new ArrayList<>();
+        for (int i = 1; i <= 65535; i++) {
+            ints.add(i);
+        }
+        messageIDPool.prepopulateWithUnavailableIds(Ints.toArray(ints));
+
+        messageIDPool.returnId(4096);
+        messageIDPool.returnId(4097);
+
+        assertEquals(4096, messageIDPool.takeNextId());
+        assertEquals(4097, messageIDPool.takeNextId());
+    }
+
+    @Test(timeout = 20000)
+    public void test_concurrent_take_and_return() throws Exception {
+        final SequentialMessageIDPoolImpl messageIDPool = new SequentialMessageIDPoolImpl();
+        final Set<Integer> inUse = ConcurrentHashMap.newKeySet();
+        final int threads = 4;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                final List<Integer> taken = new ArrayList<>();
+                for (int i = 0; i < 100_000; i++) {
+                    final int id = messageIDPool.takeNextId();
+                    if (!inUse.add(id)) {
+                        return false;
+                    }
+                    taken.add(id);
+                    if (taken.size() > 1000) {
+                        final int returned = taken.remove(0);
+                        inUse.remove(returned);
+                        messageIDPool.returnId(returned);
+                    }
+                }
+                for (final int id : taken) {
+                    inUse.remove(id);
+                    messageIDPool.returnId(id);
+                }
+                return true;
+            }));
+        }
+        start.countDown();
+
+        for (final Future<Boolean> future : futures) {
+            assertTrue("message id was taken twice", future.get());
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, messageIDPool.getUsedMessageIdCount());
+    }
+
     private boolean areConsecutiveMessageIds(final List<Integer> integerList) {
 
         int last = 0;
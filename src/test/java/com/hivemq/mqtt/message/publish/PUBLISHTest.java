@@ -16,6 +16,7 @@
 
 package com.hivemq.mqtt.message.publish;
 
+import com.google.common.collect.ImmutableList;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
@@ -31,8 +32,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 /**
  * @author Florian Limpöck
@@ -42,6 +42,41 @@ public class PUBLISHTest {
 
     private static final int GENERAL_OVERHEAD = 24 + 64 + 48 + 24 + 16 + 35;
 
+    @Test
+    public void test_for_subscriber_shares_template() {
+
+        final PUBLISH template = new PUBLISHFactory.Mqtt5Builder()
+                .withHivemqId("hivemqId")
+                .withTopic("topic")
+                .withQoS(QoS.EXACTLY_ONCE)
+                .withRetain(true)
+                .withPacketIdentifier(5)
+                .withPayload(new byte[]{1, 2, 3})
+                .withPayloadId(1L)
+                .withPersistence(Mockito.mock(PublishPayloadPersistence.class))
+                .withUserProperties(Mqtt5UserProperties.of(new MqttUserProperty("name", "value")))
+                .build();
+
+        final PUBLISH qos1 = PUBLISHFactory.forSubscriber(template, QoS.AT_LEAST_ONCE, false, ImmutableList.of(1, 2));
+        final PUBLISH qos0 = PUBLISHFactory.forSubscriber(template, QoS.AT_MOST_ONCE, true, ImmutableList.of());
+
+        assertEquals(QoS.AT_LEAST_ONCE, qos1.getQoS());
+        assertEquals(5, qos1.getPacketIdentifier());
+        assertFalse(qos1.isRetain());
+        assertEquals(ImmutableList.of(1, 2), qos1.getSubscriptionIdentifiers());
+
+        assertEquals(QoS.AT_MOST_ONCE, qos0.getQoS());
+        assertEquals(0, qos0.getPacketIdentifier());
+        assertTrue(qos0.isRetain());
+
+        assertSame(template.getUniqueId(), qos1.getUniqueId());
+        assertSame(template.getUserProperties(), qos1.getUserProperties());
+        assertSame(template.getPayload(), qos1.getPayload());
+        assertEquals(template.getPayloadId(), qos1.getPayloadId());
+        assertEquals(template.getLocalPublishId(), qos0.getLocalPublishId());
+        assertEquals(template.getTimestamp(), qos0.getTimestamp());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void test_publish_with_payload_id_null_persistence() {
 
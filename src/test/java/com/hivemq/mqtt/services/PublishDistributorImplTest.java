@@ -26,12 +26,13 @@ import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
-import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
+import com.hivemq.persistence.clientsession.ClientSessionStateIndex;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import util.InitFutureUtilsExecutorRule;
@@ -44,7 +45,10 @@ import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -75,7 +79,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_not_connected() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(false, 1000L));
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(new ClientSessionStateIndex.SessionState(false, 1000L, System.currentTimeMillis(), 0));
 
         final PublishStatus status = publishDistributor.sendMessageToSubscriber(createPublish(QoS.AT_LEAST_ONCE), "client",
                 0, false, false, ImmutableList.of(1)).get();
@@ -86,7 +90,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_session_expired() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(null);
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(null);
 
         final PublishStatus status = publishDistributor.sendMessageToSubscriber(createPublish(QoS.AT_LEAST_ONCE), "client",
                 0, false, false, ImmutableList.of(1)).get();
@@ -96,7 +100,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_success() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(new ClientSessionStateIndex.SessionState(true, 1000L, System.currentTimeMillis(), 0));
         when(clientQueuePersistence.add(eq("client"), eq(false), any(PUBLISH.class))).thenReturn(Futures.immediateFuture(null));
 
 
@@ -109,7 +113,7 @@ public class PublishDistributorImplTest {
 
     @Test(timeout = 5000)
     public void test_failed() throws ExecutionException, InterruptedException {
-        when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+        when(clientSessionPersistence.getSessionState("client")).thenReturn(new ClientSessionStateIndex.SessionState(true, 1000L, System.currentTimeMillis(), 0));
         when(clientQueuePersistence.add(eq("client"), eq(false), any(PUBLISH.class))).thenReturn(Futures.immediateFailedFuture(new RuntimeException("test")));
 
 
@@ -134,10 +138,9 @@ public class PublishDistributorImplTest {
 
     @Test
     public void test_distribute_to_non_shared() {
-        when(clientSessionPersistence.getSession("client1", false)).thenReturn(new ClientSession(true, 1000L));
-        when(clientSessionPersistence.getSession("client2", false)).thenReturn(new ClientSession(true, 1000L));
-        when(clientQueuePersistence.add(eq("client1"), eq(false), any(PUBLISH.class))).thenReturn(Futures.immediateFuture(null));
-        when(clientQueuePersistence.add(eq("client2"), eq(false), any(PUBLISH.class))).thenReturn(Futures.immediateFuture(null));
+        when(clientSessionPersistence.getSessionState("client1")).thenReturn(new ClientSessionStateIndex.SessionState(true, 1000L, System.currentTimeMillis(), 0));
+        when(clientSessionPersistence.getSessionState("client2")).thenReturn(new ClientSessionStateIndex.SessionState(true, 1000L, System.currentTimeMillis(), 0));
+        when(clientQueuePersistence.addAll(any(Map.class), eq(false))).thenReturn(Futures.immediateFuture(null));
 
         final Map<String, SubscriberWithIdentifiers> subscribers = Map.of(
                 "client1", new SubscriberWithIdentifiers("client1", 1, (byte) 0, null),
@@ -146,21 +149,64 @@ public class PublishDistributorImplTest {
 
         publishDistributor.distributeToNonSharedSubscribers(subscribers, TestMessageUtil.createMqtt5Publish(), MoreExecutors.newDirectExecutorService());
 
-        verify(clientQueuePersistence).add(eq("client1"), eq(false), any(PUBLISH.class));
-        verify(clientQueuePersistence).add(eq("client2"), eq(false), any(PUBLISH.class));
+        final Map<String, PUBLISH> publishes = captureAddAll(false);
+        assertEquals(Set.of("client1", "client2"), publishes.keySet());
+    }
+
+    @Test
+    public void test_distribute_to_non_shared_adds_payload_once() {
+        when(clientSessionPersistence.getSessionState("client1")).thenReturn(new ClientSessionStateIndex.SessionState(true, 1000L, System.currentTimeMillis(), 0));
+        when(clientSessionPersistence.getSessionState("client2")).thenReturn(new ClientSessionStateIndex.SessionState(true, 1000L, System.currentTimeMillis(), 0));
+        when(clientSessionPersistence.getSessionState("client3")).thenReturn(null);
+        when(clientQueuePersistence.addAll(any(Map.class), eq(false))).thenReturn(Futures.immediateFuture(null));
+
+        final Map<String, SubscriberWithIdentifiers> subscribers = Map.of(
+                "client1", new SubscriberWithIdentifiers("client1", 1, (byte) 0, null),
+                "client2", new SubscriberWithIdentifiers("client2", 0, (byte) 0, null),
+                "client3", new SubscriberWithIdentifiers("client3", 1, (byte) 0, null)
+        );
+
+        final PUBLISH publish = TestMessageUtil.createMqtt5Publish();
+        publishDistributor.distributeToNonSharedSubscribers(subscribers, publish, MoreExecutors.newDirectExecutorService());
+
+        verify(payloadPersistence).add(any(byte[].class), eq(2L));
+        final Map<String, PUBLISH> publishes = captureAddAll(false);
+        assertEquals(Set.of("client1", "client2"), publishes.keySet());
+        assertEquals(QoS.AT_MOST_ONCE, publishes.get("client2").getQoS());
+        assertEquals(publish.getUniqueId(), publishes.get("client1").getUniqueId());
+    }
+
+    @Test
+    public void test_distribute_to_non_shared_no_session() {
+        when(clientSessionPersistence.getSessionState("client1")).thenReturn(null);
+
+        final Map<String, SubscriberWithIdentifiers> subscribers = Map.of(
+                "client1", new SubscriberWithIdentifiers("client1", 1, (byte) 0, null)
+        );
+
+        publishDistributor.distributeToNonSharedSubscribers(subscribers, TestMessageUtil.createMqtt5Publish(), MoreExecutors.newDirectExecutorService());
+
+        verify(payloadPersistence, never()).add(any(byte[].class), anyLong());
+        verify(clientQueuePersistence, never()).addAll(any(Map.class), anyBoolean());
     }
 
     @Test
     public void test_distribute_to_shared_subs() {
-        when(clientQueuePersistence.add(eq("name/topic1"), eq(true), any(PUBLISH.class))).thenReturn(Futures.immediateFuture(null));
-        when(clientQueuePersistence.add(eq("name/topic2"), eq(true), any(PUBLISH.class))).thenReturn(Futures.immediateFuture(null));
+        when(clientQueuePersistence.addAll(any(Map.class), eq(true))).thenReturn(Futures.immediateFuture(null));
 
         final Set<String> subscribers = Set.of("name/topic1", "name/topic2");
 
         publishDistributor.distributeToSharedSubscribers(subscribers, TestMessageUtil.createMqtt5Publish("topic"),  MoreExecutors.newDirectExecutorService());
 
-        verify(clientQueuePersistence).add(eq("name/topic1"), eq(true), any(PUBLISH.class));
-        verify(clientQueuePersistence).add(eq("name/topic2"), eq(true), any(PUBLISH.class));
+        final Map<String, PUBLISH> publishes = captureAddAll(true);
+        assertEquals(Set.of("name/topic1", "name/topic2"), publishes.keySet());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, PUBLISH> captureAddAll(final boolean shared) {
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(clientQueuePersistence).addAll(captor.capture(), eq(shared));
+        return (Map<String, PUBLISH>) captor.getValue();
     }
 
     private PUBLISH createPublish(final QoS qos) {
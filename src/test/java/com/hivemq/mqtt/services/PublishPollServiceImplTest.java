@@ -16,6 +16,7 @@
 
 package com.hivemq.mqtt.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.ImmutableIntArray;
@@ -35,6 +36,7 @@ import com.hivemq.mqtt.topic.SubscriberWithQoS;
 import com.hivemq.mqtt.topic.SubscriptionFlags;
 import com.hivemq.persistence.ChannelPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
+import com.hivemq.persistence.clientsession.SharedSubscriptionDispatcher;
 import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.util.ChannelAttributes;
@@ -118,7 +120,9 @@ public class PublishPollServiceImplTest {
         InternalConfigurations.MAX_INFLIGHT_WINDOW_SIZE = 50;
 
         publishPollService = new PublishPollServiceImpl(messageIDPools, clientQueuePersistence, channelPersistence,
-                publishPayloadPersistence, messageDroppedService, sharedSubscriptionService, TestSingleWriterFactory.defaultSingleWriter());
+                publishPayloadPersistence, messageDroppedService, sharedSubscriptionService, TestSingleWriterFactory.defaultSingleWriter(),
+                new SharedSubscriptionDispatcher(sharedSubscriptionService, channelPersistence, new MetricRegistry(),
+                        SharedSubscriptionDispatcher.createStrategy("round-robin")));
     }
 
     @Test
@@ -299,6 +303,27 @@ public class PublishPollServiceImplTest {
         verify(clientQueuePersistence, never()).readShared(anyString(), anyInt(), anyLong());
     }
 
+    @Test
+    public void test_poll_shared_publishes_least_inflight_fills_window() {
+        publishPollService = new PublishPollServiceImpl(messageIDPools, clientQueuePersistence, channelPersistence,
+                publishPayloadPersistence, messageDroppedService, sharedSubscriptionService, TestSingleWriterFactory.defaultSingleWriter(),
+                new SharedSubscriptionDispatcher(sharedSubscriptionService, channelPersistence, new MetricRegistry(),
+                        SharedSubscriptionDispatcher.createStrategy("least-inflight")));
+
+        final byte flags = SubscriptionFlags.getDefaultFlags(true, false, false);
+        when(sharedSubscriptionService.getSharedSubscriber(anyString())).thenReturn(ImmutableSet.of(
+                new SubscriberWithQoS("client1", 2, flags, 1)));
+        when(channelPersistence.get("client1")).thenReturn(channel);
+        when(channel.attr(ChannelAttributes.IN_FLIGHT_MESSAGES)).thenReturn(new TestChannelAttribute<>(new AtomicInteger(10)));
+        when(channel.attr(ChannelAttributes.IN_FLIGHT_MESSAGES_SENT)).thenReturn(new TestChannelAttribute<>(true));
+        when(clientQueuePersistence.readShared(eq("group/topic"), anyInt(), anyLong())).thenReturn(Futures.immediateFuture(ImmutableList.of()));
+
+        publishPollService.pollSharedPublishes("group/topic");
+
+        // only the rest of the in-flight window is read
+        verify(clientQueuePersistence).readShared(eq("group/topic"), eq(40), anyLong());
+    }
+
     @Test
     public void test_remove_shared_qos0_downgrade() throws NoMessageIdAvailableException {
         final OrderedTopicHandler orderedTopicHandler = mock(OrderedTopicHandler.class);
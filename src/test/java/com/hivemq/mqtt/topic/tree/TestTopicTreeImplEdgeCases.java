@@ -24,13 +24,17 @@ import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.mqtt.topic.SubscriptionFlags;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.MockitoAnnotations;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.junit.Assert.*;
@@ -428,4 +432,100 @@ public class TestTopicTreeImplEdgeCases {
 
     }
 
+    @Test(timeout = 30000)
+    public void test_get_subscribers_while_subscriptions_change() throws Exception {
+
+        topicTree.addTopic("stable", new Topic("a/b/c", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        topicTree.addTopic("stable-wildcard", new Topic("a/+/c", QoS.AT_LEAST_ONCE), (byte) 0, null);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 5000; i++) {
+                    final String client = "client" + (i % 50);
+                    topicTree.addTopic(client, new Topic("a/b/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+                    topicTree.addTopic(client, new Topic("a/b/#", QoS.AT_MOST_ONCE), (byte) 0, null);
+                    topicTree.addTopic(client, new Topic("a/" + i + "/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+                    topicTree.removeSubscriber(client, "a/b/c", null);
+                    topicTree.removeSubscriber(client, "a/b/#", null);
+                    topicTree.removeSubscriber(client, "a/" + i + "/c", null);
+                }
+            } catch (final Throwable t) {
+                failure.set(t);
+            } finally {
+                running.set(false);
+            }
+        });
+
+        final Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    final ImmutableSet<SubscriberWithIdentifiers> subscribers = topicTree.getSubscribers("a/b/c");
+                    assertTrue(subscribers.contains(new SubscriberWithIdentifiers("stable", 1, (byte) 0, null, ImmutableList.of(), null)));
+                    assertTrue(subscribers.contains(new SubscriberWithIdentifiers("stable-wildcard", 1, (byte) 0, null, ImmutableList.of(), null)));
+                }
+            } catch (final Throwable t) {
+                failure.set(t);
+                running.set(false);
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(2, topicTree.getSubscribers("a/b/c").size());
+        assertEquals(2, topicTree.subscriptionCounter.getCount());
+    }
+
+    @Test
+    public void test_find_subscribers_empty_topic_levels() {
+
+        topicTree.addTopic("client1", new Topic("a//b", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        topicTree.addTopic("client2", new Topic("a/+/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("client3", new Topic("a/", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("client4", new Topic("/", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("client5", new Topic("+/#", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final TopicSubscribers subscribers = topicTree.findSubscribers("a//b");
+        assertEquals(3, subscribers.size());
+        assertEquals("client1", subscribers.get(0).getSubscriber());
+        assertEquals("client2", subscribers.get(1).getSubscriber());
+        assertEquals("client5", subscribers.get(2).getSubscriber());
+
+        assertEquals(2, topicTree.findSubscribers("a/").size());
+        assertEquals(2, topicTree.findSubscribers("/").size());
+        assertEquals(1, topicTree.findSubscribers("a").size());
+        assertEquals(1, topicTree.findSubscribers("b").size());
+
+        assertEquals(topicTree.getSubscribers("a//b"), topicTree.findSubscribers("a//b").toSet());
+    }
+
+    @Test
+    public void test_find_subscribers_merges_subscriptions_and_shared_topic_filters() {
+
+        topicTree.addTopic("client", new Topic("a/b", QoS.AT_MOST_ONCE, false, false, Mqtt5RetainHandling.SEND, 1), (byte) 0, null);
+        topicTree.addTopic("client", new Topic("a/+", QoS.EXACTLY_ONCE, false, false, Mqtt5RetainHandling.SEND, 2), (byte) 0, null);
+        topicTree.addTopic("shared", new Topic("+/b", QoS.AT_LEAST_ONCE), SubscriptionFlags.getDefaultFlags(true, false, false), "group");
+        topicTree.addTopic("shared", new Topic("a/#", QoS.AT_LEAST_ONCE), SubscriptionFlags.getDefaultFlags(true, false, false), "group");
+
+        final TopicSubscribers subscribers = topicTree.findSubscribers("a/b");
+        assertEquals(3, subscribers.size());
+
+        final SubscriberWithIdentifiers client = subscribers.get(0);
+        assertEquals("client", client.getSubscriber());
+        assertEquals(2, client.getQos());
+        assertEquals(ImmutableList.of(1, 2), client.getSubscriptionIdentifier());
+
+        final Set<String> sharedTopicFilters = Set.of(subscribers.get(1).getTopicFilter(), subscribers.get(2).getTopicFilter());
+        assertEquals(Set.of("+/b", "a/#"), sharedTopicFilters);
+
+        //the collector is reused, so the next result must not contain anything of the previous one
+        assertEquals(0, topicTree.findSubscribers("c").size());
+        assertEquals(3, topicTree.findSubscribers("a/b").size());
+    }
 }
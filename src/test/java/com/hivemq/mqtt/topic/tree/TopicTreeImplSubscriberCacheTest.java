@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TopicTreeImplSubscriberCacheTest {
+
+    private MetricsHolder metricsHolder;
+    private TopicTreeImpl topicTree;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.TOPIC_TREE_SUBSCRIBER_CACHE_ENABLED.set(true);
+        metricsHolder = new MetricsHolder(new MetricRegistry());
+        topicTree = new TopicTreeImpl(metricsHolder);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_SUBSCRIBER_CACHE_ENABLED.set(false);
+    }
+
+    @Test
+    public void test_cache_disabled_by_default() {
+        InternalConfigurations.TOPIC_TREE_SUBSCRIBER_CACHE_ENABLED.set(false);
+        assertNull(new TopicTreeImpl(new MetricsHolder(new MetricRegistry())).subscriberCache);
+    }
+
+    @Test
+    public void test_repeated_lookup_is_served_from_cache() {
+        topicTree.addTopic("client", new Topic("a/b", QoS.AT_LEAST_ONCE), (byte) 0, null);
+
+        final TopicSubscribers first = topicTree.findSubscribers("a/b");
+        final TopicSubscribers second = topicTree.findSubscribers("a/b");
+
+        assertEquals(1, first.size());
+        assertSame(first, second);
+        assertEquals(1, metricsHolder.getTopicTreeSubscriberCacheHitCounter().getCount());
+        assertEquals(1, metricsHolder.getTopicTreeSubscriberCacheMissCounter().getCount());
+    }
+
+    @Test
+    public void test_add_and_remove_in_segment_invalidates() {
+        topicTree.addTopic("client1", new Topic("a/b", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        assertEquals(1, topicTree.findSubscribers("a/b").size());
+
+        topicTree.addTopic("client2", new Topic("a/#", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        assertEquals(2, topicTree.findSubscribers("a/b").size());
+
+        topicTree.removeSubscriber("client1", "a/b", null);
+        assertEquals(1, topicTree.findSubscribers("a/b").size());
+
+        assertEquals(0, metricsHolder.getTopicTreeSubscriberCacheHitCounter().getCount());
+        assertEquals(3, metricsHolder.getTopicTreeSubscriberCacheMissCounter().getCount());
+    }
+
+    @Test
+    public void test_wildcard_segment_and_root_wildcard_invalidate() {
+        assertEquals(0, topicTree.findSubscribers("a/b").size());
+
+        topicTree.addTopic("client1", new Topic("+/b", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        assertEquals(1, topicTree.findSubscribers("a/b").size());
+
+        topicTree.addTopic("client2", new Topic("#", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        assertEquals(2, topicTree.findSubscribers("a/b").size());
+
+        topicTree.removeSubscriber("client2", "#", null);
+        assertEquals(1, topicTree.findSubscribers("a/b").size());
+
+        topicTree.removeSubscriber("client1", "+/b", null);
+        assertEquals(0, topicTree.findSubscribers("a/b").size());
+    }
+
+    @Test
+    public void test_other_segment_does_not_invalidate() {
+        topicTree.addTopic("client1", new Topic("a/b", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        assertEquals(1, topicTree.findSubscribers("a/b").size());
+
+        topicTree.addTopic("client2", new Topic("b/c", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        assertEquals(1, topicTree.findSubscribers("a/b").size());
+
+        assertEquals(1, metricsHolder.getTopicTreeSubscriberCacheHitCounter().getCount());
+    }
+
+    @Test
+    public void test_get_subscribers_uses_cache() {
+        topicTree.addTopic("client", new Topic("a", QoS.AT_LEAST_ONCE), (byte) 0, null);
+
+        assertEquals(1, topicTree.getSubscribers("a").size());
+        assertEquals(1, topicTree.getSubscribers("a").size());
+        assertNotNull(topicTree.getSubscriber("client", "a"));
+
+        assertEquals(2, metricsHolder.getTopicTreeSubscriberCacheHitCounter().getCount());
+        assertEquals(1, topicTree.subscriberCache.size());
+    }
+}
@@ -0,0 +1,1249 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.local.SerializedEntryPersistence;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import com.hivemq.util.ThreadPreConditions;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy.DISCARD;
+import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy.DISCARD_OLDEST;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.SHARED_IN_FLIGHT_MARKER;
+import static com.hivemq.persistence.local.xodus.XodusUtils.byteIterableToBytes;
+import static com.hivemq.persistence.local.xodus.XodusUtils.bytesToByteIterable;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * The tests of a {@link ClientQueueLocalPersistence} that every storage backend must pass.
+ */
+@SuppressWarnings("NullabilityAnnotations")
+abstract class AbstractClientQueueLocalPersistenceTest<P extends ClientQueueLocalPersistence & SerializedEntryPersistence> {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    LocalPersistenceFileUtil localPersistenceFileUtil;
+
+    @Mock
+    PublishPayloadPersistence payloadPersistence;
+
+    @Mock
+    MessageDroppedService messageDroppedService;
+
+    P persistence;
+
+    private final int bucketCount = 4;
+
+    private final long byteLimit = 5 * 1024 * 1024;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(bucketCount);
+        InternalConfigurations.PERSISTENCE_CLOSE_RETRIES.set(3);
+        InternalConfigurations.PERSISTENCE_CLOSE_RETRY_INTERVAL.set(5);
+        when(localPersistenceFileUtil.getVersionedLocalPersistenceFolder(anyString(), anyString()))
+                .thenReturn(temporaryFolder.newFolder());
+
+        InternalConfigurations.QOS_0_MEMORY_HARD_LIMIT_DIVISOR.set(10000);
+        InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT.set(1024);
+        InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.set(5);
+
+        persistence = createPersistence();
+
+        persistence.start();
+    }
+
+    abstract P createPersistence();
+
+    abstract ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets();
+
+    abstract ConcurrentHashMap<String, AtomicInteger> getClientQos0MemoryMap();
+
+    abstract void increaseClientQos0MessagesMemory(Key key, int size);
+
+    @Test
+    public void test_stateful_start() {
+
+        for (int i = 0; i < 100; i++) {
+            final PUBLISH publish = createPublish(i, QoS.AT_LEAST_ONCE, "topic" + i);
+            persistence.add("client" + i, false, publish, 100L, DISCARD, false, i % bucketCount);
+        }
+
+        persistence.stop();
+
+        persistence.start();
+
+        final ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> queueSizeBuckets = getQueueSizeBuckets();
+
+        final AtomicInteger counter = new AtomicInteger();
+
+        for (final Map<Key, AtomicInteger> value : queueSizeBuckets.values()) {
+            if (value != null) {
+                for (final AtomicInteger count : value.values()) {
+                    if (count != null) {
+                        counter.addAndGet(count.get());
+                    }
+                }
+            }
+        }
+
+        assertEquals(100, counter.get());
+        assertEquals((Long.MAX_VALUE / 2) + 99, ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.get());
+
+    }
+
+    @Test
+    public void test_add_all() {
+        final PUBLISH publish1 = createPublish(1, QoS.AT_LEAST_ONCE, "topic1");
+        final PUBLISH publish2 = createPublish(1, QoS.EXACTLY_ONCE, "topic1");
+        final PUBLISH publish3 = createPublish(1, QoS.AT_MOST_ONCE, "topic1");
+
+        persistence.addAll(Map.of("client1", publish1, "client2", publish2, "client3", publish3), false, 100L, DISCARD, 0);
+
+        assertEquals(1, persistence.size("client1", false, 0));
+        assertEquals(1, persistence.size("client2", false, 0));
+        assertEquals(1, persistence.size("client3", false, 0));
+
+        final ImmutableList<PUBLISH> client1Publishes =
+                persistence.readNew("client1", false, ImmutableIntArray.of(2), 256000, 0);
+        assertEquals(1, client1Publishes.size());
+        assertEquals(QoS.AT_LEAST_ONCE, client1Publishes.get(0).getQoS());
+
+        final ImmutableList<PUBLISH> client3Publishes =
+                persistence.readNew("client3", false, ImmutableIntArray.of(2), 256000, 0);
+        assertEquals(1, client3Publishes.size());
+        assertEquals(QoS.AT_MOST_ONCE, client3Publishes.get(0).getQoS());
+    }
+
+    @Test
+    public void test_add_all_discard() {
+        persistence.add("client1", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic1"), 1L, DISCARD, false, 0);
+
+        persistence.addAll(Map.of("client1", createPublish(1, QoS.AT_LEAST_ONCE, "topic2"),
+                "client2", createPublish(1, QoS.AT_LEAST_ONCE, "topic2")), false, 1L, DISCARD, 0);
+
+        assertEquals(1, persistence.size("client1", false, 0));
+        assertEquals(1, persistence.size("client2", false, 0));
+        verify(messageDroppedService).queueFull("client1", "topic2", 1);
+    }
+
+    @Test
+    public void test_readNew_lessAvailable() {
+        final PUBLISH publish = createPublish(10, QoS.AT_LEAST_ONCE, "topic1");
+        final PUBLISH otherPublish = createPublish(11, QoS.EXACTLY_ONCE, "topic2");
+        persistence.add("client10", false, otherPublish, 100L, DISCARD, false, 0);
+        persistence.add("client1", false, publish, 100L, DISCARD, false, 0);
+        persistence.add("client01", false, otherPublish, 100L, DISCARD, false, 0);
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client1", false, ImmutableIntArray.of(2, 3, 4), 256000, 0);
+        assertEquals(1, publishes.size());
+        assertEquals(2, publishes.get(0).getPacketIdentifier());
+        assertEquals(publish.getQoS(), publishes.get(0).getQoS());
+        assertEquals(publish.getTopic(), publishes.get(0).getTopic());
+    }
+
+    @Test
+    public void test_readNew_moreAvailable() {
+        final PUBLISH[] publishes = new PUBLISH[4];
+        for (int i = 0; i < publishes.length; i++) {
+            publishes[i] = createPublish(10 + i, (i % 2 == 0) ? QoS.EXACTLY_ONCE : QoS.AT_LEAST_ONCE, "topic" + i);
+        }
+        final PUBLISH otherPublish = createPublish(14, QoS.EXACTLY_ONCE, "topic5");
+
+        persistence.add("client10", false, otherPublish, 100L, DISCARD, false, 0);
+        for (final PUBLISH publish : publishes) {
+            persistence.add("client1", false, publish, 100L, DISCARD, false, 0);
+        }
+        persistence.add("client01", false, otherPublish, 100L, DISCARD, false, 0);
+
+        final ImmutableIntArray packetIds = ImmutableIntArray.of(2, 3, 5);
+        final ImmutableList<PUBLISH> readPublishes = persistence.readNew("client1", false, packetIds, 256000, 0);
+
+        assertEquals(3, readPublishes.size());
+        for (int i = 0; i < packetIds.length(); i++) {
+            assertEquals(packetIds.get(i), readPublishes.get(i).getPacketIdentifier());
+            assertEquals(publishes[i].getQoS(), readPublishes.get(i).getQoS());
+            assertEquals(publishes[i].getTopic(), readPublishes.get(i).getTopic());
+        }
+    }
+
+    @Test
+    public void test_readNew_twice() {
+        final PUBLISH[] publishes = new PUBLISH[4];
+        for (int i = 0; i < publishes.length; i++) {
+            publishes[i] = createPublish(10 + i, (i % 2 == 0) ? QoS.EXACTLY_ONCE : QoS.AT_LEAST_ONCE, "topic" + i);
+        }
+        final PUBLISH otherPublish = createPublish(14, QoS.EXACTLY_ONCE, "topic5");
+
+        persistence.add("client10", false, otherPublish, 100L, DISCARD, false, 0);
+        for (final PUBLISH publish : publishes) {
+            persistence.add("client1", false, publish, 100L, DISCARD, false, 0);
+        }
+        persistence.add("client01", false, otherPublish, 100L, DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(5), 256000, 0);
+
+        assertEquals(1, messages1.size());
+        assertEquals(5, messages1.get(0).getPacketIdentifier());
+        assertEquals("topic0", messages1.get(0).getTopic());
+
+        final ImmutableIntArray packetIds = ImmutableIntArray.of(2, 3, 4);
+        final ImmutableList<PUBLISH> messages2 = persistence.readNew("client1", false, packetIds, 256000, 0);
+
+        assertEquals(3, messages2.size());
+        for (int i = 0; i < packetIds.length(); i++) {
+            assertEquals(packetIds.get(i), messages2.get(i).getPacketIdentifier());
+            assertEquals(publishes[1 + i].getTopic(), messages2.get(i).getTopic());
+        }
+    }
+
+    @Test
+    public void test_readNew_qos0() {
+        final PUBLISH[] publishes = new PUBLISH[4];
+        for (int i = 0; i < publishes.length; i++) {
+            final PUBLISH publish = createPublish(0, QoS.AT_MOST_ONCE, "topic" + i);
+            publishes[i] = publish;
+            persistence.add("client", false, publish, 100L, DISCARD, false, 0);
+        }
+
+        final ImmutableList<PUBLISH> messages =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3), 256000, 0);
+
+        assertEquals(1, persistence.size("client", false, 0));
+        assertEquals(3, messages.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(publishes[i].getTopic(), messages.get(i).getTopic());
+        }
+    }
+
+    @Test
+    public void test_readNew_qos0_and_qos1() {
+        final PUBLISH[] qos0Publishes = new PUBLISH[3];
+        for (int i = 0; i < qos0Publishes.length; i++) {
+            final PUBLISH publish = createPublish(0, QoS.AT_MOST_ONCE, "topic" + i);
+            qos0Publishes[i] = publish;
+            persistence.add("client", false, publish, 100L, DISCARD, false, 0);
+        }
+
+        final PUBLISH[] qos1Publishes = new PUBLISH[3];
+        for (int i = 0; i < qos1Publishes.length; i++) {
+            final PUBLISH publish = createPublish(1 + i, QoS.AT_LEAST_ONCE, "topic" + i);
+            qos1Publishes[i] = publish;
+            persistence.add("client", false, publish, 100L, DISCARD, false, 0);
+        }
+
+        final ImmutableList<PUBLISH> messages =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7), 256000, 0);
+
+        assertEquals(3, persistence.size("client", false, 0));
+        assertEquals(6, messages.size());
+
+        assertEquals(0, messages.get(1).getPacketIdentifier());
+        assertEquals(QoS.AT_MOST_ONCE, messages.get(1).getQoS());
+        assertEquals(0, messages.get(3).getPacketIdentifier());
+        assertEquals(QoS.AT_MOST_ONCE, messages.get(3).getQoS());
+        assertEquals(0, messages.get(5).getPacketIdentifier());
+        assertEquals(QoS.AT_MOST_ONCE, messages.get(5).getQoS());
+
+        assertEquals(1, messages.get(0).getPacketIdentifier());
+        assertEquals(QoS.AT_LEAST_ONCE, messages.get(0).getQoS());
+        assertEquals(2, messages.get(2).getPacketIdentifier());
+        assertEquals(QoS.AT_LEAST_ONCE, messages.get(2).getQoS());
+        assertEquals(3, messages.get(4).getPacketIdentifier());
+        assertEquals(QoS.AT_LEAST_ONCE, messages.get(4).getQoS());
+    }
+
+    @Test
+    public void test_read_inflight() {
+        final PUBLISH[] publishes = new PUBLISH[4];
+        for (int i = 0; i < publishes.length; i++) {
+            publishes[i] = createPublish(10 + i, (i % 2 == 0) ? QoS.EXACTLY_ONCE : QoS.AT_LEAST_ONCE, "topic" + i);
+        }
+        for (final PUBLISH publish : publishes) {
+            persistence.add("client1", false, publish, 100L, DISCARD, false, 0);
+        }
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(5, 6, 7), 256000, 0);
+
+        assertEquals(3, messages1.size());
+        assertEquals(5, messages1.get(0).getPacketIdentifier());
+        assertEquals(6, messages1.get(1).getPacketIdentifier());
+        assertEquals(7, messages1.get(2).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_read_inflight_after_restart() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic" + i), 100L, DISCARD, false, 0);
+        }
+
+        final ImmutableList<PUBLISH> newMessages =
+                persistence.readNew("client1", false, ImmutableIntArray.of(5, 6), 256000, 0);
+        assertEquals(2, newMessages.size());
+
+        persistence.stop();
+        persistence.start();
+
+        final ImmutableList<MessageWithID> inflight = persistence.readInflight("client1", false, 10, 256000, 0);
+        assertEquals(2, inflight.size());
+        assertEquals(5, inflight.get(0).getPacketIdentifier());
+        assertEquals("topic0", ((PUBLISH) inflight.get(0)).getTopic());
+        assertEquals(6, inflight.get(1).getPacketIdentifier());
+        assertEquals("topic1", ((PUBLISH) inflight.get(1)).getTopic());
+
+        final ImmutableList<PUBLISH> remaining =
+                persistence.readNew("client1", false, ImmutableIntArray.of(7, 8), 256000, 0);
+        assertEquals(1, remaining.size());
+        assertEquals("topic2", remaining.get(0).getTopic());
+        assertEquals(7, remaining.get(0).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_remove_inflight_message() {
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic1"), 100L, DISCARD, false, 0);
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic2"), 100L, DISCARD, false, 0);
+
+        persistence.readNew("client1", false, ImmutableIntArray.of(1), 256000, 0);
+        persistence.remove("client1", 1, 0);
+
+        assertEquals(1, persistence.size("client1", false, 0));
+        assertTrue(persistence.readInflight("client1", false, 10, 256000, 0).isEmpty());
+
+        final ImmutableList<PUBLISH> newMessages =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1), 256000, 0);
+        assertEquals(1, newMessages.size());
+        assertEquals("topic2", newMessages.get(0).getTopic());
+        assertEquals(1, newMessages.get(0).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_read_inflight_pubrel() {
+        final PUBREL[] pubrels = new PUBREL[4];
+        for (int i = 0; i < pubrels.length; i++) {
+            pubrels[i] = new PUBREL(i + 1);
+        }
+        for (final PUBREL pubrel : pubrels) {
+            persistence.replace("client1", pubrel, 0);
+        }
+
+        final ImmutableList<MessageWithID> messages2 = persistence.readInflight("client1", false, 10, 256000, 0);
+        assertEquals(4, messages2.size());
+    }
+
+    @Test
+    public void test_read_inflight_pubrel_and_publish() {
+        final PUBREL[] pubrels = new PUBREL[4];
+        for (int i = 0; i < pubrels.length; i++) {
+            pubrels[i] = new PUBREL(i + 1);
+        }
+        for (final PUBREL pubrel : pubrels) {
+            persistence.replace("client1", pubrel, 0);
+        }
+        final PUBLISH[] publishes = new PUBLISH[4];
+        for (int i = 0; i < publishes.length; i++) {
+            publishes[i] = createPublish(10 + i, (i % 2 == 0) ? QoS.EXACTLY_ONCE : QoS.AT_LEAST_ONCE, "topic" + i);
+        }
+        for (final PUBLISH publish : publishes) {
+            persistence.add("client1", false, publish, 100L, DISCARD, false, 0);
+        }
+
+        // Assign packet ID's
+        persistence.readNew("client1", false, ImmutableIntArray.of(1, 2, 3, 4), 256000, 0);
+
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client1", false, 10, 256000, 0);
+        assertEquals(8, messages.size());
+        assertTrue(messages.get(0) instanceof PUBREL);
+        assertTrue(messages.get(1) instanceof PUBREL);
+        assertTrue(messages.get(2) instanceof PUBREL);
+        assertTrue(messages.get(3) instanceof PUBREL);
+        assertTrue(messages.get(4) instanceof PUBLISH);
+        assertTrue(messages.get(5) instanceof PUBLISH);
+        assertTrue(messages.get(6) instanceof PUBLISH);
+        assertTrue(messages.get(7) instanceof PUBLISH);
+    }
+
+    @Test
+    public void test_add_discard() {
+        for (int i = 1; i <= 6; i++) {
+            persistence.add("client", false, createPublish(i, QoS.AT_LEAST_ONCE, "topic" + i), 3L, DISCARD, false, 0);
+        }
+        assertEquals(3, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6), byteLimit, 0);
+
+        assertEquals(3, publishes.size());
+        assertEquals(1, publishes.get(0).getPacketIdentifier());
+        assertEquals(2, publishes.get(1).getPacketIdentifier());
+        assertEquals(3, publishes.get(2).getPacketIdentifier());
+
+        verify(messageDroppedService, times(3)).queueFull(eq("client"), anyString(), anyInt());
+    }
+
+    @Test
+    public void test_add_discard_oldest() {
+        for (int i = 1; i <= 6; i++) {
+            persistence.add(
+                    "client", false, createPublish(i, QoS.AT_LEAST_ONCE, "topic" + i), 3L, DISCARD_OLDEST, false, 0);
+        }
+        assertEquals(3, persistence.size("client", false, 0));
+        final ImmutableList<PUBLISH> publishes =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6), byteLimit, 0);
+        assertEquals(3, publishes.size());
+        assertEquals("topic4", publishes.get(0).getTopic());
+        assertEquals("topic5", publishes.get(1).getTopic());
+        assertEquals("topic6", publishes.get(2).getTopic());
+        verify(messageDroppedService, times(3)).queueFull(eq("client"), anyString(), anyInt());
+    }
+
+    @Test
+    public void test_clear() {
+        for (int i = 0; i < 5; i++) {
+            persistence.add("client1", false, createPublish(1, QoS.AT_LEAST_ONCE), 100L, DISCARD, false, 0);
+        }
+
+        persistence.add("client1", false, createPublish(0, QoS.AT_MOST_ONCE), 100L, DISCARD, false, 0);
+        persistence.add("client2", false, createPublish(1, QoS.AT_LEAST_ONCE), 100L, DISCARD, false, 0);
+        persistence.clear("client1", false, 0);
+
+        final ImmutableList<PUBLISH> publishes1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6), byteLimit, 0);
+        assertEquals(0, publishes1.size());
+
+        final ImmutableList<PUBLISH> publishes2 =
+                persistence.readNew("client2", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6), byteLimit, 0);
+        assertEquals(1, publishes2.size());
+    }
+
+    @Test
+    public void test_replace() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("client", false, ImmutableIntArray.of(2, 3, 4), 256000, 0);
+        final String uniqueId = persistence.replace("client", new PUBREL(4), 0);
+        assertEquals("hivemqId_pub_2", uniqueId);
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertTrue(messages.get(2) instanceof PUBREL);
+    }
+
+    @Test
+    public void test_replca_false_id() {
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic", 1), 100L, DISCARD, false, 0);
+        persistence.readNew("client", false, ImmutableIntArray.of(1), 256000, 0);
+        final String uniqueId = persistence.remove("client", 1, "hivemqId_pub_2", 0);
+        assertNull(uniqueId);
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(1, messages.size());
+        assertEquals(1, messages.get(0).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_replace_not_found() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        final String uniqueId = persistence.replace("client", new PUBREL(4), 0);
+        assertEquals(4, persistence.size("client", false, 0));
+        assertNull(uniqueId);
+    }
+
+    @Test
+    public void test_remove() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("client", false, ImmutableIntArray.of(2, 3, 4), 256000, 0);
+        final String uniqueId = persistence.remove("client", 4, 0);
+        assertEquals("hivemqId_pub_2", uniqueId);
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(2, messages.size());
+        assertEquals(2, messages.get(0).getPacketIdentifier());
+        assertEquals(3, messages.get(1).getPacketIdentifier());
+
+        assertEquals(2, persistence.size("client", false, 0));
+
+        verify(payloadPersistence, times(1)).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_remove_not_found() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        final String uniqueId = persistence.remove("client", 1, 0);
+        assertNull(uniqueId);
+    }
+
+    @Test
+    public void test_remove_false_id() {
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic", 1), 100L, DISCARD, false, 0);
+        persistence.readNew("client", false, ImmutableIntArray.of(1), 256000, 0);
+        final String uniqueId = persistence.remove("client", 1, "hivemqId_pub_2", 0);
+        assertNull(uniqueId);
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("client", false, 10, byteLimit, 0);
+        assertEquals(1, messages.size());
+        assertEquals(1, messages.get(0).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_drop_qos_0_memory_exceeded() {
+
+        final int queueLimit = (int) (Runtime.getRuntime().maxMemory() / 10000);
+
+        persistence.add(
+                "client", false, createBigPublish(0, QoS.AT_MOST_ONCE, "topic1", 1, queueLimit), 100L, DISCARD, false,
+                0);
+        persistence.add(
+                "client", false, createBigPublish(1, QoS.AT_MOST_ONCE, "topic5", 2, queueLimit), 100L, DISCARD, false,
+                0);
+
+        verify(payloadPersistence).decrementReferenceCounter(1);
+        verify(messageDroppedService).qos0MemoryExceeded(eq("client"), eq("topic5"), eq(0), anyLong(), anyLong());
+    }
+
+    @Test
+    public void test_drop_qos_0_memory_exceeded_shared() {
+
+        final int queueLimit = (int) (Runtime.getRuntime().maxMemory() / 10000);
+
+        persistence.add(
+                "client", false, createBigPublish(0, QoS.AT_MOST_ONCE, "topic1", 1, queueLimit), 100L, DISCARD, false,
+                0);
+        persistence.add(
+                "group", true, createBigPublish(1, QoS.AT_MOST_ONCE, "topic5", 2, queueLimit), 100L, DISCARD, false, 0);
+
+        verify(payloadPersistence).decrementReferenceCounter(1);
+        verify(messageDroppedService).qos0MemoryExceededShared(eq("group"), eq("topic5"), eq(0), anyLong(), anyLong());
+    }
+
+    @Test
+    public void test_read_new_expired_mixed_qos() {
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_MOST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_MOST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2), 10000L, 0);
+        final ImmutableList<PUBLISH> messages2 =
+                persistence.readNew("client2", false, ImmutableIntArray.of(1, 2), 10000L, 0);
+
+        assertEquals(0, messages1.size());
+        assertEquals(0, messages2.size());
+    }
+
+    @Test
+    public void test_read_new_part_expired_qos0() {
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_MOST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_MOST_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_MOST_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_MOST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_MOST_ONCE, 110, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2), 10000L, 0);
+        final ImmutableList<PUBLISH> messages2 =
+                persistence.readNew("client2", false, ImmutableIntArray.of(1, 2), 10000L, 0);
+
+        assertEquals(1, messages1.size());
+        assertEquals(2, messages2.size());
+    }
+
+    @Test
+    public void test_read_new_part_expired_qos1() {
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_LEAST_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_LEAST_ONCE, 110, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2), 10000L, 0);
+        final ImmutableList<PUBLISH> messages2 =
+                persistence.readNew("client2", false, ImmutableIntArray.of(1, 2), 10000L, 0);
+
+        assertEquals(1, messages1.size());
+        assertEquals(2, messages2.size());
+    }
+
+    @Test
+    public void test_read_new_part_expired_qos2() {
+        persistence.add(
+                "client1", false, createPublish(0, QoS.EXACTLY_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.EXACTLY_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        persistence.add(
+                "client2", false, createPublish(0, QoS.EXACTLY_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.EXACTLY_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.EXACTLY_ONCE, 110, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+        final ImmutableList<PUBLISH> messages2 =
+                persistence.readNew("client2", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+
+        assertEquals(1, messages1.size());
+        assertEquals(2, messages2.size());
+    }
+
+    @Test
+    public void test_read_new_part_expired_mixed_qos() {
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_MOST_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_MOST_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client2", false, createPublish(0, QoS.AT_LEAST_ONCE, 110, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+
+        persistence.add(
+                "client3", false, createPublish(0, QoS.EXACTLY_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client3", false, createPublish(0, QoS.EXACTLY_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client3", false, createPublish(0, QoS.EXACTLY_ONCE, 100, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client3", false, createPublish(0, QoS.EXACTLY_ONCE, 110, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> messages1 =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+        final ImmutableList<PUBLISH> messages2 =
+                persistence.readNew("client2", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+        final ImmutableList<PUBLISH> messages3 =
+                persistence.readNew("client3", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+
+        assertEquals(1, messages1.size());
+        assertEquals(2, messages2.size());
+        assertEquals(2, messages3.size());
+    }
+
+    @Test
+    public void test_clean_up() {
+        persistence.add("removed", false, createPublish(0, QoS.AT_LEAST_ONCE), 10, DISCARD, false, 0);
+        persistence.clear("removed", false, 0);
+
+        persistence.readNew("empty", false, ImmutableIntArray.of(1), 100000L, 0);
+
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic2"), 10, DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_MOST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add("client1", false, createPublish(0, QoS.AT_MOST_ONCE, "topic2"), 10, DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> newMessages =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1), 10000L, 0);
+        assertEquals(1, newMessages.size());
+        assertEquals("topic2", newMessages.get(0).getTopic());
+
+        final ImmutableSet<String> sharedQueues = persistence.cleanUp(0);
+
+        assertTrue(sharedQueues.isEmpty());
+        verify(payloadPersistence, times(5)).decrementReferenceCounter(
+                anyLong()); // 3 expired + 1 clear + 1 poll(readNew)
+        assertEquals(1, persistence.size("client1", false, 0));
+    }
+
+    @Test
+    public void test_clean_up_only_visits_due_queues() {
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 10, System.currentTimeMillis() - 10000), 10,
+                DISCARD, false, 0);
+        persistence.add(
+                "client1", false, createPublish(0, QoS.AT_LEAST_ONCE, 100000, System.currentTimeMillis()), 10,
+                DISCARD, false, 0);
+        persistence.add("client2", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic2"), 10, DISCARD, false, 0);
+
+        persistence.cleanUp(0);
+
+        verify(payloadPersistence, times(1)).decrementReferenceCounter(anyLong());
+        assertEquals(1, persistence.size("client1", false, 0));
+        assertEquals(1, persistence.size("client2", false, 0));
+
+        persistence.cleanUp(0);
+
+        verify(payloadPersistence, times(1)).decrementReferenceCounter(anyLong());
+        assertEquals(1, persistence.size("client1", false, 0));
+    }
+
+    @Test
+    public void test_clean_up_shared() {
+        persistence.add(
+                "name/topic1", true, createPublish(0, QoS.AT_LEAST_ONCE, 1000, System.currentTimeMillis()), 10, DISCARD,
+                false,
+                0);
+        persistence.add(
+                "name/topic2", true, createPublish(1, QoS.AT_LEAST_ONCE, 1000, System.currentTimeMillis()), 10, DISCARD,
+                false,
+                0);
+
+        final ImmutableSet<String> sharedQueues = persistence.cleanUp(0);
+        assertEquals(2, sharedQueues.size());
+    }
+
+    @Test
+    public void test_overlapping_ids() {
+
+        persistence.add("id", false, createPublish(1, QoS.AT_LEAST_ONCE, "not_shared"), 10, DISCARD, false, 0);
+        persistence.add("id", false, createPublish(0, QoS.AT_MOST_ONCE, "not_shared"), 10, DISCARD, false, 0);
+
+        persistence.add("id", true, createPublish(1, QoS.AT_LEAST_ONCE, "shared"), 10, DISCARD, false, 0);
+        persistence.add("id", true, createPublish(0, QoS.AT_MOST_ONCE, "shared"), 10, DISCARD, false, 0);
+
+        final ImmutableList<PUBLISH> notSharedMessages =
+                persistence.readNew("id", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+        final ImmutableList<PUBLISH> sharedMessages =
+                persistence.readNew("id", true, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+
+        assertEquals(2, notSharedMessages.size());
+        assertEquals(2, sharedMessages.size());
+
+        assertEquals("not_shared", notSharedMessages.get(0).getTopic());
+        assertEquals("not_shared", notSharedMessages.get(1).getTopic());
+
+        assertEquals("shared", sharedMessages.get(0).getTopic());
+        assertEquals("shared", sharedMessages.get(1).getTopic());
+
+        assertEquals(1, persistence.size("id", false, 0));
+        assertEquals(1, persistence.size("id", true, 0));
+    }
+
+    @Test
+    public void test_remove_shared() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add(
+                    "group/topic", true, createPublish(1, QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.removeShared("group/topic", "hivemqId_pub_2", 0);
+        final ImmutableList<PUBLISH> messages =
+                persistence.readNew("group/topic", true, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+
+        assertEquals(2, messages.size());
+
+        assertEquals(2, persistence.size("group/topic", true, 0));
+
+        verify(payloadPersistence, times(1)).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_remove_in_flight_marker() {
+        for (int i = 0; i < 3; i++) {
+            persistence.add(
+                    "group/topic", true, createPublish(1, QoS.AT_LEAST_ONCE, "topic", i), 100L, DISCARD, false, 0);
+        }
+        persistence.readNew("group/topic", true,
+                ImmutableIntArray.of(SHARED_IN_FLIGHT_MARKER, SHARED_IN_FLIGHT_MARKER, SHARED_IN_FLIGHT_MARKER),
+                256000, 0);
+
+        persistence.removeInFlightMarker("group/topic", "hivemqId_pub_2", 0);
+        final ImmutableList<MessageWithID> messages = persistence.readInflight("group/topic", true, 10, byteLimit, 0);
+
+        assertEquals(2, messages.size());
+        assertEquals(SHARED_IN_FLIGHT_MARKER, messages.get(0).getPacketIdentifier());
+        assertEquals(SHARED_IN_FLIGHT_MARKER, messages.get(1).getPacketIdentifier());
+
+        assertEquals(3, persistence.size("group/topic", true, 0));
+
+        verify(payloadPersistence, never()).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_iterate_serialized_contains_in_flight_packet_ids() {
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic1"), 100L, DISCARD, false, 0);
+        persistence.add("client1", false, createPublish(0, QoS.AT_LEAST_ONCE, "topic2"), 100L, DISCARD, false, 0);
+        persistence.readNew("client1", false, ImmutableIntArray.of(5), 256000, 0);
+
+        final ClientQueuePersistenceSerializer serializer = new ClientQueuePersistenceSerializer(payloadPersistence);
+        final List<Integer> packetIds = new ArrayList<>();
+        persistence.iterateSerialized((bucketIndex, key, value) ->
+                packetIds.add(serializer.deserializePacketId(bytesToByteIterable(value))));
+
+        // the in-flight markers are not emitted as entries of their own
+        assertEquals(List.of(5, ClientQueuePersistenceSerializer.NO_PACKET_ID), packetIds);
+    }
+
+    @Test
+    public void test_packet_id_in_value_without_marker() {
+        final ClientQueuePersistenceSerializer serializer = new ClientQueuePersistenceSerializer(payloadPersistence);
+        final PUBLISH publish = createPublish(0, QoS.AT_LEAST_ONCE, "topic1");
+        persistence.putSerialized(0,
+                byteIterableToBytes(serializer.serializeNewPublishKey(new Key("client1", false))),
+                byteIterableToBytes(serializer.serializeAndSetPacketId(
+                        serializer.serializePublishWithoutPacketId(publish, false), 5)));
+
+        final ImmutableList<MessageWithID> inflight = persistence.readInflight("client1", false, 10, 256000, 0);
+        assertEquals(1, inflight.size());
+        assertEquals(5, inflight.get(0).getPacketIdentifier());
+        assertTrue(persistence.readNew("client1", false, ImmutableIntArray.of(6), 256000, 0).isEmpty());
+
+        persistence.remove("client1", 5, 0);
+        assertEquals(0, persistence.size("client1", false, 0));
+    }
+
+    @Test
+    public void test_remove_in_flight_marker_from_value() {
+        final ClientQueuePersistenceSerializer serializer = new ClientQueuePersistenceSerializer(payloadPersistence);
+        final PUBLISH publish = createPublish(0, QoS.AT_LEAST_ONCE, "topic", 1);
+        persistence.putSerialized(0,
+                byteIterableToBytes(serializer.serializeNewPublishKey(new Key("group/topic", true))),
+                byteIterableToBytes(serializer.serializeAndSetPacketId(
+                        serializer.serializePublishWithoutPacketId(publish, false), SHARED_IN_FLIGHT_MARKER)));
+
+        persistence.removeInFlightMarker("group/topic", "hivemqId_pub_1", 0);
+
+        assertTrue(persistence.readInflight("group/topic", true, 10, byteLimit, 0).isEmpty());
+        final ImmutableList<PUBLISH> messages = persistence.readNew("group/topic", true,
+                ImmutableIntArray.of(SHARED_IN_FLIGHT_MARKER), byteLimit, 0);
+        assertEquals(1, messages.size());
+        assertEquals("hivemqId_pub_1", messages.get(0).getUniqueId());
+    }
+
+    @Test
+    public void test_remove_all_qos_0_messages() {
+        persistence.add("client1", false, createPublish(1, QoS.AT_LEAST_ONCE, "topic1", 1), 100L, DISCARD, false, 0);
+        persistence.add("client1", false, createPublish(0, QoS.AT_MOST_ONCE, "topic2", 1), 100L, DISCARD, false, 0);
+        persistence.add("client1", false, createPublish(0, QoS.AT_MOST_ONCE, "topic3", 1), 100L, DISCARD, false, 0);
+
+        persistence.removeAllQos0Messages("client1", false, 0);
+
+        final ImmutableList<PUBLISH> messages =
+                persistence.readNew("client1", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+        assertEquals(1, messages.size());
+
+        verify(payloadPersistence, times(2)).decrementReferenceCounter(anyLong());
+    }
+
+    @Test
+    public void test_batched_add() {
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        for (int i = 0; i < 10; i++) {
+            publishes.add(createPublish(1, QoS.AT_LEAST_ONCE, "topic" + i));
+        }
+        persistence.add("client", false, publishes.build(), 100, DISCARD, false, 0);
+
+        assertEquals(10, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+
+        assertEquals(10, all.size());
+        assertEquals("topic0", all.get(0).getTopic());
+        assertEquals("topic1", all.get(1).getTopic());
+    }
+
+    @Test
+    public void test_batched_add_discard() {
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        for (int i = 0; i < 10; i++) {
+            publishes.add(createPublish(1, QoS.AT_LEAST_ONCE, "topic" + i));
+        }
+        persistence.add("client", false, publishes.build(), 5, DISCARD, false, 0);
+
+        assertEquals(5, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+        assertEquals(5, all.size());
+        assertEquals("topic0", all.get(0).getTopic());
+        assertEquals("topic1", all.get(1).getTopic());
+    }
+
+    @Test
+    public void test_batched_add_discard_oldest() {
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topicA"), 3, DISCARD_OLDEST, false, 0);
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topicB"), 3, DISCARD_OLDEST, false, 0);
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE, "topicC"), 3, DISCARD_OLDEST, false, 0);
+
+        for (int i = 0; i < 3; i++) {
+            publishes.add(createPublish(1, QoS.AT_LEAST_ONCE, "topic" + i));
+        }
+        persistence.add("client", false, publishes.build(), 3, DISCARD_OLDEST, false, 0);
+
+        assertEquals(3, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+        assertEquals(3, all.size());
+        assertEquals("topic0", all.get(0).getTopic());
+        assertEquals("topic1", all.get(1).getTopic());
+        assertEquals("topic2", all.get(2).getTopic());
+    }
+
+    @Test
+    public void test_batched_add_larger_than_queue_discard_oldest() {
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+
+        for (int i = 0; i < 6; i++) {
+            publishes.add(createPublish(1, QoS.AT_LEAST_ONCE, "topic" + i));
+        }
+        persistence.add("client", false, publishes.build(), 3, DISCARD_OLDEST, false, 0);
+
+        assertEquals(3, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+        assertEquals(3, all.size());
+        assertEquals("topic3", all.get(0).getTopic());
+        assertEquals("topic4", all.get(1).getTopic());
+        assertEquals("topic5", all.get(2).getTopic());
+    }
+
+    @Test
+    public void test_batched_drop_qos_0_memory_exceeded() {
+
+        final int queueLimit = (int) (Runtime.getRuntime().maxMemory() / 10000);
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        publishes.add(createBigPublish(0, QoS.AT_MOST_ONCE, "topic1", 1, queueLimit));
+        publishes.add(createBigPublish(1, QoS.AT_MOST_ONCE, "topic2", 2, queueLimit));
+        persistence.add("client", false, publishes.build(), 100L, DISCARD, false, 0);
+
+        verify(payloadPersistence).decrementReferenceCounter(1);
+        verify(messageDroppedService).qos0MemoryExceeded(eq("client"), eq("topic2"), eq(0), anyLong(), anyLong());
+
+        assertEquals(1, persistence.size("client", false, 0));
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+        assertEquals(1, all.size());
+    }
+
+    @Test
+    public void test_batched_add_retained_dont_discard() {
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        for (int i = 0; i < 5; i++) {
+            publishes.add(createPublish(1, QoS.AT_LEAST_ONCE, "topic" + i));
+        }
+        persistence.add("client", false, publishes.build(), 2, DISCARD, true, 0);
+
+        assertEquals(5, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+        assertEquals(5, all.size());
+        assertEquals("topic0", all.get(0).getTopic());
+        assertEquals("topic1", all.get(1).getTopic());
+    }
+
+    @Test
+    public void test_batched_add_retained_discard_over_retained_limit() {
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        for (int i = 0; i < 10; i++) {
+            publishes.add(createPublish(1, QoS.AT_LEAST_ONCE, "topic" + i));
+        }
+        persistence.add("client", false, publishes.build(), 2, DISCARD, true, 0);
+
+        assertEquals(5, persistence.size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 10000L, 0);
+        assertEquals(5, all.size());
+        assertEquals("topic0", all.get(0).getTopic());
+        assertEquals("topic1", all.get(1).getTopic());
+    }
+
+    @Test
+    public void add_and_poll_mixture_retained() {
+        for (int i = 0; i < 12; i++) {
+            if (i % 2 == 0) {
+                persistence.add(
+                        "client", false, createPublish(1, QoS.EXACTLY_ONCE, "topic" + i), 5, DISCARD_OLDEST, false, 0);
+            } else {
+                persistence.add(
+                        "client", false, createPublish(1, QoS.EXACTLY_ONCE, "topic" + i), 5, DISCARD_OLDEST, true, 0);
+            }
+        }
+        final ImmutableList<PUBLISH> all = persistence.readNew(
+                "client", false, ImmutableIntArray.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12), 10000L, 0);
+        assertEquals(10, persistence.size("client", false, 0));
+        assertEquals(10, all.size());
+
+        final Set<PUBLISH> notExpectedMessages = all.stream()
+                .filter(publish -> publish.getTopic().equals("10") || publish.getTopic().equals("11"))
+                .collect(Collectors.toSet());
+        assertTrue(notExpectedMessages.isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void test_increase_negative_size() {
+
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+
+        final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = getClientQos0MemoryMap();
+
+        assertNull(clientQos0MemoryMap.get("client"));
+
+    }
+
+    @Test(timeout = 5000)
+    public void test_increase_positive_size() {
+
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+
+        final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = getClientQos0MemoryMap();
+
+        assertNotNull(clientQos0MemoryMap.get("client"));
+
+    }
+
+    @Test(timeout = 5000)
+    public void test_multiple_increases() {
+
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+
+        final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = getClientQos0MemoryMap();
+
+        assertNull(clientQos0MemoryMap.get("client"));
+
+    }
+
+    @Test(timeout = 5000)
+    public void test_increase_decrease_increase_decrease_increase() {
+
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), -10000);
+        increaseClientQos0MessagesMemory(new Key("client", false), 10000);
+
+        final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = getClientQos0MemoryMap();
+
+        assertNotNull(clientQos0MemoryMap.get("client"));
+
+    }
+
+    @Test(timeout = 5000)
+    public void test_add_qos_0_per_client_exceeded() {
+
+        persistence.add("client", false, createBigPublish(1, QoS.AT_MOST_ONCE, "topic", 1, 500), 1000, DISCARD, false, BucketUtils.getBucket("client", 4));
+        persistence.add("client", false, createBigPublish(1, QoS.AT_MOST_ONCE, "topic", 1, 500), 1000, DISCARD, false, BucketUtils.getBucket("client", 4));
+
+        verify(messageDroppedService).qos0MemoryExceeded(eq("client"), eq("topic"), eq(0), anyLong(), eq(1024L));
+
+        final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = getClientQos0MemoryMap();
+
+        assertNotNull(clientQos0MemoryMap.get("client"));
+
+    }
+
+    @Test(timeout = 5000)
+    public void test_add_qos_0_per_client_exactly_exceeded() {
+
+
+        final PUBLISH exactly1024bytesPublish = createPublish(1, QoS.AT_MOST_ONCE, "topic", 1, new byte[753]);
+
+        assertEquals(1024, exactly1024bytesPublish.getEstimatedSizeInMemory());
+
+        persistence.add("client", false, exactly1024bytesPublish, 1000, DISCARD, false, BucketUtils.getBucket("client", 4));
+        persistence.add("client", false, createPublish(2, QoS.AT_MOST_ONCE, "topic", 2), 1000, DISCARD, false, BucketUtils.getBucket("client", 4));
+
+        verify(messageDroppedService).qos0MemoryExceeded(eq("client"), eq("topic"), eq(0), anyLong(), eq(1024L));
+
+        final ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap = getClientQos0MemoryMap();
+
+        assertNotNull(clientQos0MemoryMap.get("client"));
+
+    }
+
+    @Test(timeout = 5000)
+    public void test_add_qos_0_per_client_exceeded_discards_oldest() {
+
+        final PUBLISH exactly1024bytesPublish = createPublish(1, QoS.AT_MOST_ONCE, "topic", 1, new byte[753]);
+        persistence.add("client", false, exactly1024bytesPublish, 1000, DISCARD, false, 0);
+        persistence.add("client", false, createPublish(2, QoS.AT_MOST_ONCE, "topic2", 2), 1000, DISCARD, false, 0);
+
+        verify(messageDroppedService).qos0MemoryExceeded(eq("client"), eq("topic"), eq(0), anyLong(), eq(1024L));
+        verify(payloadPersistence).decrementReferenceCounter(1L);
+        assertEquals(1, persistence.size("client", false, 0));
+        assertEquals(1, persistence.qos0Size("client", false, 0));
+
+        final ImmutableList<PUBLISH> all =
+                persistence.readNew("client", false, ImmutableIntArray.of(1, 2, 3), 10000L, 0);
+        assertEquals(1, all.size());
+        assertEquals("topic2", all.get(0).getTopic());
+        assertNull(getClientQos0MemoryMap().get("client"));
+    }
+
+    private PUBLISH createPublish(final int packetId, final QoS qos) {
+        return createPublish(packetId, qos, "topic");
+    }
+
+    private PUBLISH createPublish(final int packetId, final QoS qos, final long expiryInterval, final long timestamp) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(packetId)
+                .withQoS(qos)
+                .withPayloadId(1L)
+                .withPayload("message".getBytes())
+                .withTopic("topic")
+                .withHivemqId("hivemqId")
+                .withPersistence(payloadPersistence)
+                .withMessageExpiryInterval(expiryInterval)
+                .withTimestamp(timestamp)
+                .build();
+    }
+
+    private PUBLISH createPublish(final int packetId, final QoS qos, final String topic) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(packetId)
+                .withQoS(qos)
+                .withPayloadId(1L)
+                .withPayload("message".getBytes())
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .withPersistence(payloadPersistence)
+                .build();
+    }
+
+    private PUBLISH createPublish(final int packetId, final QoS qos, final String topic, final int publishId) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(packetId)
+                .withQoS(qos)
+                .withPayloadId(1L)
+                .withPayload("message".getBytes())
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .withPersistence(payloadPersistence)
+                .withPublishId(publishId)
+                .build();
+    }
+
+
+    private PUBLISH createPublish(final int packetId, final QoS qos, final String topic, final int publishId, final byte[] message) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(packetId)
+                .withQoS(qos)
+                .withPayloadId(1L)
+                .withPayload(message)
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .withPersistence(payloadPersistence)
+                .withPublishId(publishId)
+                .build();
+    }
+
+    private PUBLISH createBigPublish(
+            final int packetId, final QoS qos, final String topic, final int publishId, final int queueLimit) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(packetId)
+                .withQoS(qos)
+                .withPayloadId(1L)
+                .withPayload(RandomStringUtils.randomAlphanumeric(queueLimit).getBytes())
+                .withCorrelationData(RandomStringUtils.randomAlphanumeric(65000).getBytes())
+                .withResponseTopic(RandomStringUtils.randomAlphanumeric(65000))
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .withPublishId(publishId)
+                .withPersistence(payloadPersistence)
+                .build();
+    }
+}
\ No newline at end of file
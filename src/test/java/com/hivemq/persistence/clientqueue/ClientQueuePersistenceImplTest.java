@@ -44,6 +44,10 @@ import org.mockito.MockitoAnnotations;
 import util.InitFutureUtilsExecutorRule;
 import util.TestSingleWriterFactory;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -117,6 +121,27 @@ public class ClientQueuePersistenceImplTest {
                 anyBoolean(), anyInt());
     }
 
+    @Test(timeout = 5000)
+    public void test_add_all_one_task_per_bucket() throws ExecutionException, InterruptedException {
+        final Map<String, PUBLISH> publishes = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            publishes.put("client" + i, createPublish(1, QoS.AT_LEAST_ONCE, "topic"));
+        }
+        final Set<Integer> buckets = new HashSet<>();
+        for (final String client : publishes.keySet()) {
+            buckets.add(BucketUtils.getBucket(client, bucketSize));
+        }
+
+        clientQueuePersistence.addAll(publishes, false).get();
+
+        verify(localPersistence, times(buckets.size())).addAll(
+                anyMap(), eq(false), eq(1000L), eq(QueuedMessagesStrategy.DISCARD), anyInt());
+        for (final Integer bucket : buckets) {
+            verify(localPersistence).addAll(
+                    anyMap(), eq(false), eq(1000L), eq(QueuedMessagesStrategy.DISCARD), eq(bucket));
+        }
+    }
+
     @Test(timeout = 5000)
     public void test_publish_avaliable() {
 
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.persistence.PersistenceStartup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+
+public class ClientQueueRocksDBLocalPersistenceTest
+        extends AbstractClientQueueLocalPersistenceTest<ClientQueueRocksDBLocalPersistence> {
+
+    @Override
+    ClientQueueRocksDBLocalPersistence createPersistence() {
+        return new ClientQueueRocksDBLocalPersistence(
+                payloadPersistence,
+                localPersistenceFileUtil,
+                new PersistenceStartup(),
+                messageDroppedService);
+    }
+
+    @Override
+    ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets() {
+        return persistence.getQueueSizeBuckets();
+    }
+
+    @Override
+    ConcurrentHashMap<String, AtomicInteger> getClientQos0MemoryMap() {
+        return persistence.getClientQos0MemoryMap();
+    }
+
+    @Override
+    void increaseClientQos0MessagesMemory(final Key key, final int size) {
+        persistence.increaseClientQos0MessagesMemory(key, size);
+    }
+}
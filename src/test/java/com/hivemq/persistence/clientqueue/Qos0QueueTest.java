@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientqueue;
+
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class Qos0QueueTest {
+
+    @Mock
+    private PublishPayloadPersistence payloadPersistence;
+
+    private Qos0Queue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        queue = new Qos0Queue();
+    }
+
+    @Test
+    public void test_empty() {
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.getMemory());
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void test_add_poll_fifo() {
+        for (int i = 0; i < 100; i++) {
+            queue.add(createPublish("topic" + i), false);
+        }
+        assertEquals(100, queue.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("topic" + i, queue.peek().getTopic());
+            assertEquals("topic" + i, queue.poll().getTopic());
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getMemory());
+    }
+
+    @Test
+    public void test_wrap_around_and_grow() {
+        for (int i = 0; i < 6; i++) {
+            queue.add(createPublish("topic" + i), i % 2 == 0);
+        }
+        for (int i = 0; i < 4; i++) {
+            queue.poll();
+        }
+        // the next adds wrap around the end of the ring and then grow it
+        for (int i = 6; i < 20; i++) {
+            queue.add(createPublish("topic" + i), i % 2 == 0);
+        }
+        assertEquals(16, queue.size());
+        assertEquals(8, queue.getRetainedCount());
+        for (int i = 4; i < 20; i++) {
+            assertEquals("topic" + i, queue.poll().getTopic());
+        }
+        assertEquals(0, queue.getRetainedCount());
+    }
+
+    @Test
+    public void test_memory() {
+        final PUBLISH publish1 = createPublish("topic1");
+        final PUBLISH publish2 = createPublish("topic2");
+        queue.add(publish1, false);
+        queue.add(publish2, true);
+
+        assertEquals(Qos0Queue.getSlotSize(publish1) + Qos0Queue.getSlotSize(publish2), queue.getMemory());
+        assertEquals(publish1.getEstimatedSizeInMemory() + Qos0Queue.SLOT_OVERHEAD, Qos0Queue.getSlotSize(publish1));
+        assertEquals(1, queue.getRetainedCount());
+
+        queue.poll();
+        assertEquals(Qos0Queue.getSlotSize(publish2), queue.getMemory());
+        assertEquals(1, queue.getRetainedCount());
+
+        queue.poll();
+        assertEquals(0, queue.getMemory());
+        assertEquals(0, queue.getRetainedCount());
+    }
+
+    @Test
+    public void test_drain_until_consumer_stops() {
+        for (int i = 0; i < 10; i++) {
+            queue.add(createPublish("topic" + i), false);
+        }
+        final List<PUBLISH> drained = new ArrayList<>();
+        final int removed = queue.drain(publish -> {
+            drained.add(publish);
+            return drained.size() < 3;
+        });
+
+        assertEquals(3, removed);
+        assertEquals(3, drained.size());
+        assertEquals("topic0", drained.get(0).getTopic());
+        assertEquals("topic2", drained.get(2).getTopic());
+        assertEquals(7, queue.size());
+        assertEquals("topic3", queue.peek().getTopic());
+    }
+
+    @Test
+    public void test_drain_all() {
+        for (int i = 0; i < 10; i++) {
+            queue.add(createPublish("topic" + i), true);
+        }
+        assertEquals(10, queue.drain(publish -> true));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getMemory());
+        assertEquals(0, queue.getRetainedCount());
+    }
+
+    @Test
+    public void test_remove_if_keeps_order() {
+        // move the head, so the remaining messages wrap around the end of the ring
+        for (int i = 0; i < 5; i++) {
+            queue.add(createPublish("drop"), false);
+        }
+        for (int i = 0; i < 5; i++) {
+            queue.poll();
+        }
+        for (int i = 0; i < 8; i++) {
+            queue.add(createPublish(i % 2 == 0 ? "keep" + i : "remove" + i), i % 4 == 0);
+        }
+
+        final int removed = queue.removeIf(publish -> publish.getTopic().startsWith("remove"));
+
+        assertEquals(4, removed);
+        assertEquals(4, queue.size());
+        assertEquals(2, queue.getRetainedCount());
+        for (int i = 0; i < 8; i += 2) {
+            assertEquals("keep" + i, queue.poll().getTopic());
+        }
+        assertEquals(0, queue.getMemory());
+        assertEquals(0, queue.getRetainedCount());
+    }
+
+    @Test
+    public void test_remove_if_all() {
+        for (int i = 0; i < 3; i++) {
+            queue.add(createPublish("topic" + i), true);
+        }
+        assertEquals(3, queue.removeIf(publish -> true));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getMemory());
+        assertEquals(0, queue.getRetainedCount());
+
+        queue.add(createPublish("topic"), false);
+        assertEquals("topic", queue.poll().getTopic());
+    }
+
+    private PUBLISH createPublish(final String topic) {
+        return new PUBLISHFactory.Mqtt5Builder().withPacketIdentifier(0)
+                .withQoS(QoS.AT_MOST_ONCE)
+                .withPayloadId(1L)
+                .withPayload("message".getBytes())
+                .withTopic(topic)
+                .withHivemqId("hivemqId")
+                .withPersistence(payloadPersistence)
+                .build();
+    }
+}
@@ -17,9 +17,11 @@
 package com.hivemq.persistence.clientsession;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.connect.MqttWillPublish;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
@@ -29,10 +31,14 @@ import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import util.InitFutureUtilsExecutorRule;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -43,6 +49,7 @@ import static org.mockito.Mockito.*;
 /**
  * @author Lukas Brandl
  */
+@SuppressWarnings("unchecked")
 public class PendingWillMessagesTest {
 
     @Rule
@@ -153,6 +160,129 @@ public class PendingWillMessagesTest {
 
     }
 
+    @Test
+    public void test_check_send_only_due_wills() {
+        final MqttWillPublish mqttWillPublish = new MqttWillPublish.Mqtt5Builder().withHivemqId("hivemqId")
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES).withPayload("message".getBytes())
+                .withQos(QoS.AT_MOST_ONCE).withTopic("topic").withDelayInterval(5).build();
+        final ClientSession clientSession = new ClientSession(false, 10, new ClientSessionWill(mqttWillPublish, 1L));
+        when(clientSessionLocalPersistence.getSessions(anyCollection(), eq(false))).thenReturn(ImmutableMap.of("client1", clientSession, "client2", clientSession));
+
+        pendingWillMessages.addPendingWill("client1", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+        pendingWillMessages.addPendingWill("client2", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 4000));
+        pendingWillMessages.addPendingWill("client3", new PendingWillMessages.PendingWill(30, System.currentTimeMillis()));
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+        checkWillsTask.run();
+
+        final ArgumentCaptor<Collection> clientIdsCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(clientSessionLocalPersistence, times(1)).getSessions(clientIdsCaptor.capture(), eq(false));
+        assertEquals(ImmutableSet.of("client1", "client2"), ImmutableSet.copyOf(clientIdsCaptor.getValue()));
+        assertEquals(ImmutableSet.of("client1", "client2"), capturePublishAll(1).get(0).keySet());
+        verify(publishService, never()).publish(any(PUBLISH.class), any(ExecutorService.class), anyString());
+        verify(clientSessionPersistence).removeWill("client1");
+        verify(clientSessionPersistence).removeWill("client2");
+        assertEquals(1, pendingWillMessages.pendingWills.size());
+    }
+
+    @Test
+    public void test_check_failed_will_retried_and_others_sent() {
+        final MqttWillPublish mqttWillPublish = new MqttWillPublish.Mqtt5Builder().withHivemqId("hivemqId")
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES).withPayload("message".getBytes())
+                .withQos(QoS.AT_MOST_ONCE).withTopic("topic").withDelayInterval(5).build();
+        final ClientSession clientSession = new ClientSession(false, 10, new ClientSessionWill(mqttWillPublish, 1L));
+        when(clientSessionLocalPersistence.getSessions(anyCollection(), eq(false))).thenThrow(new RuntimeException("test"));
+        when(clientSessionLocalPersistence.getSession(eq("client1"), eq(false)))
+                .thenThrow(new RuntimeException("test"))
+                .thenReturn(clientSession);
+        when(clientSessionLocalPersistence.getSession(eq("client2"), eq(false))).thenReturn(clientSession);
+
+        pendingWillMessages.addPendingWill("client1", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+        pendingWillMessages.addPendingWill("client2", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 4000));
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+
+        assertEquals(ImmutableSet.of("client2"), capturePublishAll(1).get(0).keySet());
+        assertEquals(1, pendingWillMessages.pendingWills.size());
+
+        checkWillsTask.run();
+
+        assertEquals(ImmutableSet.of("client1"), capturePublishAll(2).get(1).keySet());
+        assertEquals(0, pendingWillMessages.pendingWills.size());
+    }
+
+    @Test
+    public void test_check_failed_publish_retried() {
+        final MqttWillPublish mqttWillPublish = new MqttWillPublish.Mqtt5Builder().withHivemqId("hivemqId")
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES).withPayload("message".getBytes())
+                .withQos(QoS.AT_MOST_ONCE).withTopic("topic").withDelayInterval(5).build();
+        final ClientSession clientSession = new ClientSession(false, 10, new ClientSessionWill(mqttWillPublish, 1L));
+        when(clientSessionLocalPersistence.getSessions(anyCollection(), eq(false))).thenReturn(ImmutableMap.of("client", clientSession));
+        when(publishService.publishAll(anyMap(), any(ExecutorService.class)))
+                .thenThrow(new RuntimeException("test"))
+                .thenReturn(Futures.immediateFuture(null));
+
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+
+        verify(clientSessionPersistence, never()).removeWill(anyString());
+        assertEquals(1, pendingWillMessages.pendingWills.size());
+
+        checkWillsTask.run();
+
+        verify(publishService, times(2)).publishAll(anyMap(), any(ExecutorService.class));
+        verify(clientSessionPersistence).removeWill("client");
+        assertEquals(0, pendingWillMessages.pendingWills.size());
+    }
+
+    @Test
+    public void test_check_will_cancelled_while_reading_session_not_sent() {
+        final MqttWillPublish mqttWillPublish = new MqttWillPublish.Mqtt5Builder().withHivemqId("hivemqId")
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES).withPayload("message".getBytes())
+                .withQos(QoS.AT_MOST_ONCE).withTopic("topic").withDelayInterval(5).build();
+        final ClientSession clientSession = new ClientSession(false, 10, new ClientSessionWill(mqttWillPublish, 1L));
+        when(clientSessionLocalPersistence.getSessions(anyCollection(), eq(false))).thenAnswer(invocation -> {
+            pendingWillMessages.cancelWill("client");
+            return ImmutableMap.of("client", clientSession);
+        });
+
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+
+        verify(publishService, never()).publishAll(anyMap(), any(ExecutorService.class));
+        assertEquals(0, pendingWillMessages.pendingWills.size());
+    }
+
+    @Test
+    public void test_check_cancelled_will_not_sent() {
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+        pendingWillMessages.cancelWill("client");
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+
+        verify(clientSessionLocalPersistence, never()).getSessions(anyCollection(), anyBoolean());
+        verify(publishService, never()).publishAll(anyMap(), any(ExecutorService.class));
+    }
+
+    @Test
+    public void test_check_will_added_again_not_sent_early() {
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(30, System.currentTimeMillis()));
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+
+        verify(clientSessionLocalPersistence, never()).getSessions(anyCollection(), anyBoolean());
+        assertEquals(1, pendingWillMessages.pendingWills.size());
+    }
+
     @Test
     public void test_check_send() {
 
@@ -161,13 +291,34 @@ public class PendingWillMessagesTest {
                 .withQos(QoS.AT_MOST_ONCE).withTopic("topic").withDelayInterval(5).build();
         final ClientSessionWill sessionWill = new ClientSessionWill(mqttWillPublish, 1L);
         final ClientSession clientSession = new ClientSession(false, 10, sessionWill);
-        when(clientSessionLocalPersistence.getSession("client", false)).thenReturn(clientSession);
-        pendingWillMessages.pendingWills.put("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+        when(clientSessionLocalPersistence.getSessions(anyCollection(), eq(false))).thenReturn(ImmutableMap.of("client", clientSession));
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
 
         final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
         checkWillsTask.run();
 
-        verify(publishService).publish(any(PUBLISH.class), any(ExecutorService.class), eq("client"));
+        final PUBLISH publish = capturePublishAll(1).get(0).get("client");
+        assertEquals("topic", publish.getTopic());
+        verify(clientSessionPersistence).removeWill("client");
+    }
+
+    @Test
+    public void test_check_session_without_will_not_sent() {
+        when(clientSessionLocalPersistence.getSessions(anyCollection(), eq(false))).thenReturn(ImmutableMap.of());
+        pendingWillMessages.addPendingWill("client", new PendingWillMessages.PendingWill(3, System.currentTimeMillis() - 5000));
+
+        final PendingWillMessages.CheckWillsTask checkWillsTask = pendingWillMessages.new CheckWillsTask();
+        checkWillsTask.run();
+
+        verify(publishService, never()).publishAll(anyMap(), any(ExecutorService.class));
+        verify(clientSessionPersistence, never()).removeWill(anyString());
+        assertEquals(0, pendingWillMessages.pendingWills.size());
+    }
 
+    @NotNull
+    private List<Map<String, PUBLISH>> capturePublishAll(final int times) {
+        final ArgumentCaptor<Map> publishesCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(publishService, times(times)).publishAll(publishesCaptor.capture(), any(ExecutorService.class));
+        return (List) publishesCaptor.getAllValues();
     }
-}
\ No newline at end of file
+}
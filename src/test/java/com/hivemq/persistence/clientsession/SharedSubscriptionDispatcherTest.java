@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.clientsession;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.mqtt.topic.SubscriptionFlags;
+import com.hivemq.persistence.ChannelPersistence;
+import com.hivemq.util.ChannelAttributes;
+import io.netty.channel.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import util.TestChannelAttribute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class SharedSubscriptionDispatcherTest {
+
+    private static final String GROUP = "group/topic";
+
+    @Mock
+    private SharedSubscriptionService sharedSubscriptionService;
+
+    @Mock
+    private ChannelPersistence channelPersistence;
+
+    private MetricRegistry metricRegistry;
+
+    private final List<String> polled = new ArrayList<>();
+    private final List<String> skipped = new ArrayList<>();
+
+    private final SharedSubscriptionDispatchStrategy.Poller poller = new SharedSubscriptionDispatchStrategy.Poller() {
+        @Override
+        public void poll(final SubscriberWithQoS subscriber, final Channel channel) {
+            polled.add(subscriber.getSubscriber());
+        }
+
+        @Override
+        public void skipped(final SubscriberWithQoS subscriber) {
+            skipped.add(subscriber.getSubscriber());
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        InternalConfigurations.MAX_INFLIGHT_WINDOW_SIZE = 50;
+    }
+
+    @Test
+    public void test_create_strategy() {
+        assertTrue(SharedSubscriptionDispatcher.createStrategy("round-robin") instanceof RoundRobinDispatchStrategy);
+        assertTrue(SharedSubscriptionDispatcher.createStrategy("LEAST-INFLIGHT") instanceof LeastInflightDispatchStrategy);
+        assertTrue(SharedSubscriptionDispatcher.createStrategy("writability-weighted") instanceof WritabilityWeightedDispatchStrategy);
+        assertTrue(SharedSubscriptionDispatcher.createStrategy("unknown") instanceof RoundRobinDispatchStrategy);
+    }
+
+    @Test
+    public void test_round_robin_rotates() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new RoundRobinDispatchStrategy());
+        subscribers("client1", "client2", "client3");
+        channel("client1", 0, true, 0);
+        channel("client2", 0, true, 0);
+        channel("client3", 0, true, 0);
+
+        dispatcher.dispatch(GROUP, poller);
+        assertEquals(List.of("client1", "client2", "client3"), polled);
+
+        polled.clear();
+        dispatcher.dispatch(GROUP, poller);
+        assertEquals(List.of("client2", "client3", "client1"), polled);
+    }
+
+    @Test
+    public void test_round_robin_skips_members_with_messages_in_flight() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new RoundRobinDispatchStrategy());
+        subscribers("client1", "client2", "client3");
+        channel("client1", 1, true, 0);
+        channel("client2", 0, true, 0);
+
+        dispatcher.dispatch(GROUP, poller);
+
+        assertEquals(List.of("client2"), polled);
+        assertEquals(List.of("client1"), skipped);
+        assertEquals(1, metricRegistry.counter("com.hivemq.subscriptions.shared.group/topic.polls.count").getCount());
+        assertEquals(1, metricRegistry.counter("com.hivemq.subscriptions.shared.group/topic.skipped.count").getCount());
+    }
+
+    @Test
+    public void test_least_inflight_order() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new LeastInflightDispatchStrategy());
+        subscribers("client1", "client2", "client3", "client4");
+        channel("client1", 10, true, 0);
+        channel("client2", 0, true, 0);
+        channel("client3", 50, true, 0);
+        channel("client4", 3, true, 0);
+
+        dispatcher.dispatch(GROUP, poller);
+
+        assertEquals(List.of("client2", "client4", "client1"), polled);
+        assertEquals(List.of("client3"), skipped);
+    }
+
+    @Test
+    public void test_least_inflight_rotates_equal_members() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new LeastInflightDispatchStrategy());
+        subscribers("client1", "client2");
+        channel("client1", 0, true, 0);
+        channel("client2", 0, true, 0);
+
+        dispatcher.dispatch(GROUP, poller);
+        dispatcher.dispatch(GROUP, poller);
+
+        assertEquals(List.of("client1", "client2", "client2", "client1"), polled);
+    }
+
+    @Test
+    public void test_writability_weighted_order() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new WritabilityWeightedDispatchStrategy());
+        subscribers("client1", "client2", "client3", "client4");
+        channel("client1", 0, true, 1000);
+        channel("client2", 5, true, 60000);
+        channel("client3", 0, false, 0);
+        channel("client4", 50, true, 60000);
+
+        dispatcher.dispatch(GROUP, poller);
+
+        assertEquals(List.of("client2", "client1"), polled);
+        assertEquals(List.of("client3", "client4"), skipped);
+    }
+
+    @Test
+    public void test_member_metrics_removed_when_member_leaves() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new RoundRobinDispatchStrategy());
+        subscribers("client1", "client2");
+        channel("client1", 0, true, 0);
+        channel("client2", 0, true, 0);
+
+        dispatcher.dispatch(GROUP, poller);
+        dispatcher.messagesSent(GROUP, "client1", 5);
+        dispatcher.messagesSent(GROUP, "client2", 2);
+
+        assertEquals(7, metricRegistry.counter("com.hivemq.subscriptions.shared.group/topic.messages.count").getCount());
+        assertEquals(5, metricRegistry.counter("com.hivemq.subscriptions.shared.group/topic.members.client1.messages.count").getCount());
+
+        subscribers("client2");
+        dispatcher.dispatch(GROUP, poller);
+
+        assertFalse(metricRegistry.getCounters().containsKey("com.hivemq.subscriptions.shared.group/topic.members.client1.messages.count"));
+        assertTrue(metricRegistry.getCounters().containsKey("com.hivemq.subscriptions.shared.group/topic.members.client2.messages.count"));
+
+        subscribers();
+        dispatcher.dispatch(GROUP, poller);
+
+        assertTrue(metricRegistry.getCounters().isEmpty());
+    }
+
+    @Test
+    public void test_group_metrics_registered_again_after_group_was_removed() {
+        final SharedSubscriptionDispatcher dispatcher = createDispatcher(new RoundRobinDispatchStrategy());
+        subscribers("client1");
+        channel("client1", 0, true, 0);
+
+        dispatcher.dispatch(GROUP, poller);
+        dispatcher.messagesSent(GROUP, "client1", 5);
+
+        subscribers();
+        dispatcher.dispatch(GROUP, poller);
+        assertTrue(metricRegistry.getCounters().isEmpty());
+
+        subscribers("client1");
+        dispatcher.dispatch(GROUP, poller);
+        dispatcher.messagesSent(GROUP, "client1", 2);
+
+        assertEquals(1, metricRegistry.getCounters().get("com.hivemq.subscriptions.shared.group/topic.polls.count").getCount());
+        assertEquals(2, metricRegistry.getCounters().get("com.hivemq.subscriptions.shared.group/topic.messages.count").getCount());
+        assertEquals(2, metricRegistry.getCounters().get("com.hivemq.subscriptions.shared.group/topic.members.client1.messages.count").getCount());
+    }
+
+    private SharedSubscriptionDispatcher createDispatcher(final SharedSubscriptionDispatchStrategy strategy) {
+        return new SharedSubscriptionDispatcher(sharedSubscriptionService, channelPersistence, metricRegistry, strategy);
+    }
+
+    private void subscribers(final String... clients) {
+        final ImmutableSet.Builder<SubscriberWithQoS> subscribers = ImmutableSet.builder();
+        final byte flags = SubscriptionFlags.getDefaultFlags(true, false, false);
+        for (final String client : clients) {
+            subscribers.add(new SubscriberWithQoS(client, 1, flags, null));
+        }
+        when(sharedSubscriptionService.getSharedSubscriber(GROUP)).thenReturn(subscribers.build());
+    }
+
+    private void channel(final String client, final int inFlightMessages, final boolean writable, final long bytesBeforeUnwritable) {
+        final Channel channel = mock(Channel.class);
+        when(channel.attr(ChannelAttributes.IN_FLIGHT_MESSAGES_SENT)).thenReturn(new TestChannelAttribute<>(true));
+        when(channel.attr(ChannelAttributes.IN_FLIGHT_MESSAGES)).thenReturn(new TestChannelAttribute<>(new AtomicInteger(inFlightMessages)));
+        when(channel.attr(ChannelAttributes.CLIENT_RECEIVE_MAXIMUM)).thenReturn(new TestChannelAttribute<>(null));
+        when(channel.isWritable()).thenReturn(writable);
+        when(channel.bytesBeforeUnwritable()).thenReturn(bytesBeforeUnwritable);
+        when(channelPersistence.get(client)).thenReturn(channel);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiryIndexTest {
+
+    private ExpiryIndex<String> expiryIndex;
+
+    @Before
+    public void before() {
+        expiryIndex = new ExpiryIndex<>(2);
+    }
+
+    @Test
+    public void test_get_due_earliest_first() {
+        expiryIndex.put(0, "c", 30);
+        expiryIndex.put(0, "a", 10);
+        expiryIndex.put(0, "b", 20);
+        expiryIndex.put(0, "d", 40);
+
+        assertEquals(ImmutableList.of("a", "b", "c"), expiryIndex.getDue(0, 30));
+        assertEquals(4, expiryIndex.size(0));
+    }
+
+    @Test
+    public void test_get_due_nothing_due() {
+        expiryIndex.put(0, "a", 10);
+
+        assertTrue(expiryIndex.getDue(0, 9).isEmpty());
+        assertTrue(expiryIndex.getDue(1, 100).isEmpty());
+    }
+
+    @Test
+    public void test_put_replaces_expiry() {
+        expiryIndex.put(0, "a", 10);
+        expiryIndex.put(0, "a", 50);
+
+        assertTrue(expiryIndex.getDue(0, 49).isEmpty());
+        assertEquals(ImmutableList.of("a"), expiryIndex.getDue(0, 50));
+        assertEquals(1, expiryIndex.size(0));
+    }
+
+    @Test
+    public void test_put_no_expiry_removes() {
+        expiryIndex.put(0, "a", 10);
+        expiryIndex.put(0, "a", ExpiryIndex.NO_EXPIRY);
+
+        assertEquals(0, expiryIndex.size(0));
+        assertTrue(expiryIndex.getDue(0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void test_put_if_earlier() {
+        expiryIndex.putIfEarlier(0, "a", 50);
+        expiryIndex.putIfEarlier(0, "a", 60);
+        assertTrue(expiryIndex.getDue(0, 49).isEmpty());
+
+        expiryIndex.putIfEarlier(0, "a", 20);
+        assertEquals(ImmutableList.of("a"), expiryIndex.getDue(0, 20));
+
+        expiryIndex.putIfEarlier(0, "a", ExpiryIndex.NO_EXPIRY);
+        assertEquals(ImmutableList.of("a"), expiryIndex.getDue(0, 20));
+        assertEquals(1, expiryIndex.size(0));
+    }
+
+    @Test
+    public void test_same_expiry_different_keys() {
+        expiryIndex.put(0, "a", 10);
+        expiryIndex.put(0, "b", 10);
+        expiryIndex.remove(0, "a");
+
+        assertEquals(ImmutableList.of("b"), expiryIndex.getDue(0, 10));
+    }
+
+    @Test
+    public void test_buckets_are_separate() {
+        expiryIndex.put(0, "a", 10);
+        expiryIndex.put(1, "b", 10);
+
+        assertEquals(ImmutableList.of("a"), expiryIndex.getDue(0, 10));
+        assertEquals(ImmutableList.of("b"), expiryIndex.getDue(1, 10));
+
+        expiryIndex.clear(0);
+        assertEquals(0, expiryIndex.size(0));
+        assertEquals(1, expiryIndex.size(1));
+
+        expiryIndex.clear();
+        assertEquals(0, expiryIndex.size(1));
+    }
+
+    @Test
+    public void test_remove_unknown_key() {
+        expiryIndex.remove(0, "unknown");
+        assertEquals(0, expiryIndex.size(0));
+    }
+}
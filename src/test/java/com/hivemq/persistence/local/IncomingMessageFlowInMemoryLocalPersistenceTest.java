@@ -120,4 +120,44 @@ public class IncomingMessageFlowInMemoryLocalPersistenceTest {
         assertEquals(null, persistence.get("client", 2));
         assertEquals(message, persistence.get("client2", 1));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_client_removed_after_last_flow_completed() throws Exception {
+        persistence.addOrReplace("client", 1, new PUBACK(1));
+        persistence.addOrReplace("client", 2, new PUBACK(2));
+        persistence.addOrReplace("client2", 1, new PUBACK(1));
+
+        persistence.remove("client", 1);
+        assertEquals(2, persistence.size());
+
+        persistence.remove("client", 2);
+        assertEquals(1, persistence.size());
+
+        persistence.delete("client2");
+        assertEquals(0, persistence.size());
+    }
+
+    @Test
+    public void test_add_while_last_flow_of_client_is_removed() throws Exception {
+        final int count = 10000;
+        final Thread removingThread = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                persistence.addOrReplace("client", 1, new PUBACK(1));
+                persistence.remove("client", 1);
+            }
+        });
+        final Thread addingThread = new Thread(() -> {
+            for (int i = 2; i < count + 2; i++) {
+                persistence.addOrReplace("client", i, new PUBACK(i));
+            }
+        });
+        removingThread.start();
+        addingThread.start();
+        removingThread.join();
+        addingThread.join();
+
+        for (int i = 2; i < count + 2; i++) {
+            assertNotNull(persistence.get("client", i));
+        }
+    }
+}
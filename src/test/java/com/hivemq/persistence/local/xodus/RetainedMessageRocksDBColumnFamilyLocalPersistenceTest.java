@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.local.xodus;
+
+import com.hivemq.configuration.service.InternalConfigurations;
+import org.junit.After;
+
+/**
+ * Runs the retained message persistence tests against the column family layout.
+ */
+@SuppressWarnings("NullabilityAnnotations")
+public class RetainedMessageRocksDBColumnFamilyLocalPersistenceTest extends RetainedMessageRocksDBLocalPersistenceTest {
+
+    @Override
+    public void setUp() throws Exception {
+        InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.set(true);
+        super.setUp();
+    }
+
+    @After
+    public void resetLayout() {
+        InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.set(false);
+    }
+}
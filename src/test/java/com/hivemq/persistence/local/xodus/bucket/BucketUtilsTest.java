@@ -18,6 +18,10 @@ package com.hivemq.persistence.local.xodus.bucket;
 
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -44,4 +48,20 @@ public class BucketUtilsTest {
         assertTrue(bucket >= 0);
     }
 
+    @Test
+    public void test_group_by_bucket() throws Exception {
+        final List<String> ids = List.of("a", "b", "c", "d", "e", "f");
+
+        final Map<Integer, List<String>> idsByBucket = BucketUtils.groupByBucket(ids, 3);
+
+        int count = 0;
+        for (final Map.Entry<Integer, List<String>> entry : idsByBucket.entrySet()) {
+            for (final String id : entry.getValue()) {
+                assertEquals((int) entry.getKey(), BucketUtils.getBucket(id, 3));
+                count++;
+            }
+        }
+        assertEquals(ids.size(), count);
+    }
+
 }
\ No newline at end of file
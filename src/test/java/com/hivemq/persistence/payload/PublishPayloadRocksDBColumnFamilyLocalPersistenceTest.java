@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.payload;
+
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.persistence.PersistenceStartup;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the payload persistence tests against the column family layout.
+ */
+@SuppressWarnings("NullabilityAnnotations")
+public class PublishPayloadRocksDBColumnFamilyLocalPersistenceTest extends PublishPayloadRocksDBLocalPersistenceTest {
+
+    @Override
+    public void before() throws Exception {
+        InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.set(true);
+        super.before();
+    }
+
+    @After
+    public void resetLayout() {
+        InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.set(false);
+    }
+
+    @Test
+    public void test_migrate_buckets_to_column_families() throws Exception {
+        final File folder = temporaryFolder.newFolder();
+        when(localPersistenceFileUtil.getVersionedLocalPersistenceFolder(anyString(), anyString())).thenReturn(folder);
+
+        InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.set(false);
+        final PublishPayloadRocksDBLocalPersistence bucketPersistence =
+                new PublishPayloadRocksDBLocalPersistence(localPersistenceFileUtil, new PersistenceStartup());
+        bucketPersistence.start();
+        for (long i = 0; i < 100; i++) {
+            bucketPersistence.put(i, ("payload" + i).getBytes());
+        }
+        bucketPersistence.closeDB();
+
+        InternalConfigurations.PERSISTENCE_ROCKSDB_COLUMN_FAMILIES_ENABLED.set(true);
+        final PublishPayloadRocksDBLocalPersistence columnFamilyPersistence =
+                new PublishPayloadRocksDBLocalPersistence(localPersistenceFileUtil, new PersistenceStartup());
+        columnFamilyPersistence.start();
+        try {
+            for (long i = 0; i < 100; i++) {
+                assertTrue(Arrays.equals(("payload" + i).getBytes(), columnFamilyPersistence.get(i)));
+            }
+            assertEquals(99L, columnFamilyPersistence.getMaxId());
+            final File[] bucketFolders = folder.listFiles((dir, name) -> name.startsWith(PublishPayloadRocksDBLocalPersistence.PERSISTENCE_NAME + "_"));
+            assertNotNull(bucketFolders);
+            assertEquals(0, bucketFolders.length);
+        } finally {
+            columnFamilyPersistence.closeDB();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.persistence.qos;
+
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.puback.PUBACK;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IncomingMessageFlowTableTest {
+
+    private IncomingMessageFlowTable table;
+
+    @Before
+    public void setUp() throws Exception {
+        table = new IncomingMessageFlowTable();
+    }
+
+    @Test
+    public void test_get_empty() {
+        assertNull(table.get(1));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void test_put_get_replace() {
+        final MessageWithID message = new PUBACK(1);
+        final MessageWithID message2 = new PUBACK(1);
+
+        table.put(1, message);
+        assertSame(message, table.get(1));
+
+        table.put(1, message2);
+        assertSame(message2, table.get(1));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void test_remove() {
+        table.put(1, new PUBACK(1));
+        table.put(2, new PUBACK(2));
+
+        table.remove(1);
+        table.remove(3);
+
+        assertNull(table.get(1));
+        assertNotNull(table.get(2));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void test_all_packet_ids() {
+        for (int i = 1; i <= 65535; i++) {
+            table.put(i, new PUBACK(i));
+        }
+        assertEquals(65535, table.size());
+
+        for (int i = 1; i <= 65535; i += 2) {
+            table.remove(i);
+        }
+        for (int i = 1; i <= 65535; i++) {
+            final MessageWithID message = table.get(i);
+            if (i % 2 == 1) {
+                assertNull(message);
+            } else {
+                assertNotNull(message);
+                assertEquals(i, message.getPacketIdentifier());
+            }
+        }
+    }
+
+    @Test
+    public void test_remove_colliding_packet_ids() {
+        //all ids have the same home slot for any capacity up to 4096
+        table.put(4096, new PUBACK(4096));
+        table.put(8192, new PUBACK(8192));
+        table.put(12288, new PUBACK(12288));
+        table.put(1, new PUBACK(1));
+
+        table.remove(4096);
+
+        assertNull(table.get(4096));
+        assertEquals(8192, table.get(8192).getPacketIdentifier());
+        assertEquals(12288, table.get(12288).getPacketIdentifier());
+        assertEquals(1, table.get(1).getPacketIdentifier());
+    }
+
+    @Test
+    public void test_random_operations() {
+        final Random random = new Random(42);
+        final MessageWithID[] expected = new MessageWithID[65536];
+        int expectedSize = 0;
+
+        for (int i = 0; i < 200_000; i++) {
+            final int packetId = 1 + random.nextInt(512);
+            if (random.nextBoolean()) {
+                final MessageWithID message = new PUBACK(packetId);
+                if (expected[packetId] == null) {
+                    expectedSize++;
+                }
+                expected[packetId] = message;
+                table.put(packetId, message);
+            } else {
+                if (expected[packetId] != null) {
+                    expectedSize--;
+                }
+                expected[packetId] = null;
+                table.remove(packetId);
+            }
+            assertSame(expected[packetId], table.get(packetId));
+        }
+
+        assertEquals(expectedSize, table.size());
+        for (int packetId = 1; packetId <= 512; packetId++) {
+            assertSame(expected[packetId], table.get(packetId));
+        }
+    }
+
+    @Test
+    public void test_clear() {
+        table.put(1, new PUBACK(1));
+        table.clear();
+
+        assertNull(table.get(1));
+        assertTrue(table.isEmpty());
+    }
+}
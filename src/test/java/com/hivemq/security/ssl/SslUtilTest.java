@@ -17,19 +17,28 @@
 package com.hivemq.security.ssl;
 
 import com.google.common.collect.Lists;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.security.exception.SslException;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslServerContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.MockitoAnnotations;
 import util.TestKeyStoreGenerator;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManagerFactory;
 import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -39,6 +48,9 @@ import static org.junit.Assert.*;
  */
 public class SslUtilTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private TestKeyStoreGenerator testKeyStoreGenerator;
     private SslUtil sslUtil;
 
@@ -146,6 +158,80 @@ public class SslUtilTest {
         assertEquals("TLSv1.3", protocols.get(0));
     }
 
+    @Test
+    public void test_openssl_context_created_if_available() throws Exception {
+        final KeyManagerFactory kmf = createKeyManagerFactory();
+
+        InternalConfigurations.SSL_PROVIDER.set("openssl");
+        try {
+            final SslContext sslServerContext =
+                    sslUtil.createSslServerContext(kmf, null, null, Lists.newArrayList("TLSv1.2"));
+            if (OpenSsl.isAvailable()) {
+                assertTrue(sslServerContext instanceof OpenSslServerContext);
+            } else {
+                assertTrue(sslServerContext instanceof JdkSslContext);
+            }
+
+            final List<String> protocols = getProtocolsFromContext(sslServerContext);
+            assertEquals(1, protocols.size());
+            assertEquals("TLSv1.2", protocols.get(0));
+        } finally {
+            InternalConfigurations.SSL_PROVIDER.set("jdk");
+        }
+    }
+
+    @Test
+    public void test_unknown_provider_falls_back_to_jdk() {
+        InternalConfigurations.SSL_PROVIDER.set("unknown");
+        try {
+            assertEquals(SslProvider.JDK, sslUtil.getSslProvider());
+        } finally {
+            InternalConfigurations.SSL_PROVIDER.set("jdk");
+        }
+    }
+
+    @Test
+    public void test_session_cache_configured() throws Exception {
+        final KeyManagerFactory kmf = createKeyManagerFactory();
+
+        InternalConfigurations.SSL_SESSION_CACHE_SIZE.set(100);
+        InternalConfigurations.SSL_SESSION_TIMEOUT.set(60);
+        try {
+            final SslContext sslServerContext = sslUtil.createSslServerContext(kmf, null, null, null);
+            assertEquals(100, sslServerContext.sessionCacheSize());
+            assertEquals(60, sslServerContext.sessionTimeout());
+        } finally {
+            InternalConfigurations.SSL_SESSION_CACHE_SIZE.set(-1);
+            InternalConfigurations.SSL_SESSION_TIMEOUT.set(-1);
+        }
+    }
+
+    @Test
+    public void test_read_session_ticket_keys() throws Exception {
+        final File file = temporaryFolder.newFile();
+        final byte[] bytes = new byte[96];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Files.write(file.toPath(), bytes);
+
+        final OpenSslSessionTicketKey[] keys = sslUtil.readSessionTicketKeys(file.getAbsolutePath());
+
+        assertEquals(2, keys.length);
+        assertArrayEquals(Arrays.copyOfRange(bytes, 0, 16), keys[0].name());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 16, 32), keys[0].hmacKey());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 32, 48), keys[0].aesKey());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 48, 64), keys[1].name());
+    }
+
+    @Test(expected = SslException.class)
+    public void test_read_session_ticket_keys_wrong_length() throws Exception {
+        final File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), new byte[47]);
+
+        sslUtil.readSessionTicketKeys(file.getAbsolutePath());
+    }
+
     @NotNull
     private KeyManagerFactory createKeyManagerFactory() throws Exception {
         final File store = testKeyStoreGenerator.generateKeyStore("fun", "JKS", "pw", "pk");